@@ -0,0 +1,104 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.devicemanager.IDeviceService;
+import net.floodlightcontroller.routing.IRoutingDecision;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the per-packet cost of the FloodlightContext: the controller
+ * stores the packet-in payload, the device manager the source and
+ * destination devices, a filter the routing decision, and Forwarding reads
+ * them back before the context is cleared for reuse.
+ *
+ * slots uses the registered key slots, names the key names, and
+ * concurrentHashMap the per-packet map the context used before slots.
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="FloodlightContextBenchmark -prof gc"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FloodlightContextBenchmark {
+    private static final FloodlightContextStore<Object> store =
+            new FloodlightContextStore<Object>();
+
+    private final Object payload = new Object();
+    private final Object srcDevice = new Object();
+    private final Object dstDevice = new Object();
+    private final Object decision = new Object();
+
+    private final FloodlightContext cntx = new FloodlightContext();
+    private final ConcurrentHashMap<String, Object> map =
+            new ConcurrentHashMap<String, Object>();
+
+    @Benchmark
+    public void slots(Blackhole bh) {
+        store.put(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT, payload);
+        store.put(cntx, IDeviceService.CONTEXT_SRC_DEVICE_SLOT, srcDevice);
+        store.put(cntx, IDeviceService.CONTEXT_DST_DEVICE_SLOT, dstDevice);
+        store.put(cntx, IRoutingDecision.CONTEXT_DECISION_SLOT, decision);
+        bh.consume(store.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT));
+        bh.consume(store.get(cntx, IRoutingDecision.CONTEXT_DECISION_SLOT));
+        bh.consume(store.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE_SLOT));
+        bh.consume(store.get(cntx, IDeviceService.CONTEXT_DST_DEVICE_SLOT));
+        cntx.clear();
+    }
+
+    @Benchmark
+    public void names(Blackhole bh) {
+        store.put(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD, payload);
+        store.put(cntx, IDeviceService.CONTEXT_SRC_DEVICE, srcDevice);
+        store.put(cntx, IDeviceService.CONTEXT_DST_DEVICE, dstDevice);
+        store.put(cntx, IRoutingDecision.CONTEXT_DECISION, decision);
+        bh.consume(store.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD));
+        bh.consume(store.get(cntx, IRoutingDecision.CONTEXT_DECISION));
+        bh.consume(store.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE));
+        bh.consume(store.get(cntx, IDeviceService.CONTEXT_DST_DEVICE));
+        cntx.clear();
+    }
+
+    @Benchmark
+    public void concurrentHashMap(Blackhole bh) {
+        map.put(IFloodlightProviderService.CONTEXT_PI_PAYLOAD, payload);
+        map.put(IDeviceService.CONTEXT_SRC_DEVICE, srcDevice);
+        map.put(IDeviceService.CONTEXT_DST_DEVICE, dstDevice);
+        map.put(IRoutingDecision.CONTEXT_DECISION, decision);
+        bh.consume(map.get(IFloodlightProviderService.CONTEXT_PI_PAYLOAD));
+        bh.consume(map.get(IRoutingDecision.CONTEXT_DECISION));
+        bh.consume(map.get(IDeviceService.CONTEXT_SRC_DEVICE));
+        bh.consume(map.get(IDeviceService.CONTEXT_DST_DEVICE));
+        map.clear();
+    }
+}
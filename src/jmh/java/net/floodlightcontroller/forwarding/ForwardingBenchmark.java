@@ -0,0 +1,286 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.forwarding;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.SwitchDescription;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.packet.Data;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.TCP;
+import net.floodlightcontroller.routing.FlowModTemplate;
+import net.floodlightcontroller.routing.Path;
+import net.floodlightcontroller.routing.PathId;
+import net.floodlightcontroller.util.FlowModUtils;
+import net.floodlightcontroller.util.MatchUtils;
+import net.floodlightcontroller.util.OFMessageDamper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowModCommand;
+import org.projectfloodlight.openflow.protocol.OFFlowModFlags;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.action.OFActionOutput;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.TransportPort;
+import org.projectfloodlight.openflow.types.U64;
+
+/**
+ * Benchmarks the Forwarding packet-in to flow-mod path over a path of
+ * {@link #hops} switches.
+ *
+ * flowSetup runs createMatchFromPacket and pushRoute for one packet-in.
+ * legacyFlowMods and templateFlowMods only build the per-hop flow-mods, the
+ * former the way pushRoute did before flow-mod templates, the latter from
+ * the compiled templates. Switches are dynamic proxies that return fixed
+ * values, and the message damper is replaced by a sink, so neither adds to
+ * the measured allocations.
+ *
+ * Run with the gc profiler to see allocations per flow setup:
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="ForwardingBenchmark -prof gc"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ForwardingBenchmark {
+
+    @Param({ "OF_13", "OF_10" })
+    public String version;
+
+    @Param({ "6" })
+    public int hops;
+
+    private BenchForwarding forwarding;
+    private IOFSwitch[] switches;
+    private Path path;
+    private OFPacketIn pi;
+    private FloodlightContext cntx;
+    private Match match;
+    private U64 cookie = U64.of(0x20000000000000L);
+
+    /**
+     * Forwarding with its services replaced by stubs
+     */
+    private static class BenchForwarding extends Forwarding {
+        private OFMessage sink;
+        private int written;
+
+        BenchForwarding(IOFSwitchService switchService) {
+            this.switchService = switchService;
+            this.messageDamper = new OFMessageDamper(1, EnumSet.of(OFType.FLOW_MOD), 1) {
+                @Override
+                public boolean write(IOFSwitch sw, OFMessage msg) {
+                    sink = msg;
+                    written++;
+                    return true;
+                }
+            };
+        }
+
+        FlowModTemplate template(IOFSwitch sw) {
+            return getFlowModTemplate(sw);
+        }
+    }
+
+    /**
+     * Create an interface stub that answers calls by method name from a
+     * fixed map, and with null/false/0 otherwise
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> iface, final Map<String, Object> answers) {
+        return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface },
+                new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getSwitch")) {
+                    return ((Map<DatapathId, IOFSwitch>) answers.get("getSwitch")).get(args[0]);
+                }
+                Object answer = answers.get(method.getName());
+                if (answer != null) {
+                    return answer;
+                }
+                Class<?> type = method.getReturnType();
+                if (type == boolean.class) {
+                    return Boolean.FALSE;
+                } else if (type == int.class) {
+                    return 0;
+                } else if (type == long.class) {
+                    return 0L;
+                }
+                return null;
+            }
+        });
+    }
+
+    @Setup
+    public void setUp() {
+        OFFactory factory = OFFactories.getFactory(OFVersion.valueOf(version));
+        SwitchDescription desc = new SwitchDescription("Nicira, Inc.", "Open vSwitch",
+                "2.5.0", "None", "None");
+
+        Map<DatapathId, IOFSwitch> switchMap = new HashMap<DatapathId, IOFSwitch>();
+        switches = new IOFSwitch[hops];
+        List<NodePortTuple> nptList = new ArrayList<NodePortTuple>();
+        for (int i = 0; i < hops; i++) {
+            DatapathId dpid = DatapathId.of(i + 1);
+            Map<String, Object> answers = new HashMap<String, Object>();
+            answers.put("getId", dpid);
+            answers.put("getOFFactory", factory);
+            answers.put("getSwitchDescription", desc);
+            answers.put("write", Boolean.TRUE);
+            switches[i] = stub(IOFSwitch.class, answers);
+            switchMap.put(dpid, switches[i]);
+            nptList.add(new NodePortTuple(dpid, OFPort.of(1)));
+            nptList.add(new NodePortTuple(dpid, OFPort.of(2)));
+        }
+        Map<String, Object> answers = new HashMap<String, Object>();
+        answers.put("getSwitch", switchMap);
+        forwarding = new BenchForwarding(stub(IOFSwitchService.class, answers));
+        path = new Path(new PathId(DatapathId.of(1), DatapathId.of(hops)), nptList);
+
+        Ethernet eth = (Ethernet) new Ethernet()
+                .setSourceMACAddress(MacAddress.of("00:00:00:00:00:01"))
+                .setDestinationMACAddress(MacAddress.of("00:00:00:00:00:02"))
+                .setEtherType(EthType.IPv4)
+                .setPayload(new IPv4()
+                        .setTtl((byte) 64)
+                        .setSourceAddress(IPv4Address.of("10.0.0.1"))
+                        .setDestinationAddress(IPv4Address.of("10.0.0.2"))
+                        .setProtocol(IpProtocol.TCP)
+                        .setPayload(new TCP()
+                                .setSourcePort(TransportPort.of(40000))
+                                .setDestinationPort(TransportPort.of(80))
+                                .setFlags((short) 0x02)
+                                .setPayload(new Data(new byte[] { 1, 2, 3 }))));
+        OFPacketIn.Builder pib = factory.buildPacketIn()
+                .setBufferId(OFBufferId.NO_BUFFER)
+                .setReason(OFPacketInReason.NO_MATCH)
+                .setData(eth.serialize());
+        if (factory.getVersion().compareTo(OFVersion.OF_12) < 0) {
+            pib.setInPort(OFPort.of(1));
+        } else {
+            pib.setMatch(factory.buildMatch().setExact(MatchField.IN_PORT, OFPort.of(1)).build());
+        }
+        pi = pib.build();
+        cntx = new FloodlightContext();
+        IFloodlightProviderService.bcStore.put(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD, eth);
+        match = forwarding.createMatchFromPacket(switches[0], OFPort.of(1), pi, cntx);
+    }
+
+    @Benchmark
+    public boolean flowSetup() {
+        Match m = forwarding.createMatchFromPacket(switches[0], OFPort.of(1), pi, cntx);
+        return forwarding.pushRoute(path, m, pi, switches[0].getId(), cookie, cntx,
+                false, OFFlowModCommand.ADD, false);
+    }
+
+    @Benchmark
+    public void legacyFlowMods(Blackhole bh) {
+        List<NodePortTuple> npts = path.getPath();
+        for (int indx = npts.size() - 1; indx > 0; indx -= 2) {
+            IOFSwitch sw = switches[indx / 2];
+            OFFlowMod.Builder fmb = sw.getOFFactory().buildFlowAdd();
+            OFActionOutput.Builder aob = sw.getOFFactory().actions().buildOutput();
+            List<OFAction> actions = new ArrayList<OFAction>();
+            Match.Builder mb = MatchUtils.convertToVersion(match, sw.getOFFactory().getVersion());
+            OFPort outPort = npts.get(indx).getPortId();
+            mb.setExact(MatchField.IN_PORT, npts.get(indx - 1).getPortId());
+            aob.setPort(outPort);
+            aob.setMaxLen(Integer.MAX_VALUE);
+            actions.add(aob.build());
+            Set<OFFlowModFlags> flags = new HashSet<OFFlowModFlags>();
+            flags.add(OFFlowModFlags.SEND_FLOW_REM);
+            fmb.setFlags(flags);
+            fmb.setMatch(mb.build())
+            .setIdleTimeout(5)
+            .setHardTimeout(0)
+            .setBufferId(OFBufferId.NO_BUFFER)
+            .setCookie(cookie)
+            .setOutPort(outPort)
+            .setPriority(1);
+            FlowModUtils.setActions(fmb, actions, sw);
+            if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) != 0) {
+                fmb.setTableId(TableId.ZERO);
+            }
+            bh.consume(fmb.build());
+        }
+    }
+
+    @Benchmark
+    public void templateFlowMods(Blackhole bh) {
+        List<NodePortTuple> npts = path.getPath();
+        for (int indx = npts.size() - 1; indx > 0; indx -= 2) {
+            IOFSwitch sw = switches[indx / 2];
+            FlowModTemplate template = forwarding.template(sw);
+            OFFlowMod.Builder fmb = template.builder(OFFlowModCommand.ADD, true);
+            Match.Builder mb = MatchUtils.convertToVersion(match, sw.getOFFactory().getVersion());
+            OFPort outPort = npts.get(indx).getPortId();
+            mb.setExact(MatchField.IN_PORT, npts.get(indx - 1).getPortId());
+            fmb.setMatch(mb.build())
+            .setCookie(cookie)
+            .setOutPort(outPort);
+            template.setOutput(fmb, outPort);
+            bh.consume(fmb.build());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package org.sdnplatform.sync.internal.rpc;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.compression.JdkZlibDecoder;
+import io.netty.handler.codec.compression.ZlibWrapper;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sdnplatform.sync.ISyncService;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.version.VectorClock;
+import org.sdnplatform.sync.thrift.AsyncMessageHeader;
+import org.sdnplatform.sync.thrift.MessageType;
+import org.sdnplatform.sync.thrift.SyncMessage;
+import org.sdnplatform.sync.thrift.SyncValueResponseMessage;
+
+/**
+ * Compares the sync RPC transports over a loopback connection: a client
+ * writes SYNC_VALUE messages through the message window and a server acks
+ * each one, as {@link RPCChannelHandler} does.
+ *
+ * current writes and flushes each message with a fixed window;
+ * pipelined coalesces the writes with a {@link CoalescingWriter} and
+ * adapts the window; pipelinedDeflate also compresses the stream with
+ * {@link DeflateBatchEncoder}. throughput sends a batch and waits for all
+ * acks; latency times the round trip of one message on an idle channel.
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="RPCTransportBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RPCTransportBenchmark {
+    private static final int BATCH = 10000;
+    private static final int MAX_FRAME_SIZE = 512 * 1024;
+
+    @Param({"current", "pipelined", "pipelinedDeflate"})
+    public String transport;
+
+    @Param({"256"})
+    public int valueSize;
+
+    private EventLoopGroup group;
+    private Channel server;
+    private Channel client;
+    private CoalescingWriter writer;
+    private RPCService.MessageWindow window;
+    private final Semaphore acks = new Semaphore(0);
+    private SyncMessage message;
+
+    @Setup
+    public void setUp() throws Exception {
+        final boolean pipelined = !transport.equals("current");
+        final boolean deflate = transport.equals("pipelinedDeflate");
+        window = pipelined ?
+                new RPCService.MessageWindow(RPCService.MIN_PENDING_MESSAGES,
+                        RPCService.MAX_PENDING_MESSAGES,
+                        RPCService.MAX_ADAPTIVE_PENDING_MESSAGES) :
+                new RPCService.MessageWindow(RPCService.MAX_PENDING_MESSAGES,
+                        RPCService.MAX_PENDING_MESSAGES,
+                        RPCService.MAX_PENDING_MESSAGES);
+
+        group = new NioEventLoopGroup(2);
+        server = new ServerBootstrap()
+            .group(group)
+            .channel(NioServerSocketChannel.class)
+            .childOption(ChannelOption.TCP_NODELAY, true)
+            .childHandler(new ChannelInitializer<Channel>() {
+                @Override
+                protected void initChannel(Channel ch) {
+                    addCodecs(ch.pipeline(), deflate);
+                    ch.pipeline().addLast(new AckHandler());
+                }
+            })
+            .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+        client = new Bootstrap()
+            .group(group)
+            .channel(NioSocketChannel.class)
+            .option(ChannelOption.TCP_NODELAY, true)
+            .handler(new ChannelInitializer<Channel>() {
+                @Override
+                protected void initChannel(Channel ch) {
+                    addCodecs(ch.pipeline(), deflate);
+                    ch.pipeline().addLast(new AckedHandler());
+                }
+            })
+            .connect(server.localAddress()).sync().channel();
+        writer = pipelined ? new CoalescingWriter(client) : null;
+
+        byte[] key = new byte[16];
+        byte[] value = new byte[valueSize];
+        Random r = new Random(42);
+        r.nextBytes(key);
+        // mostly repeated content, like serialized JSON of similar objects
+        for (int i = 0; i < value.length; i++) {
+            value[i] = (byte) ('a' + r.nextInt(4));
+        }
+        message = TProtocolUtil.getTSyncValueMessage("benchmark",
+                                                     ISyncService.Scope.GLOBAL, false);
+        message.getSyncValue().addToValues(
+                TProtocolUtil.getTKeyedValues(new ByteArray(key),
+                        new Versioned<byte[]>(value,
+                                new VectorClock().incremented(1, 1))));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close().sync();
+        server.close().sync();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+
+    private static void addCodecs(ChannelPipeline p, boolean deflate) {
+        if (deflate) {
+            p.addLast(new JdkZlibDecoder(ZlibWrapper.ZLIB));
+            p.addLast(new DeflateBatchEncoder());
+        }
+        p.addLast(new SyncMessageDecoder(MAX_FRAME_SIZE));
+        p.addLast(new SyncMessageEncoder());
+    }
+
+    private void send() throws InterruptedException {
+        window.acquire(0);
+        if (writer != null) {
+            writer.write(message);
+            if (!client.isWritable()) window.congested();
+        } else {
+            client.writeAndFlush(message);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public void throughput() throws InterruptedException {
+        for (int i = 0; i < BATCH; i++) {
+            send();
+        }
+        acks.acquire(BATCH);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency() throws InterruptedException {
+        send();
+        acks.acquire();
+    }
+
+    /* acks each SYNC_VALUE like RPCChannelHandler#handleSyncValue */
+    private static class AckHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            for (Object o : (List<?>) msg) {
+                SyncMessage m = (SyncMessage) o;
+                AsyncMessageHeader header = new AsyncMessageHeader();
+                header.setTransactionId(
+                        m.getSyncValue().getHeader().getTransactionId());
+                SyncValueResponseMessage svrm = new SyncValueResponseMessage();
+                svrm.setHeader(header);
+                SyncMessage bsm =
+                        new SyncMessage(MessageType.SYNC_VALUE_RESPONSE);
+                bsm.setSyncValueResponse(svrm);
+                ctx.channel().writeAndFlush(bsm);
+            }
+        }
+    }
+
+    private class AckedHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            int n = ((List<?>) msg).size();
+            for (int i = 0; i < n; i++) {
+                window.release();
+            }
+            acks.release(n);
+        }
+    }
+}
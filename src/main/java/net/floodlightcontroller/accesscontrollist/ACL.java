@@ -22,6 +22,7 @@ package net.floodlightcontroller.accesscontrollist;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -46,6 +47,7 @@ import net.floodlightcontroller.packet.IPv4;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.staticentry.StaticEntryPusher;
 import net.floodlightcontroller.storage.IStorageSourceService;
+import net.floodlightcontroller.util.IPv4PrefixTrie;
 
 import org.projectfloodlight.openflow.protocol.match.MatchFields;
 import org.projectfloodlight.openflow.types.IPv4Address;
@@ -68,6 +70,14 @@ public class ACL implements IACLService, IFloodlightModule, IDeviceListener {
 	private Map<Integer, Set<String>> ruleId2FlowName;
 	private Map<Integer, List<Integer>> deny2Allow;
 
+	// rule indexes by source and destination prefix, so that matching a new
+	// rule or attachment point does not have to walk every existing rule.
+	// Rules without a source (destination) go to anySrcRules (anyDstRules).
+	private IPv4PrefixTrie<ACLRule> srcTrie;
+	private IPv4PrefixTrie<ACLRule> dstTrie;
+	private Map<Integer, ACLRule> anySrcRules;
+	private Map<Integer, ACLRule> anyDstRules;
+
 	private final int DEFAULT_PRIORITY = 30000;
 
 	/**
@@ -117,26 +127,110 @@ public class ACL implements IACLService, IFloodlightModule, IDeviceListener {
 		return new ArrayList<ACLRule>(aclRules.values());
 	}
 
+	/**
+	 * Adds a rule to the prefix indexes.
+	 */
+	private void indexRule(ACLRule rule) {
+		if (rule.getNw_src() != null) {
+			int[] cidr = IPAddressUtil.parseCIDR(rule.getNw_src());
+			srcTrie.put(cidr[0], cidr[1], rule);
+		} else {
+			anySrcRules.put(rule.getId(), rule);
+		}
+		if (rule.getNw_dst() != null) {
+			int[] cidr = IPAddressUtil.parseCIDR(rule.getNw_dst());
+			dstTrie.put(cidr[0], cidr[1], rule);
+		} else {
+			anyDstRules.put(rule.getId(), rule);
+		}
+	}
+
+	/**
+	 * Removes a rule from the prefix indexes.
+	 */
+	private void unindexRule(ACLRule rule) {
+		if (rule.getNw_src() != null) {
+			int[] cidr = IPAddressUtil.parseCIDR(rule.getNw_src());
+			srcTrie.remove(cidr[0], cidr[1], rule);
+		} else {
+			anySrcRules.remove(rule.getId());
+		}
+		if (rule.getNw_dst() != null) {
+			int[] cidr = IPAddressUtil.parseCIDR(rule.getNw_dst());
+			dstTrie.remove(cidr[0], cidr[1], rule);
+		} else {
+			anyDstRules.remove(rule.getId());
+		}
+	}
+
+	/**
+	 * Gets the existing rules whose source and destination could cover
+	 * the given CIDR, i.e. a superset of the rules r for which
+	 * isSubnet(cidr, r's CIDR) holds.
+	 */
+	private Collection<ACLRule> getCoveringRules(String cidr,
+			IPv4PrefixTrie<ACLRule> trie, Map<Integer, ACLRule> anyRules) {
+		List<ACLRule> result = new ArrayList<ACLRule>(anyRules.values());
+		if (cidr != null) {
+			int[] c = IPAddressUtil.parseCIDR(cidr);
+			result.addAll(trie.getCovering(c[0], c[1]));
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the existing rules whose source and destination could be
+	 * covered by the given CIDR, i.e. a superset of the rules r for which
+	 * isSubnet(r's CIDR, cidr) holds.
+	 */
+	private Collection<ACLRule> getCoveredRules(String cidr,
+			IPv4PrefixTrie<ACLRule> trie) {
+		if (cidr == null) {
+			return aclRules.values();
+		}
+		int[] c = IPAddressUtil.parseCIDR(cidr);
+		return trie.getCovered(c[0], c[1]);
+	}
+
+	private static <T> Collection<T> smaller(Collection<T> a, Collection<T> b) {
+		return (a.size() <= b.size()) ? a : b;
+	}
+
 	/**
 	 * Checks if the new ACL rule matches an existing rule. If existing allowing
 	 * rules matches the new denying rule, store the mappings.
 	 * 
+	 * Candidates are taken from the prefix indexes on whichever of source
+	 * or destination is more selective and then checked with
+	 * {@link ACLRule#match(ACLRule)}.
+	 * 
 	 * @return true if the new ACL rule matches an existing rule, false
 	 *         otherwise
 	 */
 	private boolean checkRuleMatch(ACLRule newRule) {
-		List<Integer> allowRuleList = new ArrayList<>();
-		for (ACLRule existingRule : getRules()) {
+		Collection<ACLRule> candidates = smaller(
+				getCoveringRules(newRule.getNw_src(), srcTrie, anySrcRules),
+				getCoveringRules(newRule.getNw_dst(), dstTrie, anyDstRules));
+		for (ACLRule existingRule : candidates) {
 			if (newRule.match(existingRule)) {
 				return true;
 			}
+		}
 
-			if (existingRule.getAction() == Action.ALLOW
-					&& newRule.getAction() == Action.DENY) {
-				if (existingRule.match(newRule)) {
+		List<Integer> allowRuleList = new ArrayList<>();
+		if (newRule.getAction() == Action.DENY) {
+			candidates = smaller(
+					getCoveredRules(newRule.getNw_src(), srcTrie),
+					getCoveredRules(newRule.getNw_dst(), dstTrie));
+			for (ACLRule existingRule : candidates) {
+				if (existingRule.getAction() == Action.ALLOW
+						&& existingRule.match(newRule)) {
 					allowRuleList.add(existingRule.getId());
 				}
 			}
+			// keep the allowing rules in rule order, which determines
+			// the order (and so the priority) of their flows
+			Collections.sort(allowRuleList);
 		}
 		deny2Allow.put(newRule.getId(), allowRuleList);
 		return false;
@@ -150,6 +244,7 @@ public class ACL implements IACLService, IFloodlightModule, IDeviceListener {
 			return false;
 		}
 		aclRules.put(rule.getId(), rule);
+		indexRule(rule);
 		logger.info("ACL rule(id:{}) is added.", rule.getId());
 		if (rule.getAction() != Action.ALLOW) {
 			enforceAddedRule(rule);
@@ -159,7 +254,10 @@ public class ACL implements IACLService, IFloodlightModule, IDeviceListener {
 
 	@Override
 	public void removeRule(int ruleId) {
-		aclRules.remove(ruleId);
+		ACLRule rule = aclRules.remove(ruleId);
+		if (rule != null) {
+			unindexRule(rule);
+		}
 		logger.info("ACL rule(id:{}) is removed.", ruleId);
 		enforceRemovedRule(ruleId);
 	}
@@ -168,6 +266,10 @@ public class ACL implements IACLService, IFloodlightModule, IDeviceListener {
 	public void removeAllRules() {
 		this.lastRuleId = 1;
 		this.aclRules = new TreeMap<>();
+		this.srcTrie.clear();
+		this.dstTrie.clear();
+		this.anySrcRules.clear();
+		this.anyDstRules.clear();
 		this.dpid2FlowPriority = new HashMap<>();
 		this.ruleId2Dpid = new HashMap<>();
 		this.deny2Allow = new HashMap<>();
@@ -341,6 +443,10 @@ public class ACL implements IACLService, IFloodlightModule, IDeviceListener {
 		ruleId2Dpid = new HashMap<>();
 		dpid2FlowPriority = new HashMap<>();
 		deny2Allow = new HashMap<>();
+		srcTrie = new IPv4PrefixTrie<>();
+		dstTrie = new IPv4PrefixTrie<>();
+		anySrcRules = new TreeMap<>();
+		anyDstRules = new TreeMap<>();
 	}
 
 	@Override
@@ -381,29 +487,27 @@ public class ACL implements IACLService, IFloodlightModule, IDeviceListener {
 		String dpid = ap.getDpid();
 		int ip = IPv4.toIPv4Address(ap.getIp());
 
-		for (ACLRule rule : getRules()) {
+		// rules whose source contains the IP, plus rules without a source
+		// whose destination contains it; visited in rule order since that
+		// determines flow priority
+		Map<Integer, ACLRule> matched = new TreeMap<>();
+		for (ACLRule rule : srcTrie.getCovering(ip, 32)) {
+			matched.put(rule.getId(), rule);
+		}
+		for (ACLRule rule : dstTrie.getCovering(ip, 32)) {
+			if (rule.getNw_src() == null) {
+				matched.put(rule.getId(), rule);
+			}
+		}
+
+		for (ACLRule rule : matched.values()) {
 			if (rule.getAction() != Action.ALLOW) {
-				if (rule.getNw_src() != null) {
-					if (IPAddressUtil.containIP(rule.getNw_src_prefix(),
-							rule.getNw_src_maskbits(), ip)) {
-						if (checkIfRuleWorksInSwitch(rule.getId(), dpid)) {
-							continue;
-						}
-						String flowName = "ACLRule_" + rule.getId() + "_"
-								+ dpid;
-						generateFlow(rule, dpid, flowName);
-					}
-				} else {
-					if (IPAddressUtil.containIP(rule.getNw_dst_prefix(),
-							rule.getNw_dst_maskbits(), ip)) {
-						if (checkIfRuleWorksInSwitch(rule.getId(), dpid)) {
-							continue;
-						}
-						String flowName = "ACLRule_" + rule.getId() + "_"
-								+ dpid;
-						generateFlow(rule, dpid, flowName);
-					}
+				if (checkIfRuleWorksInSwitch(rule.getId(), dpid)) {
+					continue;
 				}
+				String flowName = "ACLRule_" + rule.getId() + "_"
+						+ dpid;
+				generateFlow(rule, dpid, flowName);
 			}
 		}
 	}
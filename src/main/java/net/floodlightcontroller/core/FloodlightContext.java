@@ -17,19 +17,144 @@
 
 package net.floodlightcontroller.core;
 
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * This is a context object where floodlight listeners can register 
  * and later retrieve context information associated with an
  * event
+ *
+ * Every key is given an integer slot the first time it is seen (see
+ * {@link #registerKey(String)}), and a context stores its values in a
+ * plain array indexed by slot. A context is used by one thread at a time
+ * and is not thread safe. Contexts are pooled and reused, see
+ * {@link #clear()}.
  * @author readams
  */
 public class FloodlightContext {
-    protected ConcurrentHashMap<String, Object> storage =
-            new ConcurrentHashMap<String, Object>();
+    private static final ConcurrentHashMap<String, Integer> slots =
+            new ConcurrentHashMap<String, Integer>();
+    private static final CopyOnWriteArrayList<String> slotKeys =
+            new CopyOnWriteArrayList<String>();
 
-    public ConcurrentHashMap<String, Object> getStorage() {
-        return storage;
+    private Object[] values = new Object[Math.max(8, slotKeys.size())];
+    /* one past the highest slot set since the last clear */
+    private int highWater;
+
+    /**
+     * Get the slot for a key, registering the key if it is new. Slots are
+     * never reused, so callers on hot paths should register their keys once
+     * (e.g. in a static field) and use the slot-based methods of
+     * {@link FloodlightContextStore}.
+     * @param key the context key
+     * @return the slot of the key
+     */
+    public static int registerKey(String key) {
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            return slot;
+        }
+        synchronized (slots) {
+            slot = slots.get(key);
+            if (slot == null) {
+                slot = slotKeys.size();
+                slotKeys.add(key);
+                slots.put(key, slot);
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * @return the slot of a key, or -1 if the key was never registered
+     */
+    static int findSlot(String key) {
+        Integer slot = slots.get(key);
+        return slot == null ? -1 : slot;
+    }
+
+    public Object get(int slot) {
+        return slot < values.length ? values[slot] : null;
+    }
+
+    public void put(int slot, Object value) {
+        if (slot >= values.length) {
+            values = Arrays.copyOf(values, Math.max(slot + 1, slotKeys.size()));
+        }
+        values[slot] = value;
+        if (slot >= highWater) {
+            highWater = slot + 1;
+        }
+    }
+
+    public void remove(int slot) {
+        if (slot < values.length) {
+            values[slot] = null;
+        }
+    }
+
+    /**
+     * Remove all values so the context can be reused
+     */
+    public void clear() {
+        Arrays.fill(values, 0, highWater, null);
+        highWater = 0;
+    }
+
+    /**
+     * Get a map view of the context, keyed by the registered key names.
+     * Lookups go through the key registry, so this is slower than
+     * {@link FloodlightContextStore}; it is meant for debugging and tools.
+     * @return a live map view of the context
+     */
+    public Map<String, Object> getStorage() {
+        return new AbstractMap<String, Object>() {
+            @Override
+            public Object get(Object key) {
+                int slot = (key instanceof String) ? findSlot((String) key) : -1;
+                return slot < 0 ? null : FloodlightContext.this.get(slot);
+            }
+
+            @Override
+            public Object put(String key, Object value) {
+                int slot = registerKey(key);
+                Object old = FloodlightContext.this.get(slot);
+                FloodlightContext.this.put(slot, value);
+                return old;
+            }
+
+            @Override
+            public Object remove(Object key) {
+                int slot = (key instanceof String) ? findSlot((String) key) : -1;
+                if (slot < 0) {
+                    return null;
+                }
+                Object old = FloodlightContext.this.get(slot);
+                FloodlightContext.this.remove(slot);
+                return old;
+            }
+
+            @Override
+            public void clear() {
+                FloodlightContext.this.clear();
+            }
+
+            @Override
+            public Set<Map.Entry<String, Object>> entrySet() {
+                Map<String, Object> snapshot = new HashMap<String, Object>();
+                for (int i = 0; i < highWater; i++) {
+                    if (values[i] != null) {
+                        snapshot.put(slotKeys.get(i), values[i]);
+                    }
+                }
+                return snapshot.entrySet();
+            }
+        };
     }
 }
@@ -17,18 +17,40 @@
 
 package net.floodlightcontroller.core;
 
+/**
+ * Typed access to values in a {@link FloodlightContext}. Values can be
+ * addressed by key name or, faster, by the slot returned from
+ * {@link FloodlightContext#registerKey(String)} for that name.
+ */
 public class FloodlightContextStore<V> {
     
     @SuppressWarnings("unchecked")
     public V get(FloodlightContext bc, String key) {
-        return (V)bc.storage.get(key);
+        int slot = FloodlightContext.findSlot(key);
+        return slot < 0 ? null : (V)bc.get(slot);
     }
     
     public void put(FloodlightContext bc, String key, V value) {
-        bc.storage.put(key, value);
+        bc.put(FloodlightContext.registerKey(key), value);
     }
     
     public void remove(FloodlightContext bc, String key) {
-        bc.storage.remove(key);
+        int slot = FloodlightContext.findSlot(key);
+        if (slot >= 0) {
+            bc.remove(slot);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(FloodlightContext bc, int slot) {
+        return (V)bc.get(slot);
+    }
+
+    public void put(FloodlightContext bc, int slot, V value) {
+        bc.put(slot, value);
+    }
+
+    public void remove(FloodlightContext bc, int slot) {
+        bc.remove(slot);
     }
 }
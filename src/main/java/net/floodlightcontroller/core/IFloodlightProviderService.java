@@ -53,6 +53,12 @@ public interface IFloodlightProviderService extends
     public static final String CONTEXT_PI_PAYLOAD =
             "net.floodlightcontroller.core.IFloodlightProvider.piPayload";
 
+    /**
+     * The context slot of {@link #CONTEXT_PI_PAYLOAD}
+     */
+    public static final int CONTEXT_PI_PAYLOAD_SLOT =
+            FloodlightContext.registerKey(CONTEXT_PI_PAYLOAD);
+
     /**
      * A FloodlightContextStore object that can be used to retrieve the
      * packet-in payload
@@ -22,6 +22,11 @@ public interface IOFConnectionBackend extends IOFConnection {
 
     /** set the message/closing listener for this connection */
     void setListener(IOFConnectionListener listener);
+
+    /** run a task on the thread that handles I/O for this connection,
+     *  which is also the thread that delivers its messages to the listener
+     */
+    void execute(Runnable task);
     
     /**
      * Update the present latency between the switch and
@@ -0,0 +1,158 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.floodlightcontroller.core.IOFConnectionBackend;
+
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketOut;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.action.OFActionGroup;
+import org.projectfloodlight.openflow.protocol.action.OFActionOutput;
+import org.projectfloodlight.openflow.types.OFAuxId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+/**
+ * Decides which connection of a switch carries messages written on the
+ * MAIN category, when spreading over auxiliary connections is enabled.
+ *
+ * OpenFlow doesn't order messages across connections, and a barrier only
+ * covers its own connection. So a write is moved to an auxiliary
+ * connection only if every message in it is a packet-out that neither goes
+ * through the flow table nor references a group; these don't depend on any
+ * other message having been applied. Flow-mods, group-mods, barriers and
+ * requests all stay on the main connection, in the order they were written.
+ * The auxiliary connection is picked by a hash of the packet, so all
+ * packets of a flow go over the same connection in order. All messages of
+ * one write go over the same connection.
+ */
+final class AuxConnectionPolicy {
+    private static final Comparator<IOFConnectionBackend> BY_AUX_ID = new Comparator<IOFConnectionBackend>() {
+        @Override
+        public int compare(IOFConnectionBackend a, IOFConnectionBackend b) {
+            return Short.compare(a.getAuxId().getValue(), b.getAuxId().getValue());
+        }
+    };
+
+    private static final IOFConnectionBackend[] NONE = new IOFConnectionBackend[0];
+
+    private AuxConnectionPolicy() {}
+
+    /**
+     * @param connections all connections of a switch
+     * @return the auxiliary connections, ordered by aux id
+     */
+    static IOFConnectionBackend[] auxConnections(Collection<IOFConnectionBackend> connections) {
+        List<IOFConnectionBackend> aux = new ArrayList<IOFConnectionBackend>(connections.size());
+        for (IOFConnectionBackend c : connections) {
+            if (!c.getAuxId().equals(OFAuxId.MAIN)) {
+                aux.add(c);
+            }
+        }
+        if (aux.isEmpty()) {
+            return NONE;
+        }
+        Collections.sort(aux, BY_AUX_ID);
+        return aux.toArray(new IOFConnectionBackend[aux.size()]);
+    }
+
+    /**
+     * Pick the auxiliary connection for a write
+     * @param msgs the messages of the write
+     * @param aux the auxiliary connections of the switch, see
+     * {@link #auxConnections(Collection)}
+     * @return the connection, or null if the write must use the main connection
+     */
+    static IOFConnectionBackend select(Iterable<OFMessage> msgs, IOFConnectionBackend[] aux) {
+        if (aux.length == 0) {
+            return null;
+        }
+        int hash = 0;
+        boolean first = true;
+        for (OFMessage m : msgs) {
+            if (!isSpreadable(m)) {
+                return null;
+            }
+            if (first) {
+                hash = flowHash(m);
+                first = false;
+            }
+        }
+        if (first) {
+            return null;
+        }
+        IOFConnectionBackend c = aux[(hash & Integer.MAX_VALUE) % aux.length];
+        return c.isConnected() ? c : null;
+    }
+
+    /**
+     * Whether a message can go over an auxiliary connection: a packet-out
+     * that doesn't output to TABLE, so it doesn't depend on flow-mods, and
+     * doesn't use a group, so it doesn't depend on group-mods.
+     */
+    static boolean isSpreadable(OFMessage m) {
+        if (m.getType() != OFType.PACKET_OUT) {
+            return false;
+        }
+        for (OFAction a : ((OFPacketOut) m).getActions()) {
+            if (a instanceof OFActionGroup) {
+                return false;
+            }
+            if (a instanceof OFActionOutput && ((OFActionOutput) a).getPort().equals(OFPort.TABLE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hash of the flow a packet-out belongs to: the Ethernet addresses and
+     * type and, for untagged IPv4, the protocol, addresses and TCP/UDP ports.
+     */
+    static int flowHash(OFMessage m) {
+        return packetHash(((OFPacketOut) m).getData());
+    }
+
+    private static int hashBytes(int h, byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            h = 31 * h + data[i];
+        }
+        return h;
+    }
+
+    static int packetHash(byte[] data) {
+        if (data == null || data.length < 14) {
+            return 0;
+        }
+        int h = hashBytes(1, data, 0, 14); /* dst, src, ethertype */
+        if (data[12] == 0x08 && data[13] == 0x00 && data.length >= 34) {
+            int ihl = (data[14] & 0x0f) * 4;
+            byte proto = data[23];
+            h = 31 * h + proto;
+            h = hashBytes(h, data, 26, 34); /* src and dst IP */
+            if ((proto == 6 || proto == 17) && data.length >= 14 + ihl + 4) {
+                h = hashBytes(h, data, 14 + ihl, 14 + ihl + 4); /* src and dst port */
+            }
+        }
+        return h;
+    }
+}
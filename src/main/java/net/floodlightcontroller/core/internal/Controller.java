@@ -20,6 +20,7 @@ package net.floodlightcontroller.core.internal;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -29,7 +30,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.Stack;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -295,11 +295,11 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     /**
      * flcontext_cache - Keep a thread local stack of contexts
      */
-    protected static final ThreadLocal<Stack<FloodlightContext>> flcontext_cache =
-        new ThreadLocal <Stack<FloodlightContext>> () {
+    protected static final ThreadLocal<ArrayDeque<FloodlightContext>> flcontext_cache =
+        new ThreadLocal <ArrayDeque<FloodlightContext>> () {
             @Override
-            protected Stack<FloodlightContext> initialValue() {
-                return new Stack<FloodlightContext>();
+            protected ArrayDeque<FloodlightContext> initialValue() {
+                return new ArrayDeque<FloodlightContext>();
             }
         };
 
@@ -310,12 +310,10 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     protected static FloodlightContext flcontext_alloc() {
         FloodlightContext flcontext = null;
 
-        if (flcontext_cache.get().empty()) {
+        flcontext = flcontext_cache.get().pollFirst();
+        if (flcontext == null) {
             flcontext = new FloodlightContext();
         }
-        else {
-            flcontext = flcontext_cache.get().pop();
-        }
 
         return flcontext;
     }
@@ -325,8 +323,8 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
      * @param flcontext
      */
     protected void flcontext_free(FloodlightContext flcontext) {
-        flcontext.getStorage().clear();
-        flcontext_cache.get().push(flcontext);
+        flcontext.clear();
+        flcontext_cache.get().addFirst(flcontext);
     }
 
 
@@ -402,7 +400,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
                     }
                     if (eth != null) {
                         IFloodlightProviderService.bcStore.put(bc,
-                                IFloodlightProviderService.CONTEXT_PI_PAYLOAD,
+                                IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT,
                                 eth);
                     }
 
@@ -0,0 +1,107 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core.internal;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of switch handshakes that run at the same time, so a
+ * controller restart doesn't start every handshake at once.
+ *
+ * A handshake that is not admitted waits in its handler's InitState, where
+ * nothing has been sent to the switch yet, until a running handshake
+ * finishes or its switch disconnects. Waiting handshakes are admitted in
+ * the order they arrived. A limit of 0 or less admits every handshake.
+ */
+class HandshakeAdmission {
+    private static final Logger log = LoggerFactory.getLogger(HandshakeAdmission.class);
+
+    private final int maxConcurrent;
+    private final SwitchManagerCounters counters;
+
+    private final Set<OFSwitchHandshakeHandler> running =
+            Collections.newSetFromMap(new IdentityHashMap<OFSwitchHandshakeHandler, Boolean>());
+    /* handler -> time it was queued, in arrival order */
+    private final LinkedHashMap<OFSwitchHandshakeHandler, Long> waiting =
+            new LinkedHashMap<OFSwitchHandshakeHandler, Long>();
+
+    HandshakeAdmission(int maxConcurrent, SwitchManagerCounters counters) {
+        this.maxConcurrent = maxConcurrent;
+        this.counters = counters;
+    }
+
+    /**
+     * Begin the handshake now if there is room, otherwise queue it. Must be
+     * called on the I/O thread of the handler's main connection.
+     * @param handler the handler of a new main connection
+     */
+    void admit(OFSwitchHandshakeHandler handler) {
+        synchronized (this) {
+            if (maxConcurrent > 0 && running.size() >= maxConcurrent) {
+                waiting.put(handler, System.nanoTime());
+                counters.handshakeQueued.increment();
+                log.debug("Switch {} waits for handshake, {} ahead", handler.getDpid(), waiting.size() - 1);
+                return;
+            }
+            running.add(handler);
+        }
+        handler.beginHandshake();
+    }
+
+    /**
+     * Free the slot of a handshake that completed or was disconnected, and
+     * begin the next waiting handshake, if any
+     * @param handler the handler; unknown handlers are ignored
+     */
+    void release(OFSwitchHandshakeHandler handler) {
+        OFSwitchHandshakeHandler next = null;
+        long queuedAt = 0;
+        synchronized (this) {
+            if (waiting.remove(handler) != null || !running.remove(handler)) {
+                return;
+            }
+            Iterator<Map.Entry<OFSwitchHandshakeHandler, Long>> it = waiting.entrySet().iterator();
+            if (it.hasNext()) {
+                Map.Entry<OFSwitchHandshakeHandler, Long> e = it.next();
+                it.remove();
+                next = e.getKey();
+                queuedAt = e.getValue();
+                running.add(next);
+            }
+        }
+        if (next != null) {
+            counters.handshakeQueueWaitMs.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedAt));
+            log.debug("Switch {} admitted to handshake", next.getDpid());
+            next.beginHandshakeOnConnectionThread();
+        }
+    }
+
+    synchronized int getRunning() {
+        return running.size();
+    }
+
+    synchronized int getWaiting() {
+        return waiting.size();
+    }
+}
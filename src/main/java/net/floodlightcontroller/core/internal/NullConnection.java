@@ -114,6 +114,11 @@ public class NullConnection implements IOFConnectionBackend, IOFMessageWriter {
     public void setListener(IOFConnectionListener listener) {
     }
 
+    @Override
+    public void execute(Runnable task) {
+        task.run();
+    }
+
 	@Override
 	public U64 getLatency() {
 		return U64.ZERO;
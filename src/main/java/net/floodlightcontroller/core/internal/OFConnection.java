@@ -166,12 +166,7 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 						String.valueOf(msgList).substring(0, 80));
 			return IterableUtils.toCollection(msgList);
 		}
-		for (OFMessage m : msgList) {			
-			if (logger.isTraceEnabled()) {
-				logger.trace("{}: send {}", this, m);
-				counters.updateWriteStats(m);
-			}
-		}
+		/* counted and traced by WriteMessageTask on the I/O thread */
 		this.channel.eventLoop().execute(new WriteMessageTask(msgList));
 		return Collections.emptyList();
 	}
@@ -408,6 +403,11 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 		this.listener = listener;
 	}
 
+	@Override
+	public void execute(Runnable task) {
+		this.channel.eventLoop().execute(task);
+	}
+
 	public void messageReceived(OFMessage m) {
 		// Check if message was a response for a xid waiting at the switch
 		if(!deliverResponse(m)){
@@ -117,6 +117,8 @@ public class OFSwitch implements IOFSwitchBackend {
 
 	private boolean startDriverHandshakeCalled = false;
 	private final Map<OFAuxId, IOFConnectionBackend> connections;
+	/* auxiliary connections in aux id order, for AuxConnectionPolicy */
+	private volatile IOFConnectionBackend[] auxConnections;
 	private volatile Map<URI, Map<OFAuxId, OFBsnControllerConnection>> controllerConnections;
 	protected OFFactory factory;
 
@@ -167,6 +169,7 @@ public class OFSwitch implements IOFSwitchBackend {
 		// Connections
 		this.connections = new ConcurrentHashMap<OFAuxId, IOFConnectionBackend>();
 		this.connections.put(connection.getAuxId(), connection);
+		this.auxConnections = AuxConnectionPolicy.auxConnections(this.connections.values());
 
 		// Switch's controller connection
 		this.controllerConnections = ImmutableMap.of();
@@ -784,6 +787,7 @@ public class OFSwitch implements IOFSwitchBackend {
 	@Override
 	public void registerConnection(IOFConnectionBackend connection) {
 		this.connections.put(connection.getAuxId(), connection);
+		this.auxConnections = AuxConnectionPolicy.auxConnections(this.connections.values());
 	}
 
 
@@ -795,11 +799,13 @@ public class OFSwitch implements IOFSwitchBackend {
 	@Override
 	public void removeConnections() {
 		this.connections.clear();
+		this.auxConnections = AuxConnectionPolicy.auxConnections(this.connections.values());
 	}
 
 	@Override
 	public void removeConnection(IOFConnectionBackend connection) {
 		this.connections.remove(connection.getAuxId());
+		this.auxConnections = AuxConnectionPolicy.auxConnections(this.connections.values());
 	}
 
 	/**
@@ -847,6 +853,12 @@ public class OFSwitch implements IOFSwitchBackend {
 	 */
 	@Override
 	public Collection<OFMessage> write(Iterable<OFMessage> msglist) {
+		if (OFSwitchManager.spreadOnAuxConnections) {
+			IOFConnection aux = AuxConnectionPolicy.select(msglist, this.auxConnections);
+			if (aux != null) {
+				return this.write(msglist, aux);
+			}
+		}
 		return this.write(msglist, LogicalOFMessageCategory.MAIN);
 	}
 
@@ -858,6 +870,10 @@ public class OFSwitch implements IOFSwitchBackend {
 	@Override
 	public Collection<OFMessage> write(Iterable<OFMessage> msgList, LogicalOFMessageCategory category) {
 		IOFConnection conn = this.getConnection(category); /* do first to check for supported category */
+		return this.write(msgList, conn);
+	}
+
+	private Collection<OFMessage> write(Iterable<OFMessage> msgList, IOFConnection conn) {
 		Collection<OFMessage> validMsgs = new ArrayList<OFMessage>();
 		Collection<OFMessage> invalidMsgs = SwitchRoleMessageValidator.pruneInvalidMessages(
 				msgList, validMsgs, this.getOFFactory().getVersion(), this.isActive());
@@ -24,6 +24,7 @@ import net.floodlightcontroller.core.IOFSwitchBackend;
 import net.floodlightcontroller.core.PortChangeEvent;
 import net.floodlightcontroller.core.SwitchDescription;
 import net.floodlightcontroller.core.internal.OFSwitchAppHandshakePlugin.PluginResultType;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
 
 import org.projectfloodlight.openflow.protocol.OFActionType;
 import org.projectfloodlight.openflow.protocol.OFBadRequestCode;
@@ -114,6 +115,10 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 
 	private final ArrayList<OFPortStatus> pendingPortStatusMsg;
 
+	/* For the handshake duration counters; only used on the connection's thread */
+	private long stateEnteredNs;
+	private long handshakeStartNs;
+
 	/** transaction Ids to use during handshake. Since only one thread
 	 * calls into the OFChannelHandler we don't need atomic.
 	 * We will count down
@@ -1684,6 +1689,8 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	public void beginHandshake() {
 		Preconditions.checkState(state instanceof InitState, "must be in InitState");
 
+		handshakeStartNs = System.nanoTime();
+
 		if (this.featuresReply.getNTables() > 1) {
 			log.debug("Have {} table(s) for switch {}", this.featuresReply.getNTables(),
 					getSwitchInfoString());
@@ -1697,6 +1704,22 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		}
 	}
 
+	/**
+	 * Begins the handshake on the I/O thread of the main connection, for
+	 * handshakes that were held back by admission control. Does nothing if
+	 * the handshake already began or the switch is gone.
+	 */
+	void beginHandshakeOnConnectionThread() {
+		mainConnection.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (state instanceof InitState && mainConnection.isConnected()) {
+					beginHandshake();
+				}
+			}
+		});
+	}
+
 	public DatapathId getDpid(){
 		return this.featuresReply.getDatapathId();
 	}
@@ -1795,6 +1818,19 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	 * @param state
 	 */
 	private void setState(OFSwitchHandshakeState state) {
+		long now = System.nanoTime();
+		if (this.state != null && !this.state.isHandshakeComplete()) {
+			IDebugCounter c = switchManagerCounters.getHandshakeStateCounter(this.state.getClass().getSimpleName());
+			if (c != null) {
+				c.add(TimeUnit.NANOSECONDS.toMicros(now - stateEnteredNs));
+			}
+			if (state.isHandshakeComplete() && handshakeStartNs != 0) {
+				switchManagerCounters.handshakeCompleted.increment();
+				switchManagerCounters.handshakeDurationMs.add(TimeUnit.NANOSECONDS.toMillis(now - handshakeStartNs));
+				handshakeStartNs = 0;
+			}
+		}
+		stateEnteredNs = now;
 		this.state = state;
 		state.logState();
 		state.enterState();
@@ -1882,10 +1918,12 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		if(log.isDebugEnabled())
 			log.debug("[{}] - Switch Handshake - new aux connection {}", this.getDpid(), connection.getAuxId());
 
-		// Handle new Auxiliary connections if the main connection has completed (i.e. in ACTIVE or STANDBY state)
-		if (this.getState().equals("ACTIVE") || this.getState().equals("STANDBY")) {
+		// Handle new Auxiliary connections if the main connection has completed (i.e. in MASTER or SLAVE state)
+		if (this.state.isHandshakeComplete()) {
 			auxConnections.put(connection.getAuxId(), connection);
 			connection.setListener(OFSwitchHandshakeHandler.this);
+			/* so writes can use it; messages from it are handled on its own event loop */
+			sw.registerConnection(connection);
 			log.info("Auxiliary connection {} added for {}.", connection.getAuxId().getValue(), connection.getDatapathId().toString());
 		} else {
 			log.info("Auxiliary connection {} initiated for {} before main connection handshake complete. Ignorning aux connection attempt.", connection.getAuxId().getValue(), connection.getDatapathId().toString());
@@ -1956,6 +1994,15 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	/** IOFConnectionListener */
 	@Override
 	public void connectionClosed(IOFConnectionBackend connection) {
+		if (connection != this.mainConnection) {
+			// Losing an aux connection doesn't affect the switch
+			if (auxConnections.remove(connection.getAuxId(), connection) && sw != null) {
+				sw.removeConnection(connection);
+			}
+			log.info("Auxiliary connection {} closed for {}.", connection.getAuxId().getValue(), getSwitchInfoString());
+			return;
+		}
+
 		// Disconnect handler's remaining connections
 		cleanup();
 
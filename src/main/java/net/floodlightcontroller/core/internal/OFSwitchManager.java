@@ -108,6 +108,7 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
     private static int bossThreads = 1; /* just listens and accepts on server socket; workers handle r/w I/O */
     private static int connectionBacklog = 1000; /* pending connections boss thread will queue to accept */
     private static int connectionTimeoutMsec = 60000; /* how long to allow TCP handshake to complete (default is 60ish secs) */
+    private static int maxConcurrentHandshakes = 0; /* switch handshakes allowed to run at once; 0 for no limit */
     private static TransportPort openFlowPort = TransportPort.of(6653);
     private static Set<IPv4Address> openFlowAddresses = new HashSet<IPv4Address>();	
 
@@ -117,6 +118,7 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
     protected static boolean clearTablesOnInitialConnectAsMaster = false;
     protected static boolean clearTablesOnEachTransitionToMaster = false;
     protected static boolean setupTablesDefaultFlows = true;
+    protected static boolean spreadOnAuxConnections = false; /* see AuxConnectionPolicy */
 
     protected static Map<DatapathId, TableId> forwardToControllerFlowsUpToTableByDpid;
     protected static TableId forwardToControllerFlowsUpToTable = TableId.of(4); /* this should cover most HW switches that have a couple SW-based flow tables */
@@ -125,6 +127,7 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
     protected static OFFactory defaultFactory;
 
     private static ConcurrentHashMap<DatapathId, OFSwitchHandshakeHandler> switchHandlers;
+    private static HandshakeAdmission handshakeAdmission;
     private static ConcurrentHashMap<DatapathId, IOFSwitchBackend> switches;
     private static ConcurrentHashMap<DatapathId, IOFSwitch> syncedSwitches;
 
@@ -207,6 +210,14 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
     @Override
     public synchronized void switchStatusChanged(IOFSwitchBackend sw, SwitchStatus oldStatus, SwitchStatus newStatus) {
         DatapathId dpid = sw.getId();
+
+        if (oldStatus == SwitchStatus.HANDSHAKE && newStatus != SwitchStatus.DISCONNECTED) {
+            /* handshake done (or quarantined); let the next one begin */
+            OFSwitchHandshakeHandler handler = switchHandlers.get(dpid);
+            if (handler != null) {
+                handshakeAdmission.release(handler);
+            }
+        }
         IOFSwitchBackend presentSw = switches.get(dpid);
 
         if (presentSw != sw)  {
@@ -260,7 +271,10 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
     }
 
     @Override public void handshakeDisconnected(DatapathId dpid) {
-        switchHandlers.remove(dpid);
+        OFSwitchHandshakeHandler handler = switchHandlers.remove(dpid);
+        if (handler != null) {
+            handshakeAdmission.release(handler);
+        }
     }
 
     public Iterable<IOFSwitch> getActiveSwitches() {
@@ -429,10 +443,11 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
             // Disconnect all the handler's connections
             if(oldHandler != null){
                 log.debug("{} is a new main connection, killing old handler connections", connection);
+                handshakeAdmission.release(oldHandler);
                 oldHandler.cleanup();
             }
 
-            handler.beginHandshake();
+            handshakeAdmission.admit(handler);
 
         } else {
             OFSwitchHandshakeHandler handler = switchHandlers.get(dpid);
@@ -691,6 +706,23 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
                 setupDefault, OFSwitchManager.setupTablesDefaultFlows);
         log.info("Setup default rules for all tables on switch connect: {}", OFSwitchManager.setupTablesDefaultFlows);
 
+        /*
+         * Auxiliary connections. Each gets a category, aux-1 to aux-N, so
+         * modules can also write on them explicitly.
+         */
+        String numAux = configParams.get("numAuxConnections");
+        if (!Strings.isNullOrEmpty(numAux)) {
+            int n = Integer.parseInt(numAux);
+            for (int i = 1; i <= n; i++) {
+                registerLogicalOFMessageCategory(new LogicalOFMessageCategory("aux-" + i, i));
+            }
+            log.info("Auxiliary connections per switch: {}", n);
+        }
+        OFSwitchManager.spreadOnAuxConnections = parseConfigBooleanValue(
+                configParams.get("spreadOnAuxConnections"), OFSwitchManager.spreadOnAuxConnections);
+        log.info("Spread flow-mods and packet-outs over auxiliary connections: {}",
+                OFSwitchManager.spreadOnAuxConnections ? "TRUE" : "FALSE");
+
         //Define initial role per switch		
         String switchesInitialState = configParams.get("switchesInitialState");
         switchInitialRole = jsonToSwitchInitialRoleMap(switchesInitialState);
@@ -815,6 +847,15 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
             connectionTimeoutMsec = Integer.parseInt(timeout);
         }
 
+        /* Switch handshakes allowed to run at once */
+        String handshakes = configParams.get("maxConcurrentHandshakes");
+        if (!Strings.isNullOrEmpty(handshakes)) {
+            maxConcurrentHandshakes = Integer.parseInt(handshakes);
+        }
+        handshakeAdmission = new HandshakeAdmission(maxConcurrentHandshakes, counters);
+        log.info("Max concurrent switch handshakes: {}",
+                maxConcurrentHandshakes > 0 ? maxConcurrentHandshakes : "unlimited");
+
         /* Netty boss thread pending connection accept backlog */
         String backlog = configParams.get("connectionBacklog");
         if (!Strings.isNullOrEmpty(backlog)) {
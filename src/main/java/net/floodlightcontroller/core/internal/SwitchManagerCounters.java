@@ -1,5 +1,8 @@
 package net.floodlightcontroller.core.internal;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import net.floodlightcontroller.debugcounter.IDebugCounter;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
@@ -32,6 +35,23 @@ public class SwitchManagerCounters {
     public final IDebugCounter roleReplyReceived;
     public final IDebugCounter roleReplyErrorUnsupported;
     public final IDebugCounter switchSslConfigurationError;
+    public final IDebugCounter handshakeQueued;
+    public final IDebugCounter handshakeQueueWaitMs;
+    public final IDebugCounter handshakeCompleted;
+    public final IDebugCounter handshakeDurationMs;
+    /* handshake state name -> time spent in the state, in us */
+    private final Map<String, IDebugCounter> handshakeStateUs = new HashMap<String, IDebugCounter>();
+
+    private static final String[] HANDSHAKE_STATES = {
+        "InitState",
+        "WaitPortDescStatsReplyState",
+        "WaitConfigReplyState",
+        "WaitDescriptionStatReplyState",
+        "WaitTableFeaturesReplyState",
+        "WaitSwitchDriverSubHandshakeState",
+        "WaitAppHandshakeState",
+        "WaitInitialRoleState"
+    };
 
     public SwitchManagerCounters(IDebugCounterService debugCounters) {
         debugCounters.registerModule(prefix);
@@ -209,6 +229,49 @@ public class SwitchManagerCounters {
                                         "IllegalArgumentException, which is likely " +
                                         "due to the switch trying to speak SSL whereas " +
                                         "the controller wants to use vanilla TCP.");
+
+                    handshakeQueued =
+                            debugCounters.registerCounter(
+                                        prefix, "handshake-queued",
+                                        "Number of switch handshakes that had to wait " +
+                                        "because the maximum number of concurrent " +
+                                        "handshakes was running.");
+
+                    handshakeQueueWaitMs =
+                            debugCounters.registerCounter(
+                                        prefix, "handshake-queue-wait-ms",
+                                        "Total time queued switch handshakes waited " +
+                                        "before they began, in milliseconds.");
+
+                    handshakeCompleted =
+                            debugCounters.registerCounter(
+                                        prefix, "handshake-completed",
+                                        "Number of switch handshakes that completed.");
+
+                    handshakeDurationMs =
+                            debugCounters.registerCounter(
+                                        prefix, "handshake-duration-ms",
+                                        "Total time of completed switch handshakes, " +
+                                        "from the first request to the switch, in " +
+                                        "milliseconds.");
+
+                    for (String state : HANDSHAKE_STATES) {
+                        handshakeStateUs.put(state,
+                                debugCounters.registerCounter(
+                                            prefix, "handshake-state-us-" + state,
+                                            "Total time switch handshakes spent in " +
+                                            state + ", in microseconds. Time in " +
+                                            "InitState includes the wait for admission."));
+                    }
+    }
+
+    /**
+     * @param state the simple class name of a handshake state
+     * @return the counter of time spent in the state, or null for states
+     * without one
+     */
+    public IDebugCounter getHandshakeStateCounter(String state) {
+        return handshakeStateUs.get(state);
     }
 
     public String getPrefix(){
@@ -17,8 +17,8 @@
 package net.floodlightcontroller.core.module;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The service registry for an IFloodlightProvider.
@@ -34,11 +34,12 @@ public class FloodlightModuleContext implements IFloodlightModuleContext {
      * This will be used as a module registry for all IFloodlightModule(s).
      */
     public FloodlightModuleContext(FloodlightModuleLoader moduleLoader) {
+        // modules may be initialized and started concurrently
         serviceMap = 
-                new HashMap<Class<? extends IFloodlightService>,
+                new ConcurrentHashMap<Class<? extends IFloodlightService>,
                                       IFloodlightService>();
         configParams =
-                new HashMap<Class<? extends IFloodlightModule>,
+                new ConcurrentHashMap<Class<? extends IFloodlightModule>,
                                 Map<String, String>>();
         this.moduleLoader = moduleLoader;
     }
@@ -78,8 +79,10 @@ public class FloodlightModuleContext implements IFloodlightModuleContext {
         if (retMap == null) {
             // Return an empty map if none exists so the module does not
             // need to null check the map
-            retMap = new HashMap<String, String>();
-            configParams.put(clazz, retMap);
+            retMap = new ConcurrentHashMap<String, String>();
+            Map<String, String> existing = configParams.putIfAbsent(clazz, retMap);
+            if (existing != null)
+                retMap = existing;
         }
 
         // also add any configuration parameters for superclasses, but
@@ -110,7 +113,7 @@ public class FloodlightModuleContext implements IFloodlightModuleContext {
     public void addConfigParam(IFloodlightModule mod, String key, String value) {
         Map<String, String> moduleParams = configParams.get(mod.getClass());
         if (moduleParams == null) {
-            moduleParams = new HashMap<String, String>();
+            moduleParams = new ConcurrentHashMap<String, String>();
             configParams.put(mod.getClass(), moduleParams);
         }
         moduleParams.put(key, value);
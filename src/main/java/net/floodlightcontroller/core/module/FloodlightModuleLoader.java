@@ -39,6 +39,14 @@ import java.util.Properties;
 import java.util.ServiceConfigurationError;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.floodlightcontroller.core.module.FloodlightModulePriority.Priority;
 import org.slf4j.Logger;
@@ -63,6 +71,11 @@ public class FloodlightModuleLoader {
                                    IFloodlightService>>> moduleServiceMap;
     private Map<String, IFloodlightModule> moduleNameMap;
     private List<IFloodlightModule> loadedModuleList;
+    private Map<IFloodlightModule, Set<IFloodlightModule>> moduleDepMap;
+
+    private final Map<String, Long> moduleInitTimes;
+    private final Map<String, Long> moduleStartupTimes;
+    private int startupThreads;
 
     private final FloodlightModuleContext floodlightModuleContext;
 
@@ -74,11 +87,24 @@ public class FloodlightModuleLoader {
             "floodlightdefault.properties";
     public static final String FLOODLIGHT_MODULES_KEY =
             "floodlight.modules";
+    /**
+     * Number of threads used to init and start modules. With more than one
+     * thread, a module is initialized (started) as soon as all the modules
+     * providing its dependencies have been initialized (started), so
+     * independent modules come up concurrently.
+     */
+    public static final String FLOODLIGHT_STARTUP_THREADS_KEY =
+            "floodlight.startupThreads";
+    public static final int DEFAULT_STARTUP_THREADS = 1;
 
     public FloodlightModuleLoader() {
         loadedModuleList = Collections.emptyList();
         floodlightModuleContext = new FloodlightModuleContext(this);
         startupModules = true;
+        moduleDepMap = Collections.emptyMap();
+        moduleInitTimes = new ConcurrentHashMap<>();
+        moduleStartupTimes = new ConcurrentHashMap<>();
+        startupThreads = DEFAULT_STARTUP_THREADS;
     }
 
     /**
@@ -104,6 +130,22 @@ public class FloodlightModuleLoader {
             return Collections.unmodifiableList(loadedModuleList);
     }
 
+    /**
+     * Gets the time each loaded module took in its init method
+     * @return An UNMODIFIABLE map of module names to milliseconds
+     */
+    public Map<String, Long> getModuleInitTimes() {
+        return Collections.unmodifiableMap(moduleInitTimes);
+    }
+
+    /**
+     * Gets the time each loaded module took in its startUp method
+     * @return An UNMODIFIABLE map of module names to milliseconds
+     */
+    public Map<String, Long> getModuleStartupTimes() {
+        return Collections.unmodifiableMap(moduleStartupTimes);
+    }
+
     /**
      * Return the location of the config file that was used to initialize
      * floodlight. If no config file was specified (i.e. floodlight was
@@ -256,6 +298,19 @@ public class FloodlightModuleLoader {
             }
             fprop.remove(FLOODLIGHT_MODULES_KEY);
 
+            String threads = fprop.getProperty(FLOODLIGHT_STARTUP_THREADS_KEY);
+            if (threads != null) {
+                try {
+                    setStartupThreads(Integer.parseInt(threads.trim()));
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Invalid value {} for {}, using {}",
+                                new Object[] { threads,
+                                               FLOODLIGHT_STARTUP_THREADS_KEY,
+                                               startupThreads });
+                }
+            }
+            fprop.remove(FLOODLIGHT_STARTUP_THREADS_KEY);
+
             prop.putAll(fprop);
         } catch (IOException e) {
             throw new FloodlightModuleException(e);
@@ -291,6 +346,7 @@ public class FloodlightModuleLoader {
         parseConfigParameters(prop);
 
         loadedModuleList = moduleList;
+        moduleDepMap = computeModuleDeps(moduleList, moduleMap);
 
         initModules(moduleList);
         if(startupModules)
@@ -395,6 +451,34 @@ public class FloodlightModuleLoader {
         addModule(moduleMap, moduleList, module);
     }
 
+    /**
+     * Compute, for each module to load, the loaded modules that provide
+     * the services it depends on
+     * @param moduleList the modules to load
+     * @param moduleMap the map from service to the module providing it
+     * @return the map from module to the modules it depends on
+     */
+    private Map<IFloodlightModule, Set<IFloodlightModule>>
+            computeModuleDeps(Collection<IFloodlightModule> moduleList,
+                              Map<Class<? extends IFloodlightService>,
+                                  IFloodlightModule> moduleMap) {
+        Map<IFloodlightModule, Set<IFloodlightModule>> deps = new HashMap<>();
+        for (IFloodlightModule module : moduleList) {
+            Set<IFloodlightModule> mdeps = new HashSet<>();
+            Collection<Class<? extends IFloodlightService>> servs =
+                    module.getModuleDependencies();
+            if (servs != null) {
+                for (Class<? extends IFloodlightService> c : servs) {
+                    IFloodlightModule m = moduleMap.get(c);
+                    if (m != null && m != module)
+                        mdeps.add(m);
+                }
+            }
+            deps.put(module, mdeps);
+        }
+        return deps;
+    }
+
     /**
      * Add a module to the set of modules to load and register its services
      * @param moduleMap the module map
@@ -451,14 +535,21 @@ public class FloodlightModuleLoader {
             }
         }
 
-        for (IFloodlightModule module : moduleSet) {
-            // init the module
-            if (logger.isDebugEnabled()) {
-                logger.debug("Initializing " +
-                             module.getClass().getCanonicalName());
+        runInDependencyOrder(moduleSet, new ModulePhase() {
+            @Override
+            public void run(IFloodlightModule module)
+                    throws FloodlightModuleException {
+                // init the module
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Initializing " +
+                                 module.getClass().getCanonicalName());
+                }
+                long start = System.nanoTime();
+                module.init(floodlightModuleContext);
+                moduleInitTimes.put(module.getClass().getCanonicalName(),
+                        (System.nanoTime() - start) / 1000000);
             }
-            module.init(floodlightModuleContext);
-        }
+        });
     }
 
     /**
@@ -468,11 +559,125 @@ public class FloodlightModuleLoader {
      */
     protected void startupModules(Collection<IFloodlightModule> moduleSet)
             throws FloodlightModuleException {
-        for (IFloodlightModule m : moduleSet) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("Starting " + m.getClass().getCanonicalName());
+        runInDependencyOrder(moduleSet, new ModulePhase() {
+            @Override
+            public void run(IFloodlightModule m)
+                    throws FloodlightModuleException {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Starting " + m.getClass().getCanonicalName());
+                }
+                long start = System.nanoTime();
+                m.startUp(floodlightModuleContext);
+                moduleStartupTimes.put(m.getClass().getCanonicalName(),
+                        (System.nanoTime() - start) / 1000000);
+            }
+        });
+    }
+
+    /** One step (init or startUp) of bringing up a module */
+    private interface ModulePhase {
+        void run(IFloodlightModule module) throws FloodlightModuleException;
+    }
+
+    /**
+     * Run the given phase for all modules. With a single startup thread the
+     * modules are processed one after another in the given order. Otherwise
+     * each module is scheduled on a thread pool as soon as the phase has
+     * completed for all the modules it depends on. That needs every module
+     * to come after the modules it depends on, so modules that depend on
+     * each other in a cycle can only be brought up with a single thread.
+     * @param moduleSet the modules, in dependency order
+     * @param phase the phase to run
+     * @throws FloodlightModuleException if the phase failed for any module,
+     * or if run in parallel, a module depends on one that is not loaded or
+     * comes after it
+     */
+    private void runInDependencyOrder(Collection<IFloodlightModule> moduleSet,
+                                      final ModulePhase phase)
+            throws FloodlightModuleException {
+        if (startupThreads <= 1 || moduleSet.size() <= 1) {
+            for (IFloodlightModule module : moduleSet) {
+                phase.run(module);
+            }
+            return;
+        }
+
+        // check before running anything, so a phase is never left half done
+        Set<IFloodlightModule> ordered = new HashSet<>();
+        for (IFloodlightModule module : moduleSet) {
+            Set<IFloodlightModule> deps = moduleDepMap.get(module);
+            if (deps != null) {
+                for (IFloodlightModule dep : deps) {
+                    if (!ordered.contains(dep)) {
+                        throw new FloodlightModuleException("Cannot bring up "
+                                + module.getClass().getCanonicalName()
+                                + " in parallel: it depends on "
+                                + dep.getClass().getCanonicalName()
+                                + (moduleSet.contains(dep)
+                                        ? ", which comes after it in a dependency cycle"
+                                        : ", which is not loaded")
+                                + ". Set " + FLOODLIGHT_STARTUP_THREADS_KEY
+                                + " to 1 to bring up modules one by one.");
+                    }
+                }
             }
-            m.startUp(floodlightModuleContext);
+            ordered.add(module);
+        }
+
+        ExecutorService executor =
+                Executors.newFixedThreadPool(startupThreads, new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "ModuleStartup-" +
+                                count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        try {
+            Map<IFloodlightModule, CompletableFuture<Void>> futures =
+                    new HashMap<>();
+            // moduleSet is in dependency order, so the futures of all
+            // dependencies exist by the time a module is scheduled
+            for (final IFloodlightModule module : moduleSet) {
+                List<CompletableFuture<Void>> depFutures = new ArrayList<>();
+                Set<IFloodlightModule> deps = moduleDepMap.get(module);
+                if (deps != null) {
+                    for (IFloodlightModule dep : deps) {
+                        depFutures.add(futures.get(dep));
+                    }
+                }
+                CompletableFuture<Void> f = CompletableFuture
+                        .allOf(depFutures.toArray(new CompletableFuture<?>[depFutures.size()]))
+                        .thenRunAsync(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    phase.run(module);
+                                } catch (FloodlightModuleException e) {
+                                    throw new CompletionException(e);
+                                }
+                            }
+                        }, executor);
+                futures.put(module, f);
+            }
+            CompletableFuture.allOf(futures.values().toArray(
+                    new CompletableFuture<?>[futures.size()])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FloodlightModuleException("Interrupted while starting modules", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null)
+                cause = cause.getCause();
+            if (cause instanceof FloodlightModuleException)
+                throw (FloodlightModuleException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new FloodlightModuleException(cause);
+        } finally {
+            executor.shutdown();
         }
     }
 
@@ -573,4 +778,18 @@ public class FloodlightModuleLoader {
     public void setStartupModules(boolean startupModules) {
         this.startupModules = startupModules;
     }
+
+    public int getStartupThreads() {
+        return startupThreads;
+    }
+
+    /**
+     * Set the number of threads used to init and start modules
+     * @param startupThreads the number of threads, at least 1
+     */
+    public void setStartupThreads(int startupThreads) {
+        if (startupThreads < 1)
+            throw new IllegalArgumentException("At least one startup thread is required");
+        this.startupThreads = startupThreads;
+    }
 }
@@ -98,6 +98,14 @@ public class ModuleLoaderResource extends ServerResource {
 
     		moduleInfo.put("loaded", false);	// not loaded, by default
 
+        	// time spent in init and startUp, if the module was loaded
+        	Long initTime = floodlightModuleLoader.getModuleInitTimes().get(moduleName);
+        	if (initTime != null)
+        		moduleInfo.put("init-time-ms", initTime);
+        	Long startupTime = floodlightModuleLoader.getModuleStartupTimes().get(moduleName);
+        	if (startupTime != null)
+        		moduleInfo.put("startup-time-ms", startupTime);
+
         	// check if this module is loaded directly
         	if (loadedModules.contains(module.getClass().getCanonicalName())) {
         		moduleInfo.put("loaded", true);  			
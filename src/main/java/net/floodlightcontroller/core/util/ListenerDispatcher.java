@@ -56,10 +56,11 @@ public class ListenerDispatcher<U, T extends IListener<U>> {
     }
 
     /**
-     * Add a listener to the list of listeners
+     * Add a listener to the list of listeners. Modules may register from
+     * several threads at once, so changes to the list are serialized.
      * @param listener
      */
-    public void addListener(U type, T listener) {
+    public synchronized void addListener(U type, T listener) {
         List<T> newlisteners = new ArrayList<T>();
         if (listeners != null)
             newlisteners.addAll(listeners);
@@ -101,7 +102,7 @@ public class ListenerDispatcher<U, T extends IListener<U>> {
      * Remove the given listener
      * @param listener the listener to remove
      */
-    public void removeListener(T listener) {
+    public synchronized void removeListener(T listener) {
         if (listeners != null) {
             List<T> newlisteners = new ArrayList<T>();
             newlisteners.addAll(listeners);
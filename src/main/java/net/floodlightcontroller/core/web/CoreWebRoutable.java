@@ -55,6 +55,7 @@ public class CoreWebRoutable implements RestletRoutable {
         router.attach("/controller/switches/json", ControllerSwitchesResource.class);
         router.attach("/counter/{" + STR_CTR_MODULE + "}/{" + STR_CTR_TITLE + "}/json", CounterResource.class);
         router.attach("/memory/json", ControllerMemoryResource.class);
+        router.attach("/metrics", MetricsResource.class);
         router.attach("/packettrace/json", PacketTraceResource.class);
         router.attach("/storage/tables/json", StorageSourceTablesResource.class);
         router.attach("/controller/summary/json", ControllerSummaryResource.class);
@@ -0,0 +1,149 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core.web;
+
+import java.util.Map;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.perfmon.CumulativeTimeBucket;
+import net.floodlightcontroller.perfmon.IPktInProcessingTimeService;
+import net.floodlightcontroller.perfmon.OneComponentTime;
+import net.floodlightcontroller.statistics.IStatisticsService;
+import net.floodlightcontroller.statistics.SwitchPortBandwidth;
+
+import org.restlet.data.MediaType;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * Debug counters, packet-in processing times, port bandwidth and memory
+ * use in the Prometheus text format, for scraping.
+ *
+ * The values are read from the live structures of each service and
+ * written into a buffer that each REST thread reuses across scrapes, so a
+ * scrape costs one pass over the data and one copy of the text. Services
+ * that are not loaded are left out, and the packet-in times only appear
+ * while performance monitoring is enabled.
+ */
+public class MetricsResource extends ServerResource {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /* don't keep a buffer that grew for an unusually large scrape */
+    private static final int MAX_KEPT_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(BUFFER_SIZE);
+        }
+    };
+
+    private static final double NS_PER_SECOND = 1e9;
+
+    @Get("txt")
+    public Representation retrieve() {
+        StringBuilder buffer = buffers.get();
+        buffer.setLength(0);
+        MetricsTextWriter w = new MetricsTextWriter(buffer);
+
+        IDebugCounterService debugCounterService =
+                (IDebugCounterService) getContext().getAttributes().
+                get(IDebugCounterService.class.getCanonicalName());
+        if (debugCounterService != null) {
+            writeDebugCounters(w, debugCounterService);
+        }
+        IPktInProcessingTimeService pktInProcTime =
+                (IPktInProcessingTimeService) getContext().getAttributes().
+                get(IPktInProcessingTimeService.class.getCanonicalName());
+        if (pktInProcTime != null && pktInProcTime.isEnabled()
+                && pktInProcTime.getCtb() != null) {
+            writePacketInTimes(w, pktInProcTime.getCtb());
+        }
+        IStatisticsService statisticsService =
+                (IStatisticsService) getContext().getAttributes().
+                get(IStatisticsService.class.getCanonicalName());
+        if (statisticsService != null) {
+            writePortBandwidth(w, statisticsService.getBandwidthConsumption());
+        }
+        writeMemory(w);
+
+        Representation r = new StringRepresentation(buffer, MediaType.TEXT_PLAIN);
+        if (buffer.capacity() > MAX_KEPT_BUFFER_SIZE) {
+            buffers.remove();
+        }
+        return r;
+    }
+
+    static void writeDebugCounters(final MetricsTextWriter w, IDebugCounterService debugCounterService) {
+        w.family("floodlight_debug_counter", MetricsTextWriter.COUNTER,
+                "Debug counters by module and counter hierarchy");
+        debugCounterService.visitCounters((module, hierarchy, value) ->
+            w.sample("floodlight_debug_counter", "module", module, "counter", hierarchy, value));
+    }
+
+    static void writePacketInTimes(MetricsTextWriter w, CumulativeTimeBucket ctb) {
+        w.family("floodlight_packet_in_processing_seconds", MetricsTextWriter.SUMMARY,
+                "Time to process a packet-in through all listeners");
+        w.sample("floodlight_packet_in_processing_seconds_count", ctb.getTotalPktCnt());
+        w.sample("floodlight_packet_in_processing_seconds_sum", ctb.getTotalProcTimeNs() / NS_PER_SECOND);
+        if (ctb.getTotalPktCnt() > 0) {
+            w.family("floodlight_packet_in_processing_max_seconds", MetricsTextWriter.GAUGE,
+                    "Longest packet-in processing time since the last reset");
+            w.sample("floodlight_packet_in_processing_max_seconds", ctb.getMaxTotalProcTimeNs() / NS_PER_SECOND);
+        }
+
+        w.family("floodlight_packet_in_listener_seconds", MetricsTextWriter.SUMMARY,
+                "Time spent in each packet-in listener");
+        for (OneComponentTime oct : ctb.getModules()) {
+            w.sample("floodlight_packet_in_listener_seconds_count", "listener", oct.getCompName(),
+                    oct.getPktCnt());
+            w.sample("floodlight_packet_in_listener_seconds_sum", "listener", oct.getCompName(),
+                    oct.getSumProcTimeNs() / NS_PER_SECOND);
+        }
+    }
+
+    static void writePortBandwidth(MetricsTextWriter w, Map<NodePortTuple, SwitchPortBandwidth> bandwidth) {
+        w.family("floodlight_port_rx_bits_per_second", MetricsTextWriter.GAUGE,
+                "Receive rate of a switch port over the last collection interval");
+        for (SwitchPortBandwidth spb : bandwidth.values()) {
+            w.sample("floodlight_port_rx_bits_per_second",
+                    "switch", spb.getSwitchId().toString(), "port", spb.getSwitchPort().toString(),
+                    spb.getBitsPerSecondRx().getValue());
+        }
+        w.family("floodlight_port_tx_bits_per_second", MetricsTextWriter.GAUGE,
+                "Transmit rate of a switch port over the last collection interval");
+        for (SwitchPortBandwidth spb : bandwidth.values()) {
+            w.sample("floodlight_port_tx_bits_per_second",
+                    "switch", spb.getSwitchId().toString(), "port", spb.getSwitchPort().toString(),
+                    spb.getBitsPerSecondTx().getValue());
+        }
+        w.family("floodlight_port_speed_bits_per_second", MetricsTextWriter.GAUGE,
+                "Link speed of a switch port");
+        for (SwitchPortBandwidth spb : bandwidth.values()) {
+            w.sample("floodlight_port_speed_bits_per_second",
+                    "switch", spb.getSwitchId().toString(), "port", spb.getSwitchPort().toString(),
+                    spb.getLinkSpeedBitsPerSec().getValue());
+        }
+    }
+
+    static void writeMemory(MetricsTextWriter w) {
+        Runtime runtime = Runtime.getRuntime();
+        w.family("floodlight_memory_total_bytes", MetricsTextWriter.GAUGE, "Memory held by the JVM heap");
+        w.sample("floodlight_memory_total_bytes", runtime.totalMemory());
+        w.family("floodlight_memory_free_bytes", MetricsTextWriter.GAUGE, "Free memory in the JVM heap");
+        w.sample("floodlight_memory_free_bytes", runtime.freeMemory());
+    }
+}
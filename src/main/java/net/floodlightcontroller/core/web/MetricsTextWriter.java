@@ -0,0 +1,117 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core.web;
+
+/**
+ * Writes metrics in the Prometheus text exposition format into a
+ * caller-supplied buffer. Metric and label names are passed in as
+ * constants and written as they are; label values are escaped.
+ */
+public class MetricsTextWriter {
+    public static final String COUNTER = "counter";
+    public static final String GAUGE = "gauge";
+    public static final String SUMMARY = "summary";
+
+    private final StringBuilder out;
+
+    /**
+     * @param out the buffer to append to
+     */
+    public MetricsTextWriter(StringBuilder out) {
+        this.out = out;
+    }
+
+    /**
+     * Write the HELP and TYPE lines that precede the samples of a metric
+     * @param name the metric name
+     * @param type one of {@link #COUNTER}, {@link #GAUGE}, {@link #SUMMARY}
+     * @param help the description
+     * @return this
+     */
+    public MetricsTextWriter family(String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    public MetricsTextWriter sample(String name, long value) {
+        out.append(name).append(' ').append(value).append('\n');
+        return this;
+    }
+
+    public MetricsTextWriter sample(String name, double value) {
+        out.append(name).append(' ');
+        appendDouble(value);
+        out.append('\n');
+        return this;
+    }
+
+    public MetricsTextWriter sample(String name, String label, String labelValue, long value) {
+        out.append(name).append('{');
+        appendLabel(label, labelValue);
+        out.append("} ").append(value).append('\n');
+        return this;
+    }
+
+    public MetricsTextWriter sample(String name, String label, String labelValue, double value) {
+        out.append(name).append('{');
+        appendLabel(label, labelValue);
+        out.append("} ");
+        appendDouble(value);
+        out.append('\n');
+        return this;
+    }
+
+    public MetricsTextWriter sample(String name, String label1, String labelValue1,
+            String label2, String labelValue2, long value) {
+        out.append(name).append('{');
+        appendLabel(label1, labelValue1);
+        out.append(',');
+        appendLabel(label2, labelValue2);
+        out.append("} ").append(value).append('\n');
+        return this;
+    }
+
+    private void appendLabel(String label, String value) {
+        out.append(label).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '"':
+                out.append("\\\"");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            default:
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private void appendDouble(double value) {
+        if (Double.isNaN(value)) {
+            out.append("NaN");
+        } else if (Double.isInfinite(value)) {
+            out.append(value > 0 ? "+Inf" : "-Inf");
+        } else {
+            out.append(value);
+        }
+    }
+}
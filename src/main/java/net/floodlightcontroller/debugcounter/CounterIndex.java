@@ -0,0 +1,84 @@
+package net.floodlightcontroller.debugcounter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable, flat snapshot of the counter tree.
+ *
+ * The counters are kept in an array in the iteration order of the tree
+ * (pre-order, children sorted by name), so the counters at and below any
+ * node are a contiguous range of the array. A hash map from the full
+ * hierarchy string ("module/a/b") to that range replaces splitting the
+ * hierarchy and walking the tree.
+ *
+ * The snapshot holds the live counter instances, so values read through
+ * it are current; only the structure is frozen. It records the tree
+ * version it was built from so the service can tell when it is stale.
+ */
+class CounterIndex {
+    private static final DebugCounterImpl[] NONE = new DebugCounterImpl[0];
+
+    private final long version;
+    private final DebugCounterImpl[] counters;
+    private final Map<String, int[]> ranges;
+
+    private CounterIndex(long version, DebugCounterImpl[] counters, Map<String, int[]> ranges) {
+        this.version = version;
+        this.counters = counters;
+        this.ranges = ranges;
+    }
+
+    /**
+     * @param root the root of the tree; must not change while building
+     * @param version the version of the tree
+     * @return the index
+     */
+    static CounterIndex build(CounterNode root, long version) {
+        List<DebugCounterImpl> out = new ArrayList<>();
+        Map<String, int[]> ranges = new HashMap<>();
+        root.flatten(out, ranges);
+        return new CounterIndex(version, out.toArray(NONE), ranges);
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param hierarchy the full hierarchy including the module name, or
+     * the empty string for all counters
+     * @return {start, end} of the counters at and below the hierarchy, or
+     * null if there is no such node
+     */
+    @Nullable
+    int[] lookup(String hierarchy) {
+        return ranges.get(hierarchy);
+    }
+
+    DebugCounterImpl get(int i) {
+        return counters[i];
+    }
+
+    int size() {
+        return counters.length;
+    }
+
+    void reset(int[] range) {
+        for (int i = range[0]; i < range[1]; i++) {
+            counters[i].reset();
+        }
+    }
+
+    List<DebugCounterResource> getResources(int[] range) {
+        List<DebugCounterResource> ret = new ArrayList<>(range[1] - range[0]);
+        for (int i = range[0]; i < range[1]; i++) {
+            ret.add(new DebugCounterResource(counters[i]));
+        }
+        return ret;
+    }
+}
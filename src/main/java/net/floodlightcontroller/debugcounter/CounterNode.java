@@ -4,6 +4,7 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.TreeMap;
 import java.util.regex.Pattern;
@@ -135,6 +136,24 @@ class CounterNode implements Iterable<DebugCounterImpl> {
     }
 
 
+    /**
+     * Append the counters at and below this node to out, in iteration
+     * order, and record the range of out each node covers by its hierarchy
+     * string. Used to build a {@link CounterIndex}.
+     * @param out the counters so far
+     * @param ranges hierarchy -> {start, end} in out
+     */
+    void flatten(List<DebugCounterImpl> out, Map<String, int[]> ranges) {
+        int start = out.size();
+        if (counter != null) {
+            out.add(counter);
+        }
+        for (CounterNode child: children.values()) {
+            child.flatten(out, ranges);
+        }
+        ranges.put(hierarchy, new int[] { start, out.size() });
+    }
+
     /**
      * Lookup the CounterNode identified by the hieraryElements if it exists.
      * Returns null if no such CounterNode is found. Must only be called on
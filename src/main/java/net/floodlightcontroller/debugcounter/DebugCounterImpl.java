@@ -3,8 +3,10 @@ package net.floodlightcontroller.debugcounter;
 import java.util.Collection;
 import java.util.Date;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
 
@@ -20,12 +22,32 @@ class DebugCounterImpl implements IDebugCounter {
 
     private final AtomicLong value = new AtomicLong();
 
+    /*
+     * Counters kept outside the service, e.g. per-connection arrays updated
+     * on the I/O thread, supply their value here. It is read only when the
+     * counter is read, relative to the source value at the last reset.
+     */
+    @Nullable
+    private volatile LongSupplier source;
+    private volatile long sourceBase;
+    private volatile long lastSeen;
+
     private final Date lastModified = new Date(); // should return long ms to ensure immutability
 
     DebugCounterImpl(@Nonnull String moduleName,
                      @Nonnull String counterHierarchy,
                      @Nonnull String description,
                      @Nonnull Collection<MetaData> metaData) {
+        this(moduleName, counterHierarchy, description, null, metaData);
+    }
+
+    DebugCounterImpl(@Nonnull String moduleName,
+                     @Nonnull String counterHierarchy,
+                     @Nonnull String description,
+                     @Nullable LongSupplier source,
+                     @Nonnull Collection<MetaData> metaData) {
+        this.source = source;
+        this.sourceBase = source == null ? 0 : source.getAsLong();
         this.moduleName = moduleName;
         this.counterHierarchy = counterHierarchy;
         this.description = description;
@@ -55,9 +77,24 @@ class DebugCounterImpl implements IDebugCounter {
         return metaData;
     }
 
+    /**
+     * Replace the value source of a counter that is registered again, and
+     * reset it
+     * @param source the new source
+     */
+    void setSource(@Nonnull LongSupplier source) {
+        this.source = source;
+        reset();
+    }
+
     @Override
     public void reset() {
         value.set(0);
+        LongSupplier s = source;
+        if (s != null) {
+            sourceBase = s.getAsLong();
+            lastSeen = 0;
+        }
         lastModified.setTime(System.currentTimeMillis());
     }
 
@@ -79,7 +116,16 @@ class DebugCounterImpl implements IDebugCounter {
 
     @Override
     public long getCounterValue() {
-        return value.get();
+        LongSupplier s = source;
+        if (s == null) {
+            return value.get();
+        }
+        long v = value.get() + s.getAsLong() - sourceBase;
+        if (v != lastSeen) {
+            lastSeen = v;
+            lastModified.setTime(System.currentTimeMillis());
+        }
+        return v;
     }
     
 	@Override
@@ -8,9 +8,12 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Joiner;
+
 import javax.annotation.concurrent.GuardedBy;
 import java.util.*;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
 
 public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounterService {
     protected static final Logger logger =
@@ -28,6 +31,19 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
      */
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
+    /**
+     * Incremented, under the writeLock, whenever nodes are added to or
+     * removed from the tree.
+     */
+    private volatile long treeVersion;
+
+    /**
+     * Flat snapshot of the tree that serves lookups, reads and resets
+     * without the lock. Rebuilt on the first read after the tree changed,
+     * so registering many counters in a row costs one rebuild.
+     */
+    private volatile CounterIndex index = CounterIndex.build(root, 0);
+
     static void verifyStringSanity(String str, String name) {
         if (str == null) {
             if (name == null) {
@@ -57,7 +73,11 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
         verifyModuleNameSanity(moduleName);
         lock.writeLock().lock();
         try {
-            return root.addModule(moduleName);
+            boolean added = root.addModule(moduleName);
+            if (added) {
+                treeVersion++;
+            }
+            return added;
         } finally {
             lock.writeLock().unlock();
         }
@@ -68,6 +88,28 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
                                          String counterHierarchy,
                                          String counterDescription,
                                          MetaData... metaData) {
+        return registerCounterInternal(moduleName, counterHierarchy,
+                                       counterDescription, null, metaData);
+    }
+
+    @Override
+    public IDebugCounter registerCounter(String moduleName,
+                                         String counterHierarchy,
+                                         String counterDescription,
+                                         LongSupplier source,
+                                         MetaData... metaData) {
+        if (source == null) {
+            throw new NullPointerException("source must not be null");
+        }
+        return registerCounterInternal(moduleName, counterHierarchy,
+                                       counterDescription, source, metaData);
+    }
+
+    private IDebugCounter registerCounterInternal(String moduleName,
+                                                  String counterHierarchy,
+                                                  String counterDescription,
+                                                  LongSupplier source,
+                                                  MetaData... metaData) {
         verifyModuleNameSanity(moduleName);
         verifyStringSanity(counterHierarchy, "counterHierarchy");
         if (counterDescription == null) {
@@ -84,7 +126,7 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
         }
         DebugCounterImpl counter =
                 new DebugCounterImpl(moduleName, counterHierarchy,
-                                     counterDescription,
+                                     counterDescription, source,
                                      Arrays.asList(metaData));
         lock.writeLock().lock();
         try {
@@ -101,30 +143,60 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
              * addCounter(counter) returned a non-null reference, then the reference is 
              * the existing counter, which has just been reset and should be reused.
              */
+            if (oldCounter == null) {
+                treeVersion++;
+            }
             counter = (oldCounter == null ? counter : oldCounter);
+            if (oldCounter != null && source != null) {
+                oldCounter.setSource(source);
+            }
         } finally {
             lock.writeLock().unlock();
         }
         return counter;
     }
 
-    @GuardedBy("lock.readLock")
-    private boolean resetInternal(List<String> hierarchyElements) {
-        CounterNode node = root.lookup(hierarchyElements);
-        if (node == null) {
-            return false;
+    /**
+     * @return the index of the current tree
+     */
+    private CounterIndex index() {
+        CounterIndex cur = index;
+        if (cur.getVersion() == treeVersion) {
+            return cur;
         }
-        node.resetHierarchy();
-        return true;
+        lock.readLock().lock();
+        try {
+            cur = CounterIndex.build(root, treeVersion);
+        } finally {
+            lock.readLock().unlock();
+        }
+        index = cur;
+        return cur;
     }
-    
-    @GuardedBy("lock.readLock")
+
+    /**
+     * Find the range of counters at and below a hierarchy. The hierarchy is
+     * first looked up as given, and only split and joined again, to drop
+     * empty trailing elements, if that misses.
+     */
+    private static int[] lookup(CounterIndex idx, String moduleName,
+                                String counterHierarchy) {
+        int[] range = idx.lookup(moduleName + "/" + counterHierarchy);
+        if (range == null) {
+            range = idx.lookup(Joiner.on("/").join(
+                    CounterNode.getHierarchyElements(moduleName, counterHierarchy)));
+        }
+        return range;
+    }
+
+    @GuardedBy("lock.writeLock")
     private boolean removeInternal(List<String> hierarchyElements) {
         CounterNode node = root.lookup(hierarchyElements); // returns e.g. root/module-name/counter-node-to-remove
         if (node == null) {
             return false;
         }
         root.remove(hierarchyElements);
+        treeVersion++;
         return true;
     }
 
@@ -133,34 +205,32 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
                                          String counterHierarchy) {
         verifyModuleNameSanity(moduleName);
         verifyStringSanity(counterHierarchy, "counterHierarchy");
-        lock.readLock().lock();
-        try {
-            return resetInternal(CounterNode.getHierarchyElements(moduleName, counterHierarchy));
-        } finally {
-            lock.readLock().unlock();
+        CounterIndex idx = index();
+        int[] range = lookup(idx, moduleName, counterHierarchy);
+        if (range == null) {
+            return false;
         }
+        idx.reset(range);
+        return true;
     }
 
     @Override
     public void resetAllCounters() {
-        lock.readLock().lock();
-        try {
-            root.resetHierarchy();
-        } finally {
-            lock.readLock().unlock();
-        }
+        CounterIndex idx = index();
+        idx.reset(idx.lookup(""));
     }
 
 
     @Override
     public boolean resetAllModuleCounters(String moduleName) {
         verifyModuleNameSanity(moduleName);
-        lock.readLock().lock();
-        try {
-            return resetInternal(Collections.singletonList(moduleName));
-        } finally {
-            lock.readLock().unlock();
+        CounterIndex idx = index();
+        int[] range = idx.lookup(moduleName);
+        if (range == null) {
+            return false;
         }
+        idx.reset(range);
+        return true;
     }
     
     @Override
@@ -168,24 +238,12 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
                                          String counterHierarchy) {
         verifyModuleNameSanity(moduleName);
         verifyStringSanity(counterHierarchy, "counterHierarchy");
-        lock.readLock().lock();
+        lock.writeLock().lock();
         try {
             return removeInternal(CounterNode.getHierarchyElements(moduleName, counterHierarchy));
         } finally {
-            lock.readLock().unlock();
-        }
-    }
-
-    @GuardedBy("lock.readLock")
-    private List<DebugCounterResource> getCountersFromNode(CounterNode node) {
-        if (node == null) {
-            return Collections.emptyList();
-        }
-        List<DebugCounterResource> ret = new ArrayList<>();
-        for (DebugCounterImpl counter: node.getCountersInHierarchy()) {
-            ret.add(new DebugCounterResource(counter));
+            lock.writeLock().unlock();
         }
-        return ret;
     }
 
     @Override
@@ -193,35 +251,39 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
     getCounterHierarchy(String moduleName, String counterHierarchy) {
         verifyModuleNameSanity(moduleName);
         verifyStringSanity(counterHierarchy, "counterHierarchy");
-        List<String> hierarchyElements =
-                CounterNode.getHierarchyElements(moduleName, counterHierarchy);
-        lock.readLock().lock();
-        try {
-            return getCountersFromNode(root.lookup(hierarchyElements));
-        } finally {
-            lock.readLock().unlock();
+        CounterIndex idx = index();
+        int[] range = lookup(idx, moduleName, counterHierarchy);
+        if (range == null) {
+            return Collections.emptyList();
         }
+        return idx.getResources(range);
     }
 
     @Override
     public List<DebugCounterResource> getAllCounterValues() {
-        lock.readLock().lock();
-        try {
-            return getCountersFromNode(root);
-        } finally {
-            lock.readLock().unlock();
-        }
+        CounterIndex idx = index();
+        return idx.getResources(idx.lookup(""));
     }
 
     @Override
     public List<DebugCounterResource> getModuleCounterValues(String moduleName) {
         verifyModuleNameSanity(moduleName);
-        List<String> hierarchyElements = Collections.singletonList(moduleName);
-        lock.readLock().lock();
-        try {
-            return getCountersFromNode(root.lookup(hierarchyElements));
-        } finally {
-            lock.readLock().unlock();
+        CounterIndex idx = index();
+        int[] range = idx.lookup(moduleName);
+        if (range == null) {
+            return Collections.emptyList();
+        }
+        return idx.getResources(range);
+    }
+
+    @Override
+    public void visitCounters(CounterVisitor visitor) {
+        CounterIndex idx = index();
+        for (int i = 0; i < idx.size(); i++) {
+            DebugCounterImpl counter = idx.get(i);
+            visitor.visit(counter.getModuleName(),
+                          counter.getCounterHierarchy(),
+                          counter.getCounterValue());
         }
     }
 
@@ -1,10 +1,24 @@
 package net.floodlightcontroller.debugcounter;
 
 import java.util.List;
+import java.util.function.LongSupplier;
 
 import net.floodlightcontroller.core.module.IFloodlightService;
 
 public interface IDebugCounterService extends IFloodlightService {
+    /**
+     * Receives counters from {@link IDebugCounterService#visitCounters(CounterVisitor)}
+     */
+    public interface CounterVisitor {
+        /**
+         * @param moduleName the module of the counter
+         * @param counterHierarchy the hierarchy of the counter, without
+         * the module name
+         * @param value the current value
+         */
+        void visit(String moduleName, String counterHierarchy, long value);
+    }
+
     public enum MetaData {
         WARN,
         DROP,
@@ -52,6 +66,26 @@ public interface IDebugCounterService extends IFloodlightService {
     registerCounter(String moduleName, String counterHierarchy,
                     String counterDescription, MetaData... metaData);
 
+    /**
+     * Register a counter whose value is kept by the caller, e.g. in a
+     * primitive array on an I/O thread, so updating it costs nothing in the
+     * service. The source is only read when the counter is read through
+     * this service; a reset records the current source value as the new
+     * zero. Registering the same counter again replaces the source.
+     *
+     * @param moduleName           see {@link #registerCounter(String, String, String, MetaData...)}
+     * @param counterHierarchy     see {@link #registerCounter(String, String, String, MetaData...)}
+     * @param counterDescription   see {@link #registerCounter(String, String, String, MetaData...)}
+     * @param source               supplies the current, never decreasing, value
+     * @param metaData             variable arguments that qualify a counter
+     * @return                     IDebugCounter; increments through it are
+     *                             added to the value of the source
+     */
+    public IDebugCounter
+    registerCounter(String moduleName, String counterHierarchy,
+                    String counterDescription, LongSupplier source,
+                    MetaData... metaData);
+
 
     /**
      * Resets the value of counters in the hierarchy to zero. Note that the reset
@@ -130,4 +164,13 @@ public interface IDebugCounterService extends IFloodlightService {
      */
     public  List<DebugCounterResource> getModuleCounterValues(String moduleName);
 
+
+    /**
+     * Pass every counter to the visitor, in the order of
+     * {@link #getAllCounterValues()}, without building a
+     * {@link DebugCounterResource} per counter. Counters registered while
+     * the visit runs may be left out.
+     * @param visitor the visitor
+     */
+    public void visitCounters(CounterVisitor visitor);
 }
@@ -6,6 +6,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.LongSupplier;
 
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
@@ -65,6 +66,15 @@ public class MockDebugCounterService implements IFloodlightModule, IDebugCounter
         return new MockCounterImpl();
     }
 
+    @Override
+    public IDebugCounter registerCounter(String moduleName,
+                                         String counterHierarchy,
+                                         String counterDescription,
+                                         LongSupplier source,
+                                         MetaData... metaData) {
+        return new MockCounterImpl();
+    }
+
     @Override
     public boolean
     resetCounterHierarchy(String moduleName, String counterHierarchy) {
@@ -97,6 +107,10 @@ public class MockDebugCounterService implements IFloodlightModule, IDebugCounter
         return Collections.emptyList();
     }
 
+    @Override
+    public void visitCounters(CounterVisitor visitor) {
+    }
+
     public static class MockCounterImpl implements IDebugCounter {
         @Override
         public void increment() {
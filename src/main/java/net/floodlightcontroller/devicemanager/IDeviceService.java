@@ -31,6 +31,7 @@ import org.projectfloodlight.openflow.types.MacAddress;
 import org.projectfloodlight.openflow.types.VlanVid;
 import org.projectfloodlight.openflow.types.OFPort;
 
+import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.FloodlightContextStore;
 import net.floodlightcontroller.core.module.IFloodlightService;
 
@@ -61,6 +62,15 @@ public interface IDeviceService extends IFloodlightService {
     public static final String CONTEXT_DST_DEVICE = 
             "net.floodlightcontroller.devicemanager.dstDevice"; 
 
+    /**
+     * The context slots of {@link #CONTEXT_SRC_DEVICE} and
+     * {@link #CONTEXT_DST_DEVICE}
+     */
+    public static final int CONTEXT_SRC_DEVICE_SLOT =
+            FloodlightContext.registerKey(CONTEXT_SRC_DEVICE);
+    public static final int CONTEXT_DST_DEVICE_SLOT =
+            FloodlightContext.registerKey(CONTEXT_DST_DEVICE);
+
     /**
      * The original destination device for the current packet-in
      */
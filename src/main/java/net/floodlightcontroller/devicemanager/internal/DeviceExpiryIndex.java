@@ -0,0 +1,151 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.devicemanager.internal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An ordered index of device keys by the time at which the device's
+ * oldest entity is due to expire. Devices are grouped into buckets of
+ * a fixed granularity so that the entity cleanup task only has to look at
+ * devices that are actually due instead of walking the whole device map.
+ *
+ * The index is maintained lazily: refreshing the timestamp of an existing
+ * entity does not move the device. When a bucket comes due, the cleanup
+ * task re-examines each device and reschedules the ones that are still
+ * alive at the expiry time of their (new) oldest entity.
+ */
+public class DeviceExpiryIndex {
+    /**
+     * Width of a bucket in milliseconds
+     */
+    private final long granularityMs;
+
+    /**
+     * Device keys grouped by the start time of their expiry bucket
+     */
+    private final TreeMap<Long, Set<Long>> buckets;
+
+    /**
+     * The bucket each device key is currently scheduled in. Kept in a
+     * concurrent map so that the common "already scheduled early enough"
+     * check on the packet-in path does not take the index lock.
+     */
+    private final ConcurrentHashMap<Long, Long> scheduled;
+
+    /**
+     * Construct a new expiry index
+     * @param granularityMs the width of an expiry bucket in milliseconds
+     */
+    public DeviceExpiryIndex(long granularityMs) {
+        if (granularityMs <= 0)
+            throw new IllegalArgumentException("Granularity must be positive");
+        this.granularityMs = granularityMs;
+        this.buckets = new TreeMap<Long, Set<Long>>();
+        this.scheduled = new ConcurrentHashMap<Long, Long>();
+    }
+
+    /**
+     * Schedule the given device to be examined no later than the given
+     * time. If the device is already scheduled at or before that time
+     * this is a no-op.
+     * @param deviceKey the device key
+     * @param expiresAt the absolute time in milliseconds
+     */
+    public void schedule(Long deviceKey, long expiresAt) {
+        long bucket = expiresAt - (expiresAt % granularityMs);
+        Long cur = scheduled.get(deviceKey);
+        if (cur != null && cur.longValue() <= bucket)
+            return;
+
+        synchronized (this) {
+            cur = scheduled.get(deviceKey);
+            if (cur != null) {
+                if (cur.longValue() <= bucket)
+                    return;
+                Set<Long> old = buckets.get(cur);
+                if (old != null) {
+                    old.remove(deviceKey);
+                    if (old.isEmpty())
+                        buckets.remove(cur);
+                }
+            }
+            Set<Long> s = buckets.get(bucket);
+            if (s == null) {
+                s = new HashSet<Long>();
+                buckets.put(bucket, s);
+            }
+            s.add(deviceKey);
+            scheduled.put(deviceKey, bucket);
+        }
+    }
+
+    /**
+     * Remove the given device from the index
+     * @param deviceKey the device key
+     */
+    public synchronized void remove(Long deviceKey) {
+        Long cur = scheduled.remove(deviceKey);
+        if (cur == null)
+            return;
+        Set<Long> s = buckets.get(cur);
+        if (s != null) {
+            s.remove(deviceKey);
+            if (s.isEmpty())
+                buckets.remove(cur);
+        }
+    }
+
+    /**
+     * Remove and return all device keys whose bucket starts at or before
+     * the given time. Devices that are still alive must be rescheduled by
+     * the caller.
+     * @param now the current time in milliseconds
+     * @return the device keys that are due
+     */
+    public synchronized List<Long> pollDue(long now) {
+        List<Long> due = new ArrayList<Long>();
+        Map.Entry<Long, Set<Long>> e;
+        while ((e = buckets.firstEntry()) != null && e.getKey() <= now) {
+            buckets.remove(e.getKey());
+            for (Long deviceKey : e.getValue()) {
+                scheduled.remove(deviceKey);
+                due.add(deviceKey);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Remove all devices from the index
+     */
+    public synchronized void clear() {
+        buckets.clear();
+        scheduled.clear();
+    }
+
+    /**
+     * @return the number of devices currently scheduled
+     */
+    public int size() {
+        return scheduled.size();
+    }
+}
@@ -67,8 +67,9 @@ import net.floodlightcontroller.routing.IRoutingService;
 import net.floodlightcontroller.routing.VirtualGatewayInstance;
 import net.floodlightcontroller.storage.IStorageSourceService;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
-import net.floodlightcontroller.topology.ITopologyListener;
+import net.floodlightcontroller.topology.ITopologyChangeListener;
 import net.floodlightcontroller.topology.ITopologyService;
+import net.floodlightcontroller.topology.TopologyChange;
 import net.floodlightcontroller.util.MultiIterator;
 import static net.floodlightcontroller.devicemanager.internal.
 DeviceManagerImpl.DeviceUpdate.Change.*;
@@ -100,7 +101,7 @@ import org.slf4j.LoggerFactory;
  * within the network.
  * @author readams
  */
-public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, ITopologyListener, IFloodlightModule, IEntityClassListener, IInfoProvider {
+public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, ITopologyChangeListener, IFloodlightModule, IEntityClassListener, IInfoProvider {
 	protected static Logger logger = LoggerFactory.getLogger(DeviceManagerImpl.class);
 	protected IFloodlightProviderService floodlightProvider;
 	protected ITopologyService topology;
@@ -137,6 +138,9 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	public IDebugCounter cntDeviceMoved;
 	public IDebugCounter cntCleanupEntitiesRuns;
 	public IDebugCounter cntEntityRemovedTimeout;
+	public IDebugCounter cntCleanupDevicesExamined;
+	public IDebugCounter cntCleanupDevicesRescheduled;
+	public IDebugCounter cntCleanupEntitiesTimeMs;
 	public IDebugCounter cntDeviceDeleted;
 	public IDebugCounter cntDeviceReclassifyDelete;
 	public IDebugCounter cntDeviceStrored;
@@ -183,9 +187,16 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	protected static final int ENTITY_TIMEOUT = 60*60*1000;
 
 	/**
-	 * Time in seconds between cleaning up old entities/devices
+	 * Time in seconds between cleaning up old entities/devices. Each run
+	 * only examines devices that are due in the entity expiry index, so
+	 * this can be short without causing a sweep of the whole device map.
 	 */
-	protected static final int ENTITY_CLEANUP_INTERVAL = 60*60;
+	protected static final int ENTITY_CLEANUP_INTERVAL = 60;
+
+	/**
+	 * Width in milliseconds of a bucket in the entity expiry index
+	 */
+	protected static final int ENTITY_EXPIRY_GRANULARITY_MS = 1000;
 
 	/**
 	 * This is the master device map that maps device IDs to {@link Device}
@@ -193,6 +204,12 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	 */
 	protected ConcurrentHashMap<Long, Device> deviceMap;
 
+	/**
+	 * Index of device keys ordered by the time their oldest entity is
+	 * due to expire
+	 */
+	protected DeviceExpiryIndex entityExpiryIndex;
+
 	/**
 	 * Counter used to generate device keys
 	 */
@@ -850,6 +867,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		secondaryIndexMap = new HashMap<EnumSet<DeviceField>, DeviceIndex>();
 
 		deviceMap = new ConcurrentHashMap<Long, Device>();
+		entityExpiryIndex = new DeviceExpiryIndex(ENTITY_EXPIRY_GRANULARITY_MS);
 		classStateMap =
 				new ConcurrentHashMap<String, ClassState>();
 		apComparator = new AttachmentPointComparator();
@@ -975,6 +993,17 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				"entity-removed-timeout",
 				"Number of times entities have been removed due to timeout " +
 						"(entity has been inactive for " + ENTITY_TIMEOUT/1000 + "s)");
+		cntCleanupDevicesExamined = debugCounters.registerCounter(PACKAGE,
+				"cleanup-entities-devices-examined",
+				"Number of devices the entity cleanup task has examined " +
+				"because they were due in the entity expiry index");
+		cntCleanupDevicesRescheduled = debugCounters.registerCounter(PACKAGE,
+				"cleanup-entities-devices-rescheduled",
+				"Number of devices the entity cleanup task has examined and " +
+				"rescheduled because their entities had been refreshed");
+		cntCleanupEntitiesTimeMs = debugCounters.registerCounter(PACKAGE,
+				"cleanup-entities-time-ms",
+				"Total time in milliseconds spent in the entity cleanup task");
 		cntDeviceDeleted = debugCounters.registerCounter(PACKAGE, "device-deleted",
 				"Number of devices that have been removed due to inactivity");
 		cntDeviceReclassifyDelete = debugCounters.registerCounter(PACKAGE,
@@ -1066,7 +1095,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	// ****************
 
 	protected Command processPacketInMessage(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx) {
-		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx,IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx,IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT);
 		OFPort inPort = (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT));
 
 		NodePortTuple npt = new NodePortTuple(sw.getId(), inPort);
@@ -1110,7 +1139,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			return Command.STOP;
 		}
 		// Store the source device in the context
-		fcStore.put(cntx, CONTEXT_SRC_DEVICE, srcDevice);
+		fcStore.put(cntx, CONTEXT_SRC_DEVICE_SLOT, srcDevice);
 
 		// Find the device matching the destination from the entity
 		// classes of the source.
@@ -1123,7 +1152,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		if (dstEntity != null) {
 			dstDevice = findDestByEntity(srcDevice.getEntityClass(), dstEntity);
 			if (dstDevice != null)
-				fcStore.put(cntx, CONTEXT_DST_DEVICE, dstDevice);
+				fcStore.put(cntx, CONTEXT_DST_DEVICE_SLOT, dstDevice);
 			else
 				cntNoDest.increment();
 		} else {
@@ -1504,6 +1533,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				}
 
 				updateSecondaryIndices(entity, entityClass, deviceKey);
+				scheduleEntityExpiry(device);
 
 				// We need to count and log here. If we log earlier we could
 				// hit a concurrent modification and restart the dev creation
@@ -1545,6 +1575,10 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 					entity.setLastSeenTimestamp(lastSeen);
 				}
 				device.entities[entityindex].setLastSeenTimestamp(lastSeen);
+				// no-op unless the device was not yet scheduled (e.g., it
+				// only had entities without a timestamp)
+				entityExpiryIndex.schedule(deviceKey,
+						lastSeen.getTime() + ENTITY_TIMEOUT);
 				// we break the loop after checking for changes to the AP
 			} else {
 				// New entity for this device
@@ -1572,6 +1606,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				updateSecondaryIndices(entity,
 						device.getEntityClass(),
 						deviceKey);
+				scheduleEntityExpiry(device);
 
 				// We need to count here after all the possible "continue"
 				// statements in this branch
@@ -1847,24 +1882,50 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	 }
 
 	 /**
-	  * Clean up expired entities/devices
+	  * Schedule the given device in the entity expiry index at the time
+	  * its oldest timestamped entity will expire. Devices with no
+	  * timestamped entities never expire and are not scheduled.
+	  * @param device the device to schedule
+	  */
+	 protected void scheduleEntityExpiry(Device device) {
+		 long oldest = Long.MAX_VALUE;
+		 for (Entity e : device.getEntities()) {
+			 Date lastSeen = e.getLastSeenTimestamp();
+			 if (!lastSeen.equals(Entity.NO_DATE) &&
+					 lastSeen.getTime() < oldest) {
+				 oldest = lastSeen.getTime();
+			 }
+		 }
+		 if (oldest != Long.MAX_VALUE) {
+			 entityExpiryIndex.schedule(device.getDeviceKey(),
+					 oldest + ENTITY_TIMEOUT);
+		 }
+	 }
+
+	 /**
+	  * Clean up expired entities/devices. Only the devices that are due
+	  * in the entity expiry index are examined; devices whose entities
+	  * have been refreshed in the meantime are rescheduled.
 	  */
 	 protected void cleanupEntities () {
 		 cntCleanupEntitiesRuns.increment();
 
-		 Calendar c = Calendar.getInstance();
-		 c.add(Calendar.MILLISECOND, -ENTITY_TIMEOUT);
-		 Date cutoff = c.getTime();
+		 long now = System.currentTimeMillis();
+		 Date cutoff = new Date(now - ENTITY_TIMEOUT);
 
 		 ArrayList<Entity> toRemove = new ArrayList<Entity>();
 		 ArrayList<Entity> toKeep = new ArrayList<Entity>();
 
-		 Iterator<Device> diter = deviceMap.values().iterator();
+		 List<Long> due = entityExpiryIndex.pollDue(now);
+		 cntCleanupDevicesExamined.add(due.size());
 		 LinkedList<DeviceUpdate> deviceUpdates =
 				 new LinkedList<DeviceUpdate>();
 
-		 while (diter.hasNext()) {
-			 Device d = diter.next();
+		 for (Long deviceKey : due) {
+			 Device d = deviceMap.get(deviceKey);
+			 if (d == null) {
+				 continue;
+			 }
 
 			 while (true) {
 				 deviceUpdates.clear();
@@ -1880,6 +1941,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 					 }
 				 }
 				 if (toRemove.size() == 0) {
+					 cntCleanupDevicesRescheduled.increment();
+					 scheduleEntityExpiry(d);
 					 break;
 				 }
 
@@ -1915,6 +1978,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 						 d = deviceMap.get(d.getDeviceKey());
 								 if (null != d)
 									 continue;
+					 } else {
+						 scheduleEntityExpiry(newDevice);
 					 }
 					 if (update != null) {
 						 // need to count after all possibly continue stmts in
@@ -1939,6 +2004,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				 break;
 			 }
 		 }
+		 cntCleanupEntitiesTimeMs.add(System.currentTimeMillis() - now);
 	 }
 
 	 protected void removeEntity(Entity removed,
@@ -1979,6 +2045,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			 this.removeEntity(entity, device.getEntityClass(),
 					 device.getDeviceKey(), emptyToKeep);
 		 }
+		 entityExpiryIndex.remove(device.getDeviceKey());
 		 if (!deviceMap.remove(device.getDeviceKey(), device)) {
 			 if (logger.isDebugEnabled())
 				 logger.debug("device map does not have this device -" +
@@ -2066,9 +2133,26 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	 } */
 
 	 // *********************
-	 // ITopologyListener
+	 // ITopologyChangeListener
 	 // *********************
 
+	 /**
+	  * Attachment points depend on which ports are links and on the clusters
+	  * and archipelagos, but not on the paths between switches, so devices
+	  * are only revisited if one of those changed.
+	  */
+	 @Override
+	 public void topologyChanged(List<LDUpdate> updateList, TopologyChange change) {
+		 if (updateList.isEmpty()
+				 && change.getChangedClusters().isEmpty()
+				 && change.getChangedArchipelagos().isEmpty()
+				 && change.getAddedBroadcastPorts().isEmpty()
+				 && change.getRemovedBroadcastPorts().isEmpty()) {
+			 return;
+		 }
+		 topologyChanged(updateList);
+	 }
+
 	 /**
 	  * Topology listener method.
 	  */
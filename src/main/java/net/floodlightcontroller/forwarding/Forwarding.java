@@ -33,6 +33,7 @@ import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.types.NodePortTuple;
 import net.floodlightcontroller.core.util.AppCookie;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.devicemanager.IDevice;
 import net.floodlightcontroller.devicemanager.IDeviceListener;
@@ -99,9 +100,25 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
     private static L3RoutingManager l3manager;
     private static volatile IRoutingService.RoutingType routingType = IRoutingService.RoutingType.FORWARDING;
 
-    private Map<OFPacketIn, Ethernet> l3cache;
     private DeviceListenerImpl deviceListener;
 
+    /* Packets waiting for the virtual gateway to resolve their destination with ARP */
+    private static int L3_PENDING_PACKETS_PER_DESTINATION = 16;
+    private static int L3_PENDING_PACKETS_PER_GATEWAY = 1024;
+    private static int L3_PENDING_PACKET_TTL_MS = 5000;
+    private PendingPacketBuffer l3PendingPackets;
+
+    private static final String PACKAGE = Forwarding.class.getPackage().getName();
+    private IDebugCounter counterPendingQueued;
+    private IDebugCounter counterPendingDestinationFull;
+    private IDebugCounter counterPendingGatewayFull;
+    private IDebugCounter counterPendingExpired;
+    private IDebugCounter counterPendingReleased;
+    private IDebugCounter counterPendingWaitMs;
+
+    private static int L3_NEIGHBOR_CACHE_SIZE = 4096; // per virtual gateway
+    private IPv4DeviceIndex l3DeviceIndex;
+
     protected static class FlowSetIdRegistry {
         private volatile Map<NodePortTuple, Set<U64>> nptToFlowSetIds;
         private volatile Map<U64, Set<NodePortTuple>> flowSetIdToNpts;
@@ -199,7 +216,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
 
     @Override
     public Command processPacketInMessage(IOFSwitch sw, OFPacketIn pi, IRoutingDecision decision, FloodlightContext cntx) {
-        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT);
 
         OFPort inPort = OFMessageUtils.getInPort(pi);
         NodePortTuple npt = new NodePortTuple(sw.getId(), inPort);
@@ -356,18 +373,18 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
      */
     protected void doL3ForwardFlow(IOFSwitch sw, OFPacketIn pi, IRoutingDecision decision, FloodlightContext cntx,
                                    VirtualGatewayInstance gateway, boolean requestFlowRemovedNotifn) {
-        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT);
         OFPort srcPort = OFMessageUtils.getInPort(pi);
 
         MacAddress virtualGatewayMac = gateway.getGatewayMac();
         DatapathId srcSw = sw.getId();
-        IDevice dstDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_DST_DEVICE);
-        IDevice srcDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE);
+        IDevice dstDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_DST_DEVICE_SLOT);
+        IDevice srcDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE_SLOT);
 
         if (dstDevice == null) {
             // Try one more time to retrieve dst device
             if (eth.getEtherType() == EthType.IPv4 && eth.getDestinationMACAddress().equals(virtualGatewayMac)) {
-                dstDevice = findDstDeviceForL3Routing(((IPv4) eth.getPayload()).getDestinationAddress());
+                dstDevice = findDstDeviceForL3Routing(gateway, ((IPv4) eth.getPayload()).getDestinationAddress());
             }
 
             if (dstDevice == null) {
@@ -375,10 +392,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
                 if (eth.getEtherType() == EthType.IPv4 && eth.getDestinationMACAddress().equals(virtualGatewayMac)) {
                     log.debug("Virtual gateway creates and flood arp request packet for destination host");
                     doL3Flood(gateway, sw, pi, cntx);
-
-                    l3cache.put(pi, eth);
-                    log.debug("Add new packet-in associate with packet source {} and destination {} to cache",
-                            ((IPv4) eth.getPayload()).getSourceAddress(), ((IPv4) eth.getPayload()).getDestinationAddress());
+                    queuePendingPacket(gateway, eth);
                 }
                 // Normal L2 traffic
                 else {
@@ -397,7 +411,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
 
         /* Some physical switches partially support or do not support ARP flows */
         if (FLOOD_ALL_ARP_PACKETS &&
-                IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD).getEtherType()
+                IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT).getEtherType()
                         == EthType.ARP) {
             log.debug("ARP flows disabled in Forwarding. Flooding ARP packet");
             doFlood(sw, pi, decision, cntx);
@@ -460,7 +474,8 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
         Path path = routingEngineService.getPath(srcSw,
                 srcPort,
                 dstAp.getNodeId(),
-                dstAp.getPortId());
+                dstAp.getPortId(),
+                getFlowHash(eth));
 
 
         if (!eth.getDestinationMACAddress().equals(virtualGatewayMac)) { // Normal L2 forwarding
@@ -628,10 +643,11 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
      * @param requestFlowRemovedNotifn The OpenFlow "flow remove flag"
      */
     protected void doL2ForwardFlow(IOFSwitch sw, OFPacketIn pi, IRoutingDecision decision, FloodlightContext cntx, boolean requestFlowRemovedNotifn) {
+        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT);
         OFPort srcPort = OFMessageUtils.getInPort(pi);
         DatapathId srcSw = sw.getId();
-        IDevice dstDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_DST_DEVICE);
-        IDevice srcDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE);
+        IDevice dstDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_DST_DEVICE_SLOT);
+        IDevice srcDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE_SLOT);
 
         if (dstDevice == null) {
             log.debug("Destination device unknown. Flooding packet");
@@ -646,7 +662,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
 
         /* Some physical switches partially support or do not support ARP flows */
         if (FLOOD_ALL_ARP_PACKETS &&
-                IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD).getEtherType()
+                IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT).getEtherType()
                         == EthType.ARP) {
             log.debug("ARP flows disabled in Forwarding. Flooding ARP packet");
             doFlood(sw, pi, decision, cntx);
@@ -702,7 +718,8 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
         Path path = routingEngineService.getPath(srcSw,
                 srcPort,
                 dstAp.getNodeId(),
-                dstAp.getPortId());
+                dstAp.getPortId(),
+                getFlowHash(eth));
 
         Match m = createMatchFromPacket(sw, srcPort, pi, cntx);
 
@@ -740,7 +757,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
      */
     public IPacket gatewayArpReply(FloodlightContext cntx, MacAddress gatewayMac) {
         Ethernet eth = IFloodlightProviderService.bcStore.get(cntx,
-                IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+                IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT);
 
         ARP arpRequest = (ARP) eth.getPayload();
 
@@ -833,24 +850,12 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
      * Query device based on packet destination IP address, rather than based on MAC address
      * This is because in L3 case, the MAC address is Virtual Router MAC, which is not exist in device map
      *
+     * @param gateway the virtual gateway routing the packet
      * @param dstIP packet destination IP
-     * @return
+     * @return the destination device, or null if it is not known yet
      */
-    private IDevice findDstDeviceForL3Routing(IPv4Address dstIP) {
-        // Fetch all known devices
-        Collection<? extends IDevice> allDevices = deviceManagerService.getAllDevices();
-
-        IDevice dstDevice = null;
-        for (IDevice d : allDevices) {
-            for (int i = 0; i < d.getIPv4Addresses().length; ++i) {
-                if (d.getIPv4Addresses()[i].equals(dstIP)) {
-                    dstDevice = d;
-                    break;
-                }
-            }
-        }
-
-        return dstDevice;
+    private IDevice findDstDeviceForL3Routing(VirtualGatewayInstance gateway, IPv4Address dstIP) {
+        return l3DeviceIndex.lookup(gateway.getName(), dstIP);
     }
 
 
@@ -1016,6 +1021,88 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
     }
 
 
+    /**
+     * Hash the fields that identify the flow of a packet, so ECMP can spread
+     * flows over equal cost paths while the packets of each flow keep to one.
+     * Only the fields {@link #createMatchFromPacket} puts in the match under
+     * the FLOWMOD_DEFAULT_MATCH_* settings are used, so all packets hitting
+     * one installed flow are given the same path. TCP flags are left out, so
+     * the packets of a connection stay on one path when they are matched.
+     * @param eth the packet
+     * @return the flow hash
+     */
+    protected int getFlowHash(Ethernet eth) {
+        int h = 0;
+        if (FLOWMOD_DEFAULT_MATCH_MAC) {
+            if (FLOWMOD_DEFAULT_MATCH_MAC_SRC) {
+                h = eth.getSourceMACAddress().hashCode();
+            }
+            if (FLOWMOD_DEFAULT_MATCH_MAC_DST) {
+                h = 31 * h + eth.getDestinationMACAddress().hashCode();
+            }
+        }
+        if (eth.getEtherType() == EthType.IPv4) {
+            IPv4 ip = (IPv4) eth.getPayload();
+            if (FLOWMOD_DEFAULT_MATCH_IP) {
+                if (FLOWMOD_DEFAULT_MATCH_IP_SRC) {
+                    h = 31 * h + ip.getSourceAddress().hashCode();
+                }
+                if (FLOWMOD_DEFAULT_MATCH_IP_DST) {
+                    h = 31 * h + ip.getDestinationAddress().hashCode();
+                }
+            }
+            if (FLOWMOD_DEFAULT_MATCH_TRANSPORT) {
+                h = 31 * h + getTransportHash(ip.getPayload());
+            }
+        } else if (eth.getEtherType() == EthType.IPv6) {
+            IPv6 ip = (IPv6) eth.getPayload();
+            if (FLOWMOD_DEFAULT_MATCH_IP) {
+                if (FLOWMOD_DEFAULT_MATCH_IP_SRC) {
+                    h = 31 * h + ip.getSourceAddress().hashCode();
+                }
+                if (FLOWMOD_DEFAULT_MATCH_IP_DST) {
+                    h = 31 * h + ip.getDestinationAddress().hashCode();
+                }
+            }
+            if (FLOWMOD_DEFAULT_MATCH_TRANSPORT) {
+                h = 31 * h + getTransportHash(ip.getPayload());
+            }
+        }
+
+        /* spread the bits, as paths are picked by the hash modulo a small count */
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /* the IP protocol and ports are only matched for TCP and UDP */
+    private static int getTransportHash(IPacket payload) {
+        int h = 0;
+        if (payload instanceof TCP) {
+            TCP tcp = (TCP) payload;
+            h = IpProtocol.TCP.hashCode();
+            if (FLOWMOD_DEFAULT_MATCH_TRANSPORT_SRC) {
+                h = 31 * h + tcp.getSourcePort().hashCode();
+            }
+            if (FLOWMOD_DEFAULT_MATCH_TRANSPORT_DST) {
+                h = 31 * h + tcp.getDestinationPort().hashCode();
+            }
+        } else if (payload instanceof UDP) {
+            UDP udp = (UDP) payload;
+            h = IpProtocol.UDP.hashCode();
+            if (FLOWMOD_DEFAULT_MATCH_TRANSPORT_SRC) {
+                h = 31 * h + udp.getSourcePort().hashCode();
+            }
+            if (FLOWMOD_DEFAULT_MATCH_TRANSPORT_DST) {
+                h = 31 * h + udp.getDestinationPort().hashCode();
+            }
+        }
+        return h;
+    }
+
     /**
      * Instead of using the Firewall's routing decision Match, which might be as general
      * as "in_port" and inadvertently Match packets erroneously, construct a more
@@ -1030,7 +1117,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
     protected Match createMatchFromPacket(IOFSwitch sw, OFPort inPort, OFPacketIn pi, FloodlightContext cntx) {
         // The packet in match will only contain the port number.
         // We need to add in specifics for the hosts we're routing between.
-        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT);
 
         VlanVid vlan = null;      
         if (pi.getVersion().compareTo(OFVersion.OF_11) > 0 && /* 1.0 and 1.1 do not have a match */
@@ -1044,6 +1131,9 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
         MacAddress srcMac = eth.getSourceMACAddress();
         MacAddress dstMac = eth.getDestinationMACAddress();
 
+        /* Null if TCP flags are not matched or the switch can't match them */
+        MatchField<U16> tcpFlagsField = getFlowModTemplate(sw).getTcpFlagsField();
+
         Match.Builder mb = sw.getOFFactory().buildMatch();
         if (FLOWMOD_DEFAULT_MATCH_IN_PORT) {
             mb.setExact(MatchField.IN_PORT, inPort);
@@ -1098,19 +1188,8 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
                     if (FLOWMOD_DEFAULT_MATCH_TRANSPORT_DST) {
                         mb.setExact(MatchField.TCP_DST, tcp.getDestinationPort());
                     }
-		    if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_15) >= 0){
-			 if(FLOWMOD_DEFAULT_MATCH_TCP_FLAG){
-	                        mb.setExact(MatchField.TCP_FLAGS, U16.of(tcp.getFlags()));
-	                 }
-		    }
-                    else if(sw.getSwitchDescription().getHardwareDescription().toLowerCase().contains("open vswitch") && (
-                       Integer.parseInt(sw.getSwitchDescription().getSoftwareDescription().toLowerCase().split("\\.")[0]) > 2  || (
-                       Integer.parseInt(sw.getSwitchDescription().getSoftwareDescription().toLowerCase().split("\\.")[0]) == 2 &&
-                       Integer.parseInt(sw.getSwitchDescription().getSoftwareDescription().toLowerCase().split("\\.")[1]) >= 1 ))
-		      ){
-	                    if(FLOWMOD_DEFAULT_MATCH_TCP_FLAG){
-	                        mb.setExact(MatchField.OVS_TCP_FLAGS, U16.of(tcp.getFlags()));
-	                    }
+                    if (tcpFlagsField != null) {
+                        mb.setExact(tcpFlagsField, U16.of(tcp.getFlags()));
                     }
                 } else if (ip.getProtocol().equals(IpProtocol.UDP)) {
                     UDP udp = (UDP) ip.getPayload();
@@ -1158,20 +1237,8 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
                     if (FLOWMOD_DEFAULT_MATCH_TRANSPORT_DST) {
                         mb.setExact(MatchField.TCP_DST, tcp.getDestinationPort());
                     }
-		    if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_15) >= 0){
-		        if(FLOWMOD_DEFAULT_MATCH_TCP_FLAG){
-			   mb.setExact(MatchField.TCP_FLAGS, U16.of(tcp.getFlags()));
-		        }
-		    }
-                    else if(
-                    sw.getSwitchDescription().getHardwareDescription().toLowerCase().contains("open vswitch") && (
-                    Integer.parseInt(sw.getSwitchDescription().getSoftwareDescription().toLowerCase().split("\\.")[0]) > 2  || (
-                    Integer.parseInt(sw.getSwitchDescription().getSoftwareDescription().toLowerCase().split("\\.")[0]) == 2 &&
-                    Integer.parseInt(sw.getSwitchDescription().getSoftwareDescription().toLowerCase().split("\\.")[1]) >= 1 ))
-                    ){
-	                    if(FLOWMOD_DEFAULT_MATCH_TCP_FLAG){
-	                        mb.setExact(MatchField.OVS_TCP_FLAGS, U16.of(tcp.getFlags()));
-	                    }
+                    if (tcpFlagsField != null) {
+                        mb.setExact(tcpFlagsField, U16.of(tcp.getFlags()));
                     }
                 } else if (ip.getNextHeader().equals(IpProtocol.UDP)) {
                     UDP udp = (UDP) ip.getPayload();
@@ -1199,19 +1266,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
     protected void doFlood(IOFSwitch sw, OFPacketIn pi, IRoutingDecision decision, FloodlightContext cntx) {
         OFPort inPort = OFMessageUtils.getInPort(pi);
         OFPacketOut.Builder pob = sw.getOFFactory().buildPacketOut();
-        List<OFAction> actions = new ArrayList<>();
-        Set<OFPort> broadcastPorts = this.topologyService.getSwitchBroadcastPorts(sw.getId());
-
-        if (broadcastPorts.isEmpty()) {
-            log.debug("No broadcast ports found. Using FLOOD output action");
-            broadcastPorts = Collections.singleton(OFPort.FLOOD);
-        }
-
-        for (OFPort p : broadcastPorts) {
-            if (p.equals(inPort)) continue;
-            actions.add(sw.getOFFactory().actions().output(p, Integer.MAX_VALUE));
-        }
-        pob.setActions(actions);
+        pob.setActions(getFloodActions(sw, inPort));
 
         // set buffer-id, in-port and packet-data based on packet-in
         pob.setBufferId(OFBufferId.NO_BUFFER);
@@ -1227,6 +1282,35 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
         return;
     }
 
+    /**
+     * Get the actions flooding a packet along the broadcast tree. These are
+     * the ones computed with the topology, unless there are none for the
+     * switch, e.g. because it connected since.
+     * @param sw The switch flooding the packet
+     * @param inPort The port the packet came in on
+     * @return the actions
+     */
+    protected List<OFAction> getFloodActions(IOFSwitch sw, OFPort inPort) {
+        List<OFAction> actions = this.topologyService.getSwitchFloodActions(sw.getId(), inPort);
+        if (actions != null
+                && (actions.isEmpty() || actions.get(0).getVersion() == sw.getOFFactory().getVersion())) {
+            return actions;
+        }
+
+        actions = new ArrayList<>();
+        Set<OFPort> broadcastPorts = this.topologyService.getSwitchBroadcastPorts(sw.getId());
+        if (broadcastPorts.isEmpty()) {
+            log.debug("No broadcast ports found. Using FLOOD output action");
+            broadcastPorts = Collections.singleton(OFPort.FLOOD);
+        }
+
+        for (OFPort p : broadcastPorts) {
+            if (p.equals(inPort)) continue;
+            actions.add(sw.getOFFactory().actions().output(p, Integer.MAX_VALUE));
+        }
+        return actions;
+    }
+
     /**
      * Virtual gateway creates OFPacketOut with ARP request message and flood it to network,
      * for learning destination host purpose
@@ -1239,7 +1323,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
     protected void doL3Flood(VirtualGatewayInstance gateway, IOFSwitch sw, OFPacketIn pi,
                              FloodlightContext cntx) {
         Ethernet eth = IFloodlightProviderService.bcStore.get(cntx,
-                IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+                IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT);
 
         MacAddress gatewayMac = gateway.getGatewayMac();
 
@@ -1274,19 +1358,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
         OFPacketOut.Builder packetOut = factory.buildPacketOut();
 
         // Set Actions
-        List<OFAction> actions = new ArrayList<>();
-
-        Set<OFPort> broadcastPorts = this.topologyService.getSwitchBroadcastPorts(sw.getId());
-        if (broadcastPorts.isEmpty()) {
-            log.debug("No broadcast ports found. Using FLOOD output action");
-            broadcastPorts = Collections.singleton(OFPort.FLOOD);
-        }
-
-        for (OFPort p : broadcastPorts) {
-            if (p.equals(inPort)) continue;
-            actions.add(factory.actions().output(p, Integer.MAX_VALUE));
-        }
-        packetOut.setActions(actions);
+        packetOut.setActions(getFloodActions(sw, inPort));
 
         // set buffer-id, in-port and packet-data based on packet-in
         packetOut.setBufferId(OFBufferId.NO_BUFFER);
@@ -1347,7 +1419,6 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
         this.linkService = context.getServiceImpl(ILinkDiscoveryService.class);
 
         l3manager = new L3RoutingManager();
-        l3cache = new ConcurrentHashMap<>();
         deviceListener = new DeviceListenerImpl();
 
         flowSetIdRegistry = FlowSetIdRegistry.getInstance();
@@ -1446,6 +1517,32 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
             }
         }
 
+        tmp = configParameters.get("l3-neighbor-cache-size");
+        if (tmp != null) {
+            L3_NEIGHBOR_CACHE_SIZE = ParseUtils.parseHexOrDecInt(tmp);
+            log.info("L3 neighbor cache size set to {} per virtual gateway.", L3_NEIGHBOR_CACHE_SIZE);
+        } else {
+            log.info("L3 neighbor cache size not configured. Using {} per virtual gateway.", L3_NEIGHBOR_CACHE_SIZE);
+        }
+        l3DeviceIndex = new IPv4DeviceIndex(deviceManagerService, L3_NEIGHBOR_CACHE_SIZE);
+
+        tmp = configParameters.get("l3-pending-packets-per-destination");
+        if (tmp != null) {
+            L3_PENDING_PACKETS_PER_DESTINATION = ParseUtils.parseHexOrDecInt(tmp);
+        }
+        tmp = configParameters.get("l3-pending-packets-per-gateway");
+        if (tmp != null) {
+            L3_PENDING_PACKETS_PER_GATEWAY = ParseUtils.parseHexOrDecInt(tmp);
+        }
+        tmp = configParameters.get("l3-pending-packet-ttl-ms");
+        if (tmp != null) {
+            L3_PENDING_PACKET_TTL_MS = ParseUtils.parseHexOrDecInt(tmp);
+        }
+        log.info("Holding at most {} packets per destination and {} per virtual gateway for {} ms during ARP resolution.",
+                new Object[] { L3_PENDING_PACKETS_PER_DESTINATION, L3_PENDING_PACKETS_PER_GATEWAY, L3_PENDING_PACKET_TTL_MS });
+        l3PendingPackets = new PendingPacketBuffer(L3_PENDING_PACKETS_PER_DESTINATION,
+                L3_PENDING_PACKETS_PER_GATEWAY, L3_PENDING_PACKET_TTL_MS);
+
         tmp = configParameters.get("remove-flows-on-link-or-port-down");
         if (tmp != null) {
             REMOVE_FLOWS_ON_LINK_OR_PORT_DOWN = Boolean.parseBoolean(tmp);
@@ -1457,14 +1554,35 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
         }
     }
 
+    private void registerDebugCounters() {
+        debugCounterService.registerModule(PACKAGE);
+        counterPendingQueued = debugCounterService.registerCounter(PACKAGE, "l3-pending-queued",
+                "Packets held by a virtual gateway while resolving their destination");
+        counterPendingDestinationFull = debugCounterService.registerCounter(PACKAGE, "l3-pending-dropped-destination-full",
+                "Packets dropped because too many packets were already waiting for their destination",
+                IDebugCounterService.MetaData.WARN);
+        counterPendingGatewayFull = debugCounterService.registerCounter(PACKAGE, "l3-pending-dropped-gateway-full",
+                "Packets dropped because their virtual gateway already held too many packets",
+                IDebugCounterService.MetaData.WARN);
+        counterPendingExpired = debugCounterService.registerCounter(PACKAGE, "l3-pending-expired",
+                "Held packets dropped because their destination was not resolved in time");
+        counterPendingReleased = debugCounterService.registerCounter(PACKAGE, "l3-pending-released",
+                "Held packets sent after their destination was resolved");
+        counterPendingWaitMs = debugCounterService.registerCounter(PACKAGE, "l3-pending-wait-ms",
+                "Total time released packets were held, in ms");
+    }
+
     @Override
     public void startUp(FloodlightModuleContext context) {
         super.startUp();
+        registerDebugCounters();
         switchService.addOFSwitchListener(this);
         routingEngineService.addRoutingDecisionChangedListener(this);
         restApiService.addRestletRoutable(new RoutingWebRoutable());
 
         deviceManagerService.addListener(this.deviceListener);
+        /* Devices learned before the listener was added */
+        l3DeviceIndex.addAll();
 
         /* Register only if we want to remove stale flows */
         if (REMOVE_FLOWS_ON_LINK_OR_PORT_DOWN) {
@@ -1478,6 +1596,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
 
     @Override
     public void switchRemoved(DatapathId switchId) {
+        removeFlowModTemplate(switchId);
         l3manager.getAllVirtualGateways().stream()
                 .forEach(instance -> instance.removeSwitchFromInstance(switchId));
         log.info("Handle switchRemoved. Switch {} removed from virtual gateway instance", switchId.toString());
@@ -1485,6 +1604,8 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
 
     @Override
     public void switchActivated(DatapathId switchId) {
+        /* Recompile on (re)activation, since the switch description may have changed */
+        removeFlowModTemplate(switchId);
         IOFSwitch sw = switchService.getSwitch(switchId);
         if (sw == null) {
             log.warn("Switch {} was activated but had no switch object in the switch service. Perhaps it quickly disconnected", switchId);
@@ -1688,11 +1809,15 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
     public void deleteGatewayInstances() {
         log.info("All virtual gateways deleted");
         l3manager.removeAllVirtualGateways();
+        l3DeviceIndex.clearGateways();
+        l3PendingPackets.clear();
     }
 
     @Override
     public boolean deleteGatewayInstance(String name) {
         log.info("Virtual gateway {} deleted", name);
+        l3DeviceIndex.removeGateway(name);
+        l3PendingPackets.removeGateway(name);
         return l3manager.removeVirtualGateway(name);
     }
 
@@ -1746,33 +1871,24 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
     class DeviceListenerImpl implements IDeviceListener {
         @Override
         public void deviceAdded(IDevice device) {
-            // Ignore
+            l3DeviceIndex.updateDevice(device);
+            releasePendingPackets(device);
         }
 
         @Override
         public void deviceRemoved(IDevice device) {
-            // Ignore
+            l3DeviceIndex.removeDevice(device);
         }
 
         @Override
         public void deviceMoved(IDevice device) {
-            // Ignore
+            l3DeviceIndex.invalidateDevice(device);
         }
 
         @Override
         public void deviceIPV4AddrChanged(IDevice device) {
-            // If the device updated IP associated with the packet in the cache, release that packet
-            if (device.getIPv4Addresses() == null) return;
-
-            for (IPv4Address ip : device.getIPv4Addresses()) {
-                while (findPacketInCache(l3cache, ip).isPresent()) {
-                    // send all associated packets to the destination
-                    Ethernet eth = findPacketInCache(l3cache, ip).get();
-                    sendPacketToLastHop(eth, device);
-                    l3cache.values().remove(eth);
-                }
-            }
-
+            l3DeviceIndex.updateDevice(device);
+            releasePendingPackets(device);
         }
 
         @Override
@@ -1782,7 +1898,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
 
         @Override
         public void deviceVlanChanged(IDevice device) {
-            // Ignore
+            l3DeviceIndex.invalidateDevice(device);
         }
 
         @Override
@@ -1801,14 +1917,71 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
         }
     }
 
-    private Optional<Ethernet> findPacketInCache(Map<OFPacketIn, Ethernet> l3cache, IPv4Address ip) {
-        return l3cache.values().stream()
-                .filter(packet -> ((IPv4) packet.getPayload()).getDestinationAddress().equals(ip))
-                .findAny();
+    /**
+     * Hold a packet routed by a virtual gateway until the ARP request for its
+     * destination is answered
+     */
+    private void queuePendingPacket(VirtualGatewayInstance gateway, Ethernet eth) {
+        IPv4 ip = (IPv4) eth.getPayload();
+        long now = System.currentTimeMillis();
+
+        int expired = l3PendingPackets.expire(now);
+        if (expired > 0) {
+            counterPendingExpired.add(expired);
+        }
+
+        switch (l3PendingPackets.add(gateway.getName(), ip.getDestinationAddress(), eth, now)) {
+        case QUEUED:
+            counterPendingQueued.increment();
+            log.debug("Holding packet from {} to {} until the destination is resolved",
+                    ip.getSourceAddress(), ip.getDestinationAddress());
+            break;
+        case DROPPED_DESTINATION_FULL:
+            counterPendingDestinationFull.increment();
+            log.debug("Too many packets waiting for {}. Dropping packet", ip.getDestinationAddress());
+            break;
+        case DROPPED_GATEWAY_FULL:
+            counterPendingGatewayFull.increment();
+            log.debug("Virtual gateway {} holds too many packets. Dropping packet", gateway.getName());
+            break;
+        }
+    }
+
+    /**
+     * Send all packets held for the addresses of a newly resolved device
+     */
+    private void releasePendingPackets(IDevice device) {
+        IPv4Address[] ips = device.getIPv4Addresses();
+        if (ips == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (IPv4Address ip : ips) {
+            PendingPacketBuffer.DrainResult result = l3PendingPackets.drain(ip, now);
+            if (result.getExpired() > 0) {
+                counterPendingExpired.add(result.getExpired());
+            }
+            List<PendingPacketBuffer.PendingPacket> released = result.getReleased();
+            if (released.isEmpty()) {
+                continue;
+            }
+
+            List<Ethernet> packets = new ArrayList<>(released.size());
+            long waitMs = 0;
+            for (PendingPacketBuffer.PendingPacket p : released) {
+                packets.add(p.getPacket());
+                waitMs += now - p.getEnqueuedAt();
+            }
+            if (sendPacketsToLastHop(packets, device)) {
+                counterPendingReleased.add(packets.size());
+                counterPendingWaitMs.add(waitMs);
+            }
+        }
     }
 
     private void pushL3Packet(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx, IDevice dstDevice) {
-        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT);
         OFPort inPort = OFMessageUtils.getInPort(pi);
 
         if (pi.getBufferId().equals(OFBufferId.NO_BUFFER)) {
@@ -1825,6 +1998,10 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
     }
 
     private boolean sendPacketToLastHop(Ethernet eth, IDevice destDevice) {
+        return sendPacketsToLastHop(Collections.singletonList(eth), destDevice);
+    }
+
+    private boolean sendPacketsToLastHop(List<Ethernet> packets, IDevice destDevice) {
         SwitchPort trueAp = findTrueAttachmentPoint(destDevice.getAttachmentPoints());
         if (trueAp == null) {
             return false;
@@ -1845,29 +2022,36 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
 
         MacAddress gatewayMac = instance.get().getGatewayMac();
 
-        IPacket outPacket = new Ethernet()
-                .setSourceMACAddress(gatewayMac)
-                .setDestinationMACAddress(destDevice.getMACAddress())
-                .setEtherType(eth.getEtherType())
-                .setVlanID(eth.getVlanID())
-                .setPayload(eth.getPayload());
-
-
         OFFactory factory = sw.getOFFactory();
-        OFPacketOut.Builder packetOut = factory.buildPacketOut();
+        List<OFAction> actions = getFlowModTemplate(sw).getOutputActions(outputPort);
+        List<OFMessage> packetOuts = new ArrayList<>(packets.size());
 
-        List<OFAction> actions = new ArrayList<>();
-        actions.add(factory.actions().output(outputPort, Integer.MAX_VALUE));
-        packetOut.setActions(actions);
+        for (Ethernet eth : packets) {
+            IPacket outPacket = new Ethernet()
+                    .setSourceMACAddress(gatewayMac)
+                    .setDestinationMACAddress(destDevice.getMACAddress())
+                    .setEtherType(eth.getEtherType())
+                    .setVlanID(eth.getVlanID())
+                    .setPayload(eth.getPayload());
 
-        packetOut.setData(outPacket.serialize());
+            OFPacketOut.Builder packetOut = factory.buildPacketOut();
+            packetOut.setActions(actions);
+            packetOut.setData(outPacket.serialize());
 
-        if (log.isTraceEnabled()) {
-            log.trace("Writing PacketOut, switch={}, output port={}, packet-out={}",
-                    new Object[] {sw, outputPort, packetOut.build()});
+            if (log.isTraceEnabled()) {
+                log.trace("Writing PacketOut, switch={}, output port={}, packet-out={}",
+                        new Object[] {sw, outputPort, packetOut.build()});
+            }
+            packetOuts.add(packetOut.build());
         }
-        messageDamper.write(sw, packetOut.build());
-        log.debug("Push packet out the last hop switch (true attachment point)");
+
+        /* Held packets are released together, so write them to the switch in one batch */
+        if (packetOuts.size() == 1) {
+            messageDamper.write(sw, packetOuts.get(0));
+        } else {
+            sw.write(packetOuts);
+        }
+        log.debug("Push {} packet(s) out the last hop switch (true attachment point)", packetOuts.size());
 
         return true;
     }
@@ -0,0 +1,243 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.forwarding;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.floodlightcontroller.devicemanager.IDevice;
+import net.floodlightcontroller.devicemanager.IDeviceService;
+
+import org.projectfloodlight.openflow.types.IPv4Address;
+
+/**
+ * Maps IPv4 addresses to the devices that hold them, so the virtual gateway
+ * can find the destination device of an L3-routed packet without scanning
+ * all devices. The index is kept current from IDeviceListener callbacks.
+ *
+ * In front of the index each virtual gateway has a small neighbor cache of
+ * resolved devices, like the ARP cache of a router. Neighbor entries are
+ * dropped whenever the device changes, so they never hold a device with a
+ * stale attachment point. A neighbor cache that reaches its capacity is
+ * cleared and refilled from the index.
+ *
+ * Lookups are lock-free. Updates are serialized on the index.
+ */
+public class IPv4DeviceIndex {
+    private static final IPv4Address[] NO_ADDRESSES = new IPv4Address[0];
+
+    private final IDeviceService deviceService;
+    private final int neighborCacheSize;
+
+    /* IP -> device key */
+    private final ConcurrentMap<IPv4Address, Long> ipToDevice =
+            new ConcurrentHashMap<IPv4Address, Long>();
+    /* device key -> the IPs indexed for it, so changes can be diffed */
+    private final ConcurrentMap<Long, IPv4Address[]> deviceToIps =
+            new ConcurrentHashMap<Long, IPv4Address[]>();
+    /* gateway name -> (IP -> device) */
+    private final ConcurrentMap<String, ConcurrentMap<IPv4Address, IDevice>> neighborCaches =
+            new ConcurrentHashMap<String, ConcurrentMap<IPv4Address, IDevice>>();
+    /* Bumped on every eviction, so a lookup racing with an update won't cache a stale device */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param deviceService the device service used to resolve device keys
+     * @param neighborCacheSize the maximum number of entries in the neighbor
+     * cache of each gateway
+     */
+    public IPv4DeviceIndex(IDeviceService deviceService, int neighborCacheSize) {
+        this.deviceService = deviceService;
+        this.neighborCacheSize = neighborCacheSize;
+    }
+
+    private static IPv4Address[] addresses(IDevice device) {
+        IPv4Address[] ips = device.getIPv4Addresses();
+        return ips == null ? NO_ADDRESSES : ips;
+    }
+
+    private static boolean hasAddress(IDevice device, IPv4Address ip) {
+        for (IPv4Address a : addresses(device)) {
+            if (a.equals(ip)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Index all devices known to the device service, e.g. on startup
+     */
+    public void addAll() {
+        for (IDevice d : deviceService.getAllDevices()) {
+            updateDevice(d);
+        }
+    }
+
+    /**
+     * Add a new device or update the addresses of a known device
+     * @param device the device
+     */
+    public synchronized void updateDevice(IDevice device) {
+        Long key = device.getDeviceKey();
+        IPv4Address[] newIps = addresses(device);
+        IPv4Address[] oldIps = deviceToIps.get(key);
+
+        if (oldIps != null) {
+            Set<IPv4Address> kept = new HashSet<IPv4Address>(Arrays.asList(newIps));
+            for (IPv4Address ip : oldIps) {
+                if (!kept.contains(ip)) {
+                    ipToDevice.remove(ip, key);
+                }
+                evictNeighbor(ip);
+            }
+        }
+        for (IPv4Address ip : newIps) {
+            ipToDevice.put(ip, key);
+            evictNeighbor(ip);
+        }
+        if (newIps.length == 0) {
+            deviceToIps.remove(key);
+        } else {
+            deviceToIps.put(key, newIps.clone());
+        }
+    }
+
+    /**
+     * Drop neighbor cache entries of a device, e.g. after it moved, so the
+     * next lookup picks up its new attachment points
+     * @param device the device
+     */
+    public void invalidateDevice(IDevice device) {
+        IPv4Address[] ips = deviceToIps.get(device.getDeviceKey());
+        if (ips != null) {
+            for (IPv4Address ip : ips) {
+                evictNeighbor(ip);
+            }
+        }
+    }
+
+    /**
+     * Remove a device from the index
+     * @param device the device
+     */
+    public synchronized void removeDevice(IDevice device) {
+        Long key = device.getDeviceKey();
+        IPv4Address[] ips = deviceToIps.remove(key);
+        if (ips != null) {
+            for (IPv4Address ip : ips) {
+                ipToDevice.remove(ip, key);
+                evictNeighbor(ip);
+            }
+        }
+    }
+
+    private void evictNeighbor(IPv4Address ip) {
+        generation.incrementAndGet();
+        for (ConcurrentMap<IPv4Address, IDevice> cache : neighborCaches.values()) {
+            cache.remove(ip);
+        }
+    }
+
+    /**
+     * Find the device holding an IP address
+     * @param ip the address
+     * @return the device, or null if no known device holds the address
+     */
+    public IDevice lookup(IPv4Address ip) {
+        Long key = ipToDevice.get(ip);
+        if (key == null) {
+            return null;
+        }
+        IDevice device = deviceService.getDevice(key);
+        if (device == null || !hasAddress(device, ip)) {
+            /* Missed update; the device is gone or no longer holds the address */
+            ipToDevice.remove(ip, key);
+            return null;
+        }
+        return device;
+    }
+
+    /**
+     * Find the device holding an IP address, using the neighbor cache of
+     * the given gateway first
+     * @param gatewayName the virtual gateway the packet is routed by
+     * @param ip the address
+     * @return the device, or null if no known device holds the address
+     */
+    public IDevice lookup(String gatewayName, IPv4Address ip) {
+        ConcurrentMap<IPv4Address, IDevice> cache = neighborCaches.get(gatewayName);
+        if (cache == null) {
+            cache = new ConcurrentHashMap<IPv4Address, IDevice>();
+            ConcurrentMap<IPv4Address, IDevice> old = neighborCaches.putIfAbsent(gatewayName, cache);
+            if (old != null) {
+                cache = old;
+            }
+        }
+
+        IDevice device = cache.get(ip);
+        if (device != null) {
+            return device;
+        }
+        long gen = generation.get();
+        device = lookup(ip);
+        if (device != null) {
+            if (cache.size() >= neighborCacheSize) {
+                cache.clear();
+            }
+            cache.put(ip, device);
+            if (generation.get() != gen) {
+                cache.remove(ip, device);
+            }
+        }
+        return device;
+    }
+
+    /**
+     * Drop the neighbor cache of a gateway, e.g. when it is removed or its
+     * interfaces change
+     * @param gatewayName the gateway
+     */
+    public void removeGateway(String gatewayName) {
+        neighborCaches.remove(gatewayName);
+    }
+
+    /**
+     * Drop all neighbor caches
+     */
+    public void clearGateways() {
+        neighborCaches.clear();
+    }
+
+    /**
+     * @return the number of indexed addresses
+     */
+    public int size() {
+        return ipToDevice.size();
+    }
+
+    /**
+     * Remove everything from the index
+     */
+    public synchronized void clear() {
+        ipToDevice.clear();
+        deviceToIps.clear();
+        neighborCaches.clear();
+    }
+}
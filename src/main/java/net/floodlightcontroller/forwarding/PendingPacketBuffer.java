@@ -0,0 +1,273 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.forwarding;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import net.floodlightcontroller.packet.Ethernet;
+
+import org.projectfloodlight.openflow.types.IPv4Address;
+
+/**
+ * Packets held by virtual gateways while the destination is resolved with
+ * ARP, queued by destination IP.
+ *
+ * Each destination queue holds at most maxPerDestination packets, and all
+ * queues of a gateway together hold at most maxPerGateway packets. New
+ * packets beyond either limit are dropped. Packets older than the TTL are
+ * dropped by {@link #expire(long)}, which sweeps at most once per TTL, and
+ * by {@link #drain(IPv4Address, long)}.
+ */
+public class PendingPacketBuffer {
+
+    /**
+     * Outcome of {@link PendingPacketBuffer#add(String, IPv4Address, Ethernet, long)}
+     */
+    public enum AddResult {
+        QUEUED,
+        DROPPED_DESTINATION_FULL,
+        DROPPED_GATEWAY_FULL
+    }
+
+    /**
+     * A packet waiting for its destination to be resolved
+     */
+    public static class PendingPacket {
+        private final String gateway;
+        private final Ethernet packet;
+        private final long enqueuedAt;
+
+        PendingPacket(String gateway, Ethernet packet, long enqueuedAt) {
+            this.gateway = gateway;
+            this.packet = packet;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        public String getGateway() {
+            return gateway;
+        }
+
+        public Ethernet getPacket() {
+            return packet;
+        }
+
+        /**
+         * @return the time the packet was queued, in ms
+         */
+        public long getEnqueuedAt() {
+            return enqueuedAt;
+        }
+    }
+
+    /**
+     * Result of {@link PendingPacketBuffer#drain(IPv4Address, long)}
+     */
+    public static class DrainResult {
+        private final List<PendingPacket> released;
+        private final int expired;
+
+        DrainResult(List<PendingPacket> released, int expired) {
+            this.released = released;
+            this.expired = expired;
+        }
+
+        /**
+         * @return the packets that were still live, in arrival order
+         */
+        public List<PendingPacket> getReleased() {
+            return released;
+        }
+
+        /**
+         * @return the number of packets dropped because they were too old
+         */
+        public int getExpired() {
+            return expired;
+        }
+    }
+
+    private final int maxPerDestination;
+    private final int maxPerGateway;
+    private final long ttlMs;
+
+    private final Map<IPv4Address, ArrayDeque<PendingPacket>> queues =
+            new HashMap<IPv4Address, ArrayDeque<PendingPacket>>();
+    private final Map<String, Integer> gatewayCounts = new HashMap<String, Integer>();
+    private int size;
+    private long lastSweep;
+
+    /**
+     * @param maxPerDestination the maximum number of packets queued for one IP
+     * @param maxPerGateway the maximum number of packets queued by one gateway
+     * @param ttlMs how long a packet may wait, in ms
+     */
+    public PendingPacketBuffer(int maxPerDestination, int maxPerGateway, long ttlMs) {
+        this.maxPerDestination = maxPerDestination;
+        this.maxPerGateway = maxPerGateway;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Queue a packet until its destination is resolved
+     * @param gateway the name of the gateway routing the packet
+     * @param dst the destination IP
+     * @param packet the packet
+     * @param now the current time in ms
+     * @return whether the packet was queued or why it was dropped
+     */
+    public synchronized AddResult add(String gateway, IPv4Address dst, Ethernet packet, long now) {
+        Integer count = gatewayCounts.get(gateway);
+        if (count != null && count >= maxPerGateway) {
+            return AddResult.DROPPED_GATEWAY_FULL;
+        }
+        ArrayDeque<PendingPacket> queue = queues.get(dst);
+        if (queue == null) {
+            queue = new ArrayDeque<PendingPacket>();
+            queues.put(dst, queue);
+        } else if (queue.size() >= maxPerDestination) {
+            return AddResult.DROPPED_DESTINATION_FULL;
+        }
+        queue.addLast(new PendingPacket(gateway, packet, now));
+        gatewayCounts.put(gateway, count == null ? 1 : count + 1);
+        size++;
+        return AddResult.QUEUED;
+    }
+
+    /**
+     * Remove all packets queued for a destination
+     * @param dst the destination IP
+     * @param now the current time in ms
+     * @return the packets that are still live, and how many had expired
+     */
+    public synchronized DrainResult drain(IPv4Address dst, long now) {
+        ArrayDeque<PendingPacket> queue = queues.remove(dst);
+        if (queue == null) {
+            return new DrainResult(Collections.<PendingPacket>emptyList(), 0);
+        }
+        List<PendingPacket> released = new ArrayList<PendingPacket>(queue.size());
+        int expired = 0;
+        for (PendingPacket p : queue) {
+            release(p);
+            if (now - p.enqueuedAt > ttlMs) {
+                expired++;
+            } else {
+                released.add(p);
+            }
+        }
+        return new DrainResult(released, expired);
+    }
+
+    /**
+     * Drop packets that have waited longer than the TTL. Does nothing if
+     * the last sweep was less than a TTL ago, so it is cheap to call on
+     * every new packet.
+     * @param now the current time in ms
+     * @return the number of packets dropped
+     */
+    public synchronized int expire(long now) {
+        if (now - lastSweep < ttlMs) {
+            return 0;
+        }
+        lastSweep = now;
+        int expired = 0;
+        Iterator<ArrayDeque<PendingPacket>> it = queues.values().iterator();
+        while (it.hasNext()) {
+            ArrayDeque<PendingPacket> queue = it.next();
+            /* queues are in arrival order, so expired packets are at the head */
+            while (!queue.isEmpty() && now - queue.peekFirst().enqueuedAt > ttlMs) {
+                release(queue.pollFirst());
+                expired++;
+            }
+            if (queue.isEmpty()) {
+                it.remove();
+            }
+        }
+        return expired;
+    }
+
+    private void release(PendingPacket p) {
+        Integer count = gatewayCounts.get(p.gateway);
+        if (count == null || count <= 1) {
+            gatewayCounts.remove(p.gateway);
+        } else {
+            gatewayCounts.put(p.gateway, count - 1);
+        }
+        size--;
+    }
+
+    /**
+     * Drop all packets queued by a gateway, e.g. when it is removed
+     * @param gateway the gateway name
+     * @return the number of packets dropped
+     */
+    public synchronized int removeGateway(String gateway) {
+        if (!gatewayCounts.containsKey(gateway)) {
+            return 0;
+        }
+        int removed = 0;
+        Iterator<ArrayDeque<PendingPacket>> it = queues.values().iterator();
+        while (it.hasNext()) {
+            ArrayDeque<PendingPacket> queue = it.next();
+            Iterator<PendingPacket> pit = queue.iterator();
+            while (pit.hasNext()) {
+                PendingPacket p = pit.next();
+                if (p.gateway.equals(gateway)) {
+                    pit.remove();
+                    release(p);
+                    removed++;
+                }
+            }
+            if (queue.isEmpty()) {
+                it.remove();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return the number of queued packets
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param gateway the gateway name
+     * @return the number of packets queued by the gateway
+     */
+    public synchronized int size(String gateway) {
+        Integer count = gatewayCounts.get(gateway);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Drop all queued packets
+     */
+    public synchronized void clear() {
+        queues.clear();
+        gatewayCounts.clear();
+        size = 0;
+    }
+
+    public long getTtlMs() {
+        return ttlMs;
+    }
+}
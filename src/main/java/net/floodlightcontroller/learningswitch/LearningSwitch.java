@@ -49,12 +49,12 @@ import org.projectfloodlight.openflow.protocol.instruction.OFInstructionApplyAct
 import org.projectfloodlight.openflow.protocol.match.Match;
 import org.projectfloodlight.openflow.protocol.match.MatchField;
 import org.projectfloodlight.openflow.types.*;
-import org.projectfloodlight.openflow.util.LRULinkedHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 // paag: with IControllerCompletionListener that logswhen an input event has been consumed
 public class LearningSwitch
@@ -71,7 +71,7 @@ implements IFloodlightModule, ILearningSwitchService, IOFMessageListener, IContr
 
 
 	// Stores the learned state for each switch
-	protected Map<IOFSwitch, Map<MacVlanPair, OFPort>> macVlanToSwitchPortMap;
+	protected ConcurrentMap<IOFSwitch, MacVlanPortTable> macVlanToSwitchPortMap;
 
 	// flow-mod - for use in the cookie
 	public static final int LEARNING_SWITCH_APP_ID = 1;
@@ -88,6 +88,7 @@ implements IFloodlightModule, ILearningSwitchService, IOFMessageListener, IContr
 
 	// for managing our map sizes
 	protected static final int MAX_MACS_PER_SWITCH  = 1000;
+	protected int maxMacsPerSwitch = MAX_MACS_PER_SWITCH;
 
 	// normally, setup reverse flow as well. Disable only for using cbench for comparison with NOX etc.
 	protected static final boolean LEARNING_SWITCH_REVERSE_FLOW = true;
@@ -116,7 +117,7 @@ implements IFloodlightModule, ILearningSwitchService, IOFMessageListener, IContr
 	 * @param portVal The switchport that the host is on
 	 */
 	protected void addToPortMap(IOFSwitch sw, MacAddress mac, VlanVid vlan, OFPort portVal) {
-		Map<MacVlanPair, OFPort> swMap = macVlanToSwitchPortMap.get(sw);
+		MacVlanPortTable swMap = macVlanToSwitchPortMap.get(sw);
 
 		if (vlan == VlanVid.FULL_MASK || vlan == null) {
 			vlan = VlanVid.ofVlan(0);
@@ -124,10 +125,13 @@ implements IFloodlightModule, ILearningSwitchService, IOFMessageListener, IContr
 
 		if (swMap == null) {
 			// May be accessed by REST API so we need to make it thread safe
-			swMap = Collections.synchronizedMap(new LRULinkedHashMap<MacVlanPair, OFPort>(MAX_MACS_PER_SWITCH));
-			macVlanToSwitchPortMap.put(sw, swMap);
+			swMap = new MacVlanPortTable(maxMacsPerSwitch);
+			MacVlanPortTable existing = macVlanToSwitchPortMap.putIfAbsent(sw, swMap);
+			if (existing != null) {
+				swMap = existing;
+			}
 		}
-		swMap.put(new MacVlanPair(mac, vlan), portVal);
+		swMap.put(MacVlanPortTable.packKey(mac.getLong(), vlan.getVlan()), portVal.getPortNumber());
 	}
 
 	/**
@@ -141,9 +145,9 @@ implements IFloodlightModule, ILearningSwitchService, IOFMessageListener, IContr
 			vlan = VlanVid.ofVlan(0);
 		}
 
-		Map<MacVlanPair, OFPort> swMap = macVlanToSwitchPortMap.get(sw);
+		MacVlanPortTable swMap = macVlanToSwitchPortMap.get(sw);
 		if (swMap != null) {
-			swMap.remove(new MacVlanPair(mac, vlan));
+			swMap.remove(MacVlanPortTable.packKey(mac.getLong(), vlan.getVlan()));
 		}
 	}
 
@@ -158,9 +162,12 @@ implements IFloodlightModule, ILearningSwitchService, IOFMessageListener, IContr
 		if (vlan == VlanVid.FULL_MASK || vlan == null) {
 			vlan = VlanVid.ofVlan(0);
 		}
-		Map<MacVlanPair, OFPort> swMap = macVlanToSwitchPortMap.get(sw);
+		MacVlanPortTable swMap = macVlanToSwitchPortMap.get(sw);
 		if (swMap != null) {
-			return swMap.get(new MacVlanPair(mac, vlan));
+			int port = swMap.get(MacVlanPortTable.packKey(mac.getLong(), vlan.getVlan()));
+			if (port != MacVlanPortTable.NO_PORT) {
+				return OFPort.of(port);
+			}
 		}
 
 		// if none found
@@ -179,15 +186,31 @@ implements IFloodlightModule, ILearningSwitchService, IOFMessageListener, IContr
 	 * @param sw The switch to clear the mapping for
 	 */
 	public void clearLearnedTable(IOFSwitch sw) {
-		Map<MacVlanPair, OFPort> swMap = macVlanToSwitchPortMap.get(sw);
+		MacVlanPortTable swMap = macVlanToSwitchPortMap.get(sw);
 		if (swMap != null) {
 			swMap.clear();
 		}
 	}
 
+	/**
+	 * Builds a snapshot of the learned tables. This allocates a map entry
+	 * per learned host, so it is meant for the REST API only.
+	 */
 	@Override
-	public synchronized Map<IOFSwitch, Map<MacVlanPair, OFPort>> getTable() {
-		return macVlanToSwitchPortMap;
+	public Map<IOFSwitch, Map<MacVlanPair, OFPort>> getTable() {
+		Map<IOFSwitch, Map<MacVlanPair, OFPort>> table = new HashMap<IOFSwitch, Map<MacVlanPair, OFPort>>();
+		for (Map.Entry<IOFSwitch, MacVlanPortTable> e : macVlanToSwitchPortMap.entrySet()) {
+			final Map<MacVlanPair, OFPort> swMap = new HashMap<MacVlanPair, OFPort>();
+			e.getValue().forEach(new MacVlanPortTable.EntryVisitor() {
+				@Override
+				public void visit(long key, int port) {
+					swMap.put(new MacVlanPair(MacAddress.of(MacVlanPortTable.unpackMac(key)),
+							VlanVid.ofVlan(MacVlanPortTable.unpackVlan(key))), OFPort.of(port));
+				}
+			});
+			table.put(e.getKey(), swMap);
+		}
+		return table;
 	}
 
 	/**
@@ -542,7 +565,7 @@ implements IFloodlightModule, ILearningSwitchService, IOFMessageListener, IContr
 
 	@Override
 	public void init(FloodlightModuleContext context) throws FloodlightModuleException {
-		macVlanToSwitchPortMap = new ConcurrentHashMap<IOFSwitch, Map<MacVlanPair, OFPort>>();
+		macVlanToSwitchPortMap = new ConcurrentHashMap<IOFSwitch, MacVlanPortTable>();
 		floodlightProviderService = context.getServiceImpl(IFloodlightProviderService.class);
 		debugCounterService = context.getServiceImpl(IDebugCounterService.class);
 		restApiService = context.getServiceImpl(IRestApiService.class);
@@ -587,9 +610,24 @@ implements IFloodlightModule, ILearningSwitchService, IOFMessageListener, IContr
 					"using default of {}",
 					FLOWMOD_PRIORITY);
 		}
+		try {
+			String maxMacs = configOptions.get("maxmacsperswitch");
+			if (maxMacs != null) {
+				maxMacsPerSwitch = Integer.parseInt(maxMacs);
+				if (maxMacsPerSwitch <= 0) {
+					throw new NumberFormatException("must be positive");
+				}
+			}
+		} catch (NumberFormatException e) {
+			maxMacsPerSwitch = MAX_MACS_PER_SWITCH;
+			log.warn("Error parsing max MACs per switch, " +
+					"using default of {}",
+					MAX_MACS_PER_SWITCH);
+		}
 		log.debug("FlowMod idle timeout set to {} seconds", FLOWMOD_DEFAULT_IDLE_TIMEOUT);
 		log.debug("FlowMod hard timeout set to {} seconds", FLOWMOD_DEFAULT_HARD_TIMEOUT);
 		log.debug("FlowMod priority set to {}", FLOWMOD_PRIORITY);
+		log.debug("Max MACs per switch set to {}", maxMacsPerSwitch);
 
 		debugCounterService.registerModule(this.getName());
 		counterFlowMod = debugCounterService.registerCounter(this.getName(), "flow-mods-written", "Flow mods written to switches by LearningSwitch", MetaData.WARN);
@@ -0,0 +1,297 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.learningswitch;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A fixed-capacity MAC/VLAN -> port table for a single switch.
+ *
+ * Keys are the 48-bit MAC address and the 12-bit VLAN packed into a single
+ * long (see {@link #packKey(long, int)}), so lookups do not allocate. The
+ * table uses open addressing with linear probing over primitive arrays.
+ * Reads are optimistic and normally do not take a lock; writers are
+ * serialized. Once the table holds its capacity, a CLOCK sweep evicts an
+ * entry that has not been looked up since the hand last passed it.
+ */
+public class MacVlanPortTable {
+    /** Marks a slot as used so that the packed key 0 can be stored */
+    private static final long USED = 1L << 63;
+    private static final long MAC_MASK = 0xFFFFFFFFFFFFL;
+    private static final int VLAN_MASK = 0xFFF;
+
+    /** Returned by {@link #get(long)} if the key is not in the table */
+    public static final int NO_PORT = -1;
+
+    private final int capacity;
+    private final int mask;
+    private final long[] keys;
+    private final int[] ports;
+    /** CLOCK reference bits. Set racily by readers, which is harmless. */
+    private final boolean[] referenced;
+    private final StampedLock lock = new StampedLock();
+
+    private int size;
+    private int hand;
+
+    /**
+     * Create a new table
+     * @param capacity the maximum number of entries the table holds
+     */
+    public MacVlanPortTable(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive");
+        this.capacity = capacity;
+        // keep the load factor at or below 0.5 so probe chains stay short
+        int slots = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.mask = slots - 1;
+        this.keys = new long[slots];
+        this.ports = new int[slots];
+        this.referenced = new boolean[slots];
+    }
+
+    /**
+     * Pack a MAC address and VLAN into a table key
+     * @param mac the MAC address as a long (only the lower 48 bits are used)
+     * @param vlan the VLAN id (only the lower 12 bits are used)
+     * @return the packed key
+     */
+    public static long packKey(long mac, int vlan) {
+        return (mac & MAC_MASK) | ((long) (vlan & VLAN_MASK) << 48);
+    }
+
+    /**
+     * @param key a packed key
+     * @return the MAC address part of the key
+     */
+    public static long unpackMac(long key) {
+        return key & MAC_MASK;
+    }
+
+    /**
+     * @param key a packed key
+     * @return the VLAN part of the key
+     */
+    public static int unpackVlan(long key) {
+        return (int) (key >>> 48) & VLAN_MASK;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Find the slot for the given tagged key, or the empty slot that ends
+     * its probe chain.
+     */
+    private int findSlot(long tagged) {
+        int i = hash(tagged) & mask;
+        while (true) {
+            long k = keys[i];
+            if (k == tagged || k == 0)
+                return i;
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Look up the port for a key
+     * @param key the packed key
+     * @return the port number, or {@link #NO_PORT} if none
+     */
+    public int get(long key) {
+        long tagged = key | USED;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            int i = findSlot(tagged);
+            boolean found = keys[i] == tagged;
+            int port = ports[i];
+            if (lock.validate(stamp)) {
+                if (!found)
+                    return NO_PORT;
+                referenced[i] = true;
+                return port;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            int i = findSlot(tagged);
+            if (keys[i] != tagged)
+                return NO_PORT;
+            referenced[i] = true;
+            return ports[i];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Add or update the port for a key, evicting another entry if the table
+     * is full
+     * @param key the packed key
+     * @param port the port number
+     */
+    public void put(long key, int port) {
+        long tagged = key | USED;
+        long stamp = lock.writeLock();
+        try {
+            int i = findSlot(tagged);
+            if (keys[i] == tagged) {
+                ports[i] = port;
+                referenced[i] = true;
+                return;
+            }
+            if (size >= capacity) {
+                evict();
+                i = findSlot(tagged);
+            }
+            keys[i] = tagged;
+            ports[i] = port;
+            referenced[i] = false;
+            size++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove a key from the table
+     * @param key the packed key
+     * @return true if the key was present
+     */
+    public boolean remove(long key) {
+        long tagged = key | USED;
+        long stamp = lock.writeLock();
+        try {
+            int i = findSlot(tagged);
+            if (keys[i] != tagged)
+                return false;
+            deleteSlot(i);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove all entries from the table
+     */
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = 0;
+                referenced[i] = false;
+            }
+            size = 0;
+            hand = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the number of entries in the table
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return the maximum number of entries in the table
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Receives the entries of the table, see {@link #forEach(EntryVisitor)}
+     */
+    public interface EntryVisitor {
+        void visit(long key, int port);
+    }
+
+    /**
+     * Visit a consistent snapshot of all entries in the table. The visitor
+     * is called while holding the read lock, so it must not modify the table.
+     * @param visitor the visitor
+     */
+    public void forEach(EntryVisitor visitor) {
+        long stamp = lock.readLock();
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0)
+                    visitor.visit(keys[i] & ~USED, ports[i]);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Run the CLOCK hand until an unreferenced entry is found and evict it.
+     * Must be called with the write lock held and a non-empty table.
+     */
+    private void evict() {
+        while (true) {
+            int i = hand;
+            hand = (hand + 1) & mask;
+            if (keys[i] == 0)
+                continue;
+            if (referenced[i]) {
+                referenced[i] = false;
+                continue;
+            }
+            deleteSlot(i);
+            return;
+        }
+    }
+
+    /**
+     * Delete the entry in slot i, shifting later entries of the probe chain
+     * back so no tombstones are needed. Must be called with the write lock
+     * held.
+     */
+    private void deleteSlot(int i) {
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            long k = keys[j];
+            if (k == 0)
+                break;
+            int home = hash(k) & mask;
+            // move k into the hole at i if its home slot is not in (i, j]
+            boolean between = (i <= j) ? (i < home && home <= j)
+                                       : (i < home || home <= j);
+            if (!between) {
+                keys[i] = k;
+                ports[i] = ports[j];
+                referenced[i] = referenced[j];
+                i = j;
+            }
+        }
+        keys[i] = 0;
+        referenced[i] = false;
+        size--;
+    }
+}
@@ -24,7 +24,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -35,6 +34,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -192,6 +192,7 @@ IFloodlightModule, IInfoProvider {
 	// links
 
 	protected LLDPTLV controllerTLV;
+	protected long controllerId; /* the value of controllerTLV */
 	protected ReentrantReadWriteLock lock;
 	int lldpTimeCount = 0;
 
@@ -227,9 +228,9 @@ IFloodlightModule, IInfoProvider {
 
 	/*
 	 * topology aware components are called in the order they were added to the
-	 * the array
+	 * the array, which may be done from any thread
 	 */
-	protected ArrayList<ILinkDiscoveryListener> linkDiscoveryAware;
+	protected List<ILinkDiscoveryListener> linkDiscoveryAware;
 	protected BlockingQueue<LDUpdate> updates;
 	protected Thread updatesThread;
 
@@ -475,12 +476,7 @@ IFloodlightModule, IInfoProvider {
 
 	@Override
 	public ILinkDiscovery.LinkType getLinkType(Link lt, LinkInfo info) {
-		if (info.getUnicastValidTime() != null) {
-			return ILinkDiscovery.LinkType.DIRECT_LINK;
-		} else if (info.getMulticastValidTime() != null) {
-			return ILinkDiscovery.LinkType.MULTIHOP_LINK;
-		}
-		return ILinkDiscovery.LinkType.INVALID_LINK;
+		return info.getLinkType();
 	}
 
 	@Override
@@ -589,7 +585,7 @@ IFloodlightModule, IInfoProvider {
 	protected Command handlePacketIn(DatapathId sw, OFPacketIn pi,
 			FloodlightContext cntx) {
 		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx,
-				IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+				IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT);
 		OFPort inPort = (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT));
 		if (eth.getPayload() instanceof BSN) {
 			BSN bsn = (BSN) eth.getPayload();
@@ -662,15 +658,13 @@ IFloodlightModule, IInfoProvider {
 			return Command.STOP;
 		}
 
-		long myId = ByteBuffer.wrap(controllerTLV.getValue()).getLong();
+		long myId = controllerId;
 		long otherId = 0;
 		boolean myLLDP = false;
 		Boolean isReverse = null;
 
-		ByteBuffer portBB = ByteBuffer.wrap(lldp.getPortId().getValue());
-		portBB.position(1);
-
-		OFPort remotePort = OFPort.of(portBB.getShort());
+		byte[] portId = lldp.getPortId().getValue();
+		OFPort remotePort = OFPort.of((short) (((portId[1] & 0xff) << 8) | (portId[2] & 0xff)));
 		IOFSwitch remoteSwitch = null;
 		long timestamp = 0;
 
@@ -681,22 +675,20 @@ IFloodlightModule, IInfoProvider {
 					&& lldptlv.getValue()[1] == 0x26
 					&& lldptlv.getValue()[2] == (byte) 0xe1
 					&& lldptlv.getValue()[3] == 0x0) {
-				ByteBuffer dpidBB = ByteBuffer.wrap(lldptlv.getValue());
-				remoteSwitch = switchService.getSwitch(DatapathId.of(dpidBB.getLong(4)));
+				remoteSwitch = switchService.getSwitch(DatapathId.of(getLong(lldptlv.getValue(), 4)));
 			} else if (lldptlv.getType() == 127 && lldptlv.getLength() == 12
 					&& lldptlv.getValue()[0] == 0x0
 					&& lldptlv.getValue()[1] == 0x26
 					&& lldptlv.getValue()[2] == (byte) 0xe1
 					&& lldptlv.getValue()[3] == 0x01) { /* 0x01 for timestamp */
-				ByteBuffer tsBB = ByteBuffer.wrap(lldptlv.getValue()); /* skip OpenFlow OUI (4 bytes above) */
 				long swLatency = iofSwitch.getLatency().getValue();
-				timestamp = tsBB.getLong(4); /* include the RX switch latency to "subtract" it */
+				timestamp = getLong(lldptlv.getValue(), 4); /* skip OpenFlow OUI (4 bytes above); include the RX switch latency to "subtract" it */
 				if (log.isTraceEnabled()) {
 					log.trace("RECEIVED LLDP LATENCY TLV: Got timestamp of {}; Switch {} latency of {}", new Object[] { timestamp, iofSwitch.getId(), iofSwitch.getLatency().getValue() }); 
 				}
 				timestamp = timestamp + swLatency;
 			} else if (lldptlv.getType() == 12 && lldptlv.getLength() == 8) {
-				otherId = ByteBuffer.wrap(lldptlv.getValue()).getLong();
+				otherId = getLong(lldptlv.getValue(), 0);
 				if (myId == otherId) myLLDP = true;
 			} else if (lldptlv.getType() == TLV_DIRECTION_TYPE
 					&& lldptlv.getLength() == TLV_DIRECTION_LENGTH) {
@@ -784,33 +776,24 @@ IFloodlightModule, IInfoProvider {
 			return Command.STOP;
 
 		// Continue only if link is allowed.
-		Date lastLldpTime = null;
-		Date lastBddpTime = null;
-
-		Date firstSeenTime = new Date(System.currentTimeMillis());
-
-		if (isStandard) {
-			lastLldpTime = new Date(firstSeenTime.getTime());
-		} else {
-			lastBddpTime = new Date(firstSeenTime.getTime());
-		}
+		long firstSeenTime = System.currentTimeMillis();
+		long lastLldpTime = isStandard ? firstSeenTime : LinkInfo.NONE;
+		long lastBddpTime = isStandard ? LinkInfo.NONE : firstSeenTime;
 
-		LinkInfo newLinkInfo = new LinkInfo(firstSeenTime, lastLldpTime, lastBddpTime);
-
-		addOrUpdateLink(lt, newLinkInfo);
+		addOrUpdateLink(lt, firstSeenTime, lastLldpTime, lastBddpTime);
 
 		// Check if reverse link exists.
 		// If it doesn't exist and if the forward link was seen
 		// first seen within a small interval, send probe on the
 		// reverse link.
-		newLinkInfo = links.get(lt);
+		LinkInfo newLinkInfo = links.get(lt);
 		if (newLinkInfo != null && isStandard && isReverse == false) {
 			Link reverseLink = new Link(lt.getDst(), lt.getDstPort(),
 					lt.getSrc(), lt.getSrcPort(), U64.ZERO); /* latency not used; not important what the value is, since it's intentionally not in equals() */
 			LinkInfo reverseInfo = links.get(reverseLink);
 			if (reverseInfo == null) {
 				// the reverse link does not exist.
-				if (newLinkInfo.getFirstSeenTime().getTime() > System.currentTimeMillis()
+				if (newLinkInfo.getFirstSeenTimeMillis() > System.currentTimeMillis()
 						- LINK_TIMEOUT) {
 					log.debug("Sending reverse LLDP for link {}", lt);
 					this.sendDiscoveryMessage(lt.getDst(), lt.getDstPort(),
@@ -826,10 +809,8 @@ IFloodlightModule, IInfoProvider {
 					lt.getSrc(), lt.getSrcPort(), latency);
 
 			// srcPortState and dstPort state are reversed.
-			LinkInfo reverseInfo = new LinkInfo(firstSeenTime, lastLldpTime,
+			addOrUpdateLink(reverseLink, firstSeenTime, lastLldpTime,
 					lastBddpTime);
-
-			addOrUpdateLink(reverseLink, reverseInfo);
 		}
 
 		// Queue removal of the node ports from the quarantine and maintenance queues.
@@ -1312,6 +1293,17 @@ IFloodlightModule, IInfoProvider {
 	 * @return true if update occurred; false if no update should be dispatched
 	 */
 	protected boolean updateLink(@Nonnull Link lk, @Nonnull LinkInfo existingInfo, @Nonnull LinkInfo newInfo) {
+		return updateLink(lk, existingInfo, newInfo.getUnicastValidTimeMillis(),
+				newInfo.getMulticastValidTimeMillis());
+	}
+
+	/**
+	 * Same as {@link #updateLink(Link, LinkInfo, LinkInfo)}, with the
+	 * updated time stamps, {@link LinkInfo#NONE} if not set, in place
+	 * of a LinkInfo.
+	 */
+	protected boolean updateLink(@Nonnull Link lk, @Nonnull LinkInfo existingInfo,
+			long unicastValidTime, long multicastValidTime) {
 		boolean linkChanged = false;
 		boolean ignoreBDDP_haveLLDPalready = false;
 		
@@ -1325,14 +1317,14 @@ IFloodlightModule, IInfoProvider {
 		 * out already (null in existing LinkInfo). Otherwise, we'll flap
 		 * between mulitcast and unicast links.
 		 */
-		if (existingInfo.getMulticastValidTime() == null && newInfo.getMulticastValidTime() != null) {
-			if (existingInfo.getUnicastValidTime() == null) { /* unicast must be null to go to multicast */
+		if (existingInfo.getMulticastValidTimeMillis() == LinkInfo.NONE && multicastValidTime != LinkInfo.NONE) {
+			if (existingInfo.getUnicastValidTimeMillis() == LinkInfo.NONE) { /* unicast must be null to go to multicast */
 				log.debug("Link is BDDP. Changed.");
 				linkChanged = true; /* detected BDDP */
 			} else {
 				ignoreBDDP_haveLLDPalready = true;
 			}
-		} else if (existingInfo.getUnicastValidTime() == null && newInfo.getUnicastValidTime() != null) {
+		} else if (existingInfo.getUnicastValidTimeMillis() == LinkInfo.NONE && unicastValidTime != LinkInfo.NONE) {
 			log.debug("Link is LLDP. Changed.");
 			linkChanged = true; /* detected LLDP */
 		}
@@ -1345,10 +1337,10 @@ IFloodlightModule, IInfoProvider {
 		 * We want to overwrite an existing LLDP/BDDP time stamp with null if it's
 		 * still valid.
 		 */
-		if (newInfo.getUnicastValidTime() != null) {
-			existingInfo.setUnicastValidTime(newInfo.getUnicastValidTime());
-		} else if (newInfo.getMulticastValidTime() != null) {
-			existingInfo.setMulticastValidTime(newInfo.getMulticastValidTime());
+		if (unicastValidTime != LinkInfo.NONE) {
+			existingInfo.setUnicastValidTimeMillis(unicastValidTime);
+		} else if (multicastValidTime != LinkInfo.NONE) {
+			existingInfo.setMulticastValidTimeMillis(multicastValidTime);
 		}	
 
 		/*
@@ -1373,6 +1365,29 @@ IFloodlightModule, IInfoProvider {
 	}
 
 	protected boolean addOrUpdateLink(Link lt, LinkInfo newInfo) {
+		return addOrUpdateLink(lt, newInfo.getFirstSeenTimeMillis(),
+				newInfo.getUnicastValidTimeMillis(),
+				newInfo.getMulticastValidTimeMillis(), newInfo);
+	}
+
+	/**
+	 * Add a link, or update the time stamps and latency of a known one.
+	 * A LinkInfo is only created for a new link, so refreshing a known
+	 * link doesn't allocate one.
+	 * @param lt the link, with its observed latency
+	 * @param firstSeenTime the time the link was seen
+	 * @param unicastValidTime the time of the LLDP, or {@link LinkInfo#NONE}
+	 * @param multicastValidTime the time of the BDDP, or {@link LinkInfo#NONE}
+	 * @return true if the link was added or changed
+	 */
+	protected boolean addOrUpdateLink(Link lt, long firstSeenTime,
+			long unicastValidTime, long multicastValidTime) {
+		return addOrUpdateLink(lt, firstSeenTime, unicastValidTime,
+				multicastValidTime, null);
+	}
+
+	private boolean addOrUpdateLink(Link lt, long firstSeenTime,
+			long unicastValidTime, long multicastValidTime, LinkInfo newInfo) {
 		boolean linkChanged = false;
 
 		lock.writeLock().lock();
@@ -1383,21 +1398,22 @@ IFloodlightModule, IInfoProvider {
 			 * without having to conduct a deep, potentially expensive
 			 * copy each time a link is updated.
 			 */
-			LinkInfo existingInfo = null;
-			if (links.get(lt) == null) {
+			LinkInfo existingInfo = links.get(lt);
+			if (existingInfo == null) {
+				if (newInfo == null) {
+					newInfo = new LinkInfo(firstSeenTime, unicastValidTime, multicastValidTime);
+				}
 				links.put(lt, newInfo); /* Only put if doesn't exist or null value */
-			} else {
-				existingInfo = links.get(lt);
 			}
 
 			/* Update existing LinkInfo with most recent time stamp */
-			if (existingInfo != null && existingInfo.getFirstSeenTime().before(newInfo.getFirstSeenTime())) {
-				existingInfo.setFirstSeenTime(newInfo.getFirstSeenTime());
+			if (existingInfo != null && existingInfo.getFirstSeenTimeMillis() < firstSeenTime) {
+				existingInfo.setFirstSeenTimeMillis(firstSeenTime);
 			}
 
 			if (log.isTraceEnabled()) {
 				log.trace("addOrUpdateLink: {} {}", lt,
-						(newInfo.getMulticastValidTime() != null) ? "multicast" : "unicast");
+						(multicastValidTime != LinkInfo.NONE) ? "multicast" : "unicast");
 			}
 
 			UpdateOperation updateOperation = null;
@@ -1415,10 +1431,10 @@ IFloodlightModule, IInfoProvider {
 					log.debug("Inter-switch link detected: {}", lt);
 				}
 			} else {
-				linkChanged = updateLink(lt, existingInfo, newInfo);
+				linkChanged = updateLink(lt, existingInfo, unicastValidTime, multicastValidTime);
 				if (linkChanged) {
 					updateOperation = UpdateOperation.LINK_UPDATED;
-					LinkType linkType = getLinkType(lt, newInfo);
+					LinkType linkType = getLinkType(lt, existingInfo);
 					if (linkType == ILinkDiscovery.LinkType.DIRECT_LINK) {
 						log.debug("Inter-switch link updated: {}", lt);
 					}
@@ -1430,7 +1446,7 @@ IFloodlightModule, IInfoProvider {
 				updates.add(new LDUpdate(lt.getSrc(), lt.getSrcPort(),
 						lt.getDst(), lt.getDstPort(),
 						lt.getLatency(),
-						getLinkType(lt, newInfo),
+						getLinkType(lt, existingInfo != null ? existingInfo : newInfo),
 						updateOperation));
 				/* Update link structure (FIXME shouldn't have to do this, since it should be the same object) */
 				Iterator<Entry<Link, LinkInfo>> it = links.entrySet().iterator();
@@ -1446,7 +1462,7 @@ IFloodlightModule, IInfoProvider {
 			// Write changes to storage. This will always write the updated
 			// valid time, plus the port states if they've changed (i.e. if
 			// they weren't set to null in the previous block of code.
-			writeLinkToStorage(lt, newInfo);
+			writeLinkToStorage(lt, existingInfo != null ? existingInfo : newInfo);
 			
 		} finally {
 			lock.writeLock().unlock();
@@ -1589,16 +1605,16 @@ IFloodlightModule, IInfoProvider {
 				LinkInfo info = entry.getValue();
 
 				/* Timeout the unicast and multicast LLDP valid times independently. */
-				if ((info.getUnicastValidTime() != null)
-						&& (info.getUnicastValidTime().getTime()
+				if ((info.getUnicastValidTimeMillis() != LinkInfo.NONE)
+						&& (info.getUnicastValidTimeMillis()
 								+ (this.LINK_TIMEOUT * 1000) < curTime)) {
 					unicastTimedOut = true;
-					info.setUnicastValidTime(null);
+					info.setUnicastValidTimeMillis(LinkInfo.NONE);
 				}
-				if ((info.getMulticastValidTime() != null)
-						&& (info.getMulticastValidTime().getTime()
+				if ((info.getMulticastValidTimeMillis() != LinkInfo.NONE)
+						&& (info.getMulticastValidTimeMillis()
 								+ (this.LINK_TIMEOUT * 1000) < curTime)) {
-					info.setMulticastValidTime(null);
+					info.setMulticastValidTimeMillis(LinkInfo.NONE);
 				}
 				/* 
 				 * Add to the erase list only if the unicast time is null
@@ -1607,8 +1623,8 @@ IFloodlightModule, IInfoProvider {
 				 * null (meaning it just timed out), then we transition
 				 * from unicast to multicast.
 				 */
-				if (info.getUnicastValidTime() == null 
-						&& info.getMulticastValidTime() == null) {
+				if (info.getUnicastValidTimeMillis() == LinkInfo.NONE 
+						&& info.getMulticastValidTimeMillis() == LinkInfo.NONE) {
 					eraseList.add(entry.getKey());
 				} else if (unicastTimedOut) {
 					/* Just moved from unicast to multicast. */
@@ -1666,6 +1682,19 @@ IFloodlightModule, IInfoProvider {
 		this.controllerTLV = new LLDPTLV().setType((byte) 0x0c)
 				.setLength((short) controllerTLVValue.length)
 				.setValue(controllerTLVValue);
+		this.controllerId = result;
+	}
+
+	/**
+	 * Read a big-endian long, as ByteBuffer would, without wrapping
+	 * the array.
+	 */
+	private static long getLong(byte[] b, int offset) {
+		long l = 0;
+		for (int i = offset; i < offset + 8; i++) {
+			l = (l << 8) | (b[i] & 0xff);
+		}
+		return l;
 	}
 
 	//******************
@@ -2003,7 +2032,7 @@ IFloodlightModule, IInfoProvider {
 		this.autoPortFastFeature = AUTOPORTFAST_DEFAULT;
 
 		// We create this here because there is no ordering guarantee
-		this.linkDiscoveryAware = new ArrayList<ILinkDiscoveryListener>();
+		this.linkDiscoveryAware = new CopyOnWriteArrayList<ILinkDiscoveryListener>();
 		this.lock = new ReentrantReadWriteLock();
 		this.updates = new LinkedBlockingQueue<LDUpdate>();
 		this.links = new HashMap<Link, LinkInfo>();
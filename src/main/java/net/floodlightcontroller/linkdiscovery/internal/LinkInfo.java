@@ -15,7 +15,6 @@
 
 package net.floodlightcontroller.linkdiscovery.internal;
 
-import java.util.ArrayDeque;
 import java.util.Date;
 
 import org.projectfloodlight.openflow.types.U64;
@@ -26,35 +25,64 @@ import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LinkType;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+/**
+ * The state link discovery keeps for a link. It is updated in place by
+ * every discovery message received on the link, so the times are kept in
+ * milliseconds since the epoch, {@link #NONE} if not set, and observed
+ * latencies in a fixed-size ring, to not allocate on each update.
+ */
 public class LinkInfo {
 	private static final Logger log = LoggerFactory.getLogger(LinkInfo.class);
+
+	/** The value of a time that is not set */
+	public static final long NONE = Long.MIN_VALUE;
 	
-	private Date firstSeenTime;
-	private Date lastLldpReceivedTime; /* Standard LLDP received time */
-	private Date lastBddpReceivedTime; /* Modified LLDP received time  */
+	private long firstSeenTime;
+	private long lastLldpReceivedTime; /* Standard LLDP received time */
+	private long lastBddpReceivedTime; /* Modified LLDP received time  */
 	private U64 currentLatency;
-	private ArrayDeque<U64> latencyHistory;
-	private int latencyHistoryWindow;
+	private final long[] latencyHistory; /* ring of the latest observed latencies */
+	private int latencyHistoryNext; /* slot of the next latency */
+	private int latencyHistoryCount;
+	private long latencyHistorySum;
 	private double latencyUpdateThreshold;
 	
 	public LinkInfo(Date firstSeenTime, Date lastLldpReceivedTime, Date lastBddpReceivedTime) {
+		this(toMillis(firstSeenTime), toMillis(lastLldpReceivedTime), toMillis(lastBddpReceivedTime));
+	}
+
+	/**
+	 * @param firstSeenTime the time the link was first seen
+	 * @param lastLldpReceivedTime the time of the last LLDP, or {@link #NONE}
+	 * @param lastBddpReceivedTime the time of the last BDDP, or {@link #NONE}
+	 */
+	public LinkInfo(long firstSeenTime, long lastLldpReceivedTime, long lastBddpReceivedTime) {
 		this.firstSeenTime = firstSeenTime;
 		this.lastLldpReceivedTime = lastLldpReceivedTime;
 		this.lastBddpReceivedTime = lastBddpReceivedTime;
 		this.currentLatency = null;
-		this.latencyHistory = new ArrayDeque<U64>(LinkDiscoveryManager.LATENCY_HISTORY_SIZE);
-		this.latencyHistoryWindow = LinkDiscoveryManager.LATENCY_HISTORY_SIZE;
+		this.latencyHistory = new long[LinkDiscoveryManager.LATENCY_HISTORY_SIZE];
 		this.latencyUpdateThreshold = LinkDiscoveryManager.LATENCY_UPDATE_THRESHOLD;
 	}
 
 	public LinkInfo(LinkInfo fromLinkInfo) {
-		this.firstSeenTime = fromLinkInfo.getFirstSeenTime();
-		this.lastLldpReceivedTime = fromLinkInfo.getUnicastValidTime();
-		this.lastBddpReceivedTime = fromLinkInfo.getMulticastValidTime();
+		this.firstSeenTime = fromLinkInfo.firstSeenTime;
+		this.lastLldpReceivedTime = fromLinkInfo.lastLldpReceivedTime;
+		this.lastBddpReceivedTime = fromLinkInfo.lastBddpReceivedTime;
 		this.currentLatency = fromLinkInfo.currentLatency;
-		this.latencyHistory = new ArrayDeque<U64>(fromLinkInfo.getLatencyHistory());
-		this.latencyHistoryWindow = fromLinkInfo.getLatencyHistoryWindow();
-		this.latencyUpdateThreshold = fromLinkInfo.getLatencyUpdateThreshold();
+		this.latencyHistory = fromLinkInfo.latencyHistory.clone();
+		this.latencyHistoryNext = fromLinkInfo.latencyHistoryNext;
+		this.latencyHistoryCount = fromLinkInfo.latencyHistoryCount;
+		this.latencyHistorySum = fromLinkInfo.latencyHistorySum;
+		this.latencyUpdateThreshold = fromLinkInfo.latencyUpdateThreshold;
+	}
+
+	private static long toMillis(Date d) {
+		return d == null ? NONE : d.getTime();
+	}
+
+	private static Date toDate(long millis) {
+		return millis == NONE ? null : new Date(millis);
 	}
 
 	/** 
@@ -68,31 +96,6 @@ public class LinkInfo {
 	 * requires the new state to be written to storage.
 	 */
 
-	private int getLatencyHistoryWindow() {
-		return latencyHistoryWindow;
-	}
-
-	private double getLatencyUpdateThreshold() {
-		return latencyUpdateThreshold;
-	}
-	
-	private ArrayDeque<U64> getLatencyHistory() {
-		return latencyHistory;
-	}
-
-	private U64 getLatencyHistoryAverage() {
-		if (!isLatencyHistoryFull()) {
-			return null;
-		} else { /* guaranteed to be at latencyHistoryWindow capacity */
-			double avg = 0;
-			for (U64 l : latencyHistory) {
-				avg = avg + l.getValue();
-			}
-			avg = avg / latencyHistoryWindow;
-			return U64.of((long) avg);
-		}
-	}
-	
 	/**
 	 * Retrieve the current latency, and if necessary
 	 * compute and replace the current latency with an
@@ -100,16 +103,17 @@ public class LinkInfo {
 	 * @return the most up-to-date latency as permitted by algorithm
 	 */
 	private U64 getLatency() {
-		U64 newLatency = getLatencyHistoryAverage();
-		if (newLatency != null) {
+		if (isLatencyHistoryFull()) {
+			long newLatency = latencyHistorySum / latencyHistory.length;
+			long current = currentLatency.getValue();
 			/* check threshold */
-			if ((((double) Math.abs(newLatency.getValue() - currentLatency.getValue())) 
-					/ (currentLatency.getValue() == 0 ? 1 : currentLatency.getValue())
+			if ((((double) Math.abs(newLatency - current)) 
+					/ (current == 0 ? 1 : current)
 					) 
 					>= latencyUpdateThreshold) {
 				/* perform update */
-				log.debug("Updating link latency from {} to {}", currentLatency.getValue(), newLatency.getValue());
-				currentLatency = newLatency;
+				log.debug("Updating link latency from {} to {}", current, newLatency);
+				currentLatency = U64.of(newLatency);
 			}
 		}
 		return currentLatency;
@@ -124,7 +128,7 @@ public class LinkInfo {
 	 * @return true if full; false if not full
 	 */
 	private boolean isLatencyHistoryFull() {
-		return (latencyHistory.size() == latencyHistoryWindow);
+		return (latencyHistoryCount == latencyHistory.length);
 	}
 	
 	/**
@@ -137,10 +141,15 @@ public class LinkInfo {
 	 * @return latency to use for the link; either initial or historical average
 	 */
 	public U64 addObservedLatency(U64 latency) {
+		long l = latency.getValue();
 		if (isLatencyHistoryFull()) {
-			latencyHistory.removeFirst();
+			latencyHistorySum -= latencyHistory[latencyHistoryNext];
+		} else {
+			latencyHistoryCount++;
 		}
-		latencyHistory.addLast(latency);
+		latencyHistory[latencyHistoryNext] = l;
+		latencyHistorySum += l;
+		latencyHistoryNext = (latencyHistoryNext + 1) % latencyHistory.length;
 
 		if (currentLatency == null) {
 			currentLatency = latency;
@@ -161,34 +170,67 @@ public class LinkInfo {
 	}
 
 	public Date getFirstSeenTime() {
-		return firstSeenTime;
+		return toDate(firstSeenTime);
 	}
 
 	public void setFirstSeenTime(Date firstSeenTime) {
-		this.firstSeenTime = firstSeenTime;
+		this.firstSeenTime = toMillis(firstSeenTime);
 	}
 
 	public Date getUnicastValidTime() {
-		return lastLldpReceivedTime;
+		return toDate(lastLldpReceivedTime);
 	}
 
 	public void setUnicastValidTime(Date unicastValidTime) {
-		this.lastLldpReceivedTime = unicastValidTime;
+		this.lastLldpReceivedTime = toMillis(unicastValidTime);
 	}
 
 	public Date getMulticastValidTime() {
-		return lastBddpReceivedTime;
+		return toDate(lastBddpReceivedTime);
 	}
 
 	public void setMulticastValidTime(Date multicastValidTime) {
+		this.lastBddpReceivedTime = toMillis(multicastValidTime);
+	}
+
+	@JsonIgnore
+	public long getFirstSeenTimeMillis() {
+		return firstSeenTime;
+	}
+
+	public void setFirstSeenTimeMillis(long firstSeenTime) {
+		this.firstSeenTime = firstSeenTime;
+	}
+
+	/**
+	 * @return the time of the last LLDP, or {@link #NONE}
+	 */
+	@JsonIgnore
+	public long getUnicastValidTimeMillis() {
+		return lastLldpReceivedTime;
+	}
+
+	public void setUnicastValidTimeMillis(long unicastValidTime) {
+		this.lastLldpReceivedTime = unicastValidTime;
+	}
+
+	/**
+	 * @return the time of the last BDDP, or {@link #NONE}
+	 */
+	@JsonIgnore
+	public long getMulticastValidTimeMillis() {
+		return lastBddpReceivedTime;
+	}
+
+	public void setMulticastValidTimeMillis(long multicastValidTime) {
 		this.lastBddpReceivedTime = multicastValidTime;
 	}
 
 	@JsonIgnore
 	public LinkType getLinkType() {
-		if (lastLldpReceivedTime != null) {
+		if (lastLldpReceivedTime != NONE) {
 			return LinkType.DIRECT_LINK;
-		} else if (lastBddpReceivedTime != null) {
+		} else if (lastBddpReceivedTime != NONE) {
 			return LinkType.MULTIHOP_LINK;
 		}
 		return LinkType.INVALID_LINK;
@@ -201,9 +243,9 @@ public class LinkInfo {
 	 public int hashCode() {
 		final int prime = 5557;
 		int result = 1;
-		result = prime * result + ((firstSeenTime == null) ? 0 : firstSeenTime.hashCode());
-		result = prime * result + ((lastLldpReceivedTime == null) ? 0 : lastLldpReceivedTime.hashCode());
-		result = prime * result + ((lastBddpReceivedTime == null) ? 0 : lastBddpReceivedTime.hashCode());
+		result = prime * result + Long.hashCode(firstSeenTime);
+		result = prime * result + Long.hashCode(lastLldpReceivedTime);
+		result = prime * result + Long.hashCode(lastBddpReceivedTime);
 		return result;
 	 }
 
@@ -220,25 +262,9 @@ public class LinkInfo {
 			 return false;
 		 LinkInfo other = (LinkInfo) obj;
 
-		 if (firstSeenTime == null) {
-			 if (other.firstSeenTime != null)
-				 return false;
-		 } else if (!firstSeenTime.equals(other.firstSeenTime))
-			 return false;
-
-		 if (lastLldpReceivedTime == null) {
-			 if (other.lastLldpReceivedTime != null)
-				 return false;
-		 } else if (!lastLldpReceivedTime.equals(other.lastLldpReceivedTime))
-			 return false;
-
-		 if (lastBddpReceivedTime == null) {
-			 if (other.lastBddpReceivedTime != null)
-				 return false;
-		 } else if (!lastBddpReceivedTime.equals(other.lastBddpReceivedTime))
-			 return false;
-
-		 return true;
+		 return firstSeenTime == other.firstSeenTime
+				 && lastLldpReceivedTime == other.lastLldpReceivedTime
+				 && lastBddpReceivedTime == other.lastBddpReceivedTime;
 	 }
 
 
@@ -247,8 +273,8 @@ public class LinkInfo {
 	  */
 	 @Override
 	 public String toString() {
-		 return "LinkInfo [unicastValidTime=" + ((lastLldpReceivedTime == null) ? "null" : lastLldpReceivedTime.getTime())
-				 + ", multicastValidTime=" + ((lastBddpReceivedTime == null) ? "null" : lastBddpReceivedTime.getTime())
+		 return "LinkInfo [unicastValidTime=" + ((lastLldpReceivedTime == NONE) ? "null" : lastLldpReceivedTime)
+				 + ", multicastValidTime=" + ((lastBddpReceivedTime == NONE) ? "null" : lastBddpReceivedTime)
 				 + "]";
 	 }
 }
@@ -45,6 +45,10 @@ public class CumulativeTimeBucket {
         return totalPktCnt;
     }
     
+    public long getTotalProcTimeNs() {
+        return totalProcTimeNs;
+    }
+
     public long getAverageProcTimeNs() {
         return avgTotalProcTimeNs;
     }
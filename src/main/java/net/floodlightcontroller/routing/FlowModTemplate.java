@@ -0,0 +1,248 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.routing;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.SwitchDescription;
+import net.floodlightcontroller.util.OFDPAUtils;
+
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowModCommand;
+import org.projectfloodlight.openflow.protocol.OFFlowModFlags;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U16;
+
+/**
+ * Flow-mod settings for one switch, compiled once from the switch's
+ * OFFactory and the forwarding configuration.
+ *
+ * The template holds a prebuilt flow-mod per command with the timeouts,
+ * priority, buffer id, table id and default flags already set, and caches
+ * the immutable output action (or apply-actions instruction) list for each
+ * output port. Building a flow-mod for a hop then only needs the match,
+ * cookie and output port to be filled in. The switch-type checks that
+ * otherwise parse the switch description for every packet are done once
+ * here as well.
+ *
+ * A template must be recompiled when the switch reconnects (its factory
+ * or description may change) or when the forwarding configuration changes;
+ * see {@link #isCompiledFrom(int, int, int, TableId, boolean, boolean)}.
+ */
+public class FlowModTemplate {
+    private static final Set<OFFlowModFlags> SEND_FLOW_REM =
+            Collections.singleton(OFFlowModFlags.SEND_FLOW_REM);
+
+    private final OFFactory factory;
+    private final int idleTimeout;
+    private final int hardTimeout;
+    private final int priority;
+    private final TableId tableId;
+    private final boolean matchTcpFlags;
+    private final boolean useInstructions;
+    private final boolean ofdpa;
+    private final boolean defaultSendFlowRem;
+    private final MatchField<U16> tcpFlagsField;
+    private final EnumMap<OFFlowModCommand, OFFlowMod> flowMods =
+            new EnumMap<OFFlowModCommand, OFFlowMod>(OFFlowModCommand.class);
+    private final ConcurrentMap<OFPort, List<OFAction>> outputActions =
+            new ConcurrentHashMap<OFPort, List<OFAction>>();
+    private final ConcurrentMap<OFPort, List<OFInstruction>> outputInstructions =
+            new ConcurrentHashMap<OFPort, List<OFInstruction>>();
+
+    /**
+     * Compile a template for a switch
+     * @param sw the switch
+     * @param idleTimeout idle timeout in seconds
+     * @param hardTimeout hard timeout in seconds
+     * @param priority the flow priority
+     * @param tableId the table to use for OF1.1+ switches
+     * @param sendFlowRem whether every flow-mod requests flow-removed messages
+     * @param matchTcpFlags whether TCP flags should be matched if the switch supports it
+     */
+    public FlowModTemplate(IOFSwitch sw, int idleTimeout, int hardTimeout,
+            int priority, TableId tableId, boolean sendFlowRem, boolean matchTcpFlags) {
+        this.factory = sw.getOFFactory();
+        this.idleTimeout = idleTimeout;
+        this.hardTimeout = hardTimeout;
+        this.priority = priority;
+        this.tableId = tableId;
+        this.matchTcpFlags = matchTcpFlags;
+        this.useInstructions = factory.getVersion().compareTo(OFVersion.OF_11) >= 0;
+        this.ofdpa = OFDPAUtils.isOFDPASwitch(sw);
+        this.defaultSendFlowRem = sendFlowRem;
+        this.tcpFlagsField = matchTcpFlags ? findTcpFlagsField(sw) : null;
+
+        for (OFFlowModCommand command : OFFlowModCommand.values()) {
+            OFFlowMod.Builder fmb;
+            switch (command) {
+            case ADD:
+                fmb = factory.buildFlowAdd();
+                break;
+            case MODIFY:
+                fmb = factory.buildFlowModify();
+                break;
+            case MODIFY_STRICT:
+                fmb = factory.buildFlowModifyStrict();
+                break;
+            case DELETE:
+                fmb = factory.buildFlowDelete();
+                break;
+            case DELETE_STRICT:
+                fmb = factory.buildFlowDeleteStrict();
+                break;
+            default:
+                continue;
+            }
+            fmb.setIdleTimeout(idleTimeout)
+            .setHardTimeout(hardTimeout)
+            .setBufferId(OFBufferId.NO_BUFFER)
+            .setPriority(priority);
+            if (sendFlowRem) {
+                fmb.setFlags(SEND_FLOW_REM);
+            }
+            if (factory.getVersion().compareTo(OFVersion.OF_10) != 0) {
+                fmb.setTableId(tableId);
+            }
+            flowMods.put(command, fmb.build());
+        }
+    }
+
+    /**
+     * Find the match field a switch uses for TCP flags. OF1.5 has a standard
+     * field; Open vSwitch 2.1+ supports an experimenter field for older versions.
+     * @return the match field, or null if the switch cannot match TCP flags
+     */
+    private static MatchField<U16> findTcpFlagsField(IOFSwitch sw) {
+        if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_15) >= 0) {
+            return MatchField.TCP_FLAGS;
+        }
+        SwitchDescription desc = sw.getSwitchDescription();
+        if (desc == null
+                || !desc.getHardwareDescription().toLowerCase().contains("open vswitch")) {
+            return null;
+        }
+        String[] version = desc.getSoftwareDescription().toLowerCase().split("\\.");
+        try {
+            int major = Integer.parseInt(version[0]);
+            if (major > 2 || (major == 2 && version.length > 1
+                    && Integer.parseInt(version[1]) >= 1)) {
+                return MatchField.OVS_TCP_FLAGS;
+            }
+        } catch (NumberFormatException e) {
+            // unknown version string; don't match on TCP flags
+        }
+        return null;
+    }
+
+    /**
+     * @return the factory this template was compiled for
+     */
+    public OFFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Check whether the template was compiled from the given settings, i.e.
+     * whether it can still be used for them
+     * @return true if all settings are the ones the template was compiled from
+     */
+    public boolean isCompiledFrom(int idleTimeout, int hardTimeout,
+            int priority, TableId tableId, boolean sendFlowRem, boolean matchTcpFlags) {
+        return this.idleTimeout == idleTimeout
+                && this.hardTimeout == hardTimeout
+                && this.priority == priority
+                && this.tableId.equals(tableId)
+                && this.defaultSendFlowRem == sendFlowRem
+                && this.matchTcpFlags == matchTcpFlags;
+    }
+
+    /**
+     * @return true if the switch is an OF-DPA switch
+     */
+    public boolean isOFDPA() {
+        return ofdpa;
+    }
+
+    /**
+     * @return the match field to use for TCP flags on this switch, or null
+     * if TCP flags should not be matched
+     */
+    public MatchField<U16> getTcpFlagsField() {
+        return tcpFlagsField;
+    }
+
+    /**
+     * Get a flow-mod builder with the compiled defaults set. The match,
+     * cookie, output port and actions are left to the caller.
+     * @param command the flow-mod command
+     * @param sendFlowRem request a flow-removed message for this flow
+     * @return a new builder
+     */
+    public OFFlowMod.Builder builder(OFFlowModCommand command, boolean sendFlowRem) {
+        OFFlowMod.Builder fmb = flowMods.get(command).createBuilder();
+        if (sendFlowRem && !defaultSendFlowRem) {
+            fmb.setFlags(SEND_FLOW_REM);
+        }
+        return fmb;
+    }
+
+    /**
+     * Set the actions of a flow-mod to a single output to the given port,
+     * using the cached action or instruction list for the port
+     * @param fmb the flow-mod builder
+     * @param port the output port
+     * @return the builder
+     */
+    public OFFlowMod.Builder setOutput(OFFlowMod.Builder fmb, OFPort port) {
+        if (useInstructions) {
+            List<OFInstruction> instructions = outputInstructions.get(port);
+            if (instructions == null) {
+                instructions = Collections.singletonList((OFInstruction)
+                        factory.instructions().applyActions(getOutputActions(port)));
+                outputInstructions.putIfAbsent(port, instructions);
+            }
+            return fmb.setInstructions(instructions);
+        } else {
+            return fmb.setActions(getOutputActions(port));
+        }
+    }
+
+    /**
+     * @return the immutable action list that outputs to the given port
+     */
+    public List<OFAction> getOutputActions(OFPort port) {
+        List<OFAction> actions = outputActions.get(port);
+        if (actions == null) {
+            actions = Collections.singletonList((OFAction)
+                    factory.actions().output(port, Integer.MAX_VALUE));
+            outputActions.putIfAbsent(port, actions);
+        }
+        return actions;
+    }
+}
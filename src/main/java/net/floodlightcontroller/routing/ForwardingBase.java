@@ -18,6 +18,8 @@
 package net.floodlightcontroller.routing;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -40,7 +42,6 @@ import org.projectfloodlight.openflow.protocol.*;
 import org.projectfloodlight.openflow.protocol.match.Match;
 import org.projectfloodlight.openflow.protocol.match.MatchField;
 import org.projectfloodlight.openflow.protocol.action.OFAction;
-import org.projectfloodlight.openflow.protocol.action.OFActionOutput;
 import org.projectfloodlight.openflow.types.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -99,6 +100,9 @@ public abstract class ForwardingBase implements IOFMessageListener {
     protected OFMessageDamper messageDamper;
     private static int OFMESSAGE_DAMPER_CAPACITY = 10000;
     private static int OFMESSAGE_DAMPER_TIMEOUT = 250; // ms
+
+    /* Compiled flow-mod settings per switch; see getFlowModTemplate() */
+    private final ConcurrentMap<DatapathId, FlowModTemplate> flowModTemplates = new ConcurrentHashMap<>();
     
     protected void init() {
         messageDamper = new OFMessageDamper(OFMESSAGE_DAMPER_CAPACITY,
@@ -115,6 +119,44 @@ public abstract class ForwardingBase implements IOFMessageListener {
         return "forwarding";
     }
 
+    /**
+     * Get the compiled flow-mod template for a switch, compiling it from the
+     * current FLOWMOD_DEFAULT_* settings if there is none yet, if the switch
+     * has reconnected with a different factory, or if the settings changed
+     * since it was compiled.
+     * @param sw the switch
+     * @return the template
+     */
+    protected FlowModTemplate getFlowModTemplate(IOFSwitch sw) {
+        FlowModTemplate template = flowModTemplates.get(sw.getId());
+        if (template == null || template.getFactory() != sw.getOFFactory()
+                || !template.isCompiledFrom(FLOWMOD_DEFAULT_IDLE_TIMEOUT,
+                        FLOWMOD_DEFAULT_HARD_TIMEOUT,
+                        FLOWMOD_DEFAULT_PRIORITY,
+                        FLOWMOD_DEFAULT_TABLE_ID,
+                        FLOWMOD_DEFAULT_SET_SEND_FLOW_REM_FLAG,
+                        FLOWMOD_DEFAULT_MATCH_TCP_FLAG)) {
+            template = new FlowModTemplate(sw,
+                    FLOWMOD_DEFAULT_IDLE_TIMEOUT,
+                    FLOWMOD_DEFAULT_HARD_TIMEOUT,
+                    FLOWMOD_DEFAULT_PRIORITY,
+                    FLOWMOD_DEFAULT_TABLE_ID,
+                    FLOWMOD_DEFAULT_SET_SEND_FLOW_REM_FLAG,
+                    FLOWMOD_DEFAULT_MATCH_TCP_FLAG);
+            flowModTemplates.put(sw.getId(), template);
+        }
+        return template;
+    }
+
+    /**
+     * Drop the compiled flow-mod template of a switch, e.g. when it
+     * disconnects or its description may have changed
+     * @param switchId the switch
+     */
+    protected void removeFlowModTemplate(DatapathId switchId) {
+        flowModTemplates.remove(switchId);
+    }
+
     /**
      * All subclasses must define this function if they want any specific
      * forwarding action
@@ -131,13 +173,13 @@ public abstract class ForwardingBase implements IOFMessageListener {
 
     @Override
     public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
-        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT);
 
         switch (msg.getType()) {
         case PACKET_IN:
             IRoutingDecision decision = null;
             if (cntx != null) {
-                decision = RoutingDecision.rtStore.get(cntx, IRoutingDecision.CONTEXT_DECISION);
+                decision = RoutingDecision.rtStore.get(cntx, IRoutingDecision.CONTEXT_DECISION_SLOT);
             }
             return this.processPacketInMessage(sw, (OFPacketIn) msg, decision, cntx);
         default:
@@ -178,30 +220,12 @@ public abstract class ForwardingBase implements IOFMessageListener {
                 return false;
             }
 
-            // need to build flow mod based on what type it is. Cannot set command later
-            OFFlowMod.Builder fmb;
-            switch (flowModCommand) {
-            case ADD:
-                fmb = sw.getOFFactory().buildFlowAdd();
-                break;
-            case DELETE:
-                fmb = sw.getOFFactory().buildFlowDelete();
-                break;
-            case DELETE_STRICT:
-                fmb = sw.getOFFactory().buildFlowDeleteStrict();
-                break;
-            case MODIFY:
-                fmb = sw.getOFFactory().buildFlowModify();
-                break;
-            default:
-                log.error("Could not decode OFFlowModCommand. Using MODIFY_STRICT. (Should another be used as the default?)");        
-            case MODIFY_STRICT:
-                fmb = sw.getOFFactory().buildFlowModifyStrict();
-                break;			
-            }
-
-            OFActionOutput.Builder aob = sw.getOFFactory().actions().buildOutput();
-            List<OFAction> actions = new ArrayList<>();
+            /*
+             * Start from the switch's compiled template, which already has the
+             * command, timeouts, priority, buffer id, table id and default flags.
+             */
+            FlowModTemplate template = getFlowModTemplate(sw);
+            OFFlowMod.Builder fmb = template.builder(flowModCommand, requestFlowRemovedNotification);
             Match.Builder mb = MatchUtils.convertToVersion(match, sw.getOFFactory().getVersion());
 
             // set input and output ports on the switch
@@ -210,31 +234,13 @@ public abstract class ForwardingBase implements IOFMessageListener {
             if (FLOWMOD_DEFAULT_MATCH_IN_PORT) {
                 mb.setExact(MatchField.IN_PORT, inPort);
             }
-            aob.setPort(outPort);
-            aob.setMaxLen(Integer.MAX_VALUE);
-            actions.add(aob.build());
-
-            if (FLOWMOD_DEFAULT_SET_SEND_FLOW_REM_FLAG || requestFlowRemovedNotification) {
-                Set<OFFlowModFlags> flags = new HashSet<>();
-                flags.add(OFFlowModFlags.SEND_FLOW_REM);
-                fmb.setFlags(flags);
-            }
 
             fmb.setMatch(mb.build())
-            .setIdleTimeout(FLOWMOD_DEFAULT_IDLE_TIMEOUT)
-            .setHardTimeout(FLOWMOD_DEFAULT_HARD_TIMEOUT)
-            .setBufferId(OFBufferId.NO_BUFFER)
             .setCookie(cookie)
-            .setOutPort(outPort)
-            .setPriority(FLOWMOD_DEFAULT_PRIORITY);
+            .setOutPort(outPort);
 
-            FlowModUtils.setActions(fmb, actions, sw);
+            template.setOutput(fmb, outPort);
 
-            /* Configure for particular switch pipeline */
-            if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) != 0) {
-                fmb.setTableId(FLOWMOD_DEFAULT_TABLE_ID);
-            }
-                        
             if (log.isTraceEnabled()) {
                 log.trace("Pushing Route flowmod routeIndx={} " +
                         "sw={} inPort={} outPort={}",
@@ -244,7 +250,7 @@ public abstract class ForwardingBase implements IOFMessageListener {
                                 outPort });
             }
 
-            if (OFDPAUtils.isOFDPASwitch(sw)) {
+            if (template.isOFDPA()) {
                 OFDPAUtils.addLearningSwitchFlow(sw, cookie, 
                         FLOWMOD_DEFAULT_PRIORITY, 
                         FLOWMOD_DEFAULT_HARD_TIMEOUT,
@@ -305,9 +311,7 @@ public abstract class ForwardingBase implements IOFMessageListener {
         }
 
         OFPacketOut.Builder pob = sw.getOFFactory().buildPacketOut();
-        List<OFAction> actions = new ArrayList<>();
-        actions.add(sw.getOFFactory().actions().output(outport, Integer.MAX_VALUE));
-        pob.setActions(actions);
+        pob.setActions(getFlowModTemplate(sw).getOutputActions(outport));
 
         /* Use packet in buffer if there is a buffer ID set */
         if (useBufferedPacket) {
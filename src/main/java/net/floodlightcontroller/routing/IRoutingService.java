@@ -52,6 +52,29 @@ public interface IRoutingService extends IFloodlightService {
         }
     }
 
+    /**
+     * How a path is picked for a flow when there are several
+     * paths of (nearly) the same cost between two switches
+     */
+    enum PATH_SELECTION {
+        /** always the lowest cost path */
+        BEST("best"),
+        /** spread flows over equal cost paths by a hash of the flow */
+        ECMP_HASH("ecmp_hash"),
+        /** the equal cost path with the least utilized busiest link */
+        ECMP_UTILIZATION("ecmp_utilization");
+
+        String name;
+
+        private PATH_SELECTION(String s) {
+            name = s;
+        }
+
+        public String getSelectionName() {
+            return name;
+        }
+    }
+
     /**
      * Forwarding Type : either L2 forwarding or L3 routing
      */
@@ -87,6 +110,35 @@ public interface IRoutingService extends IFloodlightService {
      * @return
      */
     PATH_METRIC getPathMetric();
+
+    /**
+     * Set how a path is picked among the equal cost
+     * paths between two switches.
+     * @param selection
+     */
+    void setPathSelection(PATH_SELECTION selection);
+
+    /**
+     * Get how a path is picked among the equal cost
+     * paths between two switches.
+     * @return
+     */
+    PATH_SELECTION getPathSelection();
+
+    /**
+     * Set how much more than the lowest cost path a path
+     * may cost and still be used for ECMP, as a fraction
+     * of the lowest cost, e.g. 0.1 for 10%.
+     * @param tolerance 0 for strictly equal cost paths
+     */
+    void setEcmpTolerance(double tolerance);
+
+    /**
+     * Get how much more than the lowest cost path a path
+     * may cost and still be used for ECMP.
+     * @return
+     */
+    double getEcmpTolerance();
     
     /** 
      * Register the RDCListener 
@@ -149,6 +201,20 @@ public interface IRoutingService extends IFloodlightService {
      */
     Path getPath(DatapathId src, OFPort srcPort, DatapathId dst, OFPort dstPort);
 
+    /**
+     * Provides a path between srcPort on src and dstPort on dst for
+     * a flow. Depending on the {@link PATH_SELECTION}, the path is
+     * picked among the equal cost paths by the hash of the flow, so
+     * packets of a flow keep to one path while flows are spread.
+     * @param src source switch
+     * @param srcPort source port on source switch
+     * @param dst destination switch
+     * @param dstPort destination port on destination switch
+     * @param flowHash a hash of the fields that identify the flow
+     * @return the path picked for the flow
+     */
+    Path getPath(DatapathId src, OFPort srcPort, DatapathId dst, OFPort dstPort, int flowHash);
+
     /**
      * Return all possible paths up to quantity of the globally configured max.
      * @param src source switch
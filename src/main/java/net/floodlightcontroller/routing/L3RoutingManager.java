@@ -1,70 +1,214 @@
 package net.floodlightcontroller.routing;
 
 import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.util.IPv4PrefixTrie;
+
 import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.IPv4Address;
 import org.projectfloodlight.openflow.types.IPv4AddressWithMask;
 import org.projectfloodlight.openflow.types.MacAddress;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Holds the virtual gateways, with reverse indexes from switch,
+ * node-port-tuple and subnet to gateway so that the per-packet lookups
+ * don't have to look at every gateway. The indexes are updated by the
+ * gateways themselves through VirtualGatewayInstance.MembershipListener.
+ *
+ * Lookups don't lock and can run alongside updates from REST threads.
+ * Updates are serialized on a single lock.
+ *
  * @author Qing Wang (qw@g.clemson.edu) at 12/26/17
  */
 public class L3RoutingManager extends RoutingManager {
 
-    private static Map<String, VirtualGatewayInstance> gatewayInstancesMap = new HashMap<>();
+    private static final Map<String, VirtualGatewayInstance> gatewayInstancesMap = new ConcurrentHashMap<>();
+
+    /* Reverse indexes; if several gateways claim a member, any one of them is indexed */
+    private static final Map<DatapathId, VirtualGatewayInstance> switchIndex = new ConcurrentHashMap<>();
+    private static final Map<NodePortTuple, VirtualGatewayInstance> nptIndex = new ConcurrentHashMap<>();
+    /* Guarded by itself */
+    private static final IPv4PrefixTrie<VirtualGatewayInstance> subnetIndex = new IPv4PrefixTrie<>();
+
+    private static final Object indexLock = new Object();
+    private static final IndexUpdater indexUpdater = new IndexUpdater();
 
     public L3RoutingManager() {
         // Do nothing
     }
 
+    private static class IndexUpdater implements VirtualGatewayInstance.MembershipListener {
+        @Override
+        public void switchMemberAdded(VirtualGatewayInstance gateway, DatapathId dpid) {
+            synchronized (indexLock) {
+                switchIndex.put(dpid, gateway);
+            }
+        }
+
+        @Override
+        public void switchMemberRemoved(VirtualGatewayInstance gateway, DatapathId dpid) {
+            synchronized (indexLock) {
+                if (switchIndex.remove(dpid, gateway)) {
+                    /* Fall back to another gateway that has the switch, if any */
+                    for (VirtualGatewayInstance other : gatewayInstancesMap.values()) {
+                        if (other.isSwitchAMember(dpid)) {
+                            switchIndex.put(dpid, other);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void nptMemberAdded(VirtualGatewayInstance gateway, NodePortTuple npt) {
+            synchronized (indexLock) {
+                nptIndex.put(npt, gateway);
+            }
+        }
+
+        @Override
+        public void nptMemberRemoved(VirtualGatewayInstance gateway, NodePortTuple npt) {
+            synchronized (indexLock) {
+                if (nptIndex.remove(npt, gateway)) {
+                    for (VirtualGatewayInstance other : gatewayInstancesMap.values()) {
+                        if (other.isNptAMember(npt)) {
+                            nptIndex.put(npt, other);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void subnetMemberAdded(VirtualGatewayInstance gateway, IPv4AddressWithMask subnet) {
+            synchronized (indexLock) {
+                synchronized (subnetIndex) {
+                    subnetIndex.put(subnet, gateway);
+                }
+            }
+        }
+
+        @Override
+        public void subnetMemberRemoved(VirtualGatewayInstance gateway, IPv4AddressWithMask subnet) {
+            synchronized (indexLock) {
+                synchronized (subnetIndex) {
+                    subnetIndex.remove(subnet, gateway);
+                }
+            }
+        }
+    }
+
+    /* Must be called with indexLock held */
+    private static void index(VirtualGatewayInstance gateway) {
+        for (DatapathId dpid : gateway.getSwitchMembers()) {
+            indexUpdater.switchMemberAdded(gateway, dpid);
+        }
+        for (NodePortTuple npt : gateway.getNptMembers()) {
+            indexUpdater.nptMemberAdded(gateway, npt);
+        }
+        for (IPv4AddressWithMask subnet : gateway.getSubsetMembers()) {
+            indexUpdater.subnetMemberAdded(gateway, subnet);
+        }
+    }
+
+    /* Must be called with indexLock held, after the gateway has left gatewayInstancesMap */
+    private static void unindex(VirtualGatewayInstance gateway) {
+        for (DatapathId dpid : gateway.getSwitchMembers()) {
+            indexUpdater.switchMemberRemoved(gateway, dpid);
+        }
+        for (NodePortTuple npt : gateway.getNptMembers()) {
+            indexUpdater.nptMemberRemoved(gateway, npt);
+        }
+        for (IPv4AddressWithMask subnet : gateway.getSubsetMembers()) {
+            indexUpdater.subnetMemberRemoved(gateway, subnet);
+        }
+    }
+
     public Collection<VirtualGatewayInstance> getAllVirtualGateways() {
         return gatewayInstancesMap.values();
     }
 
     public Optional<VirtualGatewayInstance> getVirtualGateway(String name) {
-        return gatewayInstancesMap.values().stream()
-                .filter(gateways -> gateways.getName().equals(name))
-                .findAny();
+        return Optional.ofNullable(gatewayInstancesMap.get(name));
     }
 
     public Optional<VirtualGatewayInstance> getVirtualGateway(DatapathId dpid) {
-        return gatewayInstancesMap.values().stream()
-                .filter(gateways -> gateways.getSwitchMembers().contains(dpid))
-                .findAny();
+        return Optional.ofNullable(switchIndex.get(dpid));
     }
 
     public Optional<VirtualGatewayInstance> getVirtualGateway(NodePortTuple npt) {
-        return gatewayInstancesMap.values().stream()
-                .filter(gateways -> gateways.getNptMembers().contains(npt))
-                .findAny();
+        return Optional.ofNullable(nptIndex.get(npt));
     }
 
     public Optional<VirtualGatewayInstance> getVirtualGateway(IPv4AddressWithMask subnet) {
-        return gatewayInstancesMap.values().stream()
-                .filter(gateways -> gateways.getSubsetMembers().contains(subnet))
-                .findAny();
+        synchronized (subnetIndex) {
+            Iterator<VirtualGatewayInstance> it = subnetIndex.get(subnet.getValue().getInt(),
+                    subnet.getMask().asCidrMaskLength()).iterator();
+            return it.hasNext() ? Optional.of(it.next()) : Optional.empty();
+        }
     }
 
-    public void removeAllVirtualGateways() { gatewayInstancesMap.clear(); }
+    /**
+     * Find the gateway with the most specific subnet member containing an address
+     * @param ip the address
+     * @return the gateway, if any subnet member contains the address
+     */
+    public Optional<VirtualGatewayInstance> getVirtualGateway(IPv4Address ip) {
+        synchronized (subnetIndex) {
+            Iterator<VirtualGatewayInstance> it = subnetIndex.longestMatch(ip).iterator();
+            return it.hasNext() ? Optional.of(it.next()) : Optional.empty();
+        }
+    }
 
-    public boolean removeVirtualGateway(String name) {
-        Optional<VirtualGatewayInstance> instance = getVirtualGateway(name);
-        if (instance.isPresent()) {
-            gatewayInstancesMap.remove(name);
-            return true;
+    public void removeAllVirtualGateways() {
+        synchronized (indexLock) {
+            for (VirtualGatewayInstance gateway : gatewayInstancesMap.values()) {
+                gateway.setMembershipListener(null);
+            }
+            gatewayInstancesMap.clear();
+            switchIndex.clear();
+            nptIndex.clear();
+            synchronized (subnetIndex) {
+                subnetIndex.clear();
+            }
         }
-        else {
-            return false;
+    }
+
+    public boolean removeVirtualGateway(String name) {
+        synchronized (indexLock) {
+            VirtualGatewayInstance instance = gatewayInstancesMap.remove(name);
+            if (instance != null) {
+                instance.setMembershipListener(null);
+                unindex(instance);
+                return true;
+            }
+            else {
+                return false;
+            }
         }
     }
 
     public void addVirtualGateway(VirtualGatewayInstance gateway) {
-        gatewayInstancesMap.put(gateway.getName(), gateway);
+        synchronized (indexLock) {
+            VirtualGatewayInstance old = gatewayInstancesMap.put(gateway.getName(), gateway);
+            if (old != null && old != gateway) {
+                old.setMembershipListener(null);
+                unindex(old);
+            }
+            gateway.setMembershipListener(indexUpdater);
+            index(gateway);
+        }
     }
 
     public VirtualGatewayInstance updateVirtualGateway(String name, MacAddress newMac) {
        VirtualGatewayInstance gateway = gatewayInstancesMap.get(name);
-       return gateway.getBuilder().setGatewayMac(newMac).build();
+       VirtualGatewayInstance updated = gateway.getBuilder().setGatewayMac(newMac).build();
+       /* The rebuilt instance replaces the old one, so the indexes must point to it */
+       addVirtualGateway(updated);
+       return updated;
     }
 
 
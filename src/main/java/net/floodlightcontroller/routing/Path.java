@@ -40,6 +40,7 @@ public class Path implements Comparable<Path> {
     protected int pathIndex;
     protected int hopCount;
     protected U64 latency;
+    protected int cost;
 
     public Path(PathId id, List<NodePortTuple> switchPorts) {
         super();
@@ -112,6 +113,22 @@ public class Path implements Comparable<Path> {
     public U64 getLatency() { 
         return this.latency; 
     }
+
+    /**
+     * @param cost the cost of the path under the path metric
+     * it was computed with
+     */
+    public void setCost(int cost) {
+        this.cost = cost;
+    }
+
+    /**
+     * @return the cost of the path under the path metric
+     * it was computed with
+     */
+    public int getCost() {
+        return this.cost;
+    }
     
     @Override
     public int hashCode() {
@@ -1,6 +1,7 @@
 package net.floodlightcontroller.routing;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.types.NodePortTuple;
@@ -15,8 +16,12 @@ import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.statistics.IStatisticsService;
+import net.floodlightcontroller.statistics.SwitchPortBandwidth;
 import net.floodlightcontroller.topology.ITopologyManagerBackend;
 import net.floodlightcontroller.topology.ITopologyService;
+import net.floodlightcontroller.topology.LinkCostEngine;
+import net.floodlightcontroller.topology.TopologyInstance;
 
 /**
  * Separate path-finding and routing functionality from the 
@@ -44,6 +49,11 @@ public class RoutingManager implements IFloodlightModule, IRoutingService {
     private List<IRoutingDecisionChangedListener> decisionChangedListeners;
 
     private static volatile boolean enableL3RoutingService = false;
+
+    private IStatisticsService statisticsService;
+
+    private volatile PATH_SELECTION pathSelection = PATH_SELECTION.BEST;
+    private volatile double ecmpTolerance = 0;
     
     @Override
     public Collection<Class<? extends IFloodlightService>> getModuleServices() {
@@ -64,7 +74,34 @@ public class RoutingManager implements IFloodlightModule, IRoutingService {
     public void init(FloodlightModuleContext context) throws FloodlightModuleException {
         log.debug("RoutingManager starting up");
         tm = (ITopologyManagerBackend) context.getServiceImpl(ITopologyService.class);
-        decisionChangedListeners = new ArrayList<IRoutingDecisionChangedListener>();
+        decisionChangedListeners = new CopyOnWriteArrayList<IRoutingDecisionChangedListener>();
+        statisticsService = context.getServiceImpl(IStatisticsService.class);
+
+        Map<String, String> configOptions = context.getConfigParams(this);
+        String selection = configOptions.get("pathSelection");
+        if (selection != null) {
+            selection = selection.trim().toLowerCase();
+            boolean found = false;
+            for (PATH_SELECTION ps : PATH_SELECTION.values()) {
+                if (ps.getSelectionName().equals(selection)) {
+                    pathSelection = ps;
+                    found = true;
+                }
+            }
+            if (!found) {
+                log.error("Invalid path selection {}. Using default {}",
+                        selection, pathSelection.getSelectionName());
+            }
+        }
+        String tolerance = configOptions.get("ecmpTolerance");
+        if (tolerance != null) {
+            try {
+                setEcmpTolerance(Double.parseDouble(tolerance.trim()));
+            } catch (IllegalArgumentException e) {
+                log.error("Invalid ECMP tolerance {}. Using default {}", tolerance, ecmpTolerance);
+            }
+        }
+        log.info("Path selection set to {} with ECMP tolerance {}", pathSelection, ecmpTolerance);
     }
 
     @Override
@@ -81,6 +118,29 @@ public class RoutingManager implements IFloodlightModule, IRoutingService {
     }
 
 
+    @Override
+    public void setPathSelection(PATH_SELECTION selection) {
+        pathSelection = selection;
+    }
+
+    @Override
+    public PATH_SELECTION getPathSelection() {
+        return pathSelection;
+    }
+
+    @Override
+    public void setEcmpTolerance(double tolerance) {
+        if (tolerance < 0 || Double.isNaN(tolerance)) {
+            throw new IllegalArgumentException("ECMP tolerance cannot be negative");
+        }
+        ecmpTolerance = tolerance;
+    }
+
+    @Override
+    public double getEcmpTolerance() {
+        return ecmpTolerance;
+    }
+
     @Override
     public void setMaxPathsToCompute(int max) {
         tm.setMaxPathsToCompute(max);
@@ -101,6 +161,61 @@ public class RoutingManager implements IFloodlightModule, IRoutingService {
         return tm.getCurrentTopologyInstance().getPath(src, srcPort, dst, dstPort);
     }
 
+    @Override
+    public Path getPath(DatapathId src, OFPort srcPort, DatapathId dst, OFPort dstPort, int flowHash) {
+        PATH_SELECTION selection = pathSelection;
+        TopologyInstance ti = tm.getCurrentTopologyInstance();
+        if (selection == PATH_SELECTION.BEST) {
+            return ti.getPath(src, srcPort, dst, dstPort);
+        }
+
+        List<Path> paths = ti.getEqualCostPaths(src, dst, ecmpTolerance);
+        if (paths.size() < 2) {
+            return ti.getPath(src, srcPort, dst, dstPort);
+        }
+        if (selection == PATH_SELECTION.ECMP_UTILIZATION && statisticsService != null) {
+            paths = getLeastUtilizedPaths(paths);
+        }
+        Path p = paths.get(Math.floorMod(flowHash, paths.size()));
+        if (log.isTraceEnabled()) {
+            log.trace("Picked path {} of {} for flow hash {}", new Object[] { p.getPathIndex(), paths.size(), flowHash });
+        }
+        return ti.getPath(p, srcPort, dstPort);
+    }
+
+    /**
+     * Keep the paths whose busiest link is the least utilized. Links
+     * are compared by their utilization cost, which is coarse enough
+     * for paths with links about as busy to tie; the flow hash then
+     * picks among them.
+     * @param paths the equal cost paths
+     * @return the least utilized paths
+     */
+    private List<Path> getLeastUtilizedPaths(List<Path> paths) {
+        List<Path> least = new ArrayList<Path>(paths.size());
+        int leastCost = Integer.MAX_VALUE;
+        for (Path p : paths) {
+            int busiest = 0;
+            List<NodePortTuple> npts = p.getPath();
+            for (int i = 0; i < npts.size(); i = i + 2) { /* the port each hop leaves from */
+                SwitchPortBandwidth spb = statisticsService.getBandwidthConsumption(npts.get(i).getNodeId(),
+                        npts.get(i).getPortId());
+                if (spb != null) {
+                    busiest = Math.max(busiest, LinkCostEngine.utilizationCost(spb.getBitsPerSecondTx().getValue(),
+                            spb.getLinkSpeedBitsPerSec().getValue()));
+                }
+            }
+            if (busiest < leastCost) {
+                least.clear();
+                leastCost = busiest;
+            }
+            if (busiest == leastCost) {
+                least.add(p);
+            }
+        }
+        return least;
+    }
+
     @Override
     public List<Path> getPathsFast(DatapathId src, DatapathId dst) {
         return tm.getCurrentTopologyInstance().getPathsFast(src, dst, tm.getMaxPathsToCompute());
@@ -39,6 +39,21 @@ public class VirtualGatewayInstance {
     private Set<NodePortTuple> nptMembers = null;
     private Set<IPv4AddressWithMask> subsetMembers = null;
 
+    /**
+     * Notified of switch, node-port-tuple and subnet membership changes,
+     * so that the owner of the gateway can keep reverse indexes current
+     */
+    public interface MembershipListener {
+        void switchMemberAdded(VirtualGatewayInstance gateway, DatapathId dpid);
+        void switchMemberRemoved(VirtualGatewayInstance gateway, DatapathId dpid);
+        void nptMemberAdded(VirtualGatewayInstance gateway, NodePortTuple npt);
+        void nptMemberRemoved(VirtualGatewayInstance gateway, NodePortTuple npt);
+        void subnetMemberAdded(VirtualGatewayInstance gateway, IPv4AddressWithMask subnet);
+        void subnetMemberRemoved(VirtualGatewayInstance gateway, IPv4AddressWithMask subnet);
+    }
+
+    private volatile MembershipListener membershipListener = null;
+
     public String getName() {
         return name;
     }
@@ -46,9 +61,9 @@ public class VirtualGatewayInstance {
         return gatewayMac;
     }
     public Collection<VirtualGatewayInterface> getInterfaces() { return interfaces.values(); }
-    public Set<DatapathId> getSwitchMembers() { return switchMembers; }
-    public Set<NodePortTuple> getNptMembers() { return nptMembers; }
-    public Set<IPv4AddressWithMask> getSubsetMembers() { return subsetMembers; }
+    public Set<DatapathId> getSwitchMembers() { return Collections.unmodifiableSet(switchMembers); }
+    public Set<NodePortTuple> getNptMembers() { return Collections.unmodifiableSet(nptMembers); }
+    public Set<IPv4AddressWithMask> getSubsetMembers() { return Collections.unmodifiableSet(subsetMembers); }
     public VirtualGatewayInstanceBuilder getBuilder() { return builder; }
 
     public boolean isSwitchAMember(DatapathId dpid) { return switchMembers.contains(dpid); }
@@ -96,75 +111,94 @@ public class VirtualGatewayInstance {
         this.interfaces.clear();
     }
 
-    public void addSwitchMember(DatapathId dpid) { this.switchMembers.add(dpid); }
+    /**
+     * Set the listener for membership changes. A gateway has at most one
+     * listener, normally the L3RoutingManager that holds it.
+     * @param listener the listener, or null to remove it
+     */
+    void setMembershipListener(MembershipListener listener) {
+        this.membershipListener = listener;
+    }
 
-    public void addNptMember(NodePortTuple npt) { this.nptMembers.add(npt); }
+    public void addSwitchMember(DatapathId dpid) {
+        if (this.switchMembers.add(dpid)) {
+            MembershipListener l = membershipListener;
+            if (l != null) {
+                l.switchMemberAdded(this, dpid);
+            }
+        }
+    }
 
-    public void addSubnetMember(IPv4AddressWithMask subnet) { this.subsetMembers.add(subnet); }
+    public void addNptMember(NodePortTuple npt) {
+        if (this.nptMembers.add(npt)) {
+            MembershipListener l = membershipListener;
+            if (l != null) {
+                l.nptMemberAdded(this, npt);
+            }
+        }
+    }
+
+    public void addSubnetMember(IPv4AddressWithMask subnet) {
+        if (this.subsetMembers.add(subnet)) {
+            MembershipListener l = membershipListener;
+            if (l != null) {
+                l.subnetMemberAdded(this, subnet);
+            }
+        }
+    }
 
     public void removeSwitchMember(DatapathId dpid) {
-        if (!this.switchMembers.isEmpty()) {
-            for (DatapathId id : this.switchMembers) {
-                if (id.equals(dpid)) {
-                    this.switchMembers.remove(id);
-                }
+        if (this.switchMembers.remove(dpid)) {
+            MembershipListener l = membershipListener;
+            if (l != null) {
+                l.switchMemberRemoved(this, dpid);
             }
         }
     }
 
     public void removeNptMember(NodePortTuple npt) {
-        if (!this.nptMembers.isEmpty()) {
-            for (NodePortTuple nodePortTuple : this.nptMembers) {
-                if (nodePortTuple.equals(npt)) {
-                    this.nptMembers.remove(npt);
-                }
+        if (this.nptMembers.remove(npt)) {
+            MembershipListener l = membershipListener;
+            if (l != null) {
+                l.nptMemberRemoved(this, npt);
             }
         }
     }
 
     public void removeSubnetMember(IPv4AddressWithMask iPv4AddressWithMask) {
-        if (!this.subsetMembers.isEmpty()) {
-            for (IPv4AddressWithMask subnet : this.subsetMembers) {
-                if (subnet.equals(iPv4AddressWithMask)) {
-                    this.subsetMembers.remove(iPv4AddressWithMask);
-                }
+        if (this.subsetMembers.remove(iPv4AddressWithMask)) {
+            MembershipListener l = membershipListener;
+            if (l != null) {
+                l.subnetMemberRemoved(this, iPv4AddressWithMask);
             }
         }
     }
 
     public void removeSwitchFromInstance(DatapathId dpid) {
-        if (!this.switchMembers.isEmpty()) {
-            for (DatapathId id : this.switchMembers) {
-                if (id.equals(dpid)) {
-                    this.switchMembers.remove(id);
-                }
-            }
-        }
+        removeSwitchMember(dpid);
 
-        if (!this.nptMembers.isEmpty()) {
-            for (NodePortTuple npt : this.nptMembers) {
-                if (npt.getNodeId().equals(dpid)) {
-                    this.nptMembers.remove(npt);
-                }
+        for (NodePortTuple npt : this.nptMembers) {
+            if (npt.getNodeId().equals(dpid)) {
+                removeNptMember(npt);
             }
         }
     }
 
     public void clearSwitchMembers() {
-        if (!this.switchMembers.isEmpty()) {
-            this.switchMembers.clear();
+        for (DatapathId dpid : this.switchMembers) {
+            removeSwitchMember(dpid);
         }
     }
 
     public void clearNptMembers() {
-        if (!this.nptMembers.isEmpty()) {
-            this.nptMembers.clear();
+        for (NodePortTuple npt : this.nptMembers) {
+            removeNptMember(npt);
         }
     }
 
     public void clearSubnetMembers() {
-        if (!this.subsetMembers.isEmpty()) {
-            this.subsetMembers.clear();
+        for (IPv4AddressWithMask subnet : this.subsetMembers) {
+            removeSubnetMember(subnet);
         }
     }
 
@@ -236,23 +270,31 @@ public class VirtualGatewayInstance {
             return this;
         }
 
+        /*
+         * The given collections are copied: the instance changes its members while
+         * iterating them and may be updated from several threads (e.g. REST and
+         * switch events), so it needs concurrent ones it owns.
+         */
         public VirtualGatewayInstanceBuilder setInterfaces(@Nonnull Map<String, VirtualGatewayInterface> interfaces) {
-            this.interfaces = interfaces;
+            this.interfaces = new ConcurrentHashMap<>(interfaces);
             return this;
         }
 
         public VirtualGatewayInstanceBuilder setSwitchMembers(@Nonnull Set<DatapathId> switchMembers) {
-            this.switchMembers = switchMembers;
+            this.switchMembers = new ConcurrentSet<>();
+            this.switchMembers.addAll(switchMembers);
             return this;
         }
 
         public VirtualGatewayInstanceBuilder setNptMembers(@Nonnull Set<NodePortTuple> nptMembers) {
-            this.nptMembers = nptMembers;
+            this.nptMembers = new ConcurrentSet<>();
+            this.nptMembers.addAll(nptMembers);
             return this;
         }
 
         public VirtualGatewayInstanceBuilder setSubnetMembers(@Nonnull Set<IPv4AddressWithMask> subnetMembers) {
-            this.subsetMembers = subnetMembers;
+            this.subsetMembers = new ConcurrentSet<>();
+            this.subsetMembers.addAll(subnetMembers);
             return this;
         }
 
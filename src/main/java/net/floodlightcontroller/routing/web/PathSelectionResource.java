@@ -0,0 +1,133 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.routing.web;
+
+import net.floodlightcontroller.routing.IRoutingService;
+import net.floodlightcontroller.routing.IRoutingService.PATH_SELECTION;
+
+import org.restlet.resource.Get;
+import org.restlet.resource.Post;
+import org.restlet.resource.Put;
+import org.restlet.resource.ServerResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingJsonFactory;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PathSelectionResource extends ServerResource {
+    private static final Logger log = LoggerFactory.getLogger(PathSelectionResource.class);
+
+    private static Map<String, String> selectionFromJson(String json) {
+        MappingJsonFactory f = new MappingJsonFactory();
+        JsonParser jp;
+        Map<String, String> fields = new HashMap<String, String>();
+        try {
+            try {
+                jp = f.createParser(json);
+            } catch (JsonParseException e) {
+                throw new IOException(e);
+            }
+
+            jp.nextToken();
+            if (jp.getCurrentToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected START_OBJECT");
+            }
+
+            while (jp.nextToken() != JsonToken.END_OBJECT) {
+                if (jp.getCurrentToken() != JsonToken.FIELD_NAME) {
+                    throw new IOException("Expected FIELD_NAME");
+                }
+
+                String n = jp.getCurrentName();
+                jp.nextToken();
+                if (jp.getText().equals("")) {
+                    continue;
+                }
+
+                if (n.equalsIgnoreCase("selection")) {
+                    fields.put("selection", jp.getText().trim().toLowerCase());
+                } else if (n.equalsIgnoreCase("tolerance")) {
+                    fields.put("tolerance", jp.getText().trim());
+                }
+            }
+        } catch (IOException e) {
+            log.error("Unable to parse JSON string: {}", e);
+        }
+        return fields;
+    }
+
+    @Put
+    @Post
+    public Map<String, String> changeSelection(String json) {
+        IRoutingService routing =
+                (IRoutingService)getContext().getAttributes().
+                get(IRoutingService.class.getCanonicalName());
+
+        Map<String, String> fields = selectionFromJson(json);
+        String selection = fields.get("selection");
+        String tolerance = fields.get("tolerance");
+
+        PATH_SELECTION type = null;
+        if (selection != null) {
+            for (PATH_SELECTION ps : PATH_SELECTION.values()) {
+                if (ps.getSelectionName().equals(selection)) {
+                    type = ps;
+                }
+            }
+            if (type == null) {
+                log.error("Invalid input {}", selection);
+                return Collections.singletonMap("error", "invalid path selection: " + selection);
+            }
+        }
+
+        double t = routing.getEcmpTolerance();
+        if (tolerance != null) {
+            try {
+                t = Double.parseDouble(tolerance);
+                if (t < 0 || Double.isNaN(t)) {
+                    throw new NumberFormatException();
+                }
+            } catch (NumberFormatException e) {
+                log.error("Could not parse tolerance {}", tolerance);
+                return Collections.singletonMap("error", "invalid tolerance: " + tolerance);
+            }
+        }
+
+        if (type != null) {
+            log.debug("Setting path selection to {}", type.getSelectionName());
+            routing.setPathSelection(type);
+        }
+        routing.setEcmpTolerance(t);
+        return getSelection();
+    }
+
+    @Get
+    public Map<String, String> getSelection() {
+        IRoutingService routing =
+                (IRoutingService)getContext().getAttributes().
+                get(IRoutingService.class.getCanonicalName());
+        return ImmutableMap.of("selection", routing.getPathSelection().getSelectionName(),
+                "tolerance", Double.toString(routing.getEcmpTolerance()));
+    }
+}
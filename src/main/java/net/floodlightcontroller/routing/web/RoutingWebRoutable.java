@@ -35,6 +35,7 @@ public class RoutingWebRoutable implements RestletRoutable {
         router.attach("/metric/json", PathMetricsResource.class);
         router.attach("/paths/force-recompute/json", ForceRecomputeResource.class);
         router.attach("/paths/max-fast-paths/json", MaxFastPathsResource.class);
+        router.attach("/paths/selection/json", PathSelectionResource.class);
 
         router.attach("/config", ConfigResource.class);
         router.attach("/gateway", GatewayInstancesResource.class);
@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import net.floodlightcontroller.core.FloodlightContext;
@@ -54,6 +55,7 @@ import net.floodlightcontroller.storage.IStorageSourceService;
 import net.floodlightcontroller.storage.StorageException;
 import net.floodlightcontroller.util.ActionUtils;
 import net.floodlightcontroller.util.FlowModUtils;
+import net.floodlightcontroller.util.FlowTableDiff;
 import net.floodlightcontroller.util.GroupUtils;
 import net.floodlightcontroller.util.InstructionUtils;
 import net.floodlightcontroller.util.MatchUtils;
@@ -63,6 +65,9 @@ import org.projectfloodlight.openflow.protocol.OFFlowAdd;
 import org.projectfloodlight.openflow.protocol.OFFlowMod;
 import org.projectfloodlight.openflow.protocol.OFFlowRemoved;
 import org.projectfloodlight.openflow.protocol.OFFlowRemovedReason;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsReply;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsRequest;
 import org.projectfloodlight.openflow.protocol.OFGroupMod;
 import org.projectfloodlight.openflow.protocol.OFInstructionType;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
@@ -71,6 +76,8 @@ import org.projectfloodlight.openflow.protocol.OFType;
 import org.projectfloodlight.openflow.protocol.OFVersion;
 import org.projectfloodlight.openflow.protocol.match.MatchFields;
 import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFGroup;
+import org.projectfloodlight.openflow.types.OFPort;
 import org.projectfloodlight.openflow.types.TableId;
 import org.projectfloodlight.openflow.types.U32;
 import org.projectfloodlight.openflow.types.U64;
@@ -78,6 +85,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 /**
  * This module is responsible for maintaining a set of static flows on
@@ -142,6 +153,16 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 	// Entry Name -> DPID of Switch it's on
 	protected Map<String, String> entry2dpid;
 
+	/*
+	 * If set, entries are not replayed blindly when a switch connects.
+	 * Instead, whenever we become master of a switch, we read its flow
+	 * tables and only send the flows that are missing or differ and delete
+	 * our flows that are no longer wanted. Meant to be used with
+	 * OFSwitchManager's clearTables* options turned off, so failover does
+	 * not touch unchanged flows.
+	 */
+	protected boolean resyncByDiff = false;
+
 	// Class to sort FlowMod's by priority, from lowest to highest
 	class FlowModSorter implements Comparator<String> {
 		private String dpid;
@@ -429,8 +450,82 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 		}
 	}
 
+	/**
+	 * Brings the flow table of a switch in line with our entries by diffing
+	 * our entries for the switch against its flow stats. Only flows with our
+	 * application cookie are ever deleted. Falls back to
+	 * {@link #sendEntriesToSwitch(DatapathId)} if the flow stats cannot be
+	 * read.
+	 *
+	 * Group entries are not part of the diff and are sent as they are.
+	 *
+	 * @param switchId The switch to resync
+	 */
+	protected void resyncEntriesToSwitch(final DatapathId switchId) {
+		final IOFSwitch sw = switchService.getSwitch(switchId);
+		if (sw == null)
+			return;
+
+		OFFlowStatsRequest.Builder req = sw.getOFFactory().buildFlowStatsRequest()
+				.setMatch(sw.getOFFactory().buildMatch().build())
+				.setOutPort(OFPort.ANY)
+				.setTableId(TableId.ALL);
+		if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+			req.setOutGroup(OFGroup.ANY);
+		}
+
+		final long start = System.nanoTime();
+		ListenableFuture<List<OFFlowStatsReply>> future = sw.writeStatsRequest(req.build());
+		Futures.addCallback(future, new FutureCallback<List<OFFlowStatsReply>>() {
+			@Override
+			public void onSuccess(List<OFFlowStatsReply> replies) {
+				List<OFFlowStatsEntry> installed = new ArrayList<OFFlowStatsEntry>();
+				for (OFFlowStatsReply r : replies) {
+					installed.addAll(r.getEntries());
+				}
+
+				/* Read our entries now, not at request time, so we see entries written since */
+				List<OFFlowMod> intended = new ArrayList<OFFlowMod>();
+				List<OFMessage> messages = new ArrayList<OFMessage>();
+				Map<String, OFMessage> entries = entriesFromStorage.get(switchId.toString());
+				if (entries != null) {
+					for (OFMessage m : new ArrayList<OFMessage>(entries.values())) {
+						if (m instanceof OFFlowMod) {
+							intended.add((OFFlowMod) m);
+						} else if (m != null) {
+							messages.add(m); /* groups go before the flows that use them */
+						}
+					}
+				}
+
+				FlowTableDiff diff = FlowTableDiff.compute(sw.getOFFactory(), intended, installed,
+						cookie -> AppCookie.extractApp(cookie) == STATIC_ENTRY_APP_ID);
+				messages.addAll(diff.getMessages());
+				log.info("Resync of {}: {} unchanged, {} to add, {} to delete, {} groups, {} us to read flow tables",
+						new Object[] { switchId, diff.getUnchanged(), diff.getAdds().size(), diff.getDeletes().size(),
+								messages.size() - diff.getAdds().size() - diff.getDeletes().size(),
+								TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) });
+				if (!messages.isEmpty()) {
+					messages.add(sw.getOFFactory().buildBarrierRequest().build());
+					writeOFMessagesToSwitch(switchId, messages);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				log.warn("Could not read flow tables of {}; sending all static entries: {}",
+						switchId, t.getMessage());
+				sendEntriesToSwitch(switchId);
+			}
+		}, MoreExecutors.directExecutor()); /* the connection times out requests that get no reply */
+	}
+
 	@Override
 	public void switchAdded(DatapathId switchId) {
+		if (resyncByDiff) {
+			/* done in switchActivated(), once we are master of the switch */
+			return;
+		}
 		log.debug("Switch {} connected; processing its static entries",
 				switchId.toString());
 		sendEntriesToSwitch(switchId);
@@ -443,7 +538,13 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 	}
 
 	@Override
-	public void switchActivated(DatapathId switchId) {}
+	public void switchActivated(DatapathId switchId) {
+		if (resyncByDiff) {
+			log.debug("Switch {} activated; resyncing its static entries",
+					switchId.toString());
+			resyncEntriesToSwitch(switchId);
+		}
+	}
 
 	@Override
 	public void switchChanged(DatapathId switchId) {}
@@ -836,6 +937,13 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 		storageSourceService = context.getServiceImpl(IStorageSourceService.class);
 		restApiService = context.getServiceImpl(IRestApiService.class);
 		haListener = new HAListenerDelegate();
+
+		String resync = context.getConfigParams(this).get("resyncByDiff");
+		if (resync != null) {
+			resyncByDiff = resync.equalsIgnoreCase("yes") || resync.equalsIgnoreCase("true");
+		}
+		log.info("Resync static entries by diffing flow tables on mastership: {}",
+				resyncByDiff ? "TRUE" : "FALSE");
 	} 
 
 	@Override
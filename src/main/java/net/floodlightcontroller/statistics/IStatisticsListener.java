@@ -0,0 +1,12 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.Collection;
+
+public interface IStatisticsListener {
+	/**
+	 * Called after each round of port statistics collection with the
+	 * bandwidth measured on every port that replied.
+	 * @param bandwidth the new samples
+	 */
+	public void portBandwidthUpdated(Collection<SwitchPortBandwidth> bandwidth);
+}
@@ -31,4 +31,11 @@ public interface IStatisticsService extends IFloodlightService {
 	public Map<NodePortTuple, SwitchPortBandwidth> getBandwidthConsumption();
 	
 	public void collectStatistics(boolean collect);
+
+	/**
+	 * Add a listener for the port bandwidth samples, which are taken
+	 * while statistics collection is enabled.
+	 * @param listener
+	 */
+	public void addListener(IStatisticsListener listener);
 }
@@ -31,6 +31,8 @@ import org.slf4j.LoggerFactory;
 import java.lang.Thread.State;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -58,13 +60,16 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	private static final String INTERVAL_PORT_STATS_STR = "collectionIntervalPortStatsSeconds";
 	private static final String ENABLED_STR = "enable";
 
-	private static final HashMap<NodePortTuple, SwitchPortBandwidth> portStats = new HashMap<NodePortTuple, SwitchPortBandwidth>();
+	/* read by the REST API and the metrics exporter while the collector updates it */
+	private static final Map<NodePortTuple, SwitchPortBandwidth> portStats = new ConcurrentHashMap<NodePortTuple, SwitchPortBandwidth>();
 	private static final HashMap<NodePortTuple, SwitchPortBandwidth> tentativePortStats = new HashMap<NodePortTuple, SwitchPortBandwidth>();
 
 	private static final HashMap<Pair<Match,DatapathId>, FlowRuleStats> flowStats = new HashMap<Pair<Match,DatapathId>,FlowRuleStats>();
 	
 	private static final HashMap<NodePortTuple, PortDesc> portDesc = new HashMap<NodePortTuple, PortDesc>();
 
+	protected final List<IStatisticsListener> listeners = new CopyOnWriteArrayList<IStatisticsListener>();
+
 
 
 	/**
@@ -90,6 +95,7 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 
 		@Override
 		public void run() {
+			List<SwitchPortBandwidth> updated = new ArrayList<SwitchPortBandwidth>();
 			Map<DatapathId, List<OFStatsReply>> replies = getSwitchStatistics(switchService.getAllSwitchDpids(), OFStatsType.PORT);
 			for (Entry<DatapathId, List<OFStatsReply>> e : replies.entrySet()) {
 				for (OFStatsReply r : e.getValue()) {
@@ -127,12 +133,13 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 							}
 							long speed = getSpeed(npt);
 							long timeDifSec = ((System.nanoTime() - spb.getStartTime_ns()) / 1000000) / MILLIS_PER_SEC;
-							portStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(), 
+							spb = SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(), 
 									U64.ofRaw(speed),
 									U64.ofRaw((rxBytesCounted.getValue() * BITS_PER_BYTE) / timeDifSec), 
 									U64.ofRaw((txBytesCounted.getValue() * BITS_PER_BYTE) / timeDifSec), 
-									pse.getRxBytes(), pse.getTxBytes())
-									);
+									pse.getRxBytes(), pse.getTxBytes());
+							portStats.put(npt, spb);
+							updated.add(spb);
 
 						} else { /* initialize */
 							tentativePortStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(), U64.ZERO, U64.ZERO, U64.ZERO, pse.getRxBytes(), pse.getTxBytes()));
@@ -140,6 +147,9 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 					}
 				}
 			}
+			if (!updated.isEmpty()) {
+				informListeners(Collections.unmodifiableList(updated));
+			}
 		}
 
 		protected long getSpeed(NodePortTuple npt) {
@@ -397,6 +407,11 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 		return Collections.unmodifiableMap(portStats);
 	}
 
+	@Override
+	public void addListener(IStatisticsListener listener) {
+		listeners.add(listener);
+	}
+
 	@Override
 	public synchronized void collectStatistics(boolean collect) {
 		if (collect && !isEnabled) {
@@ -413,6 +428,20 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	 * Helper functions
 	 */
 
+	/**
+	 * Hand the new port bandwidth samples to the listeners.
+	 * @param bandwidth
+	 */
+	private void informListeners(List<SwitchPortBandwidth> bandwidth) {
+		for (IStatisticsListener l : listeners) {
+			try {
+				l.portBandwidthUpdated(bandwidth);
+			} catch (Exception e) {
+				log.error("Error in statistics listener " + l, e);
+			}
+		}
+	}
+
 	/**
 	 * Start all stats threads.
 	 */
@@ -20,15 +20,23 @@ package net.floodlightcontroller.storage;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
@@ -47,30 +55,47 @@ public abstract class AbstractStorageSource
 implements IStorageSourceService, IFloodlightModule {
 	protected static Logger logger = LoggerFactory.getLogger(AbstractStorageSource.class);
 
-	// Shared instance of the executor to use to execute the storage tasks.
-	// We make this a single threaded executor, because if we used a thread pool
-	// then storage operations could be executed out of order which would cause
-	// problems in some cases (e.g. delete and update of a row getting reordered).
-	// If we wanted to make this more multi-threaded we could have multiple
-	// worker threads/executors with affinity of operations on a given table
-	// to a single worker thread. But for now, we'll keep it simple and just have
-	// a single thread for all operations.
-	protected static ExecutorService defaultExecutorService = Executors.newSingleThreadExecutor();
+	// Shared executors to use to execute the storage tasks. Each table is
+	// mapped to one single threaded executor by the hash of its name, because
+	// if we used a thread pool then storage operations could be executed out
+	// of order which would cause problems in some cases (e.g. delete and
+	// update of a row getting reordered). Operations on different tables run
+	// on different threads as far as the hash spreads them, so a burst of
+	// writes to one table doesn't hold up the storage I/O of other modules.
+	private static final int TABLE_EXECUTORS =
+			Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+	protected static final ExecutorService[] tableExecutorServices =
+			createExecutors(TABLE_EXECUTORS);
 
 	protected final static String STORAGE_QUERY_COUNTER_NAME = "StorageQuery";
 	protected final static String STORAGE_UPDATE_COUNTER_NAME = "StorageUpdate";
 	protected final static String STORAGE_DELETE_COUNTER_NAME = "StorageDelete";
 
 	protected Set<String> allTableNames = new CopyOnWriteArraySet<String>();
-	protected ExecutorService executorService = defaultExecutorService;
+	// If set, all storage tasks are executed by this executor instead of
+	// the per-table executors
+	protected ExecutorService executorService = null;
 	protected IStorageExceptionHandler exceptionHandler;
 
 	protected IDebugCounterService debugCounterService;
-	private Map<String, IDebugCounter> debugCounters = new HashMap<String, IDebugCounter>();
+	private ConcurrentMap<String, IDebugCounter> debugCounters =
+			new ConcurrentHashMap<String, IDebugCounter>();
+	private ConcurrentMap<String, TableQueue> tableQueues =
+			new ConcurrentHashMap<String, TableQueue>();
 
 	private Map<String, Set<IStorageSourceListener>> listeners =
 			new ConcurrentHashMap<String, Set<IStorageSourceListener>>();
 
+	// Row change notifications for a table are collected for this many
+	// milliseconds and then delivered as one rowsDeleted and one
+	// rowsModified call per listener. With 0, each notification is
+	// delivered on the thread that made the change.
+	protected volatile long notificationWindowMs = 0;
+	// delivers coalesced notifications; null for the shared one
+	private volatile ScheduledExecutorService notificationExecutor = null;
+	private ConcurrentMap<String, TableNotifications> tableNotifications =
+			new ConcurrentHashMap<String, TableNotifications>();
+
 	// Our dependencies
 	protected IRestApiService restApi = null;
 
@@ -108,13 +133,226 @@ implements IStorageSourceService, IFloodlightModule {
 		abstract void doStorageOperation();
 	}
 
+	/**
+	 * Asynchronous operations submitted and completed on a table
+	 */
+	private static class TableQueue {
+		final LongAdder submitted = new LongAdder();
+		final LongAdder completed = new LongAdder();
+	}
+
+	/**
+	 * Row change notifications of a table waiting to be delivered. A key
+	 * is in at most one of the sets: a later change to a key replaces an
+	 * earlier one, so listeners see the last change in the window.
+	 */
+	private class TableNotifications implements Runnable {
+		final String tableName;
+		final AtomicBoolean scheduled = new AtomicBoolean();
+		// held while delivering, so a table's notifications are delivered
+		// one batch at a time and in order
+		final Object deliveryLock = new Object();
+		Set<Object> modified = new HashSet<Object>();
+		Set<Object> deleted = new HashSet<Object>();
+
+		TableNotifications(String tableName) {
+			this.tableName = tableName;
+		}
+
+		synchronized void add(StorageSourceNotification.Action action,
+				Set<Object> keys) {
+			switch (action) {
+			case MODIFY:
+				deleted.removeAll(keys);
+				modified.addAll(keys);
+				break;
+			case DELETE:
+				modified.removeAll(keys);
+				deleted.addAll(keys);
+				break;
+			}
+		}
+
+		synchronized boolean isEmpty() {
+			return modified.isEmpty() && deleted.isEmpty();
+		}
+
+		void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				ScheduledExecutorService executor = notificationExecutor;
+				if (executor == null) {
+					executor = NotificationExecutor.INSTANCE;
+				}
+				executor.schedule(this, notificationWindowMs, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		@Override
+		public void run() {
+			Set<Object> m, d;
+			synchronized (this) {
+				m = modified;
+				d = deleted;
+				modified = new HashSet<Object>();
+				deleted = new HashSet<Object>();
+			}
+			try {
+				synchronized (deliveryLock) {
+					if (!d.isEmpty()) {
+						deliverNotification(tableName,
+								StorageSourceNotification.Action.DELETE, d);
+					}
+					if (!m.isEmpty()) {
+						deliverNotification(tableName,
+								StorageSourceNotification.Action.MODIFY, m);
+					}
+				}
+			} finally {
+				scheduled.set(false);
+				if (!isEmpty()) {
+					schedule();
+				}
+			}
+		}
+	}
+
+	// created on first use, only if notifications are coalesced
+	private static class NotificationExecutor {
+		static final ScheduledExecutorService INSTANCE =
+				Executors.newScheduledThreadPool(2,
+						daemonThreadFactory("StorageNotification"));
+	}
+
+	private static ThreadFactory daemonThreadFactory(final String name) {
+		return new ThreadFactory() {
+			private final AtomicInteger id = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + "-" + id.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	private static ExecutorService[] createExecutors(int n) {
+		ExecutorService[] executors = new ExecutorService[n];
+		ThreadFactory f = daemonThreadFactory("StorageSource");
+		for (int i = 0; i < n; i++) {
+			executors[i] = Executors.newSingleThreadExecutor(f);
+		}
+		return executors;
+	}
+
 	public AbstractStorageSource() {
-		this.executorService = defaultExecutorService;
 	}
 
+	/**
+	 * @param executorService the executor for all storage tasks, or null
+	 * to use a single threaded executor per table
+	 */
 	public void setExecutorService(ExecutorService executorService) {
-		this.executorService = (executorService != null) ?
-				executorService : defaultExecutorService;
+		this.executorService = executorService;
+	}
+
+	/**
+	 * @param notificationWindowMs the time over which row change
+	 * notifications are coalesced, or 0 to deliver each one immediately
+	 */
+	public void setNotificationWindowMs(long notificationWindowMs) {
+		this.notificationWindowMs = Math.max(0, notificationWindowMs);
+	}
+
+	/**
+	 * @param notificationExecutor the executor that delivers coalesced
+	 * notifications at the end of their window, or null to use one shared
+	 * by all storage sources
+	 */
+	public void setNotificationExecutor(ScheduledExecutorService notificationExecutor) {
+		this.notificationExecutor = notificationExecutor;
+	}
+
+	/**
+	 * @param tableName the table
+	 * @return the executor for the storage tasks of the table
+	 */
+	protected ExecutorService getExecutorService(String tableName) {
+		ExecutorService es = executorService;
+		if (es != null) {
+			return es;
+		}
+		int h = (tableName != null) ? tableName.hashCode() : 0;
+		return tableExecutorServices[(h & Integer.MAX_VALUE) %
+		                             tableExecutorServices.length];
+	}
+
+	/**
+	 * @param tableName the table
+	 * @return the number of asynchronous operations on the table that were
+	 * submitted but haven't completed
+	 */
+	public long getAsyncQueueDepth(String tableName) {
+		TableQueue q = tableQueues.get(tableName);
+		if (q == null) {
+			return 0;
+		}
+		// read completed first so the difference is never negative
+		long completed = q.completed.sum();
+		return q.submitted.sum() - completed;
+	}
+
+	private TableQueue getTableQueue(String tableName) {
+		String name = (tableName != null) ? tableName : "";
+		TableQueue q = tableQueues.get(name);
+		if (q == null) {
+			q = new TableQueue();
+			TableQueue old = tableQueues.putIfAbsent(name, q);
+			if (old != null) {
+				return old;
+			}
+			if (debugCounterService != null) {
+				final TableQueue tq = q;
+				String module = this.getClass().getCanonicalName();
+				debugCounterService.registerCounter(module, name + "__AsyncSubmitted",
+						"Asynchronous operations submitted on table " + name,
+						tq.submitted::sum);
+				debugCounterService.registerCounter(module, name + "__AsyncCompleted",
+						"Asynchronous operations completed on table " + name,
+						tq.completed::sum);
+			}
+		}
+		return q;
+	}
+
+	private <V> Future<V> submit(String tableName, final Callable<V> task) {
+		final TableQueue q = getTableQueue(tableName);
+		q.submitted.increment();
+		return getExecutorService(tableName).submit(new Callable<V>() {
+			@Override
+			public V call() throws Exception {
+				try {
+					return task.call();
+				} finally {
+					q.completed.increment();
+				}
+			}
+		});
+	}
+
+	private Future<?> submit(String tableName, final Runnable task) {
+		final TableQueue q = getTableQueue(tableName);
+		q.submitted.increment();
+		return getExecutorService(tableName).submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					task.run();
+				} finally {
+					q.completed.increment();
+				}
+			}
+		}, null);
 	}
 
 	@Override
@@ -144,7 +382,8 @@ implements IStorageSourceService, IFloodlightModule {
 		IDebugCounter counter = debugCounters.get(counterName);
 		if (counter == null) {
 			counter = debugCounterService.registerCounter(this.getClass().getCanonicalName(), counterName, counterName, MetaData.WARN);
-			debugCounters.put(counterName, counter); // maintain a list of the counters as the tables register with the storage source service
+			IDebugCounter old = debugCounters.putIfAbsent(counterName, counter); // maintain a list of the counters as the tables register with the storage source service
+			if (old != null) counter = old;
 		}
 		counter.increment();
 		
@@ -154,7 +393,8 @@ implements IStorageSourceService, IFloodlightModule {
 		counter = debugCounters.get(tableOpType);
 		if (counter == null) {
 			counter = debugCounterService.registerCounter(this.getClass().getCanonicalName(), tableOpType, tableOpType, MetaData.WARN);
-			debugCounters.put(tableOpType, counter);
+			IDebugCounter old = debugCounters.putIfAbsent(tableOpType, counter);
+			if (old != null) counter = old;
 		}
 		counter.increment();
 	}
@@ -193,7 +433,7 @@ implements IStorageSourceService, IFloodlightModule {
 
 	@Override
 	public Future<IResultSet> executeQueryAsync(final IQuery query) {
-		Future<IResultSet> future = executorService.submit(
+		Future<IResultSet> future = submit(query.getTableName(),
 				new StorageCallable<IResultSet>() {
 					public IResultSet doStorageOperation() {
 						return executeQuery(query);
@@ -206,7 +446,7 @@ implements IStorageSourceService, IFloodlightModule {
 	public Future<IResultSet> executeQueryAsync(final String tableName,
 			final String[] columnNames,  final IPredicate predicate,
 			final RowOrdering ordering) {
-		Future<IResultSet> future = executorService.submit(
+		Future<IResultSet> future = submit(tableName,
 				new StorageCallable<IResultSet>() {
 					public IResultSet doStorageOperation() {
 						return executeQuery(tableName, columnNames,
@@ -220,7 +460,7 @@ implements IStorageSourceService, IFloodlightModule {
 	public Future<Object[]> executeQueryAsync(final String tableName,
 			final String[] columnNames,  final IPredicate predicate,
 			final RowOrdering ordering, final IRowMapper rowMapper) {
-		Future<Object[]> future = executorService.submit(
+		Future<Object[]> future = submit(tableName,
 				new StorageCallable<Object[]>() {
 					public Object[] doStorageOperation() {
 						return executeQuery(tableName, columnNames, predicate,
@@ -233,114 +473,123 @@ implements IStorageSourceService, IFloodlightModule {
 	@Override
 	public Future<?> insertRowAsync(final String tableName,
 			final Map<String,Object> values) {
-		Future<?> future = executorService.submit(
+		Future<?> future = submit(tableName,
 				new StorageRunnable() {
 					public void doStorageOperation() {
 						insertRow(tableName, values);
 					}
-				}, null);
+				});
 		return future;
 	}
 
 	@Override
 	public Future<?> updateRowsAsync(final String tableName, final List<Map<String,Object>> rows) {
-		Future<?> future = executorService.submit(    
+		Future<?> future = submit(tableName,
 				new StorageRunnable() {
 					public void doStorageOperation() {
 						updateRows(tableName, rows);
 					}
-				}, null);
+				});
 		return future;
 	}
 
 	@Override
 	public Future<?> updateMatchingRowsAsync(final String tableName,
 			final IPredicate predicate, final Map<String,Object> values) {
-		Future<?> future = executorService.submit(    
+		Future<?> future = submit(tableName,
 				new StorageRunnable() {
 					public void doStorageOperation() {
 						updateMatchingRows(tableName, predicate, values);
 					}
-				}, null);
+				});
 		return future;
 	}
 
 	@Override
 	public Future<?> updateRowAsync(final String tableName,
 			final Object rowKey, final Map<String,Object> values) {
-		Future<?> future = executorService.submit(
+		Future<?> future = submit(tableName,
 				new StorageRunnable() {
 					public void doStorageOperation() {
 						updateRow(tableName, rowKey, values);
 					}
-				}, null);
+				});
 		return future;
 	}
 
 	@Override
 	public Future<?> updateRowAsync(final String tableName,
 			final Map<String,Object> values) {
-		Future<?> future = executorService.submit(
+		Future<?> future = submit(tableName,
 				new StorageRunnable() {
 					public void doStorageOperation() {
 						updateRow(tableName, values);
 					}
-				}, null);
+				});
 		return future;
 	}
 
 	@Override
 	public Future<?> deleteRowAsync(final String tableName, final Object rowKey) {
-		Future<?> future = executorService.submit(
+		Future<?> future = submit(tableName,
 				new StorageRunnable() {
 					public void doStorageOperation() {
 						deleteRow(tableName, rowKey);
 					}
-				}, null);
+				});
 		return future;
 	}
 
 	@Override
 	public Future<?> deleteRowsAsync(final String tableName, final Set<Object> rowKeys) {
-		Future<?> future = executorService.submit(
+		Future<?> future = submit(tableName,
 				new StorageRunnable() {
 					public void doStorageOperation() {
 						deleteRows(tableName, rowKeys);
 					}
-				}, null);
+				});
 		return future;
 	}
 
 	@Override
 	public Future<?> deleteMatchingRowsAsync(final String tableName, final IPredicate predicate) {
-		Future<?> future = executorService.submit(
+		Future<?> future = submit(tableName,
 				new StorageRunnable() {
 					public void doStorageOperation() {
 						deleteMatchingRows(tableName, predicate);
 					}
-				}, null);
+				});
 		return future;
 	}
 
 	@Override
 	public Future<?> getRowAsync(final String tableName, final Object rowKey) {
-		Future<?> future = executorService.submit(
+		Future<?> future = submit(tableName,
 				new StorageRunnable() {
 					public void doStorageOperation() {
 						getRow(tableName, rowKey);
 					}
-				}, null);
+				});
 		return future;
 	}
 
+	/**
+	 * @param resultSet a result set of this storage source
+	 * @return the table the result set was read from, if known, so that
+	 * saving it is ordered with the other operations on the table
+	 */
+	protected String getTableName(IResultSet resultSet) {
+		return null;
+	}
+
 	@Override
 	public Future<?> saveAsync(final IResultSet resultSet) {
-		Future<?> future = executorService.submit(
+		Future<?> future = submit(getTableName(resultSet),
 				new StorageRunnable() {
 					public void doStorageOperation() {
 						resultSet.save();
 					}
-				}, null);
+				});
 		return future;
 	}
 
@@ -447,17 +696,39 @@ implements IStorageSourceService, IFloodlightModule {
 		}
 	}
 
-	protected synchronized void notifyListeners(StorageSourceNotification notification) {
+	protected void notifyListeners(StorageSourceNotification notification) {
 		if (logger.isTraceEnabled()) {
 			logger.trace("Notifying storage listeneres: {}", notification);
 		}
 		String tableName = notification.getTableName();
-		Set<Object> keys = notification.getKeys();
+		Set<IStorageSourceListener> tableListeners = listeners.get(tableName);
+		if (tableListeners == null || tableListeners.isEmpty()) {
+			return;
+		}
+		TableNotifications tn = tableNotifications.get(tableName);
+		if (tn == null) {
+			tn = new TableNotifications(tableName);
+			TableNotifications old = tableNotifications.putIfAbsent(tableName, tn);
+			if (old != null) tn = old;
+		}
+		if (notificationWindowMs > 0) {
+			tn.add(notification.getAction(), notification.getKeys());
+			tn.schedule();
+		} else {
+			synchronized (tn.deliveryLock) {
+				deliverNotification(tableName, notification.getAction(),
+						notification.getKeys());
+			}
+		}
+	}
+
+	private void deliverNotification(String tableName,
+			StorageSourceNotification.Action action, Set<Object> keys) {
 		Set<IStorageSourceListener> tableListeners = listeners.get(tableName);
 		if (tableListeners != null) {
 			for (IStorageSourceListener listener : tableListeners) {
 				try {
-					switch (notification.getAction()) {
+					switch (action) {
 					case MODIFY:
 						listener.rowsModified(tableName, keys);
 						break;
@@ -516,6 +787,17 @@ implements IStorageSourceService, IFloodlightModule {
 				context.getServiceImpl(IRestApiService.class);
 		debugCounterService =
 				context.getServiceImpl(IDebugCounterService.class);
+
+		Map<String, String> config = context.getConfigParams(this);
+		String window = config.get("notificationWindowMs");
+		if (window != null) {
+			try {
+				setNotificationWindowMs(Long.parseLong(window.trim()));
+			} catch (NumberFormatException e) {
+				throw new FloodlightModuleException("Invalid storage " +
+						"notificationWindowMs " + window, e);
+			}
+		}
 	}
 
 	@Override
@@ -751,6 +751,14 @@ public abstract class NoSqlStorageSource extends AbstractStorageSource {
                 noSqlQuery.getRowOrdering(), noSqlQuery.getParameterMap());
     }
 
+    @Override
+    protected String getTableName(IResultSet resultSet) {
+        if (resultSet instanceof NoSqlResultSet) {
+            return ((NoSqlResultSet) resultSet).tableName;
+        }
+        return null;
+    }
+
     protected void sendNotification(String tableName, StorageSourceNotification.Action action,
             List<Map<String,Object>> rows) {
         Set<Object> rowKeys = new HashSet<Object>();
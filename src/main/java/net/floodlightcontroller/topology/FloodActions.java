@@ -0,0 +1,77 @@
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The output actions that flood a packet on a switch along the broadcast
+ * tree of its archipelago. They are built once per topology instance, for
+ * every port a flooded packet may come in on, so a flood is a lookup and
+ * a single packet-out.
+ */
+public class FloodActions {
+    private final OFVersion version;
+    private final List<OFPort> ports;
+    private final List<OFAction> all;
+    private final Map<OFPort, List<OFAction>> exceptInPort;
+
+    /**
+     * @param factory the factory of the switch the actions are for
+     * @param ports the broadcast ports of the switch
+     */
+    public FloodActions(OFFactory factory, Collection<OFPort> ports) {
+        List<OFPort> sorted = new ArrayList<OFPort>(ports);
+        Collections.sort(sorted);
+
+        List<OFAction> actions = new ArrayList<OFAction>(sorted.size());
+        for (OFPort p : sorted) {
+            actions.add(factory.actions().output(p, Integer.MAX_VALUE));
+        }
+
+        this.version = factory.getVersion();
+        this.ports = ImmutableList.copyOf(sorted);
+        this.all = ImmutableList.copyOf(actions);
+        this.exceptInPort = new HashMap<OFPort, List<OFAction>>();
+        for (int i = 0; i < sorted.size(); i++) {
+            List<OFAction> l = new ArrayList<OFAction>(actions);
+            l.remove(i);
+            exceptInPort.put(sorted.get(i), ImmutableList.copyOf(l));
+        }
+    }
+
+    /**
+     * @return the OpenFlow version the actions were built for
+     */
+    public OFVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the broadcast ports, in order
+     */
+    public List<OFPort> getPorts() {
+        return ports;
+    }
+
+    /**
+     * Get the actions flooding a packet that came in on a port, i.e.
+     * outputs to every broadcast port but that one.
+     * @param inPort the port the packet came in on
+     * @return the actions
+     */
+    public List<OFAction> getActions(OFPort inPort) {
+        List<OFAction> l = exceptInPort.get(inPort);
+        return l == null ? all : l;
+    }
+}
@@ -0,0 +1,19 @@
+package net.floodlightcontroller.topology;
+
+import java.util.List;
+
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
+
+/**
+ * A topology listener that is also told what the recompute changed. The
+ * topology manager calls {@link #topologyChanged(List, TopologyChange)}
+ * in place of {@link #topologyChanged(List)} for these listeners.
+ */
+public interface ITopologyChangeListener extends ITopologyListener {
+    /**
+     * Happens when the switch clusters are recomputed
+     * @param linkUpdates the link updates applied, possibly none
+     * @param change what changed from the previous topology instance
+     */
+    void topologyChanged(List<LDUpdate> linkUpdates, TopologyChange change);
+}
@@ -20,10 +20,12 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.types.NodePortTuple;
 import net.floodlightcontroller.linkdiscovery.Link;
 
+import org.projectfloodlight.openflow.protocol.action.OFAction;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFPort;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -51,6 +53,17 @@ public interface ITopologyService extends IFloodlightService  {
 	 */
 	public Date getLastUpdateTime();
 
+	/**
+	 * Retrieve the version of the current topology. Every newly
+	 * computed topology has a higher version, so a module can cache
+	 * what it derives from the topology and compare versions to know
+	 * when to derive it again. Queries are answered from an immutable
+	 * snapshot of the topology that is replaced as a whole, so they
+	 * take no lock.
+	 * @return
+	 */
+	public long getTopologyVersion();
+
 	/*******************************************************
 	 * PORT FUNCTIONS
 	 *******************************************************/
@@ -78,6 +91,18 @@ public interface ITopologyService extends IFloodlightService  {
 	 * @return
 	 */
 	public Set<OFPort> getSwitchBroadcastPorts(DatapathId sw);
+
+	/**
+	 * Get the actions that flood a packet along the broadcast tree
+	 * on a switch. These are computed along with the topology, so
+	 * a flood needs no more than a single packet-out with them.
+	 * @param sw
+	 * @param inPort the port the packet came in on, which it isn't
+	 * flooded out of
+	 * @return the actions, or null if they weren't computed for the
+	 * switch, in which case the broadcast ports can be used
+	 */
+	public List<OFAction> getSwitchFloodActions(DatapathId sw, OFPort inPort);
 	
 	/**
 	 * Checks if the switch+port is in the broadcast tree.
@@ -0,0 +1,170 @@
+package net.floodlightcontroller.topology;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.routing.IRoutingService.PATH_METRIC;
+import net.floodlightcontroller.statistics.SwitchPortBandwidth;
+
+/**
+ * Keeps the cost of links for the {@link PATH_METRIC#UTILIZATION} and
+ * {@link PATH_METRIC#LINK_SPEED} metrics up to date with the port bandwidth
+ * sampled by the statistics collector. A link costs what the port it
+ * leaves from costs.
+ *
+ * The transmitted bandwidth of each port is smoothed with an exponentially
+ * weighted moving average. A port's cost is only published again when it
+ * moved away from the published cost by more than a threshold, so noise in
+ * the samples doesn't make paths flap. The state of each port lives in a
+ * slot of a few arrays; published costs are swapped in as a whole, so
+ * readers don't lock.
+ */
+public class LinkCostEngine {
+    /* 1 Tbps, in kbps like the OpenFlow port speed */
+    private static final long REFERENCE_SPEED_KBPS = 1000L * 1000 * 1000;
+
+    private final double smoothing;
+    private final double threshold;
+
+    private final Map<NodePortTuple, Integer> slots =
+            new ConcurrentHashMap<NodePortTuple, Integer>();
+
+    /* per slot; guarded by this */
+    private NodePortTuple[] ports = new NodePortTuple[64];
+    private double[] txBps = new double[64];
+    private long[] speedKbps = new long[64];
+    private int size;
+
+    /* published cost per slot, -1 if none, for publishedMetric */
+    private volatile int[] costs = new int[0];
+    private volatile PATH_METRIC publishedMetric;
+
+    /**
+     * @param smoothing the weight of a new sample in the average, in (0, 1]
+     * @param threshold the relative change of a cost that gets published
+     */
+    public LinkCostEngine(double smoothing, double threshold) {
+        if (smoothing <= 0 || smoothing > 1) {
+            throw new IllegalArgumentException("Smoothing must be in (0, 1]");
+        }
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold cannot be negative");
+        }
+        this.smoothing = smoothing;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Add bandwidth samples and publish the costs they moved past the
+     * threshold.
+     * @param samples the new samples
+     * @param metric the path metric in use; costs are only published for
+     * {@link PATH_METRIC#UTILIZATION} and {@link PATH_METRIC#LINK_SPEED}
+     * @return the ports whose published cost changed
+     */
+    public synchronized Set<NodePortTuple> update(Collection<SwitchPortBandwidth> samples,
+            PATH_METRIC metric) {
+        for (SwitchPortBandwidth spb : samples) {
+            int s = slot(new NodePortTuple(spb.getSwitchId(), spb.getSwitchPort()));
+            double bps = spb.getBitsPerSecondTx().getValue();
+            txBps[s] = Double.isNaN(txBps[s]) ? bps : txBps[s] + smoothing * (bps - txBps[s]);
+            speedKbps[s] = spb.getLinkSpeedBitsPerSec().getValue();
+        }
+
+        if (metric != PATH_METRIC.UTILIZATION && metric != PATH_METRIC.LINK_SPEED) {
+            return Collections.emptySet();
+        }
+
+        /* a new metric makes every cost new */
+        int[] old = metric == publishedMetric ? costs : new int[0];
+        int[] published = Arrays.copyOf(old, size);
+        Arrays.fill(published, old.length, size, -1);
+        Set<NodePortTuple> changed = new HashSet<NodePortTuple>();
+        for (int s = 0; s < size; s++) {
+            if (Double.isNaN(txBps[s])) continue;
+            int cost = metric == PATH_METRIC.UTILIZATION
+                    ? utilizationCost((long) txBps[s], speedKbps[s])
+                    : speedCost(speedKbps[s]);
+            int prev = published[s];
+            if (prev < 0 || Math.abs(cost - prev) > Math.max(1, threshold * prev)) {
+                published[s] = cost;
+                changed.add(ports[s]);
+            }
+        }
+        costs = published;
+        publishedMetric = metric;
+        return changed;
+    }
+
+    /**
+     * Get the published cost of the links leaving a port.
+     * @param npt the port
+     * @param metric the path metric in use
+     * @return the cost, or -1 if none was published for the metric
+     */
+    public int getCost(NodePortTuple npt, PATH_METRIC metric) {
+        int[] c = costs;
+        Integer s = slots.get(npt);
+        if (s == null || s >= c.length || metric != publishedMetric) {
+            return -1;
+        }
+        return c[s];
+    }
+
+    /**
+     * Get the cost of a link for {@link PATH_METRIC#UTILIZATION}: the share
+     * of the port speed in use, scaled from 1 to
+     * {@link TopologyInstance#MAX_LINK_WEIGHT}; 1 per Mbps when the speed
+     * isn't known.
+     * @param txBps the bandwidth transmitted
+     * @param speedKbps the port speed in kbps, as OpenFlow reports it
+     * @return the cost
+     */
+    public static int utilizationCost(long txBps, long speedKbps) {
+        long cost;
+        if (speedKbps > 0) {
+            cost = 1 + (long) ((double) txBps / (speedKbps * 1000)
+                    * (TopologyInstance.MAX_LINK_WEIGHT - 1));
+        } else {
+            cost = 1 + txBps / (1000 * 1000);
+        }
+        return (int) Math.max(1, Math.min(TopologyInstance.MAX_LINK_WEIGHT, cost));
+    }
+
+    /**
+     * Get the cost of a link for {@link PATH_METRIC#LINK_SPEED}: a 1 Tbps
+     * reference bandwidth over the port speed, e.g. 1000 for 1 Gbps.
+     * @param speedKbps the port speed in kbps, as OpenFlow reports it
+     * @return the cost
+     */
+    public static int speedCost(long speedKbps) {
+        if (speedKbps <= 0) {
+            return TopologyInstance.MAX_LINK_WEIGHT;
+        }
+        return (int) Math.max(1, Math.min(TopologyInstance.MAX_LINK_WEIGHT,
+                REFERENCE_SPEED_KBPS / speedKbps));
+    }
+
+    private int slot(NodePortTuple npt) {
+        Integer s = slots.get(npt);
+        if (s != null) {
+            return s;
+        }
+        if (size == ports.length) {
+            int n = size * 2;
+            ports = Arrays.copyOf(ports, n);
+            txBps = Arrays.copyOf(txBps, n);
+            speedKbps = Arrays.copyOf(speedKbps, n);
+        }
+        ports[size] = npt;
+        txBps[size] = Double.NaN; /* no sample yet */
+        slots.put(npt, size);
+        return size++;
+    }
+}
@@ -0,0 +1,124 @@
+package net.floodlightcontroller.topology;
+
+import java.util.Collections;
+import java.util.Set;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.routing.PathId;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * What changed from one topology instance to the next: the clusters and
+ * archipelagos whose members changed, the broadcast ports added and
+ * removed, and the switch pairs whose best path changed. Listeners can use
+ * it to only revisit the flows and devices a recompute affected.
+ * @see TopologyInstance#getChangesSince(TopologyInstance)
+ */
+public class TopologyChange {
+    private final long oldVersion;
+    private final long newVersion;
+    private final Set<DatapathId> changedClusters;
+    private final Set<DatapathId> changedArchipelagos;
+    private final Set<NodePortTuple> addedBroadcastPorts;
+    private final Set<NodePortTuple> removedBroadcastPorts;
+    private final Set<PathId> changedPaths;
+
+    /**
+     * A change that changes nothing.
+     * @param version the version of the topology
+     */
+    public TopologyChange(long version) {
+        this(version, version, Collections.<DatapathId>emptySet(),
+                Collections.<DatapathId>emptySet(),
+                Collections.<NodePortTuple>emptySet(),
+                Collections.<NodePortTuple>emptySet(),
+                Collections.<PathId>emptySet());
+    }
+
+    public TopologyChange(long oldVersion, long newVersion,
+            Set<DatapathId> changedClusters,
+            Set<DatapathId> changedArchipelagos,
+            Set<NodePortTuple> addedBroadcastPorts,
+            Set<NodePortTuple> removedBroadcastPorts,
+            Set<PathId> changedPaths) {
+        this.oldVersion = oldVersion;
+        this.newVersion = newVersion;
+        this.changedClusters = ImmutableSet.copyOf(changedClusters);
+        this.changedArchipelagos = ImmutableSet.copyOf(changedArchipelagos);
+        this.addedBroadcastPorts = ImmutableSet.copyOf(addedBroadcastPorts);
+        this.removedBroadcastPorts = ImmutableSet.copyOf(removedBroadcastPorts);
+        this.changedPaths = ImmutableSet.copyOf(changedPaths);
+    }
+
+    /**
+     * @return the version of the topology the change is from, 0 if none
+     */
+    public long getOldVersion() {
+        return oldVersion;
+    }
+
+    /**
+     * @return the version of the topology the change is to
+     */
+    public long getNewVersion() {
+        return newVersion;
+    }
+
+    /**
+     * Get the clusters that were added, removed, or gained or lost a
+     * switch. Both the old and the new ID of a cluster are included.
+     * @return the cluster IDs
+     */
+    public Set<DatapathId> getChangedClusters() {
+        return changedClusters;
+    }
+
+    /**
+     * Get the archipelagos that were added, removed, or gained or lost a
+     * switch. Both the old and the new ID of an archipelago are included.
+     * @return the archipelago IDs
+     */
+    public Set<DatapathId> getChangedArchipelagos() {
+        return changedArchipelagos;
+    }
+
+    public Set<NodePortTuple> getAddedBroadcastPorts() {
+        return addedBroadcastPorts;
+    }
+
+    public Set<NodePortTuple> getRemovedBroadcastPorts() {
+        return removedBroadcastPorts;
+    }
+
+    /**
+     * Get the switch pairs whose best path was added, removed or now
+     * goes another way.
+     * @return the path IDs
+     */
+    public Set<PathId> getChangedPaths() {
+        return changedPaths;
+    }
+
+    /**
+     * @return true if nothing changed
+     */
+    public boolean isEmpty() {
+        return changedClusters.isEmpty() && changedArchipelagos.isEmpty()
+                && addedBroadcastPorts.isEmpty() && removedBroadcastPorts.isEmpty()
+                && changedPaths.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "TopologyChange [oldVersion=" + oldVersion
+                + ", newVersion=" + newVersion
+                + ", changedClusters=" + changedClusters
+                + ", changedArchipelagos=" + changedArchipelagos
+                + ", addedBroadcastPorts=" + addedBroadcastPorts
+                + ", removedBroadcastPorts=" + removedBroadcastPorts
+                + ", changedPaths=" + changedPaths.size() + "]";
+    }
+}
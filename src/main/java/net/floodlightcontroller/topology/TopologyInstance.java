@@ -18,9 +18,11 @@ package net.floodlightcontroller.topology;
 
 import com.google.common.collect.ImmutableSet;
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.types.NodePortTuple;
 import net.floodlightcontroller.linkdiscovery.Link;
 import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.IRoutingService.PATH_METRIC;
 import net.floodlightcontroller.routing.Path;
 import net.floodlightcontroller.routing.PathId;
 import net.floodlightcontroller.statistics.SwitchPortBandwidth;
@@ -60,6 +62,7 @@ public class TopologyInstance {
     private Set<NodePortTuple>              portsTunnel; /* all tunnel ports in topology */
     private Set<NodePortTuple>              portsBroadcastAll; /* all broadcast ports in topology */
     private Map<DatapathId, Set<OFPort>>    portsBroadcastPerSwitch; /* broadcast ports mapped per DPID */
+    private Map<DatapathId, FloodActions>   floodActionsPerSwitch; /* flood actions along the broadcast tree per DPID */
     private Set<NodePortTuple>              portsWithMoreThanTwoLinks; /* a.k.a. "broadcast domain" non-P2P ports */
     private Map<NodePortTuple, Set<Link>>   links; /* every link in entire topology */
     private Map<NodePortTuple, Set<Link>>   linksNonBcastNonTunnel; /* only non-broadcast and non-tunnel links */
@@ -81,6 +84,9 @@ public class TopologyInstance {
     private Map<DatapathId, Set<NodePortTuple>> portsBroadcastPerArchipelago; /* broadcast ports in each archipelago ID */
     private Map<PathId, List<Path>>             pathcache; /* contains computed paths ordered best to worst */
 
+    /* Set once by the topology manager, before the instance is published */
+    private long version;
+
     protected TopologyInstance(Map<DatapathId, Set<OFPort>> portsWithLinks,
             Set<NodePortTuple> portsBlocked,
             Map<NodePortTuple, Set<Link>> linksNonBcastNonTunnel,
@@ -129,6 +135,7 @@ public class TopologyInstance {
         this.clusterFromSwitch = new HashMap<DatapathId, Cluster>();
         this.portsBroadcastAll= new HashSet<NodePortTuple>();
         this.portsBroadcastPerSwitch = new HashMap<DatapathId,Set<OFPort>>();
+        this.floodActionsPerSwitch = new HashMap<DatapathId, FloodActions>();
 
         this.pathcache = new HashMap<PathId, List<Path>>();
 
@@ -176,11 +183,236 @@ public class TopologyInstance {
         computeBroadcastPortsPerArchipelago();
 
         /*
-         * Step 6: Optionally, print topology to log for added verbosity or when debugging.
+         * Step 6: Build the actions that flood a packet along the broadcast
+         * tree on each switch, so a flood doesn't have to build them.
+         */
+        computeFloodActions();
+
+        /*
+         * Step 7: Optionally, print topology to log for added verbosity or when debugging.
          */
         printTopology();
     }
 
+    /*
+     * Copies the structure of an instance, i.e. everything but the link
+     * costs, the paths and the broadcast trees and ports that follow from
+     * them. Clusters are shared; archipelagos are copied since they hold
+     * the broadcast tree.
+     */
+    private TopologyInstance(TopologyInstance ti, Map<NodePortTuple, Set<Link>> links) {
+        this.switches = ti.switches;
+        this.portsWithLinks = ti.portsWithLinks;
+        this.portsPerSwitch = ti.portsPerSwitch;
+        this.portsTunnel = ti.portsTunnel;
+        this.portsWithMoreThanTwoLinks = ti.portsWithMoreThanTwoLinks;
+        this.linksNonBcastNonTunnel = ti.linksNonBcastNonTunnel;
+        this.linksExternal = ti.linksExternal;
+        this.linksNonExternalInterCluster = ti.linksNonExternalInterCluster;
+        this.portsBlocked = ti.portsBlocked;
+        this.linksBlocked = ti.linksBlocked;
+        this.clusters = ti.clusters;
+        this.clusterPorts = ti.clusterPorts;
+        this.clusterFromSwitch = ti.clusterFromSwitch;
+
+        this.links = new HashMap<NodePortTuple, Set<Link>>();
+        for (NodePortTuple npt : links.keySet()) {
+            this.links.put(npt, new HashSet<Link>(links.get(npt)));
+        }
+
+        this.portsBroadcastAll= new HashSet<NodePortTuple>();
+        this.portsBroadcastPerSwitch = new HashMap<DatapathId,Set<OFPort>>();
+        this.floodActionsPerSwitch = new HashMap<DatapathId, FloodActions>();
+        this.pathcache = new HashMap<PathId, List<Path>>();
+        this.portsBroadcastPerArchipelago = new HashMap<DatapathId, Set<NodePortTuple>>();
+
+        Map<Archipelago, Archipelago> copies = new IdentityHashMap<Archipelago, Archipelago>();
+        this.archipelagos = new ArrayList<Archipelago>();
+        for (Archipelago a : ti.archipelagos) {
+            Archipelago copy = new Archipelago();
+            a.getClusters().forEach(copy::add);
+            copy.setBroadcastTree(a.getBroadcastTree());
+            copies.put(a, copy);
+            this.archipelagos.add(copy);
+        }
+        this.archipelagoFromCluster = new HashMap<Cluster, Archipelago>();
+        for (Entry<Cluster, Archipelago> e : ti.archipelagoFromCluster.entrySet()) {
+            this.archipelagoFromCluster.put(e.getKey(), copies.get(e.getValue()));
+        }
+    }
+
+    /**
+     * Compute a new instance for a topology in which only the costs of
+     * links changed, e.g. the latency LLDP measured for an existing link.
+     * Clusters, archipelagos and blocked ports can't change in that case,
+     * so they are taken from this instance rather than identified again.
+     * When the path metric is latency, utilization or link speed, the paths
+     * of each archipelago holding a changed link are computed again, along
+     * with its broadcast tree; for hop count metrics the order of the paths
+     * doesn't change, and the paths crossing a changed link only get their
+     * latency updated.
+     * @param links every link in the topology, with their new latency
+     * @param changed the links whose latency or cost changed
+     * @return the new instance
+     */
+    protected TopologyInstance reweight(Map<NodePortTuple, Set<Link>> links,
+            Set<Link> changed) {
+        TopologyInstance nt = new TopologyInstance(this, links);
+        PATH_METRIC metric = TopologyManager.getPathMetricInternal();
+        boolean costChanges = metric == PATH_METRIC.LATENCY ||
+                metric == PATH_METRIC.UTILIZATION ||
+                metric == PATH_METRIC.LINK_SPEED;
+
+        for (Archipelago a : nt.archipelagos) {
+            Set<DatapathId> sws = a.getSwitches();
+            Set<Link> affected = new HashSet<Link>();
+            for (Link l : changed) {
+                if (sws.contains(l.getSrc())) {
+                    affected.add(l);
+                }
+            }
+
+            if (!affected.isEmpty() && costChanges) {
+                nt.computeOrderedPaths(a);
+                continue;
+            }
+            for (DatapathId src : sws) {
+                for (DatapathId dst : sws) {
+                    PathId pathId = new PathId(src, dst);
+                    List<Path> paths = pathcache.get(pathId);
+                    if (paths == null) continue;
+                    if (!affected.isEmpty() && crossesAny(paths, affected)) {
+                        List<Path> reweighted = new ArrayList<Path>(paths.size());
+                        for (Path p : paths) {
+                            Path np = new Path(pathId, p.getPath());
+                            nt.setPathCosts(np);
+                            np.setPathIndex(p.getPathIndex());
+                            np.setCost(p.getCost());
+                            reweighted.add(np);
+                        }
+                        paths = reweighted;
+                    }
+                    nt.pathcache.put(pathId, paths);
+                }
+            }
+        }
+
+        nt.computeBroadcastPortsPerArchipelago();
+        nt.computeFloodActions();
+        nt.printTopology();
+        return nt;
+    }
+
+    private static boolean crossesAny(List<Path> paths, Set<Link> links) {
+        for (Path p : paths) {
+            List<NodePortTuple> npts = p.getPath();
+            for (int i = 0; i <= npts.size() - 2; i = i + 2) {
+                for (Link l : links) {
+                    if (l.getSrc().equals(npts.get(i).getNodeId()) &&
+                            l.getSrcPort().equals(npts.get(i).getPortId()) &&
+                            l.getDst().equals(npts.get(i + 1).getNodeId()) &&
+                            l.getDstPort().equals(npts.get(i + 1).getPortId())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the version of the topology. Each instance published by the
+     * topology manager has a higher version than the ones before it, so
+     * anything derived from an instance can be cached against it.
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Get what changed from a previous instance to this one.
+     * @param previous the previous instance, or null if there was none
+     * @return the change
+     */
+    public TopologyChange getChangesSince(TopologyInstance previous) {
+        if (previous == this) {
+            return new TopologyChange(version);
+        }
+
+        Map<DatapathId, Set<DatapathId>> oldClusters = new HashMap<DatapathId, Set<DatapathId>>();
+        Map<DatapathId, Set<DatapathId>> oldArchipelagos = new HashMap<DatapathId, Set<DatapathId>>();
+        Set<NodePortTuple> oldBroadcastPorts = Collections.emptySet();
+        Map<PathId, List<Path>> oldPaths = Collections.emptyMap();
+        if (previous != null) {
+            for (Cluster c : previous.clusters) {
+                oldClusters.put(c.getId(), c.getNodes());
+            }
+            for (Archipelago a : previous.archipelagos) {
+                oldArchipelagos.put(a.getId(), a.getSwitches());
+            }
+            oldBroadcastPorts = previous.portsBroadcastAll;
+            oldPaths = previous.pathcache;
+        }
+
+        Map<DatapathId, Set<DatapathId>> newClusters = new HashMap<DatapathId, Set<DatapathId>>();
+        for (Cluster c : clusters) {
+            newClusters.put(c.getId(), c.getNodes());
+        }
+        Map<DatapathId, Set<DatapathId>> newArchipelagos = new HashMap<DatapathId, Set<DatapathId>>();
+        for (Archipelago a : archipelagos) {
+            newArchipelagos.put(a.getId(), a.getSwitches());
+        }
+
+        Set<NodePortTuple> added = new HashSet<NodePortTuple>(portsBroadcastAll);
+        added.removeAll(oldBroadcastPorts);
+        Set<NodePortTuple> removed = new HashSet<NodePortTuple>(oldBroadcastPorts);
+        removed.removeAll(portsBroadcastAll);
+
+        /* a best path differs if it is new, gone, or has other hops */
+        Set<PathId> changedPaths = new HashSet<PathId>();
+        for (Entry<PathId, List<Path>> e : pathcache.entrySet()) {
+            if (!Objects.equals(getBestPath(e.getValue()), getBestPath(oldPaths.get(e.getKey())))) {
+                changedPaths.add(e.getKey());
+            }
+        }
+        for (Entry<PathId, List<Path>> e : oldPaths.entrySet()) {
+            if (!pathcache.containsKey(e.getKey()) && getBestPath(e.getValue()) != null) {
+                changedPaths.add(e.getKey());
+            }
+        }
+
+        return new TopologyChange(previous == null ? 0 : previous.version, version,
+                getChangedGroups(oldClusters, newClusters),
+                getChangedGroups(oldArchipelagos, newArchipelagos),
+                added, removed, changedPaths);
+    }
+
+    private static Path getBestPath(List<Path> paths) {
+        return paths == null || paths.isEmpty() ? null : paths.get(0);
+    }
+
+    /* IDs of the groups of switches that are new, gone, or have other members */
+    private static Set<DatapathId> getChangedGroups(Map<DatapathId, Set<DatapathId>> before,
+            Map<DatapathId, Set<DatapathId>> after) {
+        Set<DatapathId> changed = new HashSet<DatapathId>();
+        for (Entry<DatapathId, Set<DatapathId>> e : after.entrySet()) {
+            if (!e.getValue().equals(before.get(e.getKey()))) {
+                changed.add(e.getKey());
+            }
+        }
+        for (DatapathId id : before.keySet()) {
+            if (!after.containsKey(id)) {
+                changed.add(id);
+            }
+        }
+        return changed;
+    }
+
     /*
      * Checks if OF port is edge port
      */
@@ -706,25 +938,23 @@ public class TopologyInstance {
                 if (links.get(npt) == null) {
                     continue;
                 }
-                long rawLinkSpeed = 0;
-                IOFSwitch s = TopologyManager.switchService.getSwitch(npt.getNodeId());
-                if (s != null) {
-                    OFPortDesc p = s.getPort(npt.getPortId());
-                    if (p != null) {
-                        rawLinkSpeed = p.getCurrSpeed();
+                int speedCost = getEngineCost(npt, PATH_METRIC.LINK_SPEED);
+                if (speedCost < 0) {
+                    long rawLinkSpeed = 0;
+                    IOFSwitch s = TopologyManager.switchService.getSwitch(npt.getNodeId());
+                    if (s != null) {
+                        OFPortDesc p = s.getPort(npt.getPortId());
+                        if (p != null) {
+                            rawLinkSpeed = p.getCurrSpeed();
+                        }
                     }
+                    speedCost = LinkCostEngine.speedCost(rawLinkSpeed);
                 }
                 for (Link link : links.get(npt)) {
                     if (link == null) {
                         continue;
                     }
-
-                    if ((rawLinkSpeed / 10^6) / 8 > 1) {
-                        int linkSpeedMBps = (int)(rawLinkSpeed / 10^6) / 8;
-                        linkCost.put(link, (1/linkSpeedMBps)*1000);
-                    } else {
-                        linkCost.put(link, MAX_LINK_WEIGHT);
-                    }
+                    linkCost.put(link, speedCost);
                 }
             }
             return linkCost;
@@ -734,23 +964,23 @@ public class TopologyInstance {
             log.debug("Using utilization for path metrics");
             for (NodePortTuple npt : links.keySet()) {
                 if (links.get(npt) == null) continue;
-                SwitchPortBandwidth spb = TopologyManager.statisticsService
-                        .getBandwidthConsumption(npt.getNodeId(), npt.getPortId());
-                long bpsTx = 0;
-                if (spb != null) {
-                    bpsTx = spb.getBitsPerSecondTx().getValue();
+                int utilCost = getEngineCost(npt, PATH_METRIC.UTILIZATION);
+                if (utilCost < 0) {
+                    SwitchPortBandwidth spb = TopologyManager.statisticsService
+                            .getBandwidthConsumption(npt.getNodeId(), npt.getPortId());
+                    long bpsTx = 0;
+                    long speed = 0;
+                    if (spb != null) {
+                        bpsTx = spb.getBitsPerSecondTx().getValue();
+                        speed = spb.getLinkSpeedBitsPerSec().getValue();
+                    }
+                    utilCost = LinkCostEngine.utilizationCost(bpsTx, speed);
                 }
                 for (Link link : links.get(npt)) {
                     if (link == null) {
                         continue;
                     }
-
-                    if ((bpsTx / 10^6) / 8 > 1) {
-                        int cost = (int) (bpsTx / 10^6) / 8;
-                        linkCost.put(link, cost);
-                    } else {
-                        linkCost.put(link, MAX_LINK_WEIGHT);
-                    }
+                    linkCost.put(link, utilCost);
                 }
             }
             return linkCost;
@@ -768,31 +998,48 @@ public class TopologyInstance {
         }
     }
 
+    /*
+     * Returns the cost the link cost engine published for the links
+     * leaving a port, or -1 if there's none
+     */
+    private static int getEngineCost(NodePortTuple npt, PATH_METRIC metric) {
+        LinkCostEngine engine = TopologyManager.linkCostEngine;
+        return engine == null ? -1 : engine.getCost(npt, metric);
+    }
+
     /*
      * Calculates and stores n possible paths  using Yen's algorithm,
      * looping through every switch. These lists of routes are stored 
      * in the pathcache.
      */
     private void computeOrderedPaths() {
-        List<Path> paths;
-        PathId pathId;
         pathcache.clear();
 
         for (Archipelago a : archipelagos) { /* for each archipelago */
-            Set<DatapathId> srcSws = a.getSwitches();
-            Set<DatapathId> dstSws = a.getSwitches();
-            log.debug("SRC {}", srcSws);
-            log.debug("DST {}", dstSws);
-
-            for (DatapathId src : srcSws) { /* permute all member switches */
-                for (DatapathId dst : dstSws) {
-                    log.debug("Calling Yens {} {}", src, dst);
-                    paths = yens(src, dst, TopologyManager.getMaxPathsToComputeInternal(),
-                            getArchipelago(src), getArchipelago(dst));
-                    pathId = new PathId(src, dst);
-                    pathcache.put(pathId, paths);
-                    log.debug("Adding paths {}", paths);
-                }
+            computeOrderedPaths(a);
+        }
+    }
+
+    /*
+     * Calculates and stores the paths between the switches of one
+     * archipelago. This also sets the archipelago's broadcast tree.
+     */
+    private void computeOrderedPaths(Archipelago a) {
+        List<Path> paths;
+        PathId pathId;
+        Set<DatapathId> srcSws = a.getSwitches();
+        Set<DatapathId> dstSws = srcSws;
+        log.debug("SRC {}", srcSws);
+        log.debug("DST {}", dstSws);
+
+        for (DatapathId src : srcSws) { /* permute all member switches */
+            for (DatapathId dst : dstSws) {
+                log.debug("Calling Yens {} {}", src, dst);
+                paths = yens(src, dst, TopologyManager.getMaxPathsToComputeInternal(),
+                        getArchipelago(src), getArchipelago(dst), true);
+                pathId = new PathId(src, dst);
+                pathcache.put(pathId, paths);
+                log.debug("Adding paths {}", paths);
             }
         }
     }
@@ -931,7 +1178,8 @@ public class TopologyInstance {
         if (paths == null || k < 1) return ImmutableList.of();
 
         if (k >= TopologyManager.getMaxPathsToComputeInternal() || k >= paths.size()) {
-            return yens(src, dst, k, getArchipelago(src), getArchipelago(dst)); /* heavy computation */
+            /* heavy computation; leaves the published broadcast trees alone */
+            return yens(src, dst, k, getArchipelago(src), getArchipelago(dst), false);
         }
         else {
             return new ArrayList<Path>(paths.subList(0, k));
@@ -973,7 +1221,8 @@ public class TopologyInstance {
 
     }
 
-    private List<Path> yens(DatapathId src, DatapathId dst, Integer K, Archipelago aSrc, Archipelago aDst) {
+    private List<Path> yens(DatapathId src, DatapathId dst, Integer K, Archipelago aSrc, Archipelago aDst,
+            boolean setBroadcastTree) {
 
         log.debug("YENS ALGORITHM -----------------");
         log.debug("Asking for paths from {} to {}", src, dst);
@@ -1010,7 +1259,9 @@ public class TopologyInstance {
         /* Use Dijkstra's to find the shortest path, which will also be the first path in A */
         BroadcastTree bt = dijkstra(copyOfLinkDpidMap, dst, linkCost, true);
         /* add this initial tree as our archipelago's broadcast tree (aSrc == aDst) */
-        aSrc.setBroadcastTree(bt);
+        if (setBroadcastTree) {
+            aSrc.setBroadcastTree(bt);
+        }
         /* now add the shortest path */
         log.debug("src {} dst {} tree {}", new Object[] {src, dst, bt});
         Path newroute = buildPath(new PathId(src, dst), bt); /* guaranteed to be in same tree */
@@ -1129,9 +1380,10 @@ public class TopologyInstance {
             }
         }
 
-        // Set the route counts
+        // Set the route counts and costs
         for (Path path : A) {
             path.setPathIndex(A.indexOf(path));
+            path.setCost(getPathCost(path, linkCost));
         }
         //log.debug("END OF YEN'S --------------------");
         return A;
@@ -1150,17 +1402,7 @@ public class TopologyInstance {
 
         // Iterate through B and find the shortest path
         for (Path r : routes) {
-            Integer pathCost = 0;
-            // Add up the weights of each link in the path
-            // TODO Get the path cost from the route object
-            for (NodePortTuple npt : r.getPath()) {
-                if (links.get(npt) == null || linkCost.get(links.get(npt).iterator().next()) == null) {
-                    pathCost++;
-                }
-                else {
-                    pathCost += linkCost.get(links.get(npt).iterator().next());
-                }
-            }
+            int pathCost = getPathCost(r, linkCost);
             log.debug("Path {} with cost {}", r, pathCost);
             // If it is smaller than the current smallest, replace variables with the path just found
             if (pathCost < shortestPathCost) {
@@ -1178,6 +1420,26 @@ public class TopologyInstance {
         return shortestPath;
     }
 
+    /**
+     * Add up the weights of each link in the path. Paths are ordered
+     * by this cost, so it is what tells equal cost paths apart.
+     * @param p the path
+     * @param linkCost the link weights, as given by {@link #initLinkCostMap()}
+     * @return the cost
+     */
+    private int getPathCost(Path p, Map<Link, Integer> linkCost) {
+        int pathCost = 0;
+        for (NodePortTuple npt : p.getPath()) {
+            if (links.get(npt) == null || linkCost.get(links.get(npt).iterator().next()) == null) {
+                pathCost++;
+            }
+            else {
+                pathCost += linkCost.get(links.get(npt).iterator().next());
+            }
+        }
+        return pathCost;
+    }
+
     /**
      * Computes end-to-end path including src/dst switch
      * ports in addition to the switches. This chains into
@@ -1190,8 +1452,22 @@ public class TopologyInstance {
      */
     public Path getPath(DatapathId srcId, OFPort srcPort,
             DatapathId dstId, OFPort dstPort) {
-        Path r = getPath(srcId, dstId);
-        
+        return getPath(getPath(srcId, dstId), srcPort, dstPort);
+    }
+
+    /**
+     * Computes the end-to-end path for a path between two
+     * switches, e.g. one out of {@link #getEqualCostPaths(DatapathId, DatapathId, double)}.
+     * The given path is left as is.
+     * @param r the path between the switches
+     * @param srcPort source port on the source switch
+     * @param dstPort destination port on the destination switch
+     * @return the path including the ports
+     */
+    public Path getPath(Path r, OFPort srcPort, OFPort dstPort) {
+        DatapathId srcId = r.getId().getSrc();
+        DatapathId dstId = r.getId().getDst();
+
         /* Path cannot be null, but empty b/t 2 diff DPIDs -> not found */
         if (! srcId.equals(dstId) && r.getPath().isEmpty()) {
             return r;
@@ -1204,9 +1480,41 @@ public class TopologyInstance {
         npt = new NodePortTuple(dstId, dstPort);
         nptList.add(npt); // add dst port to the end
 
-        PathId id = new PathId(srcId, dstId);
-        r = new Path(id, nptList);
-        return r;
+        Path p = new Path(r.getId(), nptList);
+        p.setPathIndex(r.getPathIndex());
+        p.setCost(r.getCost());
+        return p;
+    }
+
+    /**
+     * Get the paths from the pathcache that cost no more than the
+     * fastest path, give or take a tolerance. These are the paths
+     * ECMP spreads flows over.
+     * @param srcId
+     * @param dstId
+     * @param tolerance how much more than the fastest path a path may
+     * cost, as a fraction of its cost; 0 for strictly equal costs
+     * @return the paths ordered best to worst, or empty if there are
+     * none or srcId equals dstId
+     */
+    public List<Path> getEqualCostPaths(DatapathId srcId, DatapathId dstId, double tolerance) {
+        List<Path> paths = pathcache.get(new PathId(srcId, dstId));
+        if (paths == null || paths.isEmpty() || srcId.equals(dstId)) {
+            return ImmutableList.of();
+        }
+
+        int best = Integer.MAX_VALUE;
+        for (Path p : paths) {
+            best = Math.min(best, p.getCost());
+        }
+        long max = best + (long) (best * tolerance);
+        List<Path> result = new ArrayList<Path>(paths.size());
+        for (Path p : paths) {
+            if (p.getCost() <= max) {
+                result.add(p);
+            }
+        }
+        return result;
     }
 
 
@@ -1344,6 +1652,18 @@ public class TopologyInstance {
         return linksNonExternalInterCluster;
     }
 
+    public Map<NodePortTuple, Set<Link>> getLinks() {
+        return Collections.unmodifiableMap(links);
+    }
+
+    public Map<NodePortTuple, Set<Link>> getExternalLinks() {
+        return Collections.unmodifiableMap(linksExternal);
+    }
+
+    public Set<NodePortTuple> getTunnelPorts() {
+        return Collections.unmodifiableSet(portsTunnel);
+    }
+
     public Set<NodePortTuple> getAllBroadcastPorts() {
         return portsBroadcastAll;
     }
@@ -1418,6 +1738,33 @@ public class TopologyInstance {
         }
     }
 
+    /*
+     * Flood actions can only be built for switches that are connected,
+     * since they depend on the OpenFlow version of the switch.
+     */
+    private void computeFloodActions() {
+        IOFSwitchService switchService = TopologyManager.switchService;
+        if (switchService == null) {
+            return;
+        }
+        for (Entry<DatapathId, Set<OFPort>> e : portsBroadcastPerSwitch.entrySet()) {
+            IOFSwitch sw = switchService.getSwitch(e.getKey());
+            if (sw != null) {
+                floodActionsPerSwitch.put(e.getKey(), new FloodActions(sw.getOFFactory(), e.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Get the actions flooding a packet along the broadcast tree on a switch.
+     * @param sw
+     * @return the actions, or null if the switch has no broadcast ports or
+     * wasn't connected when the topology was computed
+     */
+    public FloodActions getFloodActions(DatapathId sw) {
+        return floodActionsPerSwitch.get(sw);
+    }
+
     public Set<NodePortTuple> getBroadcastPortsInArchipelago(DatapathId sw) {
         Archipelago a = getArchipelago(sw);
         if (a != null) {
@@ -35,7 +35,9 @@ import net.floodlightcontroller.packet.LLDP;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.routing.IRoutingService.PATH_METRIC;
 import net.floodlightcontroller.routing.web.RoutingWebRoutable;
+import net.floodlightcontroller.statistics.IStatisticsListener;
 import net.floodlightcontroller.statistics.IStatisticsService;
+import net.floodlightcontroller.statistics.SwitchPortBandwidth;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.topology.web.TopologyWebRoutable;
 import net.floodlightcontroller.util.OFMessageUtils;
@@ -44,16 +46,24 @@ import org.projectfloodlight.openflow.protocol.action.OFAction;
 import org.projectfloodlight.openflow.protocol.match.MatchField;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFGroup;
 import org.projectfloodlight.openflow.types.OFPort;
 import org.projectfloodlight.openflow.types.U64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import java.util.*;
+import java.util.Map.Entry;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -63,7 +73,7 @@ import java.util.concurrent.TimeUnit;
  * through the topology.
  */
 public class TopologyManager implements IFloodlightModule, ITopologyService, 
-ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
+ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener, IStatisticsListener {
     private static Logger log = LoggerFactory.getLogger(TopologyManager.class);
     public static final String MODULE_NAME = "topology";
 
@@ -111,19 +121,35 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
     protected static IRestApiService restApiService;
     protected static IDebugCounterService debugCounterService;
     protected static IStatisticsService statisticsService;
+    protected static LinkCostEngine linkCostEngine;
+
+    /**
+     * The group flooding along the broadcast tree, when flood groups are
+     * enabled. Clear of the low IDs groups are usually pushed with.
+     */
+    public static final OFGroup FLOOD_GROUP = OFGroup.of(0x7f000001);
+
+    protected boolean floodGroupsEnabled = false;
+
+    /**
+     * Flood groups installed per switch
+     */
+    protected final Map<DatapathId, FloodGroup> floodGroups =
+            new ConcurrentHashMap<DatapathId, FloodGroup>();
     
     
 
-    // Modules that listen to our updates
-    protected ArrayList<ITopologyListener> topologyAware;
+    // Modules that listen to our updates; registered from any thread
+    protected List<ITopologyListener> topologyAware;
 
     protected BlockingQueue<LDUpdate> ldUpdates;
 
     // These must be accessed using getCurrentInstance(), not directly
-    protected TopologyInstance currentInstance;
+    protected volatile TopologyInstance currentInstance;
+    private final AtomicLong topologyVersion = new AtomicLong();
 
     protected SingletonTask newInstanceTask;
-    private Date lastUpdateTime;
+    private volatile Date lastUpdateTime;
 
     /**
      * Flag that indicates if links (direct/tunnel/multihop links) were
@@ -140,8 +166,32 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
      */
     protected boolean tunnelPortsUpdated;
 
+    /**
+     * Flag that indicates if the latency of existing links was updated
+     * as part of LDUpdate, without any other change to the links. The
+     * links are in {@link #costUpdatedLinks}.
+     */
+    protected boolean linkCostsUpdated;
+    protected Set<Link> costUpdatedLinks = new HashSet<Link>();
+    /* ports whose cost the link cost engine changed, not applied yet */
+    protected final Set<NodePortTuple> pendingCostPorts = ConcurrentHashMap.newKeySet();
+
     protected int TOPOLOGY_COMPUTE_INTERVAL_MS = 500;
 
+    /**
+     * Link discovery updates are applied once none arrived for this long,
+     * so a burst of updates (e.g. a flapping link) causes one recompute.
+     */
+    protected long recomputeDebounceMs = 100;
+    /**
+     * Pending updates are applied at the latest this long after the first
+     * one arrived, even if updates keep arriving.
+     */
+    protected long recomputeMaxDelayMs = 2000;
+    /* arrival time of the first and last pending update; 0 if none */
+    private volatile long firstPendingUpdateMs;
+    private volatile long lastPendingUpdateMs;
+
     private IHAListener haListener;
 
     /**
@@ -176,9 +226,15 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
     protected class UpdateTopologyWorker implements Runnable {
         @Override
         public void run() {
+            long next = TOPOLOGY_COMPUTE_INTERVAL_MS;
             try {
-                if (ldUpdates.peek() != null) { /* must check here, otherwise will run every interval */
-                    updateTopology("link-discovery-updates", false);
+                if (ldUpdates.peek() != null || !pendingCostPorts.isEmpty()) { /* must check here, otherwise will run every interval */
+                    long wait = getRecomputeDelay(System.currentTimeMillis());
+                    if (wait <= 0) {
+                        updateTopology("link-discovery-updates", false);
+                    } else {
+                        next = Math.min(next, wait);
+                    }
                 }
                 handleMiscellaneousPeriodicEvents();
             }
@@ -186,12 +242,29 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
                 log.error("Error in topology instance task thread", e);
             } finally {
                 if (floodlightProviderService.getRole() != HARole.STANDBY) {
-                    newInstanceTask.reschedule(TOPOLOGY_COMPUTE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    newInstanceTask.reschedule(next, TimeUnit.MILLISECONDS);
                 }
             }
         }
     }
 
+    /**
+     * Get how much longer the pending link discovery updates should wait
+     * before they are applied: until none arrived for the debounce window,
+     * but no longer than the maximum delay after the first one.
+     * @param now the current time in milliseconds
+     * @return the time to wait in milliseconds; 0 or less to apply now
+     */
+    protected long getRecomputeDelay(long now) {
+        long first = firstPendingUpdateMs;
+        if (first == 0) {
+            return 0;
+        }
+        long quiet = lastPendingUpdateMs + recomputeDebounceMs - now;
+        long overdue = first + recomputeMaxDelayMs - now;
+        return Math.min(quiet, overdue);
+    }
+
     // To be used for adding any periodic events that's required by topology.
     protected void handleMiscellaneousPeriodicEvents() {
         return;
@@ -202,14 +275,30 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         linksUpdated = false;
         dtLinksUpdated = false;
         tunnelPortsUpdated = false;
+        linkCostsUpdated = false;
+        costUpdatedLinks.clear();
         List<LDUpdate> appliedUpdates = null;
-        if (this.ldUpdates.peek() != null) {
+        if (this.ldUpdates.peek() != null || !pendingCostPorts.isEmpty()) {
+            /* updates queued from here on are applied now or wait anew */
+            firstPendingUpdateMs = 0;
             appliedUpdates = applyUpdates();
+            applyCostUpdates();
         }
         log.info("Recomputing topology due to: {}", reason);
+        TopologyInstance previous = currentInstance;
         newInstanceFlag = createNewInstance(reason, forced);
+        TopologyChange change = null;
+        if (newInstanceFlag) {
+            /* walks the whole path cache, so only if someone wants it */
+            if (hasChangeListeners()) {
+                change = currentInstance.getChangesSince(previous);
+            }
+            if (floodGroupsEnabled) {
+                installFloodGroups(currentInstance);
+            }
+        }
         lastUpdateTime = new Date();
-        informListeners(appliedUpdates);
+        informListeners(appliedUpdates, change);
         return newInstanceFlag;
     }
 
@@ -223,6 +312,31 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
             log.trace("Queuing update: {}", updateList);
         }
         ldUpdates.addAll(updateList);
+        updatePending();
+    }
+
+    private void updatePending() {
+        long now = System.currentTimeMillis();
+        lastPendingUpdateMs = now;
+        if (firstPendingUpdateMs == 0) {
+            firstPendingUpdateMs = now;
+        }
+    }
+
+    // *******************
+    // IStatisticsListener
+    // *******************
+
+    @Override
+    public void portBandwidthUpdated(Collection<SwitchPortBandwidth> bandwidth) {
+        Set<NodePortTuple> changed = linkCostEngine.update(bandwidth, pathMetric);
+        if (!changed.isEmpty()) {
+            if (log.isTraceEnabled()) {
+                log.trace("Queuing cost update for ports: {}", changed);
+            }
+            pendingCostPorts.addAll(changed);
+            updatePending();
+        }
     }
 
     // ****************
@@ -236,26 +350,25 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         TopologyInstance ti = getCurrentInstance();
         Set<DatapathId> switches = ti.getSwitches();
 
-        for(DatapathId s: switches) {
-            if (this.switchPorts.get(s) == null) continue;
-            for (OFPort p: switchPorts.get(s)) {
-                NodePortTuple np = new NodePortTuple(s, p);
-                if (this.switchPortLinks.get(np) == null) continue;
-                for(Link l: this.switchPortLinks.get(np)) {
-                    if(dpidLinks.containsKey(s)) {
-                        dpidLinks.get(s).add(l);
-                    }
-                    else {
-                        dpidLinks.put(s,new HashSet<Link>(Arrays.asList(l)));
-                    }
-
-                }
+        for (Entry<NodePortTuple, Set<Link>> e : ti.getLinks().entrySet()) {
+            DatapathId s = e.getKey().getNodeId();
+            if (!switches.contains(s) || e.getValue().isEmpty()) continue;
+            if (dpidLinks.containsKey(s)) {
+                dpidLinks.get(s).addAll(e.getValue());
+            }
+            else {
+                dpidLinks.put(s, new HashSet<Link>(e.getValue()));
             }
         }
 
         return dpidLinks;
     }
 
+    @Override
+    public long getTopologyVersion() {
+        return getCurrentInstance().getVersion();
+    }
+
     @Override
     public boolean isEdge(DatapathId sw, OFPort p){
         TopologyInstance ti = getCurrentInstance();
@@ -268,6 +381,34 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         return ti.swBroadcastPorts(sw);
     }
 
+    @Override
+    public List<OFAction> getSwitchFloodActions(DatapathId sw, OFPort inPort) {
+        FloodActions fa = getCurrentInstance().getFloodActions(sw);
+        if (fa == null) {
+            return null;
+        }
+        List<OFAction> group = getFloodGroupActions(sw, fa);
+        return group != null ? group : fa.getActions(inPort);
+    }
+
+    /**
+     * Get the group action flooding along the given broadcast ports, if the
+     * flood group for them is known to be installed on the switch that is
+     * connected now.
+     * @param sw the switch
+     * @param fa the flood actions of the switch
+     * @return the group action, or null if the group can't be used
+     */
+    protected List<OFAction> getFloodGroupActions(DatapathId sw, FloodActions fa) {
+        FloodGroup g = floodGroups.get(sw);
+        if (g != null && g.ready && !g.failed
+                && g.sw == switchService.getSwitch(sw)
+                && g.version == fa.getVersion() && g.ports.equals(fa.getPorts())) {
+            return g.actions;
+        }
+        return null;
+    }
+
     @Override
     public Date getLastUpdateTime() {
         return lastUpdateTime;
@@ -443,7 +584,7 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
     @Override
     public Set<Link> getExternalInterClusterLinks() {
         ImmutableSet.Builder<Link> b = ImmutableSet.builder();
-        for (Collection<Link> c : interClusterLinks.values()) {
+        for (Collection<Link> c : getCurrentInstance().getExternalLinks().values()) {
             for (Link l : c) {
                 b.add(l);
             }
@@ -459,7 +600,7 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
 
     @Override
     public Set<NodePortTuple> getTunnelPorts() {
-        return tunnelPorts;
+        return getCurrentInstance().getTunnelPorts();
     }
 
     @Override
@@ -507,6 +648,13 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         case PACKET_IN:
             ctrIncoming.increment();
             return this.processPacketInMessage(sw, (OFPacketIn) msg, cntx);
+        case ERROR:
+            FloodGroup g = floodGroups.get(sw.getId());
+            if (g != null && g.sw == sw && g.xid == msg.getXid()) {
+                g.failed = true;
+                log.warn("Switch {} rejected the flood group; flooding with output actions: {}", sw.getId(), msg);
+            }
+            break;
         default:
             break;
         }
@@ -556,6 +704,33 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         public void transitionToStandby() { }
     }
 
+    // *****************
+    // IOFSwitchListener
+    // *****************
+
+    /* forgets the flood group of a switch that left */
+    private class SwitchListenerDelegate implements IOFSwitchListener {
+        @Override
+        public void switchAdded(DatapathId switchId) { }
+
+        @Override
+        public void switchRemoved(DatapathId switchId) {
+            floodGroups.remove(switchId);
+        }
+
+        @Override
+        public void switchActivated(DatapathId switchId) { }
+
+        @Override
+        public void switchPortChanged(DatapathId switchId, OFPortDesc port, PortChangeType type) { }
+
+        @Override
+        public void switchChanged(DatapathId switchId) { }
+
+        @Override
+        public void switchDeactivated(DatapathId switchId) { }
+    }
+
     // *****************
     // IFloodlightModule
     // *****************
@@ -610,7 +785,7 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         directLinks = new HashMap<NodePortTuple, Set<Link>>();
         interClusterLinks = new HashMap<NodePortTuple, Set<Link>>();
         tunnelPorts = new HashSet<NodePortTuple>();
-        topologyAware = new ArrayList<ITopologyListener>();
+        topologyAware = new CopyOnWriteArrayList<ITopologyListener>();
         ldUpdates = new LinkedBlockingQueue<LDUpdate>();
         haListener = new HAListenerDelegate();
         registerTopologyDebugCounters();
@@ -654,6 +829,55 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
                     }
                 }
                 log.info("Will compute a max of {} paths upon topology updates", maxPathsToCompute);
+
+                String debounce = configOptions.get("recomputeDebounceMs");
+                if (debounce != null) {
+                    try {
+                        recomputeDebounceMs = Long.parseLong(debounce.trim());
+                    } catch (NumberFormatException e) {
+                        log.error("Invalid 'recomputeDebounceMs'. Using default {}", recomputeDebounceMs);
+                    }
+                }
+                String maxDelay = configOptions.get("recomputeMaxDelayMs");
+                if (maxDelay != null) {
+                    try {
+                        recomputeMaxDelayMs = Long.parseLong(maxDelay.trim());
+                    } catch (NumberFormatException e) {
+                        log.error("Invalid 'recomputeMaxDelayMs'. Using default {}", recomputeMaxDelayMs);
+                    }
+                }
+                log.info("Will recompute topology {} ms after the last link update, at most {} ms after the first",
+                        recomputeDebounceMs, recomputeMaxDelayMs);
+
+                double smoothing = 0.3;
+                double threshold = 0.2;
+                String s = configOptions.get("linkCostSmoothing");
+                if (s != null) {
+                    try {
+                        smoothing = Double.parseDouble(s.trim());
+                    } catch (NumberFormatException e) {
+                        log.error("Invalid 'linkCostSmoothing'. Using default {}", smoothing);
+                    }
+                }
+                s = configOptions.get("linkCostUpdateThreshold");
+                if (s != null) {
+                    try {
+                        threshold = Double.parseDouble(s.trim());
+                    } catch (NumberFormatException e) {
+                        log.error("Invalid 'linkCostUpdateThreshold'. Using default {}", threshold);
+                    }
+                }
+                try {
+                    linkCostEngine = new LinkCostEngine(smoothing, threshold);
+                } catch (IllegalArgumentException e) {
+                    throw new FloodlightModuleException("Invalid link cost configuration: " + e.getMessage());
+                }
+
+                s = configOptions.get("floodGroups");
+                if (s != null) {
+                    floodGroupsEnabled = Boolean.parseBoolean(s.trim());
+                }
+                log.info("Flooding with {}", floodGroupsEnabled ? "group tables where supported" : "output actions");
     }
 
     @Override
@@ -670,7 +894,14 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         }
 
         linkDiscoveryService.addListener(this);
+        if (statisticsService != null) {
+            statisticsService.addListener(this);
+        }
         floodlightProviderService.addOFMessageListener(OFType.PACKET_IN, this);
+        if (floodGroupsEnabled) {
+            floodlightProviderService.addOFMessageListener(OFType.ERROR, this);
+            switchService.addOFSwitchListener(new SwitchListenerDelegate());
+        }
         floodlightProviderService.addHAListener(this.haListener);
         addRestletRoutable();
     }
@@ -768,6 +999,155 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         sw.write(pob.build(), LogicalOFMessageCategory.MAIN);
     }
 
+    /**
+     * An ALL group with a bucket per broadcast port, flooding a packet
+     * with a single group action. The switch drops the copy a bucket
+     * would send out of the port the packet came in on.
+     */
+    protected static class FloodGroup {
+        final IOFSwitch sw;
+        final OFVersion version;
+        final List<OFPort> ports;
+        final List<OFAction> actions;
+        /* xid of the group-add, to tell an error for it */
+        volatile long xid = -1;
+        /* the switch can do ALL groups */
+        volatile boolean supported;
+        /* the barrier after the group-add was answered without an error */
+        volatile boolean ready;
+        /* the switch rejected the group or can't do ALL groups */
+        volatile boolean failed;
+
+        FloodGroup(IOFSwitch sw, List<OFPort> ports) {
+            this.sw = sw;
+            this.version = sw.getOFFactory().getVersion();
+            this.ports = ports;
+            this.actions = Collections.singletonList(
+                    (OFAction) sw.getOFFactory().actions().group(FLOOD_GROUP));
+        }
+    }
+
+    /**
+     * Install the flood group on each switch whose broadcast ports changed,
+     * or that connected again since its group was installed. Switches that
+     * don't support groups keep flooding with output actions.
+     * @param ti the new topology instance
+     */
+    protected void installFloodGroups(TopologyInstance ti) {
+        for (DatapathId sid : ti.getSwitches()) {
+            FloodActions fa = ti.getFloodActions(sid);
+            IOFSwitch sw = switchService.getSwitch(sid);
+            if (fa != null && sw != null) {
+                installFloodGroup(sw, fa);
+            }
+        }
+    }
+
+    /**
+     * Install the flood group for the given broadcast ports on a switch,
+     * unless it is installed already. The group is only used for floods
+     * once the switch answered the barrier after it without an error. A
+     * switch is asked for its group features first, as the group needs
+     * OpenFlow 1.2 or later and support for ALL groups.
+     * @param sw the switch
+     * @param fa the flood actions of the switch
+     */
+    protected void installFloodGroup(final IOFSwitch sw, FloodActions fa) {
+        if (fa.getVersion().compareTo(OFVersion.OF_12) < 0) {
+            return;
+        }
+        FloodGroup g = floodGroups.get(sw.getId());
+        if (g != null && g.sw == sw) {
+            if (g.supported && g.version == fa.getVersion() && g.ports.equals(fa.getPorts())) {
+                return;
+            }
+            if (g.failed && !g.supported) {
+                return; /* no ALL groups on this switch */
+            }
+        }
+
+        final FloodGroup ng = new FloodGroup(sw, fa.getPorts());
+        floodGroups.put(sw.getId(), ng);
+        if (g != null && g.sw == sw && g.supported) {
+            ng.supported = true;
+            writeFloodGroup(ng);
+            return;
+        }
+
+        ListenableFuture<List<OFGroupFeaturesStatsReply>> future =
+                sw.writeStatsRequest(sw.getOFFactory().buildGroupFeaturesStatsRequest().build());
+        Futures.addCallback(future, new FutureCallback<List<OFGroupFeaturesStatsReply>>() {
+            @Override
+            public void onSuccess(List<OFGroupFeaturesStatsReply> replies) {
+                if (replies == null || replies.isEmpty() || replies.get(0).getMaxGroupsAll() <= 0) {
+                    ng.failed = true;
+                    log.info("Switch {} has no ALL groups; flooding with output actions", sw.getId());
+                    return;
+                }
+                ng.supported = true;
+                if (floodGroups.get(sw.getId()) == ng) { /* else ports changed meanwhile */
+                    writeFloodGroup(ng);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                ng.failed = true;
+                log.warn("Could not get the group features of switch {}; flooding with output actions: {}",
+                        sw.getId(), t.getMessage());
+            }
+        });
+    }
+
+    /* replace the flood group on the switch, and mark it ready once the switch caught up */
+    private void writeFloodGroup(final FloodGroup g) {
+        OFFactory factory = g.sw.getOFFactory();
+        List<OFBucket> buckets = new ArrayList<OFBucket>(g.ports.size());
+        for (OFPort p : g.ports) {
+            buckets.add(factory.buildBucket()
+                    .setActions(Collections.singletonList(
+                            (OFAction) factory.actions().output(p, Integer.MAX_VALUE)))
+                    .setWatchGroup(OFGroup.ANY)
+                    .setWatchPort(OFPort.ANY)
+                    .build());
+        }
+        OFGroupAdd add = factory.buildGroupAdd()
+                .setGroup(FLOOD_GROUP)
+                .setGroupType(OFGroupType.ALL)
+                .setBuckets(buckets)
+                .build();
+        g.xid = add.getXid();
+
+        /* deleting a group that doesn't exist is no error, so this works however the switch was left */
+        List<OFMessage> msgs = new ArrayList<OFMessage>(2);
+        msgs.add(factory.buildGroupDelete()
+                .setGroup(FLOOD_GROUP)
+                .setGroupType(OFGroupType.ALL)
+                .build());
+        msgs.add(add);
+        if (!g.sw.write(msgs).isEmpty()) {
+            g.failed = true;
+            return;
+        }
+        /* an error for the group-add arrives before the barrier reply */
+        ListenableFuture<OFBarrierReply> future = g.sw.writeRequest(factory.buildBarrierRequest().build());
+        Futures.addCallback(future, new FutureCallback<OFBarrierReply>() {
+            @Override
+            public void onSuccess(OFBarrierReply reply) {
+                if (!g.failed) {
+                    g.ready = true;
+                    log.debug("Installed flood group on switch {} for ports {}", g.sw.getId(), g.ports);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                g.failed = true;
+                log.warn("No barrier reply for the flood group of switch {}: {}", g.sw.getId(), t.getMessage());
+            }
+        });
+    }
+
     /**
      * Get the set of ports to eliminate for sending out BDDP.  The method
      * returns all the ports that are suppressed for link discovery on the
@@ -828,10 +1208,9 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
             Set<OFPort> portsKnownToTopo = ti.getPortsWithLinks(sid);
 
             if (portsKnownToTopo != null) {
+                Set<OFPort> broadcastPorts = ti.swBroadcastPorts(sid);
                 for (OFPort p : portsKnownToTopo) {
-                    NodePortTuple npt =
-                            new NodePortTuple(sid, p);
-                    if (ti.isBroadcastPort(npt) == false) {
+                    if (!broadcastPorts.contains(p)) {
                         ports.remove(p);
                     }
                 }
@@ -843,8 +1222,8 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
             }
 
             // remove the incoming switch port
-            if (pinSwitch == sid) {
-                ports.remove((pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT)));
+            if (pinSwitch.equals(sid)) {
+                ports.remove(OFMessageUtils.getInPort(pi));
             }
 
             // we have all the switch ports to which we need to broadcast.
@@ -857,7 +1236,7 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         // get the packet-in switch.
         Ethernet eth =
                 IFloodlightProviderService.bcStore.
-                get(cntx,IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+                get(cntx,IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT);
 
         if (eth.getPayload() instanceof BSN) {
             BSN bsn = (BSN) eth.getPayload();
@@ -926,6 +1305,26 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         return (Collections.unmodifiableList(appliedUpdates));
     }
 
+    /**
+     * Mark the links leaving the ports whose cost the link cost engine
+     * changed, so that only the paths get computed again.
+     */
+    protected void applyCostUpdates() {
+        Iterator<NodePortTuple> it = pendingCostPorts.iterator();
+        while (it.hasNext()) {
+            NodePortTuple npt = it.next();
+            it.remove();
+            Set<Link> links = switchPortLinks.get(npt);
+            if (links == null) continue;
+            for (Link l : links) {
+                if (l.getSrc().equals(npt.getNodeId()) && l.getSrcPort().equals(npt.getPortId())) {
+                    costUpdatedLinks.add(l);
+                    linkCostsUpdated = true;
+                }
+            }
+        }
+    }
+
     protected void addOrUpdateSwitch(DatapathId sw) {
         /*TODO react appropriately
 
@@ -963,7 +1362,12 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         Set<NodePortTuple> blockedPorts = new HashSet<NodePortTuple>();
 
         if (!linksUpdated && !forced) {
-            return false;
+            if (!linkCostsUpdated || currentInstance == null) {
+                return false;
+            }
+            /* only link costs changed; keep clusters and archipelagos */
+            publish(currentInstance.reweight(switchPortLinks, costUpdatedLinks));
+            return true;
         }
 
         Map<NodePortTuple, Set<Link>> openflowLinks;
@@ -1017,11 +1421,22 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
 
         nt.compute();
 
-        currentInstance = nt;
+        publish(nt);
 
         return true;
     }
 
+    /**
+     * Make a computed instance the current one. Readers only ever see
+     * an instance after it is complete, and never see it change, so
+     * they need no lock.
+     * @param nt the new instance
+     */
+    private void publish(TopologyInstance nt) {
+        nt.setVersion(topologyVersion.incrementAndGet());
+        currentInstance = nt;
+    }
+
     /**
      *  We expect every switch port to have at most two links.  Both these
      *  links must be unidirectional links connecting to the same switch port.
@@ -1084,16 +1499,52 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
 
 
     public void informListeners(List<LDUpdate> linkUpdates) {
-        if (linkUpdates == null || linkUpdates.isEmpty()) {
+        informListeners(linkUpdates, null);
+    }
+
+    /**
+     * @return true if any listener wants to know what a recompute changed
+     */
+    protected boolean hasChangeListeners() {
+        for (ITopologyListener listener : topologyAware) {
+            if (listener instanceof ITopologyChangeListener) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tell the listeners about applied link updates and a new topology
+     * instance. Plain listeners are only told when there are link updates,
+     * {@link ITopologyChangeListener}s also when only the instance changed.
+     * @param linkUpdates the link updates applied, or null
+     * @param change what changed from the previous instance, or null if
+     * there is no new instance or no listener wants the change
+     */
+    protected void informListeners(List<LDUpdate> linkUpdates, TopologyChange change) {
+        boolean noUpdates = linkUpdates == null || linkUpdates.isEmpty();
+        if (noUpdates && (change == null || change.isEmpty())) {
             return;
         }
         if (role != null && role != HARole.ACTIVE) {
             return;
         }
 
-        for(int i=0; i < topologyAware.size(); ++i) {
-            ITopologyListener listener = topologyAware.get(i);
-            listener.topologyChanged(linkUpdates);
+        if (change == null) {
+            TopologyInstance ti = currentInstance;
+            change = new TopologyChange(ti == null ? 0 : ti.getVersion());
+        }
+        if (noUpdates) {
+            linkUpdates = Collections.emptyList();
+        }
+        /* iterates over a snapshot, listeners may be added meanwhile */
+        for (ITopologyListener listener : topologyAware) {
+            if (listener instanceof ITopologyChangeListener) {
+                ((ITopologyChangeListener) listener).topologyChanged(linkUpdates, change);
+            } else if (!noUpdates) {
+                listener.topologyChanged(linkUpdates);
+            }
         }
     }
 
@@ -1194,6 +1645,10 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
             OFPort dstPort, U64 latency, LinkType type) {
         Link link = new Link(srcId, srcPort, dstId, dstPort, latency);
 
+        if (updateLinkCost(link, type)) {
+            return;
+        }
+
         if (type.equals(LinkType.MULTIHOP_LINK)) {
             addPortToSwitch(srcId, srcPort);
             addPortToSwitch(dstId, dstPort);
@@ -1216,6 +1671,41 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         }
     }
 
+    /**
+     * Update the latency of a link we already know with the given type.
+     * This changes the cost of the link but not the structure of the
+     * topology, so it only sets {@link #linkCostsUpdated}.
+     * @param link the link, with its new latency
+     * @param type the type of the link
+     * @return false if the link is new or changed type
+     */
+    private boolean updateLinkCost(Link link, LinkType type) {
+        Map<NodePortTuple, Set<Link>> s;
+        if (type.equals(LinkType.DIRECT_LINK)) {
+            s = directLinks;
+        } else if (type.equals(LinkType.MULTIHOP_LINK)) {
+            s = interClusterLinks;
+        } else {
+            return false;
+        }
+        Set<Link> links = s.get(new NodePortTuple(link.getSrc(), link.getSrcPort()));
+        if (links == null) {
+            return false;
+        }
+        for (Link l : links) {
+            if (l.equals(link)) {
+                if (!l.getLatency().equals(link.getLatency())) {
+                    addLinkToStructure(switchPortLinks, link);
+                    addLinkToStructure(s, link);
+                    costUpdatedLinks.add(link);
+                    linkCostsUpdated = true;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void removeLink(Link link) {
         linksUpdated = true;
         dtLinksUpdated = removeLinkFromStructure(directLinks, link);
@@ -1286,6 +1776,11 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         return switchPortLinks;
     }
 
+    /**
+     * Get the current topology. The instance is immutable once published;
+     * hold on to it to make several queries against the same topology.
+     * @return the current instance
+     */
     public TopologyInstance getCurrentInstance() {
         return this.currentInstance;
     }
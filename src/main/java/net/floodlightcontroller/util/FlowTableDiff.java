@@ -0,0 +1,332 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowDeleteStrict;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFInstructionType;
+import org.projectfloodlight.openflow.protocol.OFMatchV3;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.action.OFActionOutput;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstructionApplyActions;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstructionWriteActions;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.protocol.oxm.OFOxm;
+import org.projectfloodlight.openflow.types.OFGroup;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
+
+/**
+ * The difference between the flows a module wants on a switch and the
+ * flows the switch reports in its flow stats, as the flow-mods that bring
+ * the switch in line.
+ *
+ * Flows are identified by table, priority and match, as on the switch. An
+ * intended flow is re-sent if the switch lacks it or has it with a different
+ * cookie, timeouts or instructions (actions for OpenFlow 1.0). An installed
+ * flow that is not intended is deleted only if the caller owns it, which is
+ * usually decided by the cookie.
+ *
+ * Switches do not report flows in the form they were sent: OpenFlow 1.0
+ * wildcards, fields masked with a full mask reported as exact, prerequisite
+ * fields filled in, max_len of outputs rewritten. Matches and instructions
+ * are therefore compared in a normalized form, so that an unchanged flow is
+ * not deleted and re-added.
+ */
+public class FlowTableDiff {
+    private static final Comparator<OFFlowMod> HIGH_PRIORITY_FIRST = new Comparator<OFFlowMod>() {
+        @Override
+        public int compare(OFFlowMod a, OFFlowMod b) {
+            return Integer.compare(b.getPriority(), a.getPriority());
+        }
+    };
+
+    private final List<OFFlowMod> adds;
+    private final List<OFFlowDeleteStrict> deletes;
+    private final int unchanged;
+
+    private FlowTableDiff(List<OFFlowMod> adds, List<OFFlowDeleteStrict> deletes, int unchanged) {
+        this.adds = adds;
+        this.deletes = deletes;
+        this.unchanged = unchanged;
+    }
+
+    /* Where a flow sits on the switch; flows with the same key are told apart by match */
+    private static final class FlowKey {
+        private final TableId table;
+        private final int priority;
+
+        FlowKey(TableId table, int priority) {
+            this.table = table;
+            this.priority = priority;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * table.hashCode() + priority;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof FlowKey)) {
+                return false;
+            }
+            FlowKey other = (FlowKey) obj;
+            return priority == other.priority && table.equals(other.table);
+        }
+    }
+
+    /* A match as OXMs of one version, fully wildcarded fields dropped and full masks collapsed */
+    private static final class NormalMatch {
+        private final Match match;
+        private final Set<OFOxm<?>> oxms;
+
+        NormalMatch(Match m, OFVersion version) {
+            match = MatchUtils.convertToVersion(m, version).build();
+            oxms = new HashSet<OFOxm<?>>();
+            for (OFOxm<?> oxm : ((OFMatchV3) match).getOxmList()) {
+                OFOxm<?> canonical = oxm.getCanonical();
+                if (canonical != null) {
+                    oxms.add(canonical);
+                }
+            }
+        }
+
+        /**
+         * Whether a switch reporting this match has the intended match, which
+         * it may have completed with the prerequisites the flow-mod left out
+         */
+        boolean isReportOf(NormalMatch intended) {
+            if (oxms.equals(intended.oxms)) {
+                return true;
+            }
+            if (!oxms.containsAll(intended.oxms)) {
+                return false;
+            }
+            for (MatchField<?> mf : intended.match.getMatchFields()) {
+                if (!mf.arePrerequisitesOK(intended.match) && mf.arePrerequisitesOK(match)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class InstalledFlow {
+        private final OFFlowStatsEntry entry;
+        private final NormalMatch match;
+
+        InstalledFlow(OFFlowStatsEntry entry, OFVersion version) {
+            this.entry = entry;
+            this.match = new NormalMatch(entry.getMatch(), version);
+        }
+    }
+
+    /* OpenFlow 1.0 flow-mods carry no table, so all flows share one key space */
+    private static TableId tableOf(OFFlowMod fm) {
+        return fm.getVersion() == OFVersion.OF_10 ? TableId.ALL : fm.getTableId();
+    }
+
+    private static TableId tableOf(OFFlowStatsEntry e) {
+        return e.getVersion() == OFVersion.OF_10 ? TableId.ALL : e.getTableId();
+    }
+
+    /* OpenFlow 1.0 matches are compared as the OXMs of OpenFlow 1.3 */
+    private static OFVersion matchVersionOf(OFFactory factory) {
+        return factory.getVersion() == OFVersion.OF_10 ? OFVersion.OF_13 : factory.getVersion();
+    }
+
+    private static List<OFAction> normalizeActions(List<OFAction> actions) {
+        List<OFAction> normal = new ArrayList<OFAction>(actions.size());
+        for (OFAction a : actions) {
+            /* max_len only matters for output to the controller, switches report anything else */
+            if (a instanceof OFActionOutput && !((OFActionOutput) a).getPort().equals(OFPort.CONTROLLER)
+                    && ((OFActionOutput) a).getMaxLen() != 0) {
+                a = ((OFActionOutput) a).createBuilder().setMaxLen(0).build();
+            }
+            normal.add(a);
+        }
+        return normal;
+    }
+
+    /*
+     * Instructions run in a fixed order whatever order they are listed in, the
+     * write-actions are a set, and an empty action list is the same as none.
+     */
+    private static Map<OFInstructionType, Object> normalizeInstructions(List<OFInstruction> instructions) {
+        Map<OFInstructionType, Object> normal = new EnumMap<OFInstructionType, Object>(OFInstructionType.class);
+        for (OFInstruction i : instructions) {
+            if (i instanceof OFInstructionApplyActions) {
+                List<OFAction> actions = normalizeActions(((OFInstructionApplyActions) i).getActions());
+                if (!actions.isEmpty()) {
+                    normal.put(i.getType(), actions);
+                }
+            } else if (i instanceof OFInstructionWriteActions) {
+                List<OFAction> actions = normalizeActions(((OFInstructionWriteActions) i).getActions());
+                if (!actions.isEmpty()) {
+                    normal.put(i.getType(), new HashSet<OFAction>(actions));
+                }
+            } else {
+                normal.put(i.getType(), i);
+            }
+        }
+        return normal;
+    }
+
+    private static boolean sameFlow(OFFlowMod fm, OFFlowStatsEntry e) {
+        if (!fm.getCookie().equals(e.getCookie())
+                || fm.getIdleTimeout() != e.getIdleTimeout()
+                || fm.getHardTimeout() != e.getHardTimeout()) {
+            return false;
+        }
+        if (fm.getVersion() == OFVersion.OF_10) {
+            return normalizeActions(fm.getActions()).equals(normalizeActions(e.getActions()));
+        } else {
+            return normalizeInstructions(fm.getInstructions()).equals(normalizeInstructions(e.getInstructions()));
+        }
+    }
+
+    private static OFFlowDeleteStrict deleteOf(OFFactory factory, OFFlowStatsEntry e) {
+        OFFlowDeleteStrict.Builder b = factory.buildFlowDeleteStrict()
+                .setMatch(e.getMatch())
+                .setPriority(e.getPriority())
+                .setOutPort(OFPort.ANY);
+        if (factory.getVersion().compareTo(OFVersion.OF_10) > 0) {
+            b.setTableId(e.getTableId())
+            .setCookie(e.getCookie())
+            .setCookieMask(U64.NO_MASK)
+            .setOutGroup(OFGroup.ANY);
+        }
+        return b.build();
+    }
+
+    /**
+     * Compare intended flows against the flow stats of a switch
+     * @param factory the factory of the switch, used to build deletes
+     * @param intended the flow-mods the switch should have
+     * @param installed the flow stats reported by the switch
+     * @param owned whether an installed flow, by cookie, may be deleted
+     * @return the diff
+     */
+    public static FlowTableDiff compute(OFFactory factory, Collection<OFFlowMod> intended,
+            Collection<OFFlowStatsEntry> installed, Predicate<U64> owned) {
+        OFVersion matchVersion = matchVersionOf(factory);
+        Map<FlowKey, List<InstalledFlow>> byKey = new HashMap<FlowKey, List<InstalledFlow>>();
+        for (OFFlowStatsEntry e : installed) {
+            FlowKey key = new FlowKey(tableOf(e), e.getPriority());
+            List<InstalledFlow> flows = byKey.get(key);
+            if (flows == null) {
+                flows = new ArrayList<InstalledFlow>(1);
+                byKey.put(key, flows);
+            }
+            flows.add(new InstalledFlow(e, matchVersion));
+        }
+
+        List<OFFlowMod> adds = new ArrayList<OFFlowMod>();
+        int unchanged = 0;
+        for (OFFlowMod fm : intended) {
+            OFFlowStatsEntry e = null;
+            List<InstalledFlow> flows = byKey.get(new FlowKey(tableOf(fm), fm.getPriority()));
+            if (flows != null) {
+                NormalMatch match = new NormalMatch(fm.getMatch(), matchVersion);
+                for (Iterator<InstalledFlow> it = flows.iterator(); it.hasNext(); ) {
+                    InstalledFlow f = it.next();
+                    if (f.match.isReportOf(match)) {
+                        it.remove();
+                        e = f.entry;
+                        break;
+                    }
+                }
+            }
+            if (e != null && sameFlow(fm, e)) {
+                unchanged++;
+            } else {
+                adds.add(fm);
+            }
+        }
+        /* high priority first, see StaticEntryPusher.sendEntriesToSwitch() */
+        Collections.sort(adds, HIGH_PRIORITY_FIRST);
+
+        List<OFFlowDeleteStrict> deletes = new ArrayList<OFFlowDeleteStrict>();
+        for (List<InstalledFlow> flows : byKey.values()) {
+            for (InstalledFlow f : flows) {
+                if (owned.test(f.entry.getCookie())) {
+                    deletes.add(deleteOf(factory, f.entry));
+                }
+            }
+        }
+        return new FlowTableDiff(adds, deletes, unchanged);
+    }
+
+    /**
+     * @return the intended flows that are missing or differ on the switch,
+     * highest priority first
+     */
+    public List<OFFlowMod> getAdds() {
+        return adds;
+    }
+
+    /**
+     * @return deletes for owned flows on the switch that are not intended
+     */
+    public List<OFFlowDeleteStrict> getDeletes() {
+        return deletes;
+    }
+
+    /**
+     * @return the number of intended flows already on the switch
+     */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public boolean isEmpty() {
+        return adds.isEmpty() && deletes.isEmpty();
+    }
+
+    /**
+     * @return the deletes followed by the adds, ready to be written as one
+     * batch
+     */
+    public List<OFMessage> getMessages() {
+        List<OFMessage> messages = new ArrayList<OFMessage>(deletes.size() + adds.size());
+        messages.addAll(deletes);
+        messages.addAll(adds);
+        return messages;
+    }
+}
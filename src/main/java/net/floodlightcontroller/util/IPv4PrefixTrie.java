@@ -0,0 +1,232 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IPv4AddressWithMask;
+
+/**
+ * A binary radix trie over IPv4 prefixes. Each prefix can hold any number
+ * of values. Besides longest-prefix match the trie can return all values
+ * on prefixes that contain a given prefix, and all values on prefixes
+ * contained in a given prefix, in time proportional to the prefix length
+ * (plus the size of the result) rather than the number of stored prefixes.
+ *
+ * Prefix bits beyond the mask length are ignored. The trie is not thread
+ * safe; callers must synchronize concurrent modification.
+ *
+ * @param <V> Type of the values stored in the trie
+ */
+public class IPv4PrefixTrie<V> {
+    private static class Node<V> {
+        private Node<V> zero;
+        private Node<V> one;
+        private Set<V> values;
+
+        private boolean isEmpty() {
+            return zero == null && one == null
+                    && (values == null || values.isEmpty());
+        }
+    }
+
+    private final Node<V> root = new Node<V>();
+    private int size;
+
+    private static void checkMaskBits(int maskBits) {
+        if (maskBits < 0 || maskBits > 32)
+            throw new IllegalArgumentException("Mask bits must be 0 <= value <= 32.");
+    }
+
+    private static int bit(int prefix, int depth) {
+        return (prefix >>> (31 - depth)) & 1;
+    }
+
+    /**
+     * Add a value for the given prefix
+     * @param prefix the prefix address
+     * @param maskBits the prefix length
+     * @param value the value
+     * @return true if the value was not already stored for this prefix
+     */
+    public boolean put(int prefix, int maskBits, V value) {
+        checkMaskBits(maskBits);
+        Node<V> n = root;
+        for (int d = 0; d < maskBits; d++) {
+            if (bit(prefix, d) == 0) {
+                if (n.zero == null)
+                    n.zero = new Node<V>();
+                n = n.zero;
+            } else {
+                if (n.one == null)
+                    n.one = new Node<V>();
+                n = n.one;
+            }
+        }
+        if (n.values == null)
+            n.values = new LinkedHashSet<V>(2);
+        if (n.values.add(value)) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean put(IPv4AddressWithMask prefix, V value) {
+        return put(prefix.getValue().getInt(),
+                   prefix.getMask().asCidrMaskLength(), value);
+    }
+
+    /**
+     * Remove a value from the given prefix, pruning nodes that become empty
+     * @param prefix the prefix address
+     * @param maskBits the prefix length
+     * @param value the value
+     * @return true if the value was stored for this prefix
+     */
+    public boolean remove(int prefix, int maskBits, V value) {
+        checkMaskBits(maskBits);
+        @SuppressWarnings("unchecked")
+        Node<V>[] path = new Node[maskBits + 1];
+        Node<V> n = root;
+        path[0] = n;
+        for (int d = 0; d < maskBits; d++) {
+            n = (bit(prefix, d) == 0) ? n.zero : n.one;
+            if (n == null)
+                return false;
+            path[d + 1] = n;
+        }
+        if (n.values == null || !n.values.remove(value))
+            return false;
+        size--;
+        if (n.values.isEmpty())
+            n.values = null;
+        for (int d = maskBits; d > 0 && path[d].isEmpty(); d--) {
+            if (bit(prefix, d - 1) == 0)
+                path[d - 1].zero = null;
+            else
+                path[d - 1].one = null;
+        }
+        return true;
+    }
+
+    public boolean remove(IPv4AddressWithMask prefix, V value) {
+        return remove(prefix.getValue().getInt(),
+                      prefix.getMask().asCidrMaskLength(), value);
+    }
+
+    /**
+     * @return the values stored for exactly the given prefix
+     */
+    public Set<V> get(int prefix, int maskBits) {
+        checkMaskBits(maskBits);
+        Node<V> n = root;
+        for (int d = 0; d < maskBits && n != null; d++) {
+            n = (bit(prefix, d) == 0) ? n.zero : n.one;
+        }
+        if (n == null || n.values == null)
+            return Collections.emptySet();
+        return Collections.unmodifiableSet(n.values);
+    }
+
+    /**
+     * @return the values on the longest prefix that contains the address,
+     * or an empty set if none does
+     */
+    public Set<V> longestMatch(int ip) {
+        Set<V> best = null;
+        Node<V> n = root;
+        for (int d = 0; n != null; d++) {
+            if (n.values != null)
+                best = n.values;
+            if (d == 32)
+                break;
+            n = (bit(ip, d) == 0) ? n.zero : n.one;
+        }
+        if (best == null)
+            return Collections.emptySet();
+        return Collections.unmodifiableSet(best);
+    }
+
+    public Set<V> longestMatch(IPv4Address ip) {
+        return longestMatch(ip.getInt());
+    }
+
+    /**
+     * Get all values on prefixes that contain (or are equal to) the given
+     * prefix, ordered from the shortest to the longest prefix
+     */
+    public List<V> getCovering(int prefix, int maskBits) {
+        checkMaskBits(maskBits);
+        List<V> result = new ArrayList<V>();
+        Node<V> n = root;
+        for (int d = 0; n != null; d++) {
+            if (n.values != null)
+                result.addAll(n.values);
+            if (d == maskBits)
+                break;
+            n = (bit(prefix, d) == 0) ? n.zero : n.one;
+        }
+        return result;
+    }
+
+    /**
+     * Get all values on prefixes that are contained in (or are equal to)
+     * the given prefix
+     */
+    public List<V> getCovered(int prefix, int maskBits) {
+        checkMaskBits(maskBits);
+        Node<V> n = root;
+        for (int d = 0; d < maskBits && n != null; d++) {
+            n = (bit(prefix, d) == 0) ? n.zero : n.one;
+        }
+        List<V> result = new ArrayList<V>();
+        if (n != null)
+            collect(n, result);
+        return result;
+    }
+
+    private void collect(Node<V> n, List<V> result) {
+        if (n.values != null)
+            result.addAll(n.values);
+        if (n.zero != null)
+            collect(n.zero, result);
+        if (n.one != null)
+            collect(n.one, result);
+    }
+
+    /**
+     * @return the number of (prefix, value) pairs in the trie
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        root.zero = null;
+        root.one = null;
+        root.values = null;
+        size = 0;
+    }
+}
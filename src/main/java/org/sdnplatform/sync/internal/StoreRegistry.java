@@ -1,15 +1,20 @@
 package org.sdnplatform.sync.internal;
 
-import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.sql.ConnectionPoolDataSource;
 
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
 import org.sdnplatform.sync.Versioned;
 import org.sdnplatform.sync.ISyncService.Scope;
 import org.sdnplatform.sync.error.PersistException;
@@ -52,27 +57,67 @@ public class StoreRegistry {
     private HashMap<String,SynchronizingStorageEngine> localStores =
             new HashMap<String, SynchronizingStorageEngine>();
 
+    /**
+     * Hints are taken in batches of at least this many, if available
+     */
+    static final int MIN_HINT_BATCH = 50;
+    /**
+     * The batch size grows up to this while a shard has a backlog
+     */
+    static final int MAX_HINT_BATCH = 800;
+
     /**
      * Undelivered hints associated with the stores
      */
     private InMemoryStorageEngine<HintKey,byte[]> hints;
     
     /**
-     * A queue containing pending hints.  
+     * Keys of the hints that are on a shard queue and not yet taken. A key
+     * is queued only if it is not already queued, so repeated writes to a
+     * key coalesce into one hint carrying the latest values.
      */
-    private ArrayDeque<HintKey> hintQueue = new ArrayDeque<HintKey>();
-    private Lock hintLock = new ReentrantLock();
-    private Condition hintsAvailable = hintLock.newCondition();
-    
+    private final Set<HintKey> queuedKeys = ConcurrentHashMap.newKeySet();
+
     /**
-     * Construct a new {@link StoreRegistry}
+     * Queues of pending hints. A key always maps to the same shard, and
+     * each shard is drained by one worker, so writers never contend on a
+     * single lock and the hints for a key stay in order.
+     */
+    private final HintShard[] shards;
+
+    /**
+     * Queue statistics by store name
+     */
+    private final ConcurrentHashMap<String, HintStats> hintStats =
+            new ConcurrentHashMap<String, HintStats>();
+
+    private IDebugCounterService debugCounter;
+    private String counterModule;
+
+    /**
+     * Construct a new {@link StoreRegistry} with a single hint shard
      * @param syncManager The associated syncManager
      */
     public StoreRegistry(SyncManager syncManager, String dbPath) {
+        this(syncManager, dbPath, 1);
+    }
+
+    /**
+     * Construct a new {@link StoreRegistry}
+     * @param syncManager The associated syncManager
+     * @param numHintShards the number of hint queues, which is the number
+     * of workers that can drain hints concurrently
+     */
+    public StoreRegistry(SyncManager syncManager, String dbPath,
+                         int numHintShards) {
         super();
         this.syncManager = syncManager;
         this.dbPath = dbPath;
         hints = new InMemoryStorageEngine<HintKey, byte[]>("system-hints");
+        shards = new HintShard[numHintShards];
+        for (int i = 0; i < numHintShards; i++) {
+            shards[i] = new HintShard();
+        }
     }
     
     // **************
@@ -119,9 +164,77 @@ public class StoreRegistry {
                                                syncManager.debugCounter,
                                                scope);
         localStores.put(storeName, store);
+        registerStoreCounters(storeName);
         return store;
     }
 
+    /**
+     * Expose the hint queue statistics of every store, now and for stores
+     * registered later, as debug counters under
+     * <code>hint-queue/&lt;store&gt;</code>
+     * @param debugCounter the debug counter service
+     * @param moduleName the registered module the counters belong to
+     */
+    public synchronized void registerCounters(IDebugCounterService debugCounter,
+                                              String moduleName) {
+        this.debugCounter = debugCounter;
+        this.counterModule = moduleName;
+        debugCounter.registerCounter(moduleName, "hint-queue",
+                "Hints queued for replication, by store");
+        for (String storeName : localStores.keySet()) {
+            registerStoreCounters(storeName);
+        }
+    }
+
+    private void registerStoreCounters(String storeName) {
+        if (debugCounter == null) {
+            return;
+        }
+        final HintStats stats = getHintStats(storeName);
+        String base = "hint-queue/" + storeName.replace('/', '_');
+        debugCounter.registerCounter(counterModule, base,
+                "Hints for store " + storeName);
+        debugCounter.registerCounter(counterModule, base + "/queued",
+                "Hints queued for store " + storeName, stats::getQueued);
+        debugCounter.registerCounter(counterModule, base + "/taken",
+                "Hints taken off the queue for store " + storeName, stats::getTaken);
+        debugCounter.registerCounter(counterModule, base + "/wait-us",
+                "Total time hints for store " + storeName + " waited in the queue, in microseconds",
+                () -> TimeUnit.NANOSECONDS.toMicros(stats.getWaitNs()));
+    }
+
+    /**
+     * @param storeName the store name
+     * @return the hint queue statistics for the store
+     */
+    public HintStats getHintStats(String storeName) {
+        HintStats stats = hintStats.get(storeName);
+        if (stats == null) {
+            stats = new HintStats();
+            HintStats old = hintStats.putIfAbsent(storeName, stats);
+            if (old != null) {
+                stats = old;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return the number of hint shards, see
+     * {@link #takeHints(int, Collection)}
+     */
+    public int getNumHintShards() {
+        return shards.length;
+    }
+
+    /**
+     * @param shardIndex the shard
+     * @return the number of hints waiting in the shard
+     */
+    public int getHintQueueDepth(int shardIndex) {
+        return Math.max(0, shards[shardIndex].depth.get());
+    }
+
     /**
      * Get a collection containing all the currently-registered stores
      * @return the {@link Collection<SynchronizingStorageEngine>}
@@ -140,16 +253,20 @@ public class StoreRegistry {
                           ByteArray key, Versioned<byte[]> value) {
         try {
             HintKey hk = new HintKey(storeName,key);
-            hintLock.lock();
-            try {
-                boolean needed = !hints.containsKey(hk);
-                needed &= hints.doput(hk, value);
-                if (needed) {
-                    hintQueue.add(hk);
-                    hintsAvailable.signal();
-                }
-            } finally {
-                hintLock.unlock();
+            /* The value goes in before the key is marked queued, and a
+             * worker unmarks a key before it removes the values, so a
+             * value is either taken with the queued key or queues it
+             * again. */
+            if (!hints.doput(hk, value) || !queuedKeys.add(hk)) {
+                return;
+            }
+            HintStats stats = getHintStats(storeName);
+            stats.queued.increment();
+            HintShard shard =
+                    shards[(hk.hashCode() & Integer.MAX_VALUE) % shards.length];
+            shard.queue.offer(new QueuedHint(hk, stats, System.nanoTime()));
+            if (shard.depth.getAndIncrement() <= 0) {
+                LockSupport.unpark(shard.consumer);
             }
         } catch (SyncException e) {
             logger.error("Failed to queue hint for store " + storeName, e);
@@ -157,43 +274,127 @@ public class StoreRegistry {
     }
 
     /**
-     * Drain up to the given number of hints to the provided collection.
-     * This method will block until at least one hint is available
+     * Drain a batch of hints from a shard to the provided collection.
+     * This method will block until at least one hint is available. Each
+     * shard must be drained by a single thread.
+     *
+     * The batch starts at {@link #MIN_HINT_BATCH} and doubles, up to
+     * {@link #MAX_HINT_BATCH}, while hints remain after a batch, so a
+     * backlog is sent in fewer, larger messages. It shrinks again once
+     * the shard keeps up.
+     * @param shardIndex the shard, from 0 to {@link #getNumHintShards()} - 1
      * @param c the collection to which the hints should be copied
-     * @param maxElements the maximum number of hints to drain
+     * @return the number of hints drained
      * @throws InterruptedException
      */
-    public void takeHints(Collection<Hint> c, int maxElements) 
+    public int takeHints(int shardIndex, Collection<Hint> c)
             throws InterruptedException {
+        HintShard shard = shards[shardIndex];
+        shard.consumer = Thread.currentThread();
         int count = 0;
-        try {
-            while (count == 0) {
-                hintLock.lock();
-                while (hintQueue.isEmpty()) {
-                    hintsAvailable.await();
+        while (count == 0) {
+            while (shard.depth.get() <= 0) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
                 }
-                while (count < maxElements && !hintQueue.isEmpty()) {
-                    HintKey hintKey = hintQueue.pollFirst();
-                    if (hintKey != null) {
-                        List<Versioned<byte[]>> values = hints.remove(hintKey);
-                        if (values == null) {
-                            continue;
-                        }
-                        c.add(new Hint(hintKey, values));
-                        count += 1;
-                    }
+            }
+            int batch = shard.batch;
+            long now = System.nanoTime();
+            QueuedHint qh;
+            while (count < batch && (qh = shard.queue.poll()) != null) {
+                shard.depth.decrementAndGet();
+                queuedKeys.remove(qh.key);
+                qh.stats.taken.increment();
+                qh.stats.waitNs.add(now - qh.queuedNs);
+                List<Versioned<byte[]>> values = hints.remove(qh.key);
+                if (values == null) {
+                    continue;
                 }
+                c.add(new Hint(qh.key, values));
+                count += 1;
+            }
+            if (shard.depth.get() > 0) {
+                shard.batch = Math.min(batch * 2, MAX_HINT_BATCH);
+            } else {
+                shard.batch = Math.max(batch / 2, MIN_HINT_BATCH);
             }
-        } finally {
-            hintLock.unlock();
         }
+        return count;
     }
 
     public void shutdown() {
-        hintQueue.clear();
+        for (HintShard shard : shards) {
+            shard.queue.clear();
+            shard.depth.set(0);
+        }
+        queuedKeys.clear();
         hints.close();
     }
 
+    /**
+     * A queue of pending hints drained by one worker
+     */
+    private static class HintShard {
+        private final ConcurrentLinkedQueue<QueuedHint> queue =
+                new ConcurrentLinkedQueue<QueuedHint>();
+        /* may briefly lag the queue, see queueHint() */
+        private final AtomicInteger depth = new AtomicInteger();
+        private volatile Thread consumer;
+        /* only used by the consumer */
+        private int batch = MIN_HINT_BATCH;
+    }
+
+    private static class QueuedHint {
+        private final HintKey key;
+        private final HintStats stats;
+        private final long queuedNs;
+
+        QueuedHint(HintKey key, HintStats stats, long queuedNs) {
+            this.key = key;
+            this.stats = stats;
+            this.queuedNs = queuedNs;
+        }
+    }
+
+    /**
+     * Hint queue statistics for a store
+     */
+    public static class HintStats {
+        private final LongAdder queued = new LongAdder();
+        private final LongAdder taken = new LongAdder();
+        private final LongAdder waitNs = new LongAdder();
+
+        /**
+         * @return the number of keys queued; repeated writes to a queued
+         * key are not counted
+         */
+        public long getQueued() {
+            return queued.sum();
+        }
+
+        /**
+         * @return the number of keys taken off the queue by workers
+         */
+        public long getTaken() {
+            return taken.sum();
+        }
+
+        /**
+         * @return the number of keys waiting in the queue
+         */
+        public long getDepth() {
+            return Math.max(0, getQueued() - getTaken());
+        }
+
+        /**
+         * @return the total time taken keys waited in the queue, in ns
+         */
+        public long getWaitNs() {
+            return waitNs.sum();
+        }
+    }
+
     /**
      * A key in the hint store
      * @author readams
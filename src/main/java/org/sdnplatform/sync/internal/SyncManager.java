@@ -124,9 +124,11 @@ public class SyncManager extends AbstractSyncManager {
 
 	/**
 	 * Number of {@link HintWorker} workers used to drain the queue of writes
-	 * that need to be sent to the connected nodes
+	 * that need to be sent to the connected nodes. Each worker drains its
+	 * own shard of the hint queue.
 	 */
-	private static final int SYNC_WORKER_POOL = 2;
+	private static final int SYNC_WORKER_POOL =
+			Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors() / 2));
 
 	/**
 	 * A thread pool for the {@link HintWorker} threads.
@@ -150,6 +152,14 @@ public class SyncManager extends AbstractSyncManager {
 	 */
 	private boolean persistenceEnabled = true;
 
+	/**
+	 * Transport options for the RPC connections between nodes
+	 * @see RPCService
+	 */
+	private boolean rpcPipelined = false;
+	private RPCService.Compression rpcCompression =
+			RPCService.Compression.NONE;
+
 	private static final String PACKAGE =
 			ISyncService.class.getPackage().getName();
 
@@ -464,7 +474,8 @@ public class SyncManager extends AbstractSyncManager {
 		threadPool = context.getServiceImpl(IThreadPoolService.class);
 		debugCounter = context.getServiceImpl(IDebugCounterService.class);
 		Map<String, String> config = context.getConfigParams(this);
-		storeRegistry = new StoreRegistry(this, config.get("dbPath"));
+		storeRegistry = new StoreRegistry(this, config.get("dbPath"),
+				SYNC_WORKER_POOL);
 
 		String[] configProviders =
 			{PropertyCCProvider.class.getName(),
@@ -493,6 +504,21 @@ public class SyncManager extends AbstractSyncManager {
 					"providers " + Arrays.toString(configProviders), e);
 		}
 
+		if (config.containsKey("rpcPipelined")) {
+			rpcPipelined = Boolean.parseBoolean(config.get("rpcPipelined"));
+		}
+		String compression = config.get("rpcCompression");
+		if (compression != null) {
+			try {
+				rpcCompression = RPCService.Compression.valueOf(
+						compression.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new FloodlightModuleException("Unknown sync RPC " +
+						"compression " + compression + "; expected one of " +
+						Arrays.toString(RPCService.Compression.values()), e);
+			}
+		}
+
 		String manualStoreString = config.get("manualStores");
 		if (manualStoreString != null) {
 			List<String> manualStores = null;
@@ -534,6 +560,7 @@ public class SyncManager extends AbstractSyncManager {
 					"error-processing",
 					"Number of errors processing messages from remote clients",
 					IDebugCounterService.MetaData.ERROR);
+			storeRegistry.registerCounters(debugCounter, PACKAGE);
 		}
 
 	}
@@ -543,7 +570,8 @@ public class SyncManager extends AbstractSyncManager {
 			throws FloodlightModuleException {
 
 		timer = new HashedWheelTimer();
-		rpcService = new RPCService(this, debugCounter, timer);
+		rpcService = new RPCService(this, debugCounter, timer,
+				rpcPipelined, rpcCompression);
 
 		cleanupTask = new SingletonTask(threadPool.getScheduledExecutor(),
 				new CleanupTask());
@@ -568,7 +596,7 @@ public class SyncManager extends AbstractSyncManager {
 		};
 		hintThreadPool = Executors.newCachedThreadPool(f);
 		for (int i = 0; i < SYNC_WORKER_POOL; i++) {
-			hintThreadPool.execute(new HintWorker());
+			hintThreadPool.execute(new HintWorker(i));
 		}
 
 		doUpdateConfiguration();
@@ -733,9 +761,14 @@ public class SyncManager extends AbstractSyncManager {
 	 * @author readams
 	 */
 	protected class HintWorker implements Runnable {
-		ArrayList<Hint> tasks = new ArrayList<Hint>(50);
+		ArrayList<Hint> tasks = new ArrayList<Hint>(StoreRegistry.MIN_HINT_BATCH);
 		protected Map<String, SyncMessage> messages =
 				new LinkedHashMap<String, SyncMessage>();
+		private final int shard;
+
+		public HintWorker(int shard) {
+			this.shard = shard;
+		}
 
 		@Override
 		public void run() {
@@ -743,7 +776,7 @@ public class SyncManager extends AbstractSyncManager {
 				try {
 					// Batch up sync tasks so we use fewer, larger messages
 					// XXX - todo - handle hints targeted to specific nodes
-					storeRegistry.takeHints(tasks, 50);
+					storeRegistry.takeHints(shard, tasks);
 					for (Hint task : tasks) {
 						counterHints.increment();
 						SynchronizingStorageEngine store =
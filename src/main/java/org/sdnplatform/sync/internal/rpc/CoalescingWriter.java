@@ -0,0 +1,69 @@
+package org.sdnplatform.sync.internal.rpc;
+
+import io.netty.channel.Channel;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.sdnplatform.sync.thrift.SyncMessage;
+
+/**
+ * Writes messages to a channel from any thread with one flush per pass
+ * of the channel's event loop.
+ *
+ * Writers only queue the message; the first writer to find no pass
+ * scheduled schedules one. The pass writes everything queued, up to
+ * {@link #MAX_BATCH} messages, and flushes once, so messages queued while
+ * the event loop was busy go out in a single socket write. A pass that
+ * stops at the limit schedules another, so a fast writer can't keep the
+ * event loop from reading the acks that open its window.
+ * @see RPCService#writeToNode(Short, SyncMessage)
+ */
+class CoalescingWriter implements Runnable {
+    static final int MAX_BATCH = 256;
+
+    private final Channel channel;
+    private final Queue<SyncMessage> queue =
+            new ConcurrentLinkedQueue<SyncMessage>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    CoalescingWriter(Channel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Queue a message to be written and flushed on the next pass of the
+     * event loop
+     * @param m the message
+     */
+    void write(SyncMessage m) {
+        queue.offer(m);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            channel.eventLoop().execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        // clear the flag before draining: a message queued after this
+        // point is either drained by this pass or schedules the next one
+        scheduled.set(false);
+        int written = 0;
+        SyncMessage m;
+        while (written < MAX_BATCH && (m = queue.poll()) != null) {
+            channel.write(m);
+            written += 1;
+        }
+        if (written > 0) {
+            channel.flush();
+        }
+        if (!queue.isEmpty()) {
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.sdnplatform.sync.internal.rpc;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.compression.JdkZlibDecoder;
+import io.netty.handler.codec.compression.ZlibWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the bytes written to a channel as a single zlib stream.
+ *
+ * The frames written between two flushes are deflated into one buffer,
+ * ended with a sync flush so the peer can decode the whole batch as soon
+ * as it arrives, and written as one buffer. Because the stream spans the
+ * life of the channel, later batches are compressed against the data of
+ * earlier ones, which helps the small, similar sync messages a lot more
+ * than compressing each frame alone. The peer reads the stream with a
+ * {@link JdkZlibDecoder} using {@link ZlibWrapper#ZLIB}.
+ * @see RPCChannelInitializer
+ */
+public class DeflateBatchEncoder extends ChannelOutboundHandlerAdapter {
+    private static final int MIN_WRITABLE = 4096;
+
+    private final Deflater deflater;
+    private final List<ChannelPromise> promises = new ArrayList<ChannelPromise>();
+    private ByteBuf out;
+    private byte[] copy = new byte[0];
+
+    public DeflateBatchEncoder() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param level the deflate level, 0-9
+     */
+    public DeflateBatchEncoder(int level) {
+        deflater = new Deflater(level);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg,
+                      ChannelPromise promise) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        ByteBuf in = (ByteBuf) msg;
+        try {
+            int len = in.readableBytes();
+            if (len > 0) {
+                if (out == null) {
+                    out = ctx.alloc().heapBuffer(len / 2 + MIN_WRITABLE);
+                }
+                if (in.hasArray()) {
+                    deflater.setInput(in.array(),
+                                      in.arrayOffset() + in.readerIndex(), len);
+                } else {
+                    if (copy.length < len) copy = new byte[len];
+                    in.getBytes(in.readerIndex(), copy, 0, len);
+                    deflater.setInput(copy, 0, len);
+                }
+                deflate(Deflater.NO_FLUSH);
+            }
+        } finally {
+            in.release();
+        }
+        promises.add(promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (out != null) {
+            deflate(Deflater.SYNC_FLUSH);
+            final ChannelPromise[] batch =
+                    promises.toArray(new ChannelPromise[promises.size()]);
+            promises.clear();
+            ByteBuf b = out;
+            out = null;
+            ctx.write(b).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) {
+                    for (ChannelPromise p : batch) {
+                        if (future.isSuccess()) {
+                            p.trySuccess();
+                        } else {
+                            p.tryFailure(future.cause());
+                        }
+                    }
+                }
+            });
+        } else {
+            // only empty buffers were written
+            for (ChannelPromise p : promises) {
+                p.trySuccess();
+            }
+            promises.clear();
+        }
+        ctx.flush();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (out != null) {
+            out.release();
+            out = null;
+        }
+        for (ChannelPromise p : promises) {
+            p.tryFailure(new IllegalStateException("Channel closed"));
+        }
+        promises.clear();
+        deflater.end();
+    }
+
+    /**
+     * Deflate the pending input into {@link #out}
+     * @param flush {@link Deflater#NO_FLUSH} to consume the input,
+     * {@link Deflater#SYNC_FLUSH} to also write out everything buffered
+     * in the deflater
+     */
+    private void deflate(int flush) {
+        while (true) {
+            out.ensureWritable(MIN_WRITABLE);
+            int writable = out.writableBytes();
+            int n = deflater.deflate(out.array(),
+                                     out.arrayOffset() + out.writerIndex(),
+                                     writable, flush);
+            out.writerIndex(out.writerIndex() + n);
+            if (flush == Deflater.NO_FLUSH ? deflater.needsInput()
+                                           : n < writable) {
+                return;
+            }
+        }
+    }
+}
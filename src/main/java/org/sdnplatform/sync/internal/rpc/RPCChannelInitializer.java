@@ -3,6 +3,8 @@ package org.sdnplatform.sync.internal.rpc;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.compression.JdkZlibDecoder;
+import io.netty.handler.codec.compression.ZlibWrapper;
 import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.util.Timer;
@@ -47,6 +49,12 @@ public class RPCChannelInitializer extends ChannelInitializer<Channel> {
         pipeline.addLast("timeout", readTimeoutHandler);
         pipeline.addLast("handshaketimeout",
                          new HandshakeTimeoutHandler(channelHandler, timer, 10));
+        if (rpcService.getCompression() == RPCService.Compression.DEFLATE) {
+            pipeline.addLast("inflater",
+                             new JdkZlibDecoder(ZlibWrapper.ZLIB));
+            pipeline.addLast("deflater",
+                             new DeflateBatchEncoder());
+        }
 
         pipeline.addLast("syncMessageDecoder",
                          new SyncMessageDecoder(maxFrameSize));
@@ -173,13 +173,64 @@ public class RPCService{
      */
     protected static final int MAX_PENDING_MESSAGES = 500;
 
+    /**
+     * Bounds of the adaptive message window in pipelined mode
+     */
+    protected static final int MIN_PENDING_MESSAGES = 32;
+    protected static final int MAX_ADAPTIVE_PENDING_MESSAGES = 8 * MAX_PENDING_MESSAGES;
+
+    /**
+     * How long a writer waits on a full window before checking again
+     */
+    protected static final long WINDOW_WAIT_MS = 100;
+
+    /**
+     * Compression of the byte stream between nodes.  All nodes of a
+     * cluster must use the same setting.
+     */
+    public enum Compression {
+        NONE,
+        /**
+         * One zlib stream per connection, flushed once per batch of
+         * writes
+         * @see DeflateBatchEncoder
+         */
+        DEFLATE
+    }
+
+    /**
+     * In pipelined mode, sync messages are written through a
+     * {@link CoalescingWriter} that flushes once per event loop pass, and
+     * the message window adapts to how fast the connection drains
+     */
+    protected final boolean pipelined;
+    protected final Compression compression;
+
     public RPCService(SyncManager syncManager, 
                       IDebugCounterService debugCounter,
                       Timer timer) {
+        this(syncManager, debugCounter, timer, false, Compression.NONE);
+    }
+
+    /**
+     * @param syncManager the sync manager
+     * @param debugCounter the debug counter service
+     * @param timer timer for handshake timeouts
+     * @param pipelined whether to coalesce writes and adapt the message
+     * window
+     * @param compression compression of the connections
+     */
+    public RPCService(SyncManager syncManager, 
+                      IDebugCounterService debugCounter,
+                      Timer timer,
+                      boolean pipelined,
+                      Compression compression) {
         super();
         this.syncManager = syncManager;
         this.debugCounter = debugCounter;
         this.timer = timer;
+        this.pipelined = pipelined;
+        this.compression = compression;
         this.rpcListeners = new CopyOnWriteArraySet<IRPCListener>();
 
         messageWindows = new ConcurrentHashMap<Short, MessageWindow>();
@@ -262,6 +313,14 @@ public class RPCService{
         return transactionId.getAndIncrement();
     }
 
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
     /**
      * Write a message to the node specified
      * @param nodeId the node ID
@@ -277,7 +336,20 @@ public class RPCService{
         NodeConnection nc = connections.get(nodeId);
         if (nc != null && nc.state == NodeConnectionState.CONNECTED) {
             waitForMessageWindow(bsm.getType(), nodeId, 0);
-            nc.nodeChannel.writeAndFlush(bsm);
+            Channel channel = nc.nodeChannel;
+            CoalescingWriter writer = nc.writer;
+            if (channel == null) return false;
+            if (writer != null) {
+                writer.write(bsm);
+                if (!channel.isWritable() &&
+                    windowedTypes.contains(bsm.getType())) {
+                    // the connection is not draining as fast as we write
+                    MessageWindow mw = messageWindows.get(nodeId);
+                    if (mw != null) mw.congested();
+                }
+            } else {
+                channel.writeAndFlush(bsm);
+            }
             return true;
         }
         return false;
@@ -291,16 +363,9 @@ public class RPCService{
     public void disconnectNode(short nodeId) {
         synchronized (connections) {
             Short n = Short.valueOf(nodeId);
-            MessageWindow mw = messageWindows.get(n);
+            MessageWindow mw = messageWindows.remove(n);
             if (mw != null) {
-                mw.lock.lock();
-                mw.disconnected = true;
-                try {
-                    mw.full.signalAll();
-                    messageWindows.remove(n);
-                } finally {
-                    mw.lock.unlock();
-                }
+                mw.disconnect();
             }
 
             NodeConnection nc = connections.get(nodeId);
@@ -362,15 +427,7 @@ public class RPCService{
         MessageWindow mw = messageWindows.get(nodeId);
         if (mw == null) return;
 
-        int pending = mw.pending.decrementAndGet();
-        if (pending < MAX_PENDING_MESSAGES) {
-            mw.lock.lock();
-            try {
-                mw.full.signalAll();
-            } finally {
-                mw.lock.unlock();
-            }
-        }
+        mw.release();
     }
 
     // *************
@@ -389,7 +446,11 @@ public class RPCService{
         Short n = Short.valueOf(nodeId);
         MessageWindow mw = messageWindows.get(n);
         if (mw == null) {
-            mw = new MessageWindow();
+            mw = new MessageWindow(pipelined ? 
+                    MIN_PENDING_MESSAGES : MAX_PENDING_MESSAGES,
+                    MAX_PENDING_MESSAGES,
+                    pipelined ? 
+                    MAX_ADAPTIVE_PENDING_MESSAGES : MAX_PENDING_MESSAGES);
             MessageWindow old = messageWindows.putIfAbsent(n, mw);
             if (old != null) mw = old;
         }
@@ -411,31 +472,9 @@ public class RPCService{
             throws InterruptedException {
         if (!windowedTypes.contains(type)) return true;
 
-        long start = System.nanoTime();
-        
-        // note that this can allow slightly more than the maximum number
-        // of messages.  This is fine.
         MessageWindow mw = getMW(nodeId);
-        if (!mw.disconnected && 
-            mw.pending.get() >= MAX_PENDING_MESSAGES) {
-            mw.lock.lock();
-            try {
-                while (!mw.disconnected && 
-                       mw.pending.get() >= MAX_PENDING_MESSAGES) {
-                    long now = System.nanoTime();
-                    if (maxWait > 0 && 
-                        (now - start) > maxWait * 1000) return false;
-                    mw.full.awaitNanos(now - start);
-                }
-            } finally {
-                mw.lock.unlock();
-            }
-        }
-        mw = getMW(nodeId);
-        if (mw != null)
-            mw.pending.getAndIncrement();
-        
-        return true;
+        if (mw == null) return true;
+        return mw.acquire(maxWait);
     }
     
     /**
@@ -520,6 +559,7 @@ public class RPCService{
                 connections.put(nodeId, c = new NodeConnection());
             }
             c.nodeChannel = channel;
+            c.writer = pipelined ? new CoalescingWriter(channel) : null;
             c.state = NodeConnectionState.CONNECTED;
             
             /**
@@ -649,6 +689,7 @@ public class RPCService{
         volatile NodeConnectionState state = NodeConnectionState.NONE;        
         protected ChannelFuture pendingFuture;
         protected Channel nodeChannel;
+        protected CoalescingWriter writer;
         
         protected void nuke() {
             state = NodeConnectionState.NONE;
@@ -656,11 +697,18 @@ public class RPCService{
             if (nodeChannel != null) nodeChannel.close();
             pendingFuture = null;
             nodeChannel = null;
+            writer = null;
         }
     }
     
     /**
      * Maintain state for the pending message window for a given message type
+     *
+     * The window starts at an initial limit and stays there unless the
+     * bounds allow it to move.  Each full window of messages acknowledged
+     * without the connection backing up grows the limit by a quarter, and
+     * a backed-up connection halves it, at most once per half window of
+     * acknowledgements so one burst doesn't collapse it.
      * @author readams
      */
     protected static class MessageWindow {
@@ -668,6 +716,105 @@ public class RPCService{
         volatile boolean disconnected = false;
         Lock lock = new ReentrantLock();
         Condition full = lock.newCondition();
+
+        final int minLimit;
+        final int maxLimit;
+        volatile int limit;
+        /* writers waiting on full, so acks can skip the lock otherwise */
+        volatile int waiters;
+        /* acknowledgements since the limit last changed */
+        final AtomicInteger acked = new AtomicInteger();
+
+        MessageWindow(int minLimit, int initialLimit, int maxLimit) {
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        }
+
+        int getLimit() {
+            return limit;
+        }
+
+        /**
+         * Wait for a slot in the window and take it
+         * @param maxWait the maximum time to wait in milliseconds, or 0
+         * to wait until a slot is free or the node disconnects
+         * @return <code>false</code> if the wait timed out
+         * @throws InterruptedException
+         */
+        boolean acquire(long maxWait) throws InterruptedException {
+            // note that this can allow slightly more than the maximum 
+            // number of messages.  This is fine.
+            if (!disconnected && pending.get() >= limit) {
+                long deadline = System.nanoTime() + 
+                        TimeUnit.MILLISECONDS.toNanos(maxWait);
+                lock.lock();
+                waiters += 1;
+                try {
+                    while (!disconnected && pending.get() >= limit) {
+                        long wait = TimeUnit.MILLISECONDS.toNanos(WINDOW_WAIT_MS);
+                        if (maxWait > 0) {
+                            long left = deadline - System.nanoTime();
+                            if (left <= 0) return false;
+                            wait = Math.min(wait, left);
+                        }
+                        full.awaitNanos(wait);
+                    }
+                } finally {
+                    waiters -= 1;
+                    lock.unlock();
+                }
+            }
+            pending.getAndIncrement();
+            return true;
+        }
+
+        /**
+         * Return a slot to the window when its message is acknowledged
+         */
+        void release() {
+            int p = pending.decrementAndGet();
+            if (minLimit < maxLimit && acked.incrementAndGet() >= limit) {
+                synchronized (this) {
+                    if (acked.get() >= limit) {
+                        limit = Math.min(maxLimit, limit + Math.max(1, limit / 4));
+                        acked.set(0);
+                    }
+                }
+            }
+            if (p < limit && waiters > 0) {
+                lock.lock();
+                try {
+                    full.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Note that the connection is not keeping up with the writes
+         */
+        void congested() {
+            if (minLimit < maxLimit && acked.get() >= limit / 2) {
+                synchronized (this) {
+                    if (acked.get() >= limit / 2) {
+                        limit = Math.max(minLimit, limit / 2);
+                        acked.set(0);
+                    }
+                }
+            }
+        }
+
+        void disconnect() {
+            lock.lock();
+            disconnected = true;
+            try {
+                full.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
     }
     
     /**
@@ -211,6 +211,9 @@ public class InMemoryStorageEngine<K, V> implements IStorageEngine<K, V> {
     public List<Versioned<V>> remove(K key) {
         while (true) {
             List<Versioned<V>> items = map.get(key);
+            if (items == null) {
+                return null;
+            }
             synchronized (items) {
                 if (map.remove(key, items))
                     return items;                
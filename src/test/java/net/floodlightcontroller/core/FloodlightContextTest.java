@@ -0,0 +1,44 @@
+package net.floodlightcontroller.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class FloodlightContextTest {
+    private static final FloodlightContextStore<String> store =
+            new FloodlightContextStore<String>();
+
+    @Test
+    public void testSlotsAndNames() {
+        int slot = FloodlightContext.registerKey("test.a");
+        assertEquals(slot, FloodlightContext.registerKey("test.a"));
+
+        FloodlightContext cntx = new FloodlightContext();
+        store.put(cntx, slot, "a");
+        assertEquals("a", store.get(cntx, "test.a"));
+        store.put(cntx, "test.b", "b");
+        assertEquals("b", store.get(cntx, FloodlightContext.registerKey("test.b")));
+        assertNull(store.get(cntx, "test.unknown"));
+        assertEquals("a", cntx.getStorage().get("test.a"));
+        assertEquals(2, cntx.getStorage().size());
+
+        store.remove(cntx, "test.a");
+        assertNull(store.get(cntx, slot));
+    }
+
+    @Test
+    public void testClearAndGrow() {
+        FloodlightContext cntx = new FloodlightContext();
+        int slot = 0;
+        for (int i = 0; i < 40; i++) {
+            slot = FloodlightContext.registerKey("test.grow." + i);
+            store.put(cntx, slot, "v" + i);
+        }
+        assertEquals("v39", store.get(cntx, slot));
+
+        cntx.clear();
+        assertNull(store.get(cntx, slot));
+        assertEquals(0, cntx.getStorage().size());
+    }
+}
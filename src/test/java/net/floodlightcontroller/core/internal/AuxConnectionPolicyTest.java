@@ -0,0 +1,96 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import net.floodlightcontroller.core.IOFConnectionBackend;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.OFAuxId;
+import org.projectfloodlight.openflow.types.OFGroup;
+import org.projectfloodlight.openflow.types.OFPort;
+
+public class AuxConnectionPolicyTest {
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+    private IOFConnectionBackend[] aux;
+
+    private IOFConnectionBackend connection(int auxId, boolean connected) {
+        IOFConnectionBackend c = createNiceMock(IOFConnectionBackend.class);
+        expect(c.getAuxId()).andReturn(OFAuxId.of(auxId)).anyTimes();
+        expect(c.isConnected()).andReturn(connected).anyTimes();
+        replay(c);
+        return c;
+    }
+
+    private OFMessage flowAdd(int inPort) {
+        return factory.buildFlowAdd()
+                .setMatch(factory.buildMatch().setExact(MatchField.IN_PORT, OFPort.of(inPort)).build())
+                .build();
+    }
+
+    private OFMessage packetOut(OFPort out) {
+        return factory.buildPacketOut()
+                .setActions(Collections.singletonList((OFAction) factory.actions().output(out, 0)))
+                .setData(new byte[64])
+                .build();
+    }
+
+    @Before
+    public void setUp() {
+        aux = AuxConnectionPolicy.auxConnections(Arrays.asList(
+                connection(2, true), connection(0, true), connection(1, true)));
+    }
+
+    @Test
+    public void testAuxConnections() {
+        assertEquals(2, aux.length);
+        assertEquals(OFAuxId.of(1), aux[0].getAuxId());
+        assertEquals(OFAuxId.of(2), aux[1].getAuxId());
+    }
+
+    @Test
+    public void testSameFlowSameConnection() {
+        IOFConnectionBackend c = AuxConnectionPolicy.select(
+                Collections.singletonList(packetOut(OFPort.of(1))), aux);
+        assertNotNull(c);
+        assertSame(c, AuxConnectionPolicy.select(
+                Collections.singletonList(packetOut(OFPort.of(1))), aux));
+        assertSame(c, AuxConnectionPolicy.select(
+                Arrays.asList(packetOut(OFPort.of(1)), packetOut(OFPort.of(2))), aux));
+    }
+
+    @Test
+    public void testOrderedMessagesStayOnMain() {
+        assertNull(AuxConnectionPolicy.select(Collections.singletonList(flowAdd(1)), aux));
+        assertNull(AuxConnectionPolicy.select(Arrays.asList(packetOut(OFPort.of(1)),
+                (OFMessage) factory.buildBarrierRequest().build()), aux));
+        assertNull(AuxConnectionPolicy.select(Arrays.asList(packetOut(OFPort.of(1)),
+                flowAdd(1)), aux));
+        assertNull(AuxConnectionPolicy.select(
+                Collections.singletonList(packetOut(OFPort.TABLE)), aux));
+        assertNull(AuxConnectionPolicy.select(Collections.singletonList(
+                (OFMessage) factory.buildPacketOut()
+                .setActions(Collections.singletonList((OFAction) factory.actions().group(OFGroup.of(1))))
+                .setData(new byte[64])
+                .build()), aux));
+        assertNull(AuxConnectionPolicy.select(
+                Collections.singletonList(packetOut(OFPort.of(1))), new IOFConnectionBackend[0]));
+        assertNull(AuxConnectionPolicy.select(Collections.singletonList(packetOut(OFPort.of(1))),
+                new IOFConnectionBackend[] { connection(1, false) }));
+    }
+}
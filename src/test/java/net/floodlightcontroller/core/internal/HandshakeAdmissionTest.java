@@ -0,0 +1,89 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+
+import net.floodlightcontroller.debugcounter.MockDebugCounterService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+public class HandshakeAdmissionTest {
+    private HandshakeAdmission admission;
+
+    @Before
+    public void setUp() {
+        admission = new HandshakeAdmission(2,
+                new SwitchManagerCounters(new MockDebugCounterService()));
+    }
+
+    private OFSwitchHandshakeHandler handler(long dpid) {
+        OFSwitchHandshakeHandler h = createMock(OFSwitchHandshakeHandler.class);
+        expect(h.getDpid()).andReturn(DatapathId.of(dpid)).anyTimes();
+        return h;
+    }
+
+    @Test
+    public void testQueueIsFifo() {
+        OFSwitchHandshakeHandler h1 = handler(1);
+        OFSwitchHandshakeHandler h2 = handler(2);
+        OFSwitchHandshakeHandler h3 = handler(3);
+        OFSwitchHandshakeHandler h4 = handler(4);
+        h1.beginHandshake();
+        expectLastCall().once();
+        h2.beginHandshake();
+        expectLastCall().once();
+        replay(h1, h2, h3, h4);
+
+        admission.admit(h1);
+        admission.admit(h2);
+        admission.admit(h3);
+        admission.admit(h4);
+        verify(h1, h2, h3, h4);
+        assertEquals(2, admission.getRunning());
+        assertEquals(2, admission.getWaiting());
+
+        /* the first waiting handshake takes the free slot */
+        reset(h3);
+        expect(h3.getDpid()).andReturn(DatapathId.of(3)).anyTimes();
+        h3.beginHandshakeOnConnectionThread();
+        expectLastCall().once();
+        replay(h3);
+        admission.release(h1);
+        verify(h3, h4);
+        assertEquals(2, admission.getRunning());
+        assertEquals(1, admission.getWaiting());
+
+        /* a waiting handshake that goes away just leaves the queue */
+        admission.release(h4);
+        assertEquals(0, admission.getWaiting());
+        admission.release(h2);
+        admission.release(h2);
+        assertEquals(1, admission.getRunning());
+    }
+
+    @Test
+    public void testUnlimited() {
+        admission = new HandshakeAdmission(0,
+                new SwitchManagerCounters(new MockDebugCounterService()));
+        OFSwitchHandshakeHandler h1 = handler(1);
+        OFSwitchHandshakeHandler h2 = handler(2);
+        OFSwitchHandshakeHandler h3 = handler(3);
+        h1.beginHandshake();
+        h2.beginHandshake();
+        h3.beginHandshake();
+        replay(h1, h2, h3);
+
+        admission.admit(h1);
+        admission.admit(h2);
+        admission.admit(h3);
+        verify(h1, h2, h3);
+        assertEquals(0, admission.getWaiting());
+    }
+}
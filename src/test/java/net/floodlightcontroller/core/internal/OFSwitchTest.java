@@ -24,6 +24,7 @@ import static org.junit.Assert.fail;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.easymock.EasyMock;
@@ -45,8 +46,12 @@ import org.projectfloodlight.openflow.protocol.OFFactory;
 import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFNiciraControllerRole;
 import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFAuxId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
 
 public class OFSwitchTest {
 	protected OFSwitch sw;
@@ -71,6 +76,51 @@ public class OFSwitchTest {
 		assertEquals(OFControllerRole.ROLE_SLAVE, sw.getControllerRole());
 	}
 
+	@Test
+	public void testFlowModsStayOnMainWhenSpreading() {
+		MockOFConnection main = new MockOFConnection(DatapathId.of(1), OFAuxId.MAIN);
+		MockOFConnection aux1 = new MockOFConnection(DatapathId.of(1), OFAuxId.of(1));
+		MockOFConnection aux2 = new MockOFConnection(DatapathId.of(1), OFAuxId.of(2));
+		aux1.setConnected(true);
+		aux2.setConnected(true);
+		OFSwitch s = new OFSwitch(main, factory,
+				EasyMock.createNiceMock(IOFSwitchManager.class), DatapathId.of(1));
+		s.registerConnection(aux1);
+		s.registerConnection(aux2);
+		s.setControllerRole(OFControllerRole.ROLE_MASTER);
+
+		boolean spread = OFSwitchManager.spreadOnAuxConnections;
+		OFSwitchManager.spreadOnAuxConnections = true;
+		try {
+			/* a delete-all, as on connect, followed by the default flows */
+			List<OFMessage> sent = new ArrayList<OFMessage>();
+			sent.add(factory.buildFlowDelete().setTableId(TableId.ALL).build());
+			for (int i = 1; i <= 8; i++) {
+				sent.add(factory.buildFlowAdd()
+						.setMatch(factory.buildMatch().setExact(MatchField.IN_PORT, OFPort.of(i)).build())
+						.build());
+			}
+			sent.add(factory.buildBarrierRequest().build());
+			for (OFMessage m : sent) {
+				assertTrue(s.write(m));
+			}
+			assertEquals(sent, main.getMessages());
+			assertTrue(aux1.getMessages().isEmpty());
+			assertTrue(aux2.getMessages().isEmpty());
+
+			/* packet-outs that don't use the table or groups are spread */
+			main.clearMessages();
+			assertTrue(s.write(factory.buildPacketOut()
+					.setActions(Collections.singletonList((OFAction) factory.actions().output(OFPort.of(1), 0)))
+					.setData(new byte[64])
+					.build()));
+			assertTrue(main.getMessages().isEmpty());
+			assertEquals(1, aux1.getMessages().size() + aux2.getMessages().size());
+		} finally {
+			OFSwitchManager.spreadOnAuxConnections = spread;
+		}
+	}
+
 	@Test
 	public void testSubHandshake() {
 		OFFactory factory = OFFactories.getFactory(OFVersion.OF_10);
@@ -0,0 +1,281 @@
+package net.floodlightcontroller.core.module;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.floodlightcontroller.core.IListener;
+import net.floodlightcontroller.core.util.ListenerDispatcher;
+
+/**
+ * Brings up small test modules, which are registered as modules in the test
+ * resources, and checks the order of their init and startUp calls.
+ */
+public class FloodlightModuleLoaderTest {
+    private static final List<String> events =
+            Collections.synchronizedList(new ArrayList<String>());
+
+    public interface IFirstService extends IFloodlightService {}
+    public interface ISecondService extends IFloodlightService {}
+    public interface ICycleAService extends IFloodlightService {}
+    public interface ICycleBService extends IFloodlightService {}
+    public interface IRegistryService extends IFloodlightService {
+        public void addListener(IListener<String> listener);
+    }
+
+    private static final int REGISTRANTS = 3;
+    private static final int LISTENERS_PER_REGISTRANT = 100;
+    private static final ListenerDispatcher<String, IListener<String>> dispatcher =
+            new ListenerDispatcher<String, IListener<String>>();
+    private static CyclicBarrier registering;
+
+    /** Records its init and startUp, which are slow for modules others depend on */
+    private static abstract class TestModule implements IFloodlightModule {
+        private final Class<? extends IFloodlightService> service;
+        private final Class<? extends IFloodlightService> dependency;
+        private final String name;
+
+        TestModule(String name, Class<? extends IFloodlightService> service,
+                Class<? extends IFloodlightService> dependency) {
+            this.name = name;
+            this.service = service;
+            this.dependency = dependency;
+        }
+
+        @Override
+        public Collection<Class<? extends IFloodlightService>> getModuleServices() {
+            if (service == null) {
+                return null;
+            }
+            Collection<Class<? extends IFloodlightService>> l =
+                    new ArrayList<Class<? extends IFloodlightService>>();
+            l.add(service);
+            return l;
+        }
+
+        @Override
+        public Map<Class<? extends IFloodlightService>, IFloodlightService> getServiceImpls() {
+            if (service == null) {
+                return null;
+            }
+            Map<Class<? extends IFloodlightService>, IFloodlightService> m =
+                    new HashMap<Class<? extends IFloodlightService>, IFloodlightService>();
+            m.put(service, (IFloodlightService) this);
+            return m;
+        }
+
+        @Override
+        public Collection<Class<? extends IFloodlightService>> getModuleDependencies() {
+            if (dependency == null) {
+                return null;
+            }
+            Collection<Class<? extends IFloodlightService>> l =
+                    new ArrayList<Class<? extends IFloodlightService>>();
+            l.add(dependency);
+            return l;
+        }
+
+        private void record(String phase) throws FloodlightModuleException {
+            if (dependency == null) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new FloodlightModuleException(e);
+                }
+            }
+            events.add(name + "." + phase);
+        }
+
+        @Override
+        public void init(FloodlightModuleContext context) throws FloodlightModuleException {
+            record("init");
+        }
+
+        @Override
+        public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
+            record("startUp");
+        }
+    }
+
+    public static class FirstModule extends TestModule implements IFirstService {
+        public FirstModule() {
+            super("first", IFirstService.class, null);
+        }
+    }
+
+    public static class SecondModule extends TestModule implements ISecondService {
+        public SecondModule() {
+            super("second", ISecondService.class, IFirstService.class);
+        }
+    }
+
+    public static class ThirdModule extends TestModule {
+        public ThirdModule() {
+            super("third", null, IFirstService.class);
+        }
+    }
+
+    public static class CycleAModule extends TestModule implements ICycleAService {
+        public CycleAModule() {
+            super("cycleA", ICycleAService.class, ICycleBService.class);
+        }
+    }
+
+    public static class CycleBModule extends TestModule implements ICycleBService {
+        public CycleBModule() {
+            super("cycleB", ICycleBService.class, ICycleAService.class);
+        }
+    }
+
+    public static class RegistryModule extends TestModule implements IRegistryService {
+        public RegistryModule() {
+            super("registry", IRegistryService.class, null);
+        }
+
+        @Override
+        public void addListener(IListener<String> listener) {
+            dispatcher.addListener("test", listener);
+        }
+    }
+
+    /** Registers its listeners at the same moment as the other registrants */
+    private static abstract class RegistrantModule extends TestModule {
+        private final String name;
+
+        RegistrantModule(String name) {
+            super(name, null, IRegistryService.class);
+            this.name = name;
+        }
+
+        @Override
+        public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
+            IRegistryService registry = context.getServiceImpl(IRegistryService.class);
+            try {
+                registering.await(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new FloodlightModuleException(name + " did not start up in parallel", e);
+            }
+            for (int i = 0; i < LISTENERS_PER_REGISTRANT; i++) {
+                final String listenerName = name + "." + i;
+                registry.addListener(new IListener<String>() {
+                    @Override
+                    public String getName() {
+                        return listenerName;
+                    }
+
+                    @Override
+                    public boolean isCallbackOrderingPrereq(String type, String name) {
+                        return false;
+                    }
+
+                    @Override
+                    public boolean isCallbackOrderingPostreq(String type, String name) {
+                        return false;
+                    }
+                });
+            }
+            super.startUp(context);
+        }
+    }
+
+    public static class RegistrantAModule extends RegistrantModule {
+        public RegistrantAModule() {
+            super("registrantA");
+        }
+    }
+
+    public static class RegistrantBModule extends RegistrantModule {
+        public RegistrantBModule() {
+            super("registrantB");
+        }
+    }
+
+    public static class RegistrantCModule extends RegistrantModule {
+        public RegistrantCModule() {
+            super("registrantC");
+        }
+    }
+
+    private static void assertBefore(String first, String then) {
+        int i = events.indexOf(first);
+        int j = events.indexOf(then);
+        assertTrue(first + " missing in " + events, i >= 0);
+        assertTrue(then + " missing in " + events, j >= 0);
+        assertTrue(first + " not before " + then + " in " + events, i < j);
+    }
+
+    @Before
+    public void setUp() {
+        events.clear();
+        dispatcher.clearListeners();
+        registering = new CyclicBarrier(REGISTRANTS);
+    }
+
+    @Test
+    public void testParallelDependencyOrder() throws Exception {
+        FloodlightModuleLoader loader = new FloodlightModuleLoader();
+        loader.setStartupThreads(4);
+        loader.loadModulesFromList(Arrays.asList(
+                SecondModule.class.getCanonicalName(),
+                ThirdModule.class.getCanonicalName()), new Properties());
+
+        assertEquals(6, events.size());
+        // modules run after the modules they depend on, although there are threads to spare
+        assertBefore("first.init", "second.init");
+        assertBefore("first.init", "third.init");
+        assertBefore("first.startUp", "second.startUp");
+        assertBefore("first.startUp", "third.startUp");
+        // and every module is initialized before any is started
+        assertBefore("second.init", "first.startUp");
+        assertBefore("third.init", "first.startUp");
+    }
+
+    @Test
+    public void testParallelDependencyCycle() throws Exception {
+        FloodlightModuleLoader loader = new FloodlightModuleLoader();
+        loader.setStartupThreads(4);
+        try {
+            loader.loadModulesFromList(Collections.singletonList(
+                    CycleAModule.class.getCanonicalName()), new Properties());
+            fail("Expected a FloodlightModuleException for the dependency cycle");
+        } catch (FloodlightModuleException e) {
+            // expected
+        }
+        // no module was left half brought up
+        assertTrue(events.isEmpty());
+
+        // one by one, the modules are brought up in the order they were found
+        loader = new FloodlightModuleLoader();
+        loader.setStartupThreads(1);
+        loader.loadModulesFromList(Collections.singletonList(
+                CycleAModule.class.getCanonicalName()), new Properties());
+        assertEquals(Arrays.asList("cycleB.init", "cycleA.init", "cycleB.startUp", "cycleA.startUp"),
+                events);
+    }
+
+    @Test
+    public void testParallelRegistration() throws Exception {
+        FloodlightModuleLoader loader = new FloodlightModuleLoader();
+        loader.setStartupThreads(REGISTRANTS + 1);
+        loader.loadModulesFromList(Arrays.asList(
+                RegistrantAModule.class.getCanonicalName(),
+                RegistrantBModule.class.getCanonicalName(),
+                RegistrantCModule.class.getCanonicalName()), new Properties());
+
+        // the registrants added their listeners from several threads at once, and none was lost
+        assertEquals(REGISTRANTS * LISTENERS_PER_REGISTRANT,
+                dispatcher.getOrderedListeners().size());
+    }
+}
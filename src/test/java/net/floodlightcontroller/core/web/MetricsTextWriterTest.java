@@ -0,0 +1,43 @@
+package net.floodlightcontroller.core.web;
+
+import static org.junit.Assert.assertEquals;
+
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+
+import org.junit.Test;
+
+public class MetricsTextWriterTest {
+    @Test
+    public void testSamples() {
+        StringBuilder sb = new StringBuilder();
+        new MetricsTextWriter(sb)
+            .family("m", MetricsTextWriter.GAUGE, "A metric")
+            .sample("m", 3)
+            .sample("m", "l", "a\"b\\c\nd", 1.5)
+            .sample("m", "l1", "x", "l2", "y", 7)
+            .sample("m", Double.POSITIVE_INFINITY);
+        assertEquals("# HELP m A metric\n"
+                + "# TYPE m gauge\n"
+                + "m 3\n"
+                + "m{l=\"a\\\"b\\\\c\\nd\"} 1.5\n"
+                + "m{l1=\"x\",l2=\"y\"} 7\n"
+                + "m +Inf\n", sb.toString());
+    }
+
+    @Test
+    public void testDebugCounters() {
+        DebugCounterServiceImpl dc = new DebugCounterServiceImpl();
+        dc.registerModule("mod");
+        dc.registerCounter("mod", "sw", "switch");
+        IDebugCounter c = dc.registerCounter("mod", "sw/drops", "drops");
+        c.add(42);
+
+        StringBuilder sb = new StringBuilder();
+        MetricsResource.writeDebugCounters(new MetricsTextWriter(sb), dc);
+        assertEquals("# HELP floodlight_debug_counter Debug counters by module and counter hierarchy\n"
+                + "# TYPE floodlight_debug_counter counter\n"
+                + "floodlight_debug_counter{module=\"mod\",counter=\"sw\"} 0\n"
+                + "floodlight_debug_counter{module=\"mod\",counter=\"sw/drops\"} 42\n", sb.toString());
+    }
+}
@@ -5,6 +5,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
 import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
@@ -78,4 +79,30 @@ public class DebugCounterImplTest {
         assertEquals(ImmutableSet.of(MetaData.WARN, MetaData.DROP),
                      c2.getMetaData());
     }
+
+    @Test
+    public void testSource() {
+        final AtomicLong source = new AtomicLong(10);
+        DebugCounterImpl c =
+                new DebugCounterImpl("foo", "bar", "The foo bar counter",
+                                     source::get,
+                                     Collections.<MetaData>emptyList());
+        // counts from the source value at registration
+        assertEquals(0L, c.getCounterValue());
+        source.addAndGet(5);
+        assertEquals(5L, c.getCounterValue());
+        c.increment();
+        assertEquals(6L, c.getCounterValue());
+
+        c.reset();
+        assertEquals(0L, c.getCounterValue());
+        source.incrementAndGet();
+        assertEquals(1L, c.getCounterValue());
+
+        AtomicLong other = new AtomicLong(100);
+        c.setSource(other::get);
+        assertEquals(0L, c.getCounterValue());
+        other.incrementAndGet();
+        assertEquals(1L, c.getCounterValue());
+    }
 }
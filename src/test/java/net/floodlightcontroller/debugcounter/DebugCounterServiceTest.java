@@ -532,4 +532,28 @@ public class DebugCounterServiceTest {
         verifyCounters(expectedCounters, counterService.getAllCounterValues());
     }
 
+    @Test
+    public void testIndexFollowsTreeChanges() {
+        counterService.registerModule("moduleA");
+        IDebugCounter sw = counterService.registerCounter("moduleA", "sw", "switch");
+        IDebugCounter drops = counterService.registerCounter("moduleA", "sw/drops", "drops");
+        drops.add(5);
+        sw.increment();
+        assertEquals(2, counterService.getCounterHierarchy("moduleA", "sw").size());
+        // trailing separators name the same node
+        assertEquals(2, counterService.getCounterHierarchy("moduleA", "sw/").size());
+
+        assertTrue(counterService.resetCounterHierarchy("moduleA", "sw/drops"));
+        assertEquals(0, drops.getCounterValue());
+        assertEquals(1, sw.getCounterValue());
+
+        assertTrue(counterService.removeCounterHierarchy("moduleA", "sw/drops"));
+        verifyCountersEmpty(counterService.getCounterHierarchy("moduleA", "sw/drops"));
+        assertFalse(counterService.resetCounterHierarchy("moduleA", "sw/drops"));
+        assertEquals(1, counterService.getModuleCounterValues("moduleA").size());
+
+        counterService.registerCounter("moduleA", "sw/drops", "drops");
+        assertEquals(2, counterService.getAllCounterValues().size());
+        assertFalse(counterService.resetAllModuleCounters("moduleB"));
+    }
 }
@@ -0,0 +1,74 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.devicemanager.internal;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class DeviceExpiryIndexTest extends TestCase {
+
+    @Test
+    public void testPollOnlyDue() {
+        DeviceExpiryIndex idx = new DeviceExpiryIndex(1000);
+        idx.schedule(1L, 1500);
+        idx.schedule(2L, 2500);
+        idx.schedule(3L, 10000);
+        assertEquals(3, idx.size());
+
+        assertTrue(idx.pollDue(999).isEmpty());
+        assertEquals(Arrays.asList(1L), idx.pollDue(1000));
+        assertEquals(new HashSet<Long>(Arrays.asList(2L)),
+                     new HashSet<Long>(idx.pollDue(5000)));
+        assertEquals(1, idx.size());
+        assertEquals(Arrays.asList(3L), idx.pollDue(Long.MAX_VALUE));
+        assertEquals(0, idx.size());
+    }
+
+    @Test
+    public void testScheduleKeepsEarliest() {
+        DeviceExpiryIndex idx = new DeviceExpiryIndex(1000);
+        idx.schedule(1L, 5000);
+        // later time must not move the device
+        idx.schedule(1L, 9000);
+        assertEquals(Arrays.asList(1L), idx.pollDue(5000));
+
+        idx.schedule(2L, 9000);
+        // earlier time moves the device
+        idx.schedule(2L, 3000);
+        assertEquals(1, idx.size());
+        List<Long> due = idx.pollDue(3000);
+        assertEquals(Arrays.asList(2L), due);
+        assertTrue(idx.pollDue(Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void testRemove() {
+        DeviceExpiryIndex idx = new DeviceExpiryIndex(1000);
+        idx.schedule(1L, 1000);
+        idx.schedule(2L, 1000);
+        idx.remove(1L);
+        idx.remove(42L);
+        assertEquals(Arrays.asList(2L), idx.pollDue(1000));
+
+        // a polled device can be scheduled again
+        idx.schedule(2L, 4000);
+        assertEquals(Arrays.asList(2L), idx.pollDue(4000));
+    }
+}
@@ -44,6 +44,7 @@ import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.HARole;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.floodlightcontroller.core.types.NodePortTuple;
 import net.floodlightcontroller.core.test.MockThreadPoolService;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugcounter.MockDebugCounterService;
@@ -60,6 +61,7 @@ import net.floodlightcontroller.devicemanager.internal.DeviceSyncRepresentation.
 import net.floodlightcontroller.devicemanager.test.MockEntityClassifier;
 import net.floodlightcontroller.devicemanager.test.MockEntityClassifierMac;
 import net.floodlightcontroller.devicemanager.test.MockFlexEntityClassifier;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
 import net.floodlightcontroller.packet.ARP;
 import net.floodlightcontroller.packet.Data;
 import net.floodlightcontroller.packet.Ethernet;
@@ -71,12 +73,14 @@ import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.restserver.RestApiServer;
 import net.floodlightcontroller.routing.IGatewayService;
 import net.floodlightcontroller.routing.IRoutingService;
+import net.floodlightcontroller.routing.PathId;
 import net.floodlightcontroller.routing.VirtualGatewayInstance;
 import net.floodlightcontroller.storage.IStorageSourceService;
 import net.floodlightcontroller.storage.memory.MemoryStorageSource;
 import net.floodlightcontroller.test.FloodlightTestCase;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.topology.ITopologyService;
+import net.floodlightcontroller.topology.TopologyChange;
 
 import org.easymock.EasyMock;
 import org.junit.Before;
@@ -2044,6 +2048,47 @@ public class DeviceManagerImplTest extends FloodlightTestCase {
 				d.getAttachmentPoints(true));
 	}
 
+	private ITopologyService mockAttachmentPointTopology(boolean isAttachmentPointPort) {
+		ITopologyService mockTopology = createMock(ITopologyService.class);
+		expect(mockTopology.isAttachmentPointPort(DatapathId.of(anyLong()),
+				OFPort.of(anyShort()))).andReturn(isAttachmentPointPort).anyTimes();
+		expect(mockTopology.isBroadcastPort(DatapathId.of(anyLong()),
+				OFPort.of(anyShort()))).andReturn(false).anyTimes();
+		expect(mockTopology.isInSameArchipelago(DatapathId.of(anyLong()), DatapathId.of(anyLong())))
+		.andReturn(false).anyTimes();
+		expect(mockTopology.getClusterId(DatapathId.of(anyLong()))).
+		andReturn(DatapathId.of(1L)).anyTimes();
+		expect(mockTopology.isConsistent(anyObject(DatapathId.class), anyObject(OFPort.class),
+				anyObject(DatapathId.class), anyObject(OFPort.class))).andReturn(false).anyTimes();
+		expect(mockTopology.getLastUpdateTime()).andReturn(new Date()).anyTimes();
+		replay(mockTopology);
+		return mockTopology;
+	}
+
+	@Test
+	public void testTopologyChangeAttachmentPoints() throws Exception {
+		deviceManager.topology = mockAttachmentPointTopology(true);
+		Entity entity = new Entity(MacAddress.of(1L), VlanVid.ZERO, IPv4Address.NONE, IPv6Address.NONE,
+				DatapathId.of(1L), OFPort.of(1), new Date());
+		IDevice d = deviceManager.learnDeviceByEntity(entity);
+		SwitchPort[] ap = new SwitchPort[] { new SwitchPort(DatapathId.of(1L), OFPort.of(1)) };
+		assertArrayEquals(ap, d.getAttachmentPoints());
+
+		/* the port is now a link port, but the topology has not said so */
+		deviceManager.topology = mockAttachmentPointTopology(false);
+		Set<DatapathId> noSwitches = Collections.emptySet();
+		Set<NodePortTuple> noPorts = Collections.emptySet();
+		TopologyChange pathsOnly = new TopologyChange(1, 2, noSwitches, noSwitches, noPorts, noPorts,
+				Collections.singleton(new PathId(DatapathId.of(1L), DatapathId.of(2L))));
+		deviceManager.topologyChanged(Collections.<LDUpdate>emptyList(), pathsOnly);
+		assertArrayEquals(ap, deviceManager.getDevice(d.getDeviceKey()).getAttachmentPoints());
+
+		/* a cluster changed, so the attachment point is revisited */
+		TopologyChange clusters = new TopologyChange(2, 3, Collections.singleton(DatapathId.of(1L)),
+				noSwitches, noPorts, noPorts, Collections.<PathId>emptySet());
+		deviceManager.topologyChanged(Collections.<LDUpdate>emptyList(), clusters);
+		assertEquals(0, deviceManager.getDevice(d.getDeviceKey()).getAttachmentPoints().length);
+	}
 
 	@Test
 	public void testAttachmentPointFlappingTwoCluster() throws Exception {
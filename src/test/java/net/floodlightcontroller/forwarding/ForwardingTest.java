@@ -21,6 +21,7 @@ import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -127,6 +128,7 @@ public class ForwardingTest extends FloodlightTestCase {
 	protected int expected_wildcards;
 	protected Date currentDate;
 	private MockSyncService mockSyncService;
+	private FloodlightModuleContext fmc;
 	private OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
 
 
@@ -148,7 +150,7 @@ public class ForwardingTest extends FloodlightTestCase {
 		restApi = new RestApiServer();
 		DefaultEntityClassifier entityClassifier = new DefaultEntityClassifier();
 
-		FloodlightModuleContext fmc = new FloodlightModuleContext();
+		fmc = new FloodlightModuleContext();
 		fmc.addService(IFloodlightProviderService.class,
 				mockFloodlightProvider);
 		fmc.addService(IThreadPoolService.class, threadPool);
@@ -491,7 +493,7 @@ public class ForwardingTest extends FloodlightTestCase {
 		nptList.add(new NodePortTuple(DatapathId.of(2L), OFPort.of(3)));
 		path.setPath(nptList);
 		reset(routingEngine);
-		expect(routingEngine.getPath(DatapathId.of(1L), OFPort.of(1), DatapathId.of(2L), OFPort.of(3))).andReturn(path).atLeastOnce();
+		expect(routingEngine.getPath(eq(DatapathId.of(1L)), eq(OFPort.of(1)), eq(DatapathId.of(2L)), eq(OFPort.of(3)), anyInt())).andReturn(path).atLeastOnce();
 		
 		// Expected Flow-mods
 		Match match = packetIn.getMatch();
@@ -563,7 +565,7 @@ public class ForwardingTest extends FloodlightTestCase {
 		nptList.add(new NodePortTuple(DatapathId.of(2L), OFPort.of(3)));
 		route.setPath(nptList);
 		reset(routingEngine);
-		expect(routingEngine.getPath(DatapathId.of(1L), OFPort.of(1), DatapathId.of(2L), OFPort.of(3))).andReturn(route).atLeastOnce();
+		expect(routingEngine.getPath(eq(DatapathId.of(1L)), eq(OFPort.of(1)), eq(DatapathId.of(2L)), eq(OFPort.of(3)), anyInt())).andReturn(route).atLeastOnce();
 
 		// Expected Flow-mods
 		Match match = packetInIPv6.getMatch();
@@ -630,7 +632,7 @@ public class ForwardingTest extends FloodlightTestCase {
 		Path route = new  Path(DatapathId.of(1L), DatapathId.of(1L));
 		route.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(1)));
 		route.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(3)));
-		expect(routingEngine.getPath(DatapathId.of(1L), OFPort.of(1), DatapathId.of(1L), OFPort.of(3))).andReturn(route).atLeastOnce();
+		expect(routingEngine.getPath(eq(DatapathId.of(1L)), eq(OFPort.of(1)), eq(DatapathId.of(1L)), eq(OFPort.of(3)), anyInt())).andReturn(route).atLeastOnce();
 
 		// Expected Flow-mods
 		Match match = packetIn.getMatch();
@@ -664,7 +666,7 @@ public class ForwardingTest extends FloodlightTestCase {
 
 		// Reset mocks, trigger the packet in, and validate results
 		reset(routingEngine);
-		expect(routingEngine.getPath(DatapathId.of(1L), OFPort.of(1), DatapathId.of(1L), OFPort.of(3))).andReturn(route).atLeastOnce();
+		expect(routingEngine.getPath(eq(DatapathId.of(1L)), eq(OFPort.of(1)), eq(DatapathId.of(1L)), eq(OFPort.of(3)), anyInt())).andReturn(route).atLeastOnce();
 		expect(routingEngine.isL3RoutingEnabled()).andReturn(false).atLeastOnce();
 		replay(sw1, sw2, routingEngine, topology);
 		forwarding.receive(sw1, this.packetIn, cntx);
@@ -690,7 +692,7 @@ public class ForwardingTest extends FloodlightTestCase {
 		route.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(1)));
 		route.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(3)));
 		reset(routingEngine);
-		expect(routingEngine.getPath(DatapathId.of(1L), OFPort.of(1), DatapathId.of(1L), OFPort.of(3))).andReturn(route).atLeastOnce();
+		expect(routingEngine.getPath(eq(DatapathId.of(1L)), eq(OFPort.of(1)), eq(DatapathId.of(1L)), eq(OFPort.of(3)), anyInt())).andReturn(route).atLeastOnce();
 		
 		// Expected Flow-mods
 		Match match = packetInIPv6.getMatch();
@@ -750,7 +752,7 @@ public class ForwardingTest extends FloodlightTestCase {
 		Path route = new  Path(DatapathId.of(1L), DatapathId.of(1L));
 		route.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(1)));
 		route.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(3)));
-		expect(routingEngine.getPath(DatapathId.of(1L), OFPort.of(1), DatapathId.of(1L), OFPort.of(3))).andReturn(route).atLeastOnce();
+		expect(routingEngine.getPath(eq(DatapathId.of(1L)), eq(OFPort.of(1)), eq(DatapathId.of(1L)), eq(OFPort.of(3)), anyInt())).andReturn(route).atLeastOnce();
 
 		// Expected Flow-mods
 		Match match = packetIn.getMatch();
@@ -807,6 +809,7 @@ public class ForwardingTest extends FloodlightTestCase {
 
 		// Reset mocks, trigger the packet in, and validate results
 		reset(topology);
+		expect(topology.getSwitchFloodActions(eq(DatapathId.of(1L)), anyObject(OFPort.class))).andReturn(null).once();
 		expect(topology.getSwitchBroadcastPorts(DatapathId.of(1L))).andReturn(bcastPorts).once();
 		expect(topology.isAttachmentPointPort(DatapathId.of(anyLong()),
 				OFPort.of(anyShort())))
@@ -825,6 +828,35 @@ public class ForwardingTest extends FloodlightTestCase {
 		removeDeviceFromContext();
 	}
 
+	@Test
+	public void testForwardNoPathFloodActions() throws Exception {
+		learnDevices(DestDeviceToLearn.NONE);
+		reset(routingEngine);
+
+		Capture<OFMessage> wc1 = EasyMock.newCapture(CaptureType.ALL);
+
+		// The flood actions computed with the topology are used as they are
+		List<OFAction> floodActions = Collections.singletonList(
+				(OFAction) factory.actions().output(OFPort.of(10), Integer.MAX_VALUE));
+		reset(topology);
+		expect(topology.getSwitchFloodActions(DatapathId.of(1L), OFPort.of(1))).andReturn(floodActions).once();
+		expect(topology.isAttachmentPointPort(DatapathId.of(anyLong()),
+				OFPort.of(anyShort())))
+				.andReturn(true)
+				.anyTimes();
+		expect(sw1.hasAttribute(IOFSwitch.PROP_SUPPORTS_OFPP_FLOOD)).andReturn(true).anyTimes();
+		expect(sw1.write(capture(wc1))).andReturn(true).once();
+		expect(routingEngine.isL3RoutingEnabled()).andReturn(false).atLeastOnce();
+		replay(sw1, sw2, routingEngine, topology);
+		forwarding.receive(sw1, this.packetIn, cntx);
+		verify(sw1, sw2, routingEngine, topology);
+
+		assertTrue(wc1.hasCaptured());
+		assertEquals(OFMessageUtils.OFMessageIgnoreXid.of(wc1.getValue()), OFMessageUtils.OFMessageIgnoreXid.of(packetOutFlooded));
+
+		removeDeviceFromContext();
+	}
+
 	@Test
 	public void testForwardNoPathIPv6() throws Exception {
 		learnDevicesIPv6(DestDeviceToLearn.NONE);
@@ -841,6 +873,7 @@ public class ForwardingTest extends FloodlightTestCase {
 
 		// Reset mocks, trigger the packet in, and validate results
 		reset(topology);
+		expect(topology.getSwitchFloodActions(eq(DatapathId.of(1L)), anyObject(OFPort.class))).andReturn(null).once();
 		expect(topology.getSwitchBroadcastPorts(DatapathId.of(1L))).andReturn(bcastPorts).once();
 		expect(topology.isAttachmentPointPort(DatapathId.of(anyLong()),
 				OFPort.of(anyShort())))
@@ -875,7 +908,7 @@ public class ForwardingTest extends FloodlightTestCase {
 		path.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(1)));
 		path.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(3)));
 		reset(routingEngine);
-		expect(routingEngine.getPath(DatapathId.of(1L), OFPort.of(1), DatapathId.of(1L), OFPort.of(3))).andReturn(path).atLeastOnce();
+		expect(routingEngine.getPath(eq(DatapathId.of(1L)), eq(OFPort.of(1)), eq(DatapathId.of(1L)), eq(OFPort.of(3)), anyInt())).andReturn(path).atLeastOnce();
 		
 		// Expected Flow-mods
 		Match match = packetIn.getMatch();
@@ -932,7 +965,7 @@ public class ForwardingTest extends FloodlightTestCase {
         path.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(1)));
         path.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(3)));
         reset(routingEngine);
-        expect(routingEngine.getPath(DatapathId.of(1L), OFPort.of(1), DatapathId.of(1L), OFPort.of(3))).andReturn(path).atLeastOnce();
+        expect(routingEngine.getPath(eq(DatapathId.of(1L)), eq(OFPort.of(1)), eq(DatapathId.of(1L)), eq(OFPort.of(3)), anyInt())).andReturn(path).atLeastOnce();
         
         // Expected Flow-mods
         Match match = packetIn.getMatch();
@@ -1086,4 +1119,54 @@ public class ForwardingTest extends FloodlightTestCase {
 		forwarding.deleteFlowsByDescriptor(descriptors);
 		verify(routingEngine);
 	}
-}
\ No newline at end of file
+	
+	private static Ethernet createUdpPacket(String srcIp, int srcPort, int dstPort) {
+		return (Ethernet) new Ethernet()
+		.setDestinationMACAddress("00:11:22:33:44:55")
+		.setSourceMACAddress("00:44:33:22:11:00")
+		.setEtherType(EthType.IPv4)
+		.setPayload(
+				new IPv4()
+				.setTtl((byte) 128)
+				.setSourceAddress(srcIp)
+				.setDestinationAddress("192.168.1.2")
+				.setPayload(new UDP()
+				.setSourcePort((short) srcPort)
+				.setDestinationPort((short) dstPort)
+				.setPayload(new Data(new byte[] {0x01}))));
+	}
+
+	@Test
+	public void testFlowHashFollowsMatch() throws Exception {
+		Ethernet p1 = createUdpPacket("192.168.1.1", 5000, 5001);
+		Ethernet p2 = createUdpPacket("192.168.1.1", 6000, 6001);
+		Ethernet p3 = createUdpPacket("192.168.1.3", 5000, 5001);
+
+		/* transport ports are matched, so they pick the path too */
+		assertEquals(forwarding.getFlowHash(p1), forwarding.getFlowHash(createUdpPacket("192.168.1.1", 5000, 5001)));
+		assertTrue(forwarding.getFlowHash(p1) != forwarding.getFlowHash(p2));
+
+		/* without L4 matching both packets hit the same flow, which can only have one path */
+		fmc.addConfigParam(forwarding, "match", "in-port,vlan,mac,ip");
+		forwarding.init(fmc);
+		try {
+			IOFSwitch sw = EasyMock.createNiceMock(IOFSwitch.class);
+			expect(sw.getId()).andReturn(DatapathId.of(3L)).anyTimes();
+			expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+			expect(sw.getSwitchDescription()).andReturn(new SwitchDescription(swDescription)).anyTimes();
+			replay(sw);
+			IFloodlightProviderService.bcStore.put(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT, p1);
+			Match m1 = forwarding.createMatchFromPacket(sw, OFPort.of(1), packetIn, cntx);
+			IFloodlightProviderService.bcStore.put(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT, p2);
+			Match m2 = forwarding.createMatchFromPacket(sw, OFPort.of(1), packetIn, cntx);
+			assertEquals(m1, m2);
+			assertEquals(forwarding.getFlowHash(p1), forwarding.getFlowHash(p2));
+
+			/* the IP addresses are still matched */
+			assertTrue(forwarding.getFlowHash(p1) != forwarding.getFlowHash(p3));
+		} finally {
+			fmc.addConfigParam(forwarding, "match", "in-port,vlan,mac,ip,transport,flag");
+			forwarding.init(fmc);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package net.floodlightcontroller.forwarding;
+
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.floodlightcontroller.devicemanager.IDevice;
+import net.floodlightcontroller.devicemanager.IDeviceService;
+
+import org.easymock.IAnswer;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.IPv4Address;
+
+public class IPv4DeviceIndexTest {
+    private final Map<Long, IDevice> devices = new HashMap<Long, IDevice>();
+    private IPv4DeviceIndex index;
+
+    private IDevice device(long key, String... ips) {
+        IPv4Address[] addrs = new IPv4Address[ips.length];
+        for (int i = 0; i < ips.length; i++) {
+            addrs[i] = IPv4Address.of(ips[i]);
+        }
+        IDevice d = createMock(IDevice.class);
+        expect(d.getDeviceKey()).andReturn(key).anyTimes();
+        expect(d.getIPv4Addresses()).andReturn(addrs).anyTimes();
+        replay(d);
+        devices.put(key, d);
+        return d;
+    }
+
+    @Before
+    public void setUp() {
+        IDeviceService deviceService = createMock(IDeviceService.class);
+        expect(deviceService.getDevice(anyLong())).andAnswer(new IAnswer<IDevice>() {
+            @Override
+            public IDevice answer() throws Throwable {
+                return devices.get(EasyMock.getCurrentArguments()[0]);
+            }
+        }).anyTimes();
+        replay(deviceService);
+        index = new IPv4DeviceIndex(deviceService, 2);
+    }
+
+    @Test
+    public void testLookup() {
+        IDevice d1 = device(1L, "10.0.0.1", "10.0.0.2");
+        index.updateDevice(d1);
+        IDevice d2 = device(2L, "20.0.0.1");
+        index.updateDevice(d2);
+
+        assertSame(d1, index.lookup(IPv4Address.of("10.0.0.2")));
+        assertSame(d2, index.lookup("gw", IPv4Address.of("20.0.0.1")));
+        assertNull(index.lookup(IPv4Address.of("30.0.0.1")));
+        assertEquals(3, index.size());
+
+        index.removeDevice(d2);
+        assertNull(index.lookup("gw", IPv4Address.of("20.0.0.1")));
+    }
+
+    @Test
+    public void testAddressChange() {
+        IDevice d1 = device(1L, "10.0.0.1");
+        index.updateDevice(d1);
+        assertSame(d1, index.lookup("gw", IPv4Address.of("10.0.0.1")));
+
+        // the device manager replaces the device object on updates
+        IDevice d1b = device(1L, "10.0.0.9");
+        index.updateDevice(d1b);
+        assertNull(index.lookup("gw", IPv4Address.of("10.0.0.1")));
+        assertSame(d1b, index.lookup("gw", IPv4Address.of("10.0.0.9")));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testStaleEntryIsDropped() {
+        index.updateDevice(device(1L, "10.0.0.1"));
+        // the device went away without a callback
+        devices.remove(1L);
+        assertNull(index.lookup(IPv4Address.of("10.0.0.1")));
+        assertEquals(0, index.size());
+    }
+}
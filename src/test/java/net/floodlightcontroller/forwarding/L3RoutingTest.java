@@ -5,6 +5,7 @@ import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.types.NodePortTuple;
 import net.floodlightcontroller.packet.*;
+import net.floodlightcontroller.routing.L3RoutingManager;
 import net.floodlightcontroller.routing.VirtualGatewayInstance;
 import net.floodlightcontroller.routing.VirtualGatewayInterface;
 import net.floodlightcontroller.test.FloodlightTestCase;
@@ -15,8 +16,12 @@ import org.projectfloodlight.openflow.protocol.*;
 import org.projectfloodlight.openflow.protocol.match.MatchField;
 import org.projectfloodlight.openflow.types.*;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
@@ -379,6 +384,70 @@ public class L3RoutingTest extends FloodlightTestCase {
 
     }
 
+    @Test
+    public void testRemoveMembersGivenToBuilder() throws Exception {
+        Set<DatapathId> switches = new HashSet<>(Arrays.asList(DatapathId.of(1L), DatapathId.of(2L)));
+        Set<NodePortTuple> npts = new HashSet<>(Arrays.asList(
+                new NodePortTuple(DatapathId.of(1L), OFPort.of(1)),
+                new NodePortTuple(DatapathId.of(1L), OFPort.of(2)),
+                new NodePortTuple(DatapathId.of(2L), OFPort.of(1))));
+        Set<IPv4AddressWithMask> subnets = new HashSet<>(Arrays.asList(
+                IPv4AddressWithMask.of("10.0.0.0/24"), IPv4AddressWithMask.of("20.0.0.0/24")));
+
+        VirtualGatewayInstance instance = VirtualGatewayInstance.createInstance("gateway-1")
+                .setGatewayMac(MacAddress.of("aa:bb:cc:dd:ee:ff"))
+                .setSwitchMembers(switches)
+                .setNptMembers(npts)
+                .setSubnetMembers(subnets)
+                .build();
+
+        // Members given to the builder can be removed while the instance iterates them
+        instance.removeSwitchFromInstance(DatapathId.of(1L));
+        assertEquals(Collections.singleton(DatapathId.of(2L)), instance.getSwitchMembers());
+        assertEquals(Collections.singleton(new NodePortTuple(DatapathId.of(2L), OFPort.of(1))),
+                instance.getNptMembers());
+
+        instance.clearSwitchMembers();
+        instance.clearNptMembers();
+        instance.clearSubnetMembers();
+        assertTrue(instance.getSwitchMembers().isEmpty());
+        assertTrue(instance.getNptMembers().isEmpty());
+        assertTrue(instance.getSubsetMembers().isEmpty());
+
+        // The sets given to the builder are left alone
+        assertEquals(2, switches.size());
+        assertEquals(3, npts.size());
+        assertEquals(2, subnets.size());
+    }
+
+    @Test
+    public void testGatewayLookupFollowsMembership() throws Exception {
+        L3RoutingManager manager = new L3RoutingManager();
+        manager.removeAllVirtualGateways();
+        manager.addVirtualGateway(gateway);
+
+        NodePortTuple npt = new NodePortTuple(DatapathId.of(2L), OFPort.of(1));
+        assertEquals(gateway, manager.getVirtualGateway(DatapathId.of(1L)).get());
+        assertEquals(gateway, manager.getVirtualGateway(npt).get());
+        assertEquals(gateway, manager.getVirtualGateway(IPv4AddressWithMask.of("192.168.1.0/24")).get());
+        assertEquals(gateway, manager.getVirtualGateway(IPv4Address.of("192.168.1.77")).get());
+        assertFalse(manager.getVirtualGateway(IPv4Address.of("192.168.2.1")).isPresent());
+
+        // Membership changes made on the instance are reflected in the lookups
+        gateway.addSwitchMember(DatapathId.of(3L));
+        assertEquals(gateway, manager.getVirtualGateway(DatapathId.of(3L)).get());
+        gateway.removeSwitchFromInstance(DatapathId.of(2L));
+        assertFalse(manager.getVirtualGateway(npt).isPresent());
+        gateway.clearSubnetMembers();
+        assertFalse(manager.getVirtualGateway(IPv4AddressWithMask.of("192.168.1.0/24")).isPresent());
+
+        // A removed gateway no longer updates the lookups
+        assertTrue(manager.removeVirtualGateway(gateway.getName()));
+        assertFalse(manager.getVirtualGateway(DatapathId.of(1L)).isPresent());
+        gateway.addSwitchMember(DatapathId.of(4L));
+        assertFalse(manager.getVirtualGateway(DatapathId.of(4L)).isPresent());
+    }
+
 
 
 }
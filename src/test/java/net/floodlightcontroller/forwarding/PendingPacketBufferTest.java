@@ -0,0 +1,72 @@
+package net.floodlightcontroller.forwarding;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import net.floodlightcontroller.forwarding.PendingPacketBuffer.AddResult;
+import net.floodlightcontroller.forwarding.PendingPacketBuffer.DrainResult;
+import net.floodlightcontroller.packet.Ethernet;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.IPv4Address;
+
+public class PendingPacketBufferTest {
+    private static final IPv4Address DST1 = IPv4Address.of("10.0.0.1");
+    private static final IPv4Address DST2 = IPv4Address.of("10.0.0.2");
+
+    @Test
+    public void testDrainReleasesBatchInOrder() {
+        PendingPacketBuffer buffer = new PendingPacketBuffer(4, 100, 1000);
+        Ethernet p1 = new Ethernet();
+        Ethernet p2 = new Ethernet();
+        assertEquals(AddResult.QUEUED, buffer.add("gw", DST1, p1, 0));
+        assertEquals(AddResult.QUEUED, buffer.add("gw", DST2, new Ethernet(), 0));
+        assertEquals(AddResult.QUEUED, buffer.add("gw", DST1, p2, 10));
+        assertEquals(3, buffer.size());
+
+        DrainResult result = buffer.drain(DST1, 20);
+        assertEquals(2, result.getReleased().size());
+        assertSame(p1, result.getReleased().get(0).getPacket());
+        assertSame(p2, result.getReleased().get(1).getPacket());
+        assertEquals(0, result.getExpired());
+        assertEquals(1, buffer.size());
+        assertEquals(1, buffer.size("gw"));
+        assertTrue(buffer.drain(DST1, 20).getReleased().isEmpty());
+    }
+
+    @Test
+    public void testLimits() {
+        PendingPacketBuffer buffer = new PendingPacketBuffer(2, 3, 1000);
+        assertEquals(AddResult.QUEUED, buffer.add("gw", DST1, new Ethernet(), 0));
+        assertEquals(AddResult.QUEUED, buffer.add("gw", DST1, new Ethernet(), 0));
+        assertEquals(AddResult.DROPPED_DESTINATION_FULL, buffer.add("gw", DST1, new Ethernet(), 0));
+        assertEquals(AddResult.QUEUED, buffer.add("gw", DST2, new Ethernet(), 0));
+        assertEquals(AddResult.DROPPED_GATEWAY_FULL, buffer.add("gw", DST2, new Ethernet(), 0));
+        // the cap is per gateway
+        assertEquals(AddResult.QUEUED, buffer.add("other", DST2, new Ethernet(), 0));
+
+        assertEquals(3, buffer.removeGateway("gw"));
+        assertEquals(1, buffer.size());
+        assertEquals(AddResult.QUEUED, buffer.add("gw", DST1, new Ethernet(), 0));
+    }
+
+    @Test
+    public void testExpiry() {
+        PendingPacketBuffer buffer = new PendingPacketBuffer(4, 100, 1000);
+        buffer.add("gw", DST1, new Ethernet(), 0);
+        buffer.add("gw", DST1, new Ethernet(), 1500);
+        buffer.add("gw", DST2, new Ethernet(), 0);
+
+        assertEquals(2, buffer.expire(1600));
+        assertEquals(1, buffer.size());
+        // sweeps at most once per TTL
+        buffer.add("gw", DST2, new Ethernet(), 1600);
+        assertEquals(0, buffer.expire(2000));
+
+        DrainResult result = buffer.drain(DST1, 3000);
+        assertEquals(1, result.getExpired());
+        assertTrue(result.getReleased().isEmpty());
+        assertEquals(1, buffer.size("gw"));
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.learningswitch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MacVlanPortTableTest {
+
+    @Test
+    public void testPackKey() {
+        long key = MacVlanPortTable.packKey(0x0000aabbccddeeffL, 4095);
+        assertEquals(0xaabbccddeeffL, MacVlanPortTable.unpackMac(key));
+        assertEquals(4095, MacVlanPortTable.unpackVlan(key));
+        assertTrue(MacVlanPortTable.packKey(1, 1) != MacVlanPortTable.packKey(1, 2));
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        MacVlanPortTable t = new MacVlanPortTable(16);
+        long k0 = MacVlanPortTable.packKey(0, 0);
+        long k1 = MacVlanPortTable.packKey(1, 42);
+        assertEquals(MacVlanPortTable.NO_PORT, t.get(k0));
+
+        t.put(k0, 3);
+        t.put(k1, 7);
+        assertEquals(3, t.get(k0));
+        assertEquals(7, t.get(k1));
+        assertEquals(2, t.size());
+
+        t.put(k1, 8);
+        assertEquals(8, t.get(k1));
+        assertEquals(2, t.size());
+
+        assertTrue(t.remove(k0));
+        assertFalse(t.remove(k0));
+        assertEquals(MacVlanPortTable.NO_PORT, t.get(k0));
+        assertEquals(8, t.get(k1));
+
+        t.clear();
+        assertEquals(0, t.size());
+        assertEquals(MacVlanPortTable.NO_PORT, t.get(k1));
+    }
+
+    @Test
+    public void testRemoveKeepsProbeChains() {
+        MacVlanPortTable t = new MacVlanPortTable(512);
+        for (int i = 0; i < 512; i++) {
+            t.put(MacVlanPortTable.packKey(i, 1), i);
+        }
+        for (int i = 0; i < 512; i += 2) {
+            assertTrue(t.remove(MacVlanPortTable.packKey(i, 1)));
+        }
+        for (int i = 0; i < 512; i++) {
+            int expected = (i % 2 == 0) ? MacVlanPortTable.NO_PORT : i;
+            assertEquals(expected, t.get(MacVlanPortTable.packKey(i, 1)));
+        }
+        assertEquals(256, t.size());
+    }
+
+    @Test
+    public void testClockEviction() {
+        MacVlanPortTable t = new MacVlanPortTable(4);
+        for (int i = 0; i < 4; i++) {
+            t.put(MacVlanPortTable.packKey(i, 0), i);
+        }
+        // reference the first three, so the fourth is the eviction victim
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, t.get(MacVlanPortTable.packKey(i, 0)));
+        }
+        t.put(MacVlanPortTable.packKey(100, 0), 100);
+        assertEquals(4, t.size());
+        assertEquals(MacVlanPortTable.NO_PORT, t.get(MacVlanPortTable.packKey(3, 0)));
+        assertEquals(100, t.get(MacVlanPortTable.packKey(100, 0)));
+
+        final Map<Long, Integer> seen = new HashMap<Long, Integer>();
+        t.forEach(new MacVlanPortTable.EntryVisitor() {
+            @Override
+            public void visit(long key, int port) {
+                seen.put(key, port);
+            }
+        });
+        assertEquals(4, seen.size());
+        assertEquals(Integer.valueOf(100), seen.get(MacVlanPortTable.packKey(100, 0)));
+    }
+}
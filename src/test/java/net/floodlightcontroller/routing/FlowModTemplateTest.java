@@ -0,0 +1,98 @@
+package net.floodlightcontroller.routing;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.SwitchDescription;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowModCommand;
+import org.projectfloodlight.openflow.protocol.OFFlowModFlags;
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+
+public class FlowModTemplateTest {
+    private static IOFSwitch createSwitch(OFFactory factory) {
+        IOFSwitch sw = createNiceMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DatapathId.of(1)).anyTimes();
+        expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+        expect(sw.getSwitchDescription()).andReturn(new SwitchDescription()).anyTimes();
+        replay(sw);
+        return sw;
+    }
+
+    private static class TestForwarding extends ForwardingBase {
+        @Override
+        public Command processPacketInMessage(IOFSwitch sw, OFPacketIn pi,
+                IRoutingDecision decision, FloodlightContext cntx) {
+            return Command.CONTINUE;
+        }
+    }
+
+    @Test
+    public void testBuilder() {
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+        FlowModTemplate template = new FlowModTemplate(createSwitch(factory),
+                5, 10, 2, TableId.of(3), false, false);
+
+        OFFlowMod fm = template.setOutput(template.builder(OFFlowModCommand.ADD, false), OFPort.of(4))
+                .build();
+        assertEquals(OFFlowModCommand.ADD, fm.getCommand());
+        assertEquals(5, fm.getIdleTimeout());
+        assertEquals(10, fm.getHardTimeout());
+        assertEquals(2, fm.getPriority());
+        assertEquals(TableId.of(3), fm.getTableId());
+        assertTrue(fm.getFlags().isEmpty());
+        assertEquals(Collections.singletonList(factory.instructions().applyActions(
+                Collections.singletonList((OFAction) factory.actions().output(OFPort.of(4), Integer.MAX_VALUE)))),
+                fm.getInstructions());
+
+        /* per-flow request for flow-removed messages */
+        fm = template.builder(OFFlowModCommand.DELETE, true).build();
+        assertEquals(OFFlowModCommand.DELETE, fm.getCommand());
+        assertEquals(Collections.singleton(OFFlowModFlags.SEND_FLOW_REM), fm.getFlags());
+
+        assertTrue(template.isCompiledFrom(5, 10, 2, TableId.of(3), false, false));
+        assertFalse(template.isCompiledFrom(6, 10, 2, TableId.of(3), false, false));
+        assertFalse(template.isCompiledFrom(5, 10, 2, TableId.of(0), false, false));
+        assertFalse(template.isCompiledFrom(5, 10, 2, TableId.of(3), true, false));
+    }
+
+    @Test
+    public void testDefaultsChange() {
+        int idleTimeout = ForwardingBase.FLOWMOD_DEFAULT_IDLE_TIMEOUT;
+        int priority = ForwardingBase.FLOWMOD_DEFAULT_PRIORITY;
+        try {
+            TestForwarding forwarding = new TestForwarding();
+            IOFSwitch sw = createSwitch(OFFactories.getFactory(OFVersion.OF_13));
+
+            FlowModTemplate template = forwarding.getFlowModTemplate(sw);
+            assertSame(template, forwarding.getFlowModTemplate(sw));
+            assertEquals(idleTimeout, template.builder(OFFlowModCommand.ADD, false).build().getIdleTimeout());
+
+            /* the next flow-mod uses the new settings */
+            ForwardingBase.FLOWMOD_DEFAULT_IDLE_TIMEOUT = idleTimeout + 7;
+            ForwardingBase.FLOWMOD_DEFAULT_PRIORITY = priority + 1;
+            OFFlowMod fm = forwarding.getFlowModTemplate(sw).builder(OFFlowModCommand.ADD, false).build();
+            assertEquals(idleTimeout + 7, fm.getIdleTimeout());
+            assertEquals(priority + 1, fm.getPriority());
+            assertNotSame(template, forwarding.getFlowModTemplate(sw));
+        } finally {
+            ForwardingBase.FLOWMOD_DEFAULT_IDLE_TIMEOUT = idleTimeout;
+            ForwardingBase.FLOWMOD_DEFAULT_PRIORITY = priority;
+        }
+    }
+}
@@ -19,10 +19,12 @@ package net.floodlightcontroller.storage.tests;
 
 import static org.easymock.EasyMock.*;
 
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -31,6 +33,8 @@ import java.util.Set;
 
 import static org.junit.Assert.*;
 
+import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.junit.Test;
 
 import net.floodlightcontroller.debugcounter.MockDebugCounterService;
@@ -777,4 +781,81 @@ public abstract class StorageTest extends FloodlightTestCase {
         }
         
     }
+
+    @Test
+    public void testCoalescedNotifications() throws Exception {
+        final Set<Object> modified = new HashSet<Object>();
+        final Set<Object> deleted = new HashSet<Object>();
+        final AtomicInteger calls = new AtomicInteger();
+        IStorageSourceListener listener = new IStorageSourceListener() {
+            @Override
+            public void rowsModified(String tableName, Set<Object> rowKeys) {
+                calls.incrementAndGet();
+                modified.addAll(rowKeys);
+            }
+
+            @Override
+            public void rowsDeleted(String tableName, Set<Object> rowKeys) {
+                calls.incrementAndGet();
+                deleted.addAll(rowKeys);
+            }
+        };
+        // the end of a window is when the test runs the scheduled delivery
+        Capture<Runnable> delivery = newCapture(CaptureType.ALL);
+        ScheduledExecutorService notificationExecutor = createMock(ScheduledExecutorService.class);
+        expect(notificationExecutor.schedule(capture(delivery), eq(50L), eq(TimeUnit.MILLISECONDS)))
+                .andReturn(null).times(2);
+        replay(notificationExecutor);
+        storageSource.setNotificationExecutor(notificationExecutor);
+        storageSource.setNotificationWindowMs(50);
+        storageSource.addListener(PERSON_TABLE_NAME, listener);
+        try {
+            insertPerson(new Object[] {"999-99-9999", "Serena", "Williams", 22, true});
+            insertPerson(new Object[] {"999-99-9998", "Venus", "Williams", 24, true});
+            storageSource.deleteRow(PERSON_TABLE_NAME, "111-11-1111");
+            storageSource.deleteRow(PERSON_TABLE_NAME, "999-99-9998");
+
+            // one delivery is scheduled for the window, and nothing is delivered before it ends
+            assertEquals(1, delivery.getValues().size());
+            assertEquals(0, calls.get());
+
+            delivery.getValue().run();
+            // the last change to a key wins
+            assertEquals(new HashSet<Object>(Arrays.asList("999-99-9999")), modified);
+            assertEquals(new HashSet<Object>(Arrays.asList("111-11-1111", "999-99-9998")), deleted);
+            assertEquals(2, calls.get());
+
+            // a change after the window was delivered starts the next one
+            storageSource.deleteRow(PERSON_TABLE_NAME, "999-99-9999");
+            assertEquals(2, delivery.getValues().size());
+            assertEquals(2, calls.get());
+            delivery.getValues().get(1).run();
+            assertEquals(3, calls.get());
+            assertTrue(deleted.contains("999-99-9999"));
+            verify(notificationExecutor);
+        } finally {
+            storageSource.removeListener(PERSON_TABLE_NAME, listener);
+            storageSource.setNotificationWindowMs(0);
+            storageSource.setNotificationExecutor(null);
+        }
+    }
+
+    @Test
+    public void testAsyncQueueDepth() throws Exception {
+        // use the per-table executors rather than the storage source's own
+        storageSource.setExecutorService(null);
+        Future<?> future = null;
+        for (int i = 0; i < 10; i++) {
+            Map<String,Object> values = new HashMap<String,Object>();
+            values.put(PERSON_AGE, i);
+            future = storageSource.updateRowAsync(PERSON_TABLE_NAME, "111-11-1111", values);
+        }
+        waitForFuture(future);
+        // operations on a table run in order
+        IResultSet resultSet = storageSource.getRow(PERSON_TABLE_NAME, "111-11-1111");
+        assertTrue(resultSet.next());
+        assertEquals(9, resultSet.getInt(PERSON_AGE));
+        resultSet.close();
+        assertEquals(0, storageSource.getAsyncQueueDepth(PERSON_TABLE_NAME));
+    }
 }
@@ -0,0 +1,55 @@
+package net.floodlightcontroller.topology;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.types.OFPort;
+
+public class FloodActionsTest {
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+
+    private OFAction output(int port) {
+        return factory.actions().output(OFPort.of(port), Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testActions() {
+        FloodActions fa = new FloodActions(factory,
+                Arrays.asList(OFPort.of(3), OFPort.of(1), OFPort.of(2)));
+        assertEquals(OFVersion.OF_13, fa.getVersion());
+        assertEquals(Arrays.asList(OFPort.of(1), OFPort.of(2), OFPort.of(3)), fa.getPorts());
+
+        /* never back out the port the packet came in on */
+        assertEquals(Arrays.asList(output(2), output(3)), fa.getActions(OFPort.of(1)));
+        assertEquals(Arrays.asList(output(1), output(3)), fa.getActions(OFPort.of(2)));
+        assertEquals(Arrays.asList(output(1), output(2)), fa.getActions(OFPort.of(3)));
+
+        /* a packet from elsewhere, e.g. the controller, goes out every broadcast port */
+        List<OFAction> all = Arrays.asList(output(1), output(2), output(3));
+        assertEquals(all, fa.getActions(OFPort.of(4)));
+        assertEquals(all, fa.getActions(OFPort.CONTROLLER));
+    }
+
+    @Test
+    public void testNoPorts() {
+        FloodActions fa = new FloodActions(factory, Collections.<OFPort>emptyList());
+        assertTrue(fa.getPorts().isEmpty());
+        assertTrue(fa.getActions(OFPort.of(1)).isEmpty());
+    }
+
+    @Test
+    public void testSinglePort() {
+        FloodActions fa = new FloodActions(factory, Collections.singletonList(OFPort.of(7)));
+        assertTrue(fa.getActions(OFPort.of(7)).isEmpty());
+        assertEquals(Collections.singletonList(output(7)), fa.getActions(OFPort.of(1)));
+    }
+}
@@ -0,0 +1,77 @@
+package net.floodlightcontroller.topology;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.routing.IRoutingService.PATH_METRIC;
+import net.floodlightcontroller.statistics.SwitchPortBandwidth;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+public class LinkCostEngineTest {
+    private static final long GBPS_IN_KBPS = 1000 * 1000;
+
+    private static SwitchPortBandwidth sample(int sw, int port, long txBps) {
+        return SwitchPortBandwidth.of(DatapathId.of(sw), OFPort.of(port),
+                U64.of(GBPS_IN_KBPS), U64.ZERO, U64.of(txBps), U64.ZERO, U64.ZERO);
+    }
+
+    @Test
+    public void testCosts() {
+        assertEquals(1000, LinkCostEngine.speedCost(GBPS_IN_KBPS));
+        assertEquals(100, LinkCostEngine.speedCost(10 * GBPS_IN_KBPS));
+        assertEquals(TopologyInstance.MAX_LINK_WEIGHT, LinkCostEngine.speedCost(0));
+
+        assertEquals(1, LinkCostEngine.utilizationCost(0, GBPS_IN_KBPS));
+        assertEquals(5000, LinkCostEngine.utilizationCost(500L * 1000 * 1000, GBPS_IN_KBPS));
+        assertEquals(TopologyInstance.MAX_LINK_WEIGHT,
+                LinkCostEngine.utilizationCost(2000L * 1000 * 1000, GBPS_IN_KBPS));
+        /* unknown speed: per Mbps */
+        assertEquals(11, LinkCostEngine.utilizationCost(10L * 1000 * 1000, 0));
+    }
+
+    @Test
+    public void testSmoothingAndThreshold() {
+        LinkCostEngine engine = new LinkCostEngine(0.5, 0.6);
+        NodePortTuple npt = new NodePortTuple(DatapathId.of(1), OFPort.of(1));
+
+        /* nothing is published for metrics that don't use the samples */
+        assertTrue(engine.update(Arrays.asList(sample(1, 1, 0)), PATH_METRIC.LATENCY).isEmpty());
+        assertEquals(-1, engine.getCost(npt, PATH_METRIC.UTILIZATION));
+
+        Set<NodePortTuple> changed = engine.update(
+                Arrays.asList(sample(1, 1, 100L * 1000 * 1000), sample(2, 1, 0)),
+                PATH_METRIC.UTILIZATION);
+        assertEquals(2, changed.size());
+        /* (0 + 100 Mbps) / 2 on 1 Gbps */
+        assertEquals(500, engine.getCost(npt, PATH_METRIC.UTILIZATION));
+        assertEquals(-1, engine.getCost(npt, PATH_METRIC.LINK_SPEED));
+
+        /* 75 Mbps on average, within 60% of the published cost */
+        changed = engine.update(Arrays.asList(sample(1, 1, 100L * 1000 * 1000)),
+                PATH_METRIC.UTILIZATION);
+        assertTrue(changed.isEmpty());
+        assertEquals(500, engine.getCost(npt, PATH_METRIC.UTILIZATION));
+
+        /* 87.5 Mbps, more than 60% above */
+        changed = engine.update(Arrays.asList(sample(1, 1, 100L * 1000 * 1000)),
+                PATH_METRIC.UTILIZATION);
+        assertEquals(Collections.singleton(npt), changed);
+        assertEquals(875, engine.getCost(npt, PATH_METRIC.UTILIZATION));
+
+        /* a new metric publishes every port again */
+        changed = engine.update(Collections.<SwitchPortBandwidth>emptyList(),
+                PATH_METRIC.LINK_SPEED);
+        assertEquals(2, changed.size());
+        assertEquals(1000, engine.getCost(npt, PATH_METRIC.LINK_SPEED));
+        assertEquals(-1, engine.getCost(npt, PATH_METRIC.UTILIZATION));
+    }
+}
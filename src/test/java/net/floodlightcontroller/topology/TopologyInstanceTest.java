@@ -29,6 +29,7 @@ import net.floodlightcontroller.linkdiscovery.ILinkDiscovery;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
 import net.floodlightcontroller.routing.IRoutingService;
 import net.floodlightcontroller.routing.Path;
+import net.floodlightcontroller.routing.PathId;
 import net.floodlightcontroller.routing.RoutingManager;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 import org.easymock.EasyMock;
@@ -48,6 +49,7 @@ import java.util.Set;
 import static net.floodlightcontroller.routing.IRoutingService.PATH_METRIC.HOPCOUNT;
 import static net.floodlightcontroller.routing.IRoutingService.PATH_METRIC.LATENCY;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class TopologyInstanceTest {
@@ -932,5 +934,154 @@ public class TopologyInstanceTest {
         }
         verifyRoute(r10, r10.size());
     }
-    
+
+    @Test
+    public void testLinkCostUpdate() throws Exception {
+        DatapathId one = DatapathId.of(1);
+        DatapathId two = DatapathId.of(2);
+        DatapathId three = DatapathId.of(3);
+
+        /* same topology as the first one of testgetPathsFast */
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {1, 2, 3, 1, DIRECT_LINK},
+                {2, 2, 3, 2, DIRECT_LINK},
+        };
+        int [] lat = {1,50,1};
+
+        topologyManager.setPathMetric(LATENCY);
+        configureTopology(linkArray, lat);
+        topologyManager.updateTopology("test", false); /* resets the update flags */
+        TopologyInstance ti = topologyManager.getCurrentInstance();
+        Path best = routingManager.getPathsFast(one, three, 2).get(0);
+        assertEquals(U64.of(2), best.getLatency());
+        assertEquals(4, best.getPath().size()); /* via 2 */
+
+        /* the same latency again changes nothing */
+        topologyManager.addOrUpdateLink(one, OFPort.of(1), two, OFPort.of(1), U64.of(1),
+                ILinkDiscovery.LinkType.DIRECT_LINK);
+        assertFalse(topologyManager.linksUpdated);
+        assertFalse(topologyManager.linkCostsUpdated);
+
+        /* a new latency only reweights the paths */
+        topologyManager.addOrUpdateLink(one, OFPort.of(1), two, OFPort.of(1), U64.of(100),
+                ILinkDiscovery.LinkType.DIRECT_LINK);
+        assertFalse(topologyManager.linksUpdated);
+        assertTrue(topologyManager.linkCostsUpdated);
+        assertTrue(topologyManager.createNewInstance());
+
+        TopologyInstance nt = topologyManager.getCurrentInstance();
+        assertTrue(nt != ti);
+        assertEquals(ti.getArchipelagoIds(), nt.getArchipelagoIds());
+        for (DatapathId sw : Arrays.asList(one, two, three)) {
+            assertEquals(ti.getClusterId(sw), nt.getClusterId(sw));
+        }
+        List<Path> paths = routingManager.getPathsFast(one, three, 2);
+        assertEquals(U64.of(50), paths.get(0).getLatency());
+        assertEquals(2, paths.get(0).getPath().size()); /* direct */
+        assertEquals(U64.of(101), paths.get(1).getLatency());
+        /* the old instance is left as it was */
+        assertEquals(U64.of(2), ti.getPathsFast(one, three, 1).get(0).getLatency());
+
+        /* under hop count the order stays, but the latency follows */
+        topologyManager.setPathMetric(HOPCOUNT);
+        topologyManager.updateTopology("test", true);
+        topologyManager.addOrUpdateLink(one, OFPort.of(1), two, OFPort.of(1), U64.of(10),
+                ILinkDiscovery.LinkType.DIRECT_LINK);
+        assertTrue(topologyManager.createNewInstance());
+        paths = routingManager.getPathsFast(one, three, 2);
+        assertEquals(2, paths.get(0).getPath().size());
+        assertEquals(U64.of(50), paths.get(0).getLatency());
+        assertEquals(U64.of(11), paths.get(1).getLatency());
+    }
+
+    @Test
+    public void testEqualCostPaths() throws Exception {
+        DatapathId one = DatapathId.of(1);
+        DatapathId four = DatapathId.of(4);
+
+        /* two paths from 1 to 4, via 2 and via 3 */
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {1, 2, 3, 1, DIRECT_LINK},
+                {2, 2, 4, 1, DIRECT_LINK},
+                {3, 2, 4, 2, DIRECT_LINK},
+        };
+        int [] lat = {1,1,1,2};
+
+        topologyManager.setPathMetric(HOPCOUNT);
+        configureTopology(linkArray, lat);
+        TopologyInstance ti = topologyManager.getCurrentInstance();
+        List<Path> paths = ti.getEqualCostPaths(one, four, 0);
+        assertEquals(2, paths.size());
+        assertEquals(paths.get(0).getCost(), paths.get(1).getCost());
+        assertTrue(ti.getEqualCostPaths(one, one, 0).isEmpty());
+
+        /* best always takes the first path */
+        Path p0 = routingManager.getPath(one, OFPort.of(5), four, OFPort.of(5), 0);
+        Path p1 = routingManager.getPath(one, OFPort.of(5), four, OFPort.of(5), 1);
+        assertEquals(p0, p1);
+        assertEquals(routingManager.getPath(one, OFPort.of(5), four, OFPort.of(5)), p0);
+
+        /* ECMP spreads flow hashes over both, ports added */
+        routingManager.setPathSelection(IRoutingService.PATH_SELECTION.ECMP_HASH);
+        p0 = routingManager.getPath(one, OFPort.of(5), four, OFPort.of(5), 0);
+        p1 = routingManager.getPath(one, OFPort.of(5), four, OFPort.of(5), -1);
+        assertFalse(p0.equals(p1));
+        assertEquals(6, p0.getPath().size());
+        assertEquals(new NodePortTuple(one, OFPort.of(5)), p1.getPath().get(0));
+        assertEquals(new NodePortTuple(four, OFPort.of(5)), p1.getPath().get(5));
+        assertEquals(4, paths.get(0).getPath().size()); /* cached path left as is */
+
+        /* under latency the path via 3 costs more, unless tolerated */
+        topologyManager.setPathMetric(LATENCY);
+        topologyManager.updateTopology("test", true);
+        ti = topologyManager.getCurrentInstance();
+        assertEquals(1, ti.getEqualCostPaths(one, four, 0).size());
+        p0 = routingManager.getPath(one, OFPort.of(5), four, OFPort.of(5), 0);
+        assertEquals(p0, routingManager.getPath(one, OFPort.of(5), four, OFPort.of(5), 1));
+        routingManager.setEcmpTolerance(0.5);
+        assertEquals(2, ti.getEqualCostPaths(one, four, 0.5).size());
+        assertFalse(routingManager.getPath(one, OFPort.of(5), four, OFPort.of(5), 0)
+                .equals(routingManager.getPath(one, OFPort.of(5), four, OFPort.of(5), 1)));
+    }
+
+    @Test
+    public void testChangesSince() throws Exception {
+        DatapathId one = DatapathId.of(1);
+        DatapathId two = DatapathId.of(2);
+        DatapathId three = DatapathId.of(3);
+
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {2, 1, 1, 1, DIRECT_LINK},
+        };
+        createTopologyFromLinks(linkArray);
+        TopologyInstance ti1 = topologyManager.getCurrentInstance();
+
+        TopologyChange change = ti1.getChangesSince(null);
+        assertEquals(0, change.getOldVersion());
+        assertEquals(ti1.getVersion(), change.getNewVersion());
+        assertTrue(change.getChangedClusters().contains(one));
+        assertTrue(change.getChangedPaths().contains(new PathId(one, two)));
+        assertTrue(ti1.getChangesSince(ti1).isEmpty());
+
+        /* 3 joins the cluster of 1; the path from 1 to 2 stays */
+        int [][] moreLinks = {
+                {2, 2, 3, 1, DIRECT_LINK},
+                {3, 1, 2, 2, DIRECT_LINK},
+        };
+        createTopologyFromLinks(moreLinks);
+        TopologyInstance ti2 = topologyManager.getCurrentInstance();
+
+        change = ti2.getChangesSince(ti1);
+        assertEquals(ti1.getVersion(), change.getOldVersion());
+        assertEquals(ti2.getVersion(), change.getNewVersion());
+        assertTrue(change.getChangedClusters().contains(one));
+        assertTrue(change.getChangedArchipelagos().contains(one));
+        assertTrue(change.getChangedPaths().contains(new PathId(one, three)));
+        assertTrue(change.getChangedPaths().contains(new PathId(three, two)));
+        assertFalse(change.getChangedPaths().contains(new PathId(one, two)));
+        assertFalse(change.isEmpty());
+    }
 }
\ No newline at end of file
@@ -17,28 +17,62 @@
 package net.floodlightcontroller.topology;
 
 import static org.junit.Assert.*;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
 import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.test.MockSwitchManager;
 import net.floodlightcontroller.core.test.MockThreadPoolService;
+import net.floodlightcontroller.core.types.NodePortTuple;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugcounter.MockDebugCounterService;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscovery;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
+import net.floodlightcontroller.routing.PathId;
 import net.floodlightcontroller.test.FloodlightTestCase;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.topology.TopologyManager;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFBarrierReply;
+import org.projectfloodlight.openflow.protocol.OFBarrierRequest;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFGroupAdd;
+import org.projectfloodlight.openflow.protocol.OFGroupDelete;
+import org.projectfloodlight.openflow.protocol.OFGroupFeaturesStatsReply;
+import org.projectfloodlight.openflow.protocol.OFGroupFeaturesStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFGroupModFailedCode;
+import org.projectfloodlight.openflow.protocol.OFGroupType;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFPort;
 import org.projectfloodlight.openflow.types.U64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.SettableFuture;
+
 public class TopologyManagerTest extends FloodlightTestCase {
     protected static Logger log = LoggerFactory.getLogger(TopologyManagerTest.class);
     TopologyManager tm;
     FloodlightModuleContext fmc;
+    MockSwitchManager switchManager;
 
     @Override
     @Before
@@ -47,6 +81,8 @@ public class TopologyManagerTest extends FloodlightTestCase {
         fmc = new FloodlightModuleContext();
         fmc.addService(IFloodlightProviderService.class, getMockFloodlightProvider());
         fmc.addService(IDebugCounterService.class, new MockDebugCounterService());
+        switchManager = new MockSwitchManager();
+        fmc.addService(IOFSwitchService.class, switchManager);
         MockThreadPoolService tp = new MockThreadPoolService();
         fmc.addService(IThreadPoolService.class, tp);
         tm  = new TopologyManager();
@@ -62,6 +98,7 @@ public class TopologyManagerTest extends FloodlightTestCase {
         assertTrue(tm.getPortsPerSwitch().get(DatapathId.of(1)).size()==1);
         assertTrue(tm.getPortsPerSwitch().get(DatapathId.of(2)).size()==1);
         assertTrue(tm.getPortsOnLinks().size()==2);
+        tm.createNewInstance("test", true); /* queries are answered from the computed topology */
         assertEquals(0, tm.getExternalInterClusterLinks().size());
         assertTrue(tm.getTunnelPorts().size()==0);
 
@@ -70,6 +107,7 @@ public class TopologyManagerTest extends FloodlightTestCase {
         assertTrue(tm.getPortsPerSwitch().get(DatapathId.of(1)).size()==2);
         assertTrue(tm.getPortsPerSwitch().get(DatapathId.of(2)).size()==2);
         assertTrue(tm.getPortsOnLinks().size()==4);
+        tm.createNewInstance("test", true);
         assertEquals(1, tm.getExternalInterClusterLinks().size());
         assertTrue(tm.getTunnelPorts().size()==0);
 
@@ -78,11 +116,13 @@ public class TopologyManagerTest extends FloodlightTestCase {
         assertTrue(tm.getPortsPerSwitch().get(DatapathId.of(2)).size()==1);
         assertTrue(tm.getPortsPerSwitch().size() == 2);
         assertTrue(tm.getPortsOnLinks().size()==2);
+        tm.createNewInstance("test", true);
         assertEquals(0, tm.getExternalInterClusterLinks().size());
 
         tm.removeLink(DatapathId.of(1), OFPort.of(1), DatapathId.of(2), OFPort.of(1));
         assertTrue(tm.getPortsPerSwitch().size() == 0);
         assertTrue(tm.getPortsOnLinks().size()==0);
+        tm.createNewInstance("test", true);
         assertEquals(0, tm.getExternalInterClusterLinks().size());
     }
 
@@ -95,6 +135,7 @@ public class TopologyManagerTest extends FloodlightTestCase {
         assertTrue(tm.getPortsPerSwitch().get(DatapathId.of(2)).size()==2);
         assertTrue(tm.getPortsPerSwitch().get(DatapathId.of(3)).size()==1);
         assertTrue(tm.getPortsOnLinks().size()==4);
+        tm.createNewInstance("test", true);
         assertEquals(1, tm.getExternalInterClusterLinks().size());
 
         tm.removeLink(DatapathId.of(1), OFPort.of(1), DatapathId.of(2), OFPort.of(1));
@@ -103,6 +144,7 @@ public class TopologyManagerTest extends FloodlightTestCase {
         assertTrue(tm.getPortsPerSwitch().get(DatapathId.of(2)).size()==1);
         assertTrue(tm.getPortsPerSwitch().get(DatapathId.of(3)).size()==1);
         assertTrue(tm.getPortsOnLinks().size()==2);
+        tm.createNewInstance("test", true);
         assertEquals(1, tm.getExternalInterClusterLinks().size());
 
         // nonexistent link // no null pointer exceptions.
@@ -112,6 +154,7 @@ public class TopologyManagerTest extends FloodlightTestCase {
         assertTrue(tm.getPortsPerSwitch().get(DatapathId.of(2)).size()==1);
         assertTrue(tm.getPortsPerSwitch().get(DatapathId.of(3)).size()==1);
         assertTrue(tm.getPortsOnLinks().size()==2);
+        tm.createNewInstance("test", true);
         assertEquals(1, tm.getExternalInterClusterLinks().size());
 
         tm.removeLink(DatapathId.of(3), OFPort.of(2), DatapathId.of(1), OFPort.of(2));
@@ -120,13 +163,221 @@ public class TopologyManagerTest extends FloodlightTestCase {
         assertTrue(tm.getPortsPerSwitch().get(DatapathId.of(2)).size()==1);
         assertTrue(tm.getPortsPerSwitch().get(DatapathId.of(3)).size()==1);
         assertTrue(tm.getPortsOnLinks().size()==2);
+        tm.createNewInstance("test", true);
         assertEquals(1, tm.getExternalInterClusterLinks().size());
 
         tm.removeLink(DatapathId.of(2), OFPort.of(2), DatapathId.of(3), OFPort.of(1));
         assertTrue(tm.getPortsPerSwitch().size() == 0);  // for two nodes.
         assertTrue(tm.getPortsOnLinks().size()==0);
+        tm.createNewInstance("test", true);
         assertEquals(0, tm.getExternalInterClusterLinks().size());
         assertTrue(tm.getTunnelPorts().size()==0);
     }
 
+    @Test
+    public void testRecomputeDelay() throws Exception {
+        tm.recomputeDebounceMs = 100;
+        tm.recomputeMaxDelayMs = 1000;
+        long start = System.currentTimeMillis();
+        tm.linkDiscoveryUpdate(Collections.<LDUpdate>emptyList());
+        long end = System.currentTimeMillis();
+
+        // wait until the updates have been quiet for the debounce window
+        assertTrue(tm.getRecomputeDelay(start) > 0);
+        assertTrue(tm.getRecomputeDelay(end + 100) <= 0);
+
+        // but no longer than the maximum delay
+        tm.linkDiscoveryUpdate(Collections.<LDUpdate>emptyList());
+        tm.recomputeDebounceMs = 10000;
+        assertTrue(tm.getRecomputeDelay(start + 999) > 0);
+        assertTrue(tm.getRecomputeDelay(end + 1000) <= 0);
+    }
+
+    @Test
+    public void testTopologyVersion() throws Exception {
+        tm.createNewInstance("test", true);
+        TopologyInstance ti = tm.getCurrentInstance();
+        long version = tm.getTopologyVersion();
+
+        tm.addOrUpdateLink(DatapathId.of(1), OFPort.of(1), DatapathId.of(2), OFPort.of(1), U64.ZERO, ILinkDiscovery.LinkType.DIRECT_LINK);
+        // nothing changes for readers until a new instance is published
+        assertEquals(version, tm.getTopologyVersion());
+        assertTrue(tm.getAllLinks().isEmpty());
+
+        assertTrue(tm.createNewInstance("test", false));
+        assertTrue(tm.getTopologyVersion() > version);
+        assertEquals(1, tm.getAllLinks().get(DatapathId.of(1)).size());
+        assertEquals(1, tm.getAllLinks().get(DatapathId.of(2)).size());
+        // the old instance is left as it was
+        assertEquals(version, ti.getVersion());
+        assertTrue(ti.getLinks().isEmpty());
+        version = tm.getTopologyVersion();
+
+        // a cost-only change publishes a new version too
+        tm.linksUpdated = false;
+        tm.addOrUpdateLink(DatapathId.of(1), OFPort.of(1), DatapathId.of(2), OFPort.of(1), U64.of(5), ILinkDiscovery.LinkType.DIRECT_LINK);
+        assertTrue(tm.createNewInstance("test", false));
+        assertTrue(tm.getTopologyVersion() > version);
+    }
+
+    @Test
+    public void testInformListeners() throws Exception {
+        ITopologyListener plain = EasyMock.createMock(ITopologyListener.class);
+        ITopologyChangeListener changeListener = EasyMock.createMock(ITopologyChangeListener.class);
+        tm.addListener(plain);
+        assertFalse(tm.hasChangeListeners());
+        tm.addListener(changeListener);
+        assertTrue(tm.hasChangeListeners());
+
+        /* a new instance without link updates is only news to change listeners */
+        TopologyChange change = new TopologyChange(1, 2,
+                Collections.singleton(DatapathId.of(1)),
+                Collections.<DatapathId>emptySet(),
+                Collections.<NodePortTuple>emptySet(),
+                Collections.<NodePortTuple>emptySet(),
+                Collections.<PathId>emptySet());
+        changeListener.topologyChanged(Collections.<LDUpdate>emptyList(), change);
+        EasyMock.expectLastCall().once();
+        replay(plain, changeListener);
+        tm.informListeners(Collections.<LDUpdate>emptyList(), change);
+        tm.informListeners(null, change);
+        EasyMock.verify(plain, changeListener);
+
+        /* nobody hears of nothing */
+        EasyMock.reset(plain, changeListener);
+        replay(plain, changeListener);
+        tm.informListeners(null, null);
+        tm.informListeners(Collections.<LDUpdate>emptyList(), new TopologyChange(2));
+        tm.informListeners(Collections.<LDUpdate>emptyList());
+        EasyMock.verify(plain, changeListener);
+
+        /* link updates go to everyone, with an empty change if there's no new instance */
+        List<LDUpdate> updates = Collections.singletonList(new LDUpdate(DatapathId.of(1),
+                OFPort.of(1), ILinkDiscovery.UpdateOperation.PORT_DOWN));
+        Capture<TopologyChange> noChange = EasyMock.newCapture();
+        EasyMock.reset(plain, changeListener);
+        plain.topologyChanged(updates);
+        EasyMock.expectLastCall().once();
+        changeListener.topologyChanged(EasyMock.eq(updates), EasyMock.capture(noChange));
+        EasyMock.expectLastCall().once();
+        replay(plain, changeListener);
+        tm.informListeners(updates);
+        EasyMock.verify(plain, changeListener);
+        assertTrue(noChange.getValue().isEmpty());
+
+        tm.removeListener(changeListener);
+        assertFalse(tm.hasChangeListeners());
+    }
+
+    private IOFSwitch createFloodGroupSwitch(DatapathId dpid, OFFactory factory,
+            SettableFuture<List<OFGroupFeaturesStatsReply>> features,
+            SettableFuture<OFBarrierReply> barrier,
+            Capture<Iterable<OFMessage>> written) {
+        IOFSwitch sw = EasyMock.createNiceMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(dpid).anyTimes();
+        expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+        expect(sw.writeStatsRequest(EasyMock.<OFGroupFeaturesStatsRequest>anyObject()))
+                .andReturn(features).anyTimes();
+        expect(sw.write(EasyMock.capture(written)))
+                .andReturn(Collections.<OFMessage>emptyList()).anyTimes();
+        expect(sw.writeRequest(EasyMock.<OFBarrierRequest>anyObject()))
+                .andReturn(barrier).anyTimes();
+        replay(sw);
+        return sw;
+    }
+
+    @Test
+    public void testInstallFloodGroup() throws Exception {
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+        DatapathId dpid = DatapathId.of(1);
+        FloodActions fa = new FloodActions(factory, Arrays.asList(OFPort.of(2), OFPort.of(1)));
+        Map<DatapathId, IOFSwitch> switches = new HashMap<DatapathId, IOFSwitch>();
+        switchManager.setSwitches(switches);
+
+        /* usable once the switch confirmed it supports ALL groups and answered the barrier */
+        SettableFuture<List<OFGroupFeaturesStatsReply>> features = SettableFuture.create();
+        SettableFuture<OFBarrierReply> barrier = SettableFuture.create();
+        Capture<Iterable<OFMessage>> written = EasyMock.newCapture(CaptureType.ALL);
+        IOFSwitch sw = createFloodGroupSwitch(dpid, factory, features, barrier, written);
+        switches.put(dpid, sw);
+        tm.installFloodGroup(sw, fa);
+        assertNull(tm.getFloodGroupActions(dpid, fa));
+        assertFalse(written.hasCaptured());
+
+        features.set(Collections.singletonList(factory.buildGroupFeaturesStatsReply()
+                .setMaxGroupsAll(16).build()));
+        assertTrue(written.hasCaptured());
+        List<OFMessage> msgs = new ArrayList<OFMessage>();
+        for (OFMessage m : written.getValue()) {
+            msgs.add(m);
+        }
+        assertEquals(2, msgs.size());
+        assertTrue(msgs.get(0) instanceof OFGroupDelete);
+        OFGroupAdd add = (OFGroupAdd) msgs.get(1);
+        assertEquals(TopologyManager.FLOOD_GROUP, add.getGroup());
+        assertEquals(OFGroupType.ALL, add.getGroupType());
+        assertEquals(2, add.getBuckets().size());
+        assertNull(tm.getFloodGroupActions(dpid, fa));
+
+        barrier.set(factory.buildBarrierReply().build());
+        List<OFAction> actions = tm.getFloodGroupActions(dpid, fa);
+        assertEquals(Collections.singletonList((OFAction) factory.actions().group(TopologyManager.FLOOD_GROUP)),
+                actions);
+        assertEquals(actions, tm.getFloodGroupActions(dpid,
+                new FloodActions(factory, Arrays.asList(OFPort.of(1), OFPort.of(2)))));
+        /* other ports need another group */
+        assertNull(tm.getFloodGroupActions(dpid, new FloodActions(factory, Arrays.asList(OFPort.of(1)))));
+        /* nothing is written again for the same ports */
+        tm.installFloodGroup(sw, fa);
+        assertEquals(1, written.getValues().size());
+
+        /* a switch that connected again has lost the group */
+        IOFSwitch reconnected = createFloodGroupSwitch(dpid, factory, features, barrier, written);
+        switches.put(dpid, reconnected);
+        assertNull(tm.getFloodGroupActions(dpid, fa));
+
+        /* a group-add the switch rejects is never used */
+        features = SettableFuture.create();
+        barrier = SettableFuture.create();
+        written = EasyMock.newCapture(CaptureType.ALL);
+        sw = createFloodGroupSwitch(dpid, factory, features, barrier, written);
+        switches.put(dpid, sw);
+        tm.installFloodGroup(sw, fa);
+        features.set(Collections.singletonList(factory.buildGroupFeaturesStatsReply()
+                .setMaxGroupsAll(16).build()));
+        long xid = -1;
+        for (OFMessage m : written.getValue()) {
+            if (m instanceof OFGroupAdd) {
+                xid = m.getXid();
+            }
+        }
+        tm.receive(sw, factory.errorMsgs().buildGroupModFailedErrorMsg()
+                .setXid(xid)
+                .setCode(OFGroupModFailedCode.OUT_OF_GROUPS)
+                .build(), null);
+        barrier.set(factory.buildBarrierReply().build());
+        assertNull(tm.getFloodGroupActions(dpid, fa));
+
+        /* nor is anything written to a switch without ALL groups */
+        features = SettableFuture.create();
+        barrier = SettableFuture.create();
+        written = EasyMock.newCapture(CaptureType.ALL);
+        sw = createFloodGroupSwitch(dpid, factory, features, barrier, written);
+        switches.put(dpid, sw);
+        tm.installFloodGroup(sw, fa);
+        features.set(Collections.singletonList(factory.buildGroupFeaturesStatsReply()
+                .setMaxGroupsAll(0).build()));
+        assertFalse(written.hasCaptured());
+        assertNull(tm.getFloodGroupActions(dpid, fa));
+
+        /* and OpenFlow 1.0 switches aren't asked at all */
+        OFFactory of10 = OFFactories.getFactory(OFVersion.OF_10);
+        features = SettableFuture.create();
+        written = EasyMock.newCapture(CaptureType.ALL);
+        sw = createFloodGroupSwitch(dpid, of10, features, barrier, written);
+        switches.put(dpid, sw);
+        tm.installFloodGroup(sw, new FloodActions(of10, Arrays.asList(OFPort.of(1))));
+        assertFalse(written.hasCaptured());
+    }
+
 }
@@ -0,0 +1,175 @@
+package net.floodlightcontroller.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.floodlightcontroller.core.util.AppCookie;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowDeleteStrict;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.TransportPort;
+import org.projectfloodlight.openflow.types.U64;
+
+public class FlowTableDiffTest {
+    private static final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+    private static final U64 OURS = AppCookie.makeCookie(10, 0);
+    private static final U64 THEIRS = AppCookie.makeCookie(2, 0);
+
+    private static Match match(int inPort) {
+        return factory.buildMatch().setExact(MatchField.IN_PORT, OFPort.of(inPort)).build();
+    }
+
+    private static List<OFInstruction> output(int port) {
+        List<OFAction> actions = Collections.singletonList(
+                (OFAction) factory.actions().output(OFPort.of(port), Integer.MAX_VALUE));
+        return Collections.singletonList(
+                (OFInstruction) factory.instructions().applyActions(actions));
+    }
+
+    private static OFFlowMod flow(int inPort, int outPort, int priority) {
+        return factory.buildFlowAdd()
+                .setTableId(TableId.ZERO)
+                .setMatch(match(inPort))
+                .setPriority(priority)
+                .setCookie(OURS)
+                .setInstructions(output(outPort))
+                .build();
+    }
+
+    private static OFFlowStatsEntry installed(int inPort, int outPort, int priority, U64 cookie) {
+        return factory.buildFlowStatsEntry()
+                .setTableId(TableId.ZERO)
+                .setMatch(match(inPort))
+                .setPriority(priority)
+                .setCookie(cookie)
+                .setInstructions(output(outPort))
+                .build();
+    }
+
+    @Test
+    public void testDiff() {
+        OFFlowMod same = flow(1, 2, 100);
+        OFFlowMod changed = flow(2, 3, 100);
+        OFFlowMod missing = flow(3, 1, 200);
+        List<OFFlowStatsEntry> switchFlows = new ArrayList<OFFlowStatsEntry>();
+        switchFlows.add(installed(1, 2, 100, OURS));
+        switchFlows.add(installed(2, 4, 100, OURS));
+        switchFlows.add(installed(4, 1, 100, OURS)); /* stale, ours */
+        switchFlows.add(installed(5, 1, 100, THEIRS)); /* someone else's */
+
+        FlowTableDiff diff = FlowTableDiff.compute(factory, Arrays.asList(same, changed, missing),
+                switchFlows, cookie -> cookie.equals(OURS));
+
+        assertEquals(1, diff.getUnchanged());
+        assertEquals(2, diff.getAdds().size());
+        assertSame(missing, diff.getAdds().get(0)); /* higher priority first */
+        assertSame(changed, diff.getAdds().get(1));
+        assertEquals(1, diff.getDeletes().size());
+        OFFlowDeleteStrict delete = diff.getDeletes().get(0);
+        assertEquals(match(4), delete.getMatch());
+        assertEquals(OURS, delete.getCookie());
+        assertEquals(3, diff.getMessages().size());
+        assertSame(delete, diff.getMessages().get(0));
+    }
+
+    @Test
+    public void testInSync() {
+        FlowTableDiff diff = FlowTableDiff.compute(factory, Arrays.asList(flow(1, 2, 100)),
+                Arrays.asList(installed(1, 2, 100, OURS)), cookie -> true);
+        assertTrue(diff.isEmpty());
+        assertEquals(1, diff.getUnchanged());
+    }
+
+    @Test
+    public void testReportedForm() {
+        /* a full mask, an output max_len and the order of instructions the switch need not keep */
+        OFFlowMod masked = factory.buildFlowAdd()
+                .setTableId(TableId.ZERO)
+                .setMatch(factory.buildMatch()
+                        .setExact(MatchField.ETH_TYPE, EthType.IPv4)
+                        .setMasked(MatchField.IPV4_DST, IPv4Address.of("10.0.0.1"), IPv4Address.NO_MASK)
+                        .build())
+                .setPriority(100)
+                .setCookie(OURS)
+                .setInstructions(Arrays.asList(
+                        output(2).get(0),
+                        factory.instructions().gotoTable(TableId.of(1))))
+                .build();
+        OFFlowStatsEntry maskedReported = factory.buildFlowStatsEntry()
+                .setTableId(TableId.ZERO)
+                .setMatch(factory.buildMatch()
+                        .setExact(MatchField.ETH_TYPE, EthType.IPv4)
+                        .setExact(MatchField.IPV4_DST, IPv4Address.of("10.0.0.1"))
+                        .build())
+                .setPriority(100)
+                .setCookie(OURS)
+                .setInstructions(Arrays.asList(
+                        factory.instructions().gotoTable(TableId.of(1)),
+                        factory.instructions().applyActions(Collections.singletonList(
+                                (OFAction) factory.actions().output(OFPort.of(2), 0)))))
+                .build();
+
+        /* prerequisites the switch fills in */
+        OFFlowMod implicit = factory.buildFlowAdd()
+                .setTableId(TableId.ZERO)
+                .setMatch(factory.buildMatch()
+                        .setExact(MatchField.IP_PROTO, IpProtocol.TCP)
+                        .setExact(MatchField.TCP_DST, TransportPort.of(80))
+                        .build())
+                .setPriority(200)
+                .setCookie(OURS)
+                .setInstructions(output(3))
+                .build();
+        OFFlowStatsEntry implicitReported = factory.buildFlowStatsEntry()
+                .setTableId(TableId.ZERO)
+                .setMatch(factory.buildMatch()
+                        .setExact(MatchField.ETH_TYPE, EthType.IPv4)
+                        .setExact(MatchField.IP_PROTO, IpProtocol.TCP)
+                        .setExact(MatchField.TCP_DST, TransportPort.of(80))
+                        .build())
+                .setPriority(200)
+                .setCookie(OURS)
+                .setInstructions(output(3))
+                .build();
+
+        FlowTableDiff diff = FlowTableDiff.compute(factory, Arrays.asList(masked, implicit),
+                Arrays.asList(maskedReported, implicitReported), cookie -> true);
+        assertTrue(diff.isEmpty());
+        assertEquals(2, diff.getUnchanged());
+
+        /* a real difference is still one */
+        OFFlowStatsEntry otherPort = implicitReported.createBuilder()
+                .setMatch(factory.buildMatch()
+                        .setExact(MatchField.ETH_TYPE, EthType.IPv4)
+                        .setExact(MatchField.IP_PROTO, IpProtocol.TCP)
+                        .setExact(MatchField.TCP_DST, TransportPort.of(81))
+                        .build())
+                .build();
+        diff = FlowTableDiff.compute(factory, Arrays.asList(masked, implicit),
+                Arrays.asList(maskedReported, otherPort), cookie -> true);
+        assertEquals(1, diff.getUnchanged());
+        assertEquals(Collections.singletonList(implicit), diff.getAdds());
+        assertEquals(1, diff.getDeletes().size());
+        assertEquals(otherPort.getMatch(), diff.getDeletes().get(0).getMatch());
+    }
+}
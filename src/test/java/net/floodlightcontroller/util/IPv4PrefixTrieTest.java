@@ -0,0 +1,87 @@
+package net.floodlightcontroller.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class IPv4PrefixTrieTest {
+    private IPv4PrefixTrie<String> trie;
+
+    private static int ip(int a, int b, int c, int d) {
+        return (a << 24) | (b << 16) | (c << 8) | d;
+    }
+
+    @Before
+    public void setUp() {
+        trie = new IPv4PrefixTrie<String>();
+        trie.put(0, 0, "default");
+        trie.put(ip(10, 0, 0, 0), 8, "10/8");
+        trie.put(ip(10, 1, 0, 0), 16, "10.1/16");
+        trie.put(ip(10, 1, 2, 0), 24, "10.1.2/24");
+        trie.put(ip(10, 1, 2, 3), 32, "10.1.2.3/32");
+        trie.put(ip(192, 168, 0, 0), 16, "192.168/16");
+    }
+
+    @Test
+    public void testLongestMatch() {
+        assertEquals(new HashSet<String>(Arrays.asList("10.1.2.3/32")),
+                trie.longestMatch(ip(10, 1, 2, 3)));
+        assertEquals(new HashSet<String>(Arrays.asList("10.1.2/24")),
+                trie.longestMatch(ip(10, 1, 2, 4)));
+        assertEquals(new HashSet<String>(Arrays.asList("10/8")),
+                trie.longestMatch(ip(10, 2, 0, 1)));
+        assertEquals(new HashSet<String>(Arrays.asList("default")),
+                trie.longestMatch(ip(11, 0, 0, 1)));
+
+        trie.remove(0, 0, "default");
+        assertTrue(trie.longestMatch(ip(11, 0, 0, 1)).isEmpty());
+    }
+
+    @Test
+    public void testCovering() {
+        assertEquals(Arrays.asList("default", "10/8", "10.1/16", "10.1.2/24"),
+                trie.getCovering(ip(10, 1, 2, 0), 24));
+        assertEquals(Arrays.asList("default", "10/8", "10.1/16"),
+                trie.getCovering(ip(10, 1, 3, 0), 24));
+        // bits beyond the mask are ignored
+        assertEquals(Arrays.asList("default", "10/8"),
+                trie.getCovering(ip(10, 1, 2, 3), 8));
+    }
+
+    @Test
+    public void testCovered() {
+        Set<String> covered = new HashSet<String>(trie.getCovered(ip(10, 1, 0, 0), 16));
+        assertEquals(new HashSet<String>(Arrays.asList("10.1/16", "10.1.2/24", "10.1.2.3/32")),
+                covered);
+        assertEquals(6, trie.getCovered(0, 0).size());
+        assertTrue(trie.getCovered(ip(172, 16, 0, 0), 12).isEmpty());
+    }
+
+    @Test
+    public void testPutRemove() {
+        assertEquals(6, trie.size());
+        assertFalse(trie.put(ip(10, 0, 0, 0), 8, "10/8"));
+        assertTrue(trie.put(ip(10, 0, 0, 0), 8, "other"));
+        assertEquals(new HashSet<String>(Arrays.asList("10/8", "other")),
+                trie.get(ip(10, 0, 0, 0), 8));
+
+        assertTrue(trie.remove(ip(10, 1, 2, 3), 32, "10.1.2.3/32"));
+        assertFalse(trie.remove(ip(10, 1, 2, 3), 32, "10.1.2.3/32"));
+        assertFalse(trie.remove(ip(10, 9, 9, 9), 32, "none"));
+        assertEquals(6, trie.size());
+        assertTrue(trie.get(ip(10, 1, 2, 3), 32).isEmpty());
+        assertEquals(new HashSet<String>(Arrays.asList("10.1.2/24")),
+                trie.longestMatch(ip(10, 1, 2, 3)));
+
+        trie.clear();
+        assertTrue(trie.isEmpty());
+        assertTrue(trie.getCovered(0, 0).isEmpty());
+    }
+}
@@ -0,0 +1,84 @@
+package org.sdnplatform.sync.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.internal.StoreRegistry.Hint;
+import org.sdnplatform.sync.internal.StoreRegistry.HintStats;
+import org.sdnplatform.sync.internal.util.ByteArray;
+
+public class StoreRegistryTest {
+    private static ByteArray key(int i) {
+        return new ByteArray(new byte[] { (byte) i });
+    }
+
+    private static Versioned<byte[]> value(int v, int... nodes) {
+        return new Versioned<byte[]>(new byte[] { (byte) v }, TUtils.getClock(nodes));
+    }
+
+    @Test
+    public void testCoalesceRepeatedKeys() throws Exception {
+        StoreRegistry registry = new StoreRegistry(null, null, 1);
+        registry.queueHint("store", key(1), value(1, 1));
+        registry.queueHint("store", key(1), value(2, 1, 1));
+        registry.queueHint("store", key(2), value(3, 1));
+        // obsolete versions are not queued
+        registry.queueHint("store", key(1), value(4));
+
+        HintStats stats = registry.getHintStats("store");
+        assertEquals(2, stats.getQueued());
+        assertEquals(2, stats.getDepth());
+
+        List<Hint> hints = new ArrayList<Hint>();
+        assertEquals(2, registry.takeHints(0, hints));
+        assertEquals(key(1), hints.get(0).getHintKey().getKey());
+        assertEquals(1, hints.get(0).getValues().size());
+        assertEquals(2, hints.get(0).getValues().get(0).getValue()[0]);
+        assertEquals(key(2), hints.get(1).getHintKey().getKey());
+        assertEquals(0, stats.getDepth());
+        assertEquals(2, stats.getTaken());
+
+        // a taken key is queued again on the next write
+        registry.queueHint("store", key(1), value(5, 1, 1, 1));
+        hints.clear();
+        assertEquals(1, registry.takeHints(0, hints));
+        assertEquals(5, hints.get(0).getValues().get(0).getValue()[0]);
+    }
+
+    @Test
+    public void testShardsAndBatchSize() throws Exception {
+        StoreRegistry registry = new StoreRegistry(null, null, 4);
+        int n = StoreRegistry.MIN_HINT_BATCH * 16;
+        for (int i = 0; i < n; i++) {
+            registry.queueHint("store", new ByteArray(new byte[] { (byte) i, (byte) (i >> 8) }),
+                               value(i, 1));
+        }
+        assertEquals(n, registry.getHintStats("store").getDepth());
+
+        int total = 0;
+        int largestBatch = 0;
+        for (int shard = 0; shard < registry.getNumHintShards(); shard++) {
+            List<Hint> hints = new ArrayList<Hint>();
+            while (registry.getHintQueueDepth(shard) > 0) {
+                int before = hints.size();
+                registry.takeHints(shard, hints);
+                int batch = hints.size() - before;
+                assertTrue(batch <= StoreRegistry.MAX_HINT_BATCH);
+                largestBatch = Math.max(largestBatch, batch);
+            }
+            for (Hint h : hints) {
+                assertEquals(shard, (h.getHintKey().hashCode() & Integer.MAX_VALUE) % 4);
+            }
+            total += hints.size();
+        }
+        assertEquals(n, total);
+        // the batch grew while the shards had a backlog
+        assertTrue(largestBatch > StoreRegistry.MIN_HINT_BATCH);
+        assertEquals(0, registry.getHintStats("store").getDepth());
+    }
+}
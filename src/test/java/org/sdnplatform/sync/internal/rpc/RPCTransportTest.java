@@ -0,0 +1,128 @@
+package org.sdnplatform.sync.internal.rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.JdkZlibDecoder;
+import io.netty.handler.codec.compression.ZlibWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.sdnplatform.sync.ISyncService.Scope;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.internal.TUtils;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.thrift.SyncMessage;
+
+public class RPCTransportTest {
+    private static SyncMessage message(int i) {
+        SyncMessage bsm =
+                TProtocolUtil.getTSyncValueMessage("store", Scope.GLOBAL, false);
+        bsm.getSyncValue().getHeader().setTransactionId(i);
+        bsm.getSyncValue().addToValues(
+                TProtocolUtil.getTKeyedValues(
+                        new ByteArray(new byte[] { (byte) i }),
+                        new Versioned<byte[]>(new byte[64], TUtils.getClock(1))));
+        return bsm;
+    }
+
+    @Test
+    public void testDeflateBatches() throws Exception {
+        EmbeddedChannel sender =
+                new EmbeddedChannel(new DeflateBatchEncoder(),
+                                    new SyncMessageEncoder());
+        EmbeddedChannel receiver =
+                new EmbeddedChannel(new JdkZlibDecoder(ZlibWrapper.ZLIB),
+                                    new SyncMessageDecoder(512 * 1024));
+
+        List<SyncMessage> sent = new ArrayList<SyncMessage>();
+        for (int batch = 0; batch < 3; batch++) {
+            for (int i = 0; i < 10; i++) {
+                SyncMessage m = message(batch * 10 + i);
+                sent.add(m);
+                sender.write(m);
+            }
+            // nothing goes out until the batch is flushed
+            assertTrue(sender.outboundMessages().isEmpty());
+            sender.flush();
+            assertEquals(1, sender.outboundMessages().size());
+            receiver.writeInbound(sender.readOutbound());
+        }
+
+        List<SyncMessage> received = new ArrayList<SyncMessage>();
+        Object o;
+        while ((o = receiver.readInbound()) != null) {
+            for (Object m : (List<?>) o) {
+                received.add((SyncMessage) m);
+            }
+        }
+        assertEquals(sent, received);
+        assertFalse(sender.finish());
+    }
+
+    @Test
+    public void testDeflateCompresses() throws Exception {
+        EmbeddedChannel plain = new EmbeddedChannel(new SyncMessageEncoder());
+        EmbeddedChannel deflated =
+                new EmbeddedChannel(new DeflateBatchEncoder(),
+                                    new SyncMessageEncoder());
+        int plainBytes = 0;
+        for (int i = 0; i < 100; i++) {
+            plain.writeAndFlush(message(i));
+            ByteBuf b = (ByteBuf) plain.readOutbound();
+            plainBytes += b.readableBytes();
+            b.release();
+            deflated.write(message(i));
+        }
+        deflated.flush();
+        ByteBuf b = (ByteBuf) deflated.readOutbound();
+        assertTrue(b.readableBytes() * 4 < plainBytes);
+        b.release();
+    }
+
+    @Test
+    public void testAdaptiveWindow() throws Exception {
+        RPCService.MessageWindow mw = new RPCService.MessageWindow(8, 16, 64);
+        for (int i = 0; i < 16; i++) {
+            assertTrue(mw.acquire(0));
+        }
+        // full
+        assertFalse(mw.acquire(1));
+
+        // a window of acks grows the limit by a quarter
+        for (int i = 0; i < 16; i++) {
+            mw.release();
+        }
+        assertEquals(20, mw.getLimit());
+
+        // congestion halves it once per half window of acks
+        for (int i = 0; i < 10; i++) {
+            assertTrue(mw.acquire(0));
+            mw.release();
+        }
+        mw.congested();
+        assertEquals(10, mw.getLimit());
+        mw.congested();
+        assertEquals(10, mw.getLimit());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(mw.acquire(0));
+            mw.release();
+        }
+        mw.congested();
+        assertEquals(8, mw.getLimit());
+
+        // fixed window
+        RPCService.MessageWindow fixed = new RPCService.MessageWindow(16, 16, 16);
+        for (int i = 0; i < 64; i++) {
+            assertTrue(fixed.acquire(0));
+            fixed.release();
+        }
+        fixed.congested();
+        assertEquals(16, fixed.getLimit());
+    }
+}